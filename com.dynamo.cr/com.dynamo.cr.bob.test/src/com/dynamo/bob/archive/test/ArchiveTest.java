@@ -18,6 +18,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -27,7 +28,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -46,6 +51,8 @@ import com.dynamo.bob.pipeline.graph.ResourceNode;
 import com.dynamo.bob.pipeline.graph.ResourceGraph;
 
 import com.dynamo.liveupdate.proto.Manifest.HashAlgorithm;
+import com.dynamo.liveupdate.proto.Manifest.ManifestData;
+import com.dynamo.liveupdate.proto.Manifest.ResourceEntry;
 import com.dynamo.liveupdate.proto.Manifest.ResourceEntryFlag;
 
 public class ArchiveTest {
@@ -472,5 +479,83 @@ public class ArchiveTest {
         assertEquals("/main.collectionc", instance.getArchiveEntry(1).getRelativeFilename());         // b32b3904944e63ed5a269caa47904645
     }
 
+    // Writes an archive of random (incompressible) resources and checks that the
+    // resource hashes in the archive index and the manifest match the content.
+    // Returns the time spent in ArchiveBuilder.write(), in nanoseconds.
+    private long writeSyntheticArchive(HashAlgorithm algorithm, int count, int size) throws Exception {
+        ManifestBuilder manifestBuilder = new ManifestBuilder();
+        manifestBuilder.setResourceHashAlgorithm(algorithm);
+        manifestBuilder.setResourceGraph(resourceGraph);
+        manifestBuilder.setProjectIdentifier("archive_test");
+
+        ArchiveBuilder instance = new ArchiveBuilder(FilenameUtils.separatorsToSystem(contentRoot), manifestBuilder, 4);
+        Map<String, byte[]> contents = new HashMap<>();
+        Random random = new Random(count);
+        for (int i = 0; i < count; ++i) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            String filename = String.format("synthetic/resource%d.bin", i);
+            instance.add(createDummyFile(contentRoot, filename, data), true, false);
+            contents.put("/" + filename, data);
+        }
+        // Excluded resources are hashed before they are written
+        String excludedPath = "/synthetic/resource0.bin";
+        List<String> excludedResources = new ArrayList<String>();
+        excludedResources.add(excludedPath);
+
+        RandomAccessFile outFileIndex = new RandomAccessFile(outputIndex, "rw");
+        RandomAccessFile outFileData = new RandomAccessFile(outputData, "rw");
+        outFileIndex.setLength(0);
+        outFileData.setLength(0);
+        long start = System.nanoTime();
+        instance.write(outFileIndex, outFileData, resourcePackDir, excludedResources);
+        long elapsed = System.nanoTime() - start;
+        outFileIndex.close();
+        outFileData.close();
 
+        for (int i = 0; i < instance.getArchiveEntrySize(); ++i) {
+            ArchiveEntry entry = instance.getArchiveEntry(i);
+            byte[] expected = ManifestBuilder.CryptographicOperations.hash(contents.get(entry.getRelativeFilename()), algorithm);
+            assertArrayEquals(expected, Arrays.copyOf(entry.getHash(), expected.length));
+        }
+        assertEquals(count - 1, instance.getArchiveEntrySize());
+        assertEquals(1, instance.getExcludedEntries().size());
+        assertTrue(new File(resourcePackDir.toFile(), instance.getExcludedEntries().get(0).getHexDigest()).isFile());
+
+        ManifestData manifestData = manifestBuilder.buildManifestData();
+        assertEquals(count, manifestData.getResourcesCount());
+        for (ResourceEntry resource : manifestData.getResourcesList()) {
+            byte[] expected = ManifestBuilder.CryptographicOperations.hash(contents.get(resource.getUrl()), algorithm);
+            assertArrayEquals(expected, resource.getHash().getData().toByteArray());
+        }
+        return elapsed;
+    }
+
+    @Test
+    public void testWriteArchiveResourceHashes() throws Exception {
+        writeSyntheticArchive(HashAlgorithm.HASH_SHA1, 16, 64 * 1024);
+        writeSyntheticArchive(HashAlgorithm.HASH_SHA256, 16, 64 * 1024);
+        writeSyntheticArchive(HashAlgorithm.HASH_SHA512, 16, 64 * 1024);
+    }
+
+    // Benchmark of the archive write with each resource hash algorithm
+    // Only run when DM_BOB_BENCHMARKS is set, e.g. DM_BOB_BENCHMARKS=1
+    @Test
+    public void benchmarkWriteArchiveResourceHashes() throws Exception {
+        assumeTrue(System.getenv("DM_BOB_BENCHMARKS") != null);
+        final int count = 64;
+        final int size = 256 * 1024;
+        HashAlgorithm[] algorithms = { HashAlgorithm.HASH_SHA1, HashAlgorithm.HASH_SHA256, HashAlgorithm.HASH_SHA512 };
+        // Warm up
+        for (HashAlgorithm algorithm : algorithms) {
+            writeSyntheticArchive(algorithm, count, size);
+        }
+        for (HashAlgorithm algorithm : algorithms) {
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 5; ++i) {
+                best = Math.min(best, writeSyntheticArchive(algorithm, count, size));
+            }
+            System.out.printf("Archive with %d resources of %d bytes, %s: %.1f ms\n", count, size, algorithm, best / 1000000.0);
+        }
+    }
 }
@@ -17,6 +17,7 @@ package com.dynamo.bob.archive.test;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -31,7 +32,10 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
@@ -494,4 +498,163 @@ public class ManifestTest {
             }
         }
     }
+
+    @Test
+    public void testCreateManifest_DeepProxyGraph() throws IOException {
+        final int levels = 1000;
+        final int depth = 20;
+
+        ManifestBuilder manifestBuilder = new ManifestBuilder();
+        manifestBuilder.setResourceHashAlgorithm(HashAlgorithm.HASH_SHA1);
+        manifestBuilder.setSignatureHashAlgorithm(HashAlgorithm.HASH_SHA1);
+        manifestBuilder.setSignatureSignAlgorithm(SignAlgorithm.SIGN_RSA);
+        manifestBuilder.setProjectIdentifier("Defold test");
+
+        ResourceGraph graph = new ResourceGraph(new Project(new DefaultFileSystem()));
+        manifestBuilder.setResourceGraph(graph);
+
+        /*
+        root
+        |
+        +--/main/main.collectionc
+           +--/main/shared.scriptc
+           |
+           +--/level0/level.collectionproxyc (excluded)
+              +--/level0/level.collectionc
+                 +--/level0/go0.goc
+                    +--/main/shared.scriptc
+                    +--/level0/go1.goc
+                       ...
+                          +--/level0/go19.goc
+                             +--/main/shared.scriptc
+                             +--/level1/level.collectionproxyc (excluded)
+                                ...
+        */
+        ResourceNode mainCollection = graph.add("/main/main.collectionc", graph.getRootNode());
+        ResourceNode sharedScript = graph.add("/main/shared.scriptc", mainCollection);
+        ResourceNode parent = mainCollection;
+        for (int level = 0; level < levels; ++level) {
+            ResourceNode proxy = graph.add(String.format("/level%d/level.collectionproxyc", level), parent);
+            proxy.setType(ResourceNode.Type.ExcludedCollectionProxy);
+            parent = graph.add(String.format("/level%d/level.collectionc", level), proxy);
+            for (int i = 0; i < depth; ++i) {
+                parent = graph.add(String.format("/level%d/go%d.goc", level, i), parent);
+                graph.add(sharedScript, parent);
+            }
+        }
+        graph.findAllResourcesReferencedFromMainCollection();
+
+        byte[] data = "data".getBytes();
+        for (int i = 0; i < graph.getResourceNodeCount(); ++i) {
+            manifestBuilder.addResourceEntry(graph.getResourceNode(i).getPath(), data, data.length, data.length, ResourceEntryFlag.BUNDLED.getNumber());
+        }
+
+        ManifestData manifestData = manifestBuilder.buildManifestData();
+
+        String lastProxy = String.format("/level%d/level.collectionproxyc", levels - 1);
+        int proxyCount = 0;
+        for (ResourceEntry resource : manifestData.getResourcesList()) {
+            if (resource.getUrl().endsWith(".collectionproxyc")) {
+                ++proxyCount;
+                // The collection and game objects of the level, and the proxy of the next level.
+                // The shared script is in the main bundle and isn't a dependant.
+                int expected = resource.getUrl().equals(lastProxy) ? depth + 1 : depth + 2;
+                assertEquals(resource.getUrl(), expected, resource.getDependantsCount());
+            } else {
+                assertEquals(0, resource.getDependantsCount());
+            }
+        }
+        assertEquals(levels, proxyCount);
+
+        // The dependants of each excluded proxy are only computed once
+        ResourceNode firstProxy = graph.getResourceNodeFromPath("/level0/level.collectionproxyc");
+        assertSame(manifestBuilder.getAllDependants(firstProxy), manifestBuilder.getAllDependants(firstProxy));
+        // The collection, game objects and shared script of the level, and the proxy of the next level
+        assertEquals(depth + 3, manifestBuilder.getAllDependants(firstProxy).size());
+    }
+
+    // The dependants as found by a recursive walk with a set per node, which decides the manifest order
+    private static HashSet<ResourceNode> getAllDependantsRecursive(ResourceNode node, HashMap<ResourceNode, HashSet<ResourceNode>> nodeToDependants) {
+        HashSet<ResourceNode> dependants = nodeToDependants.get(node);
+        if (dependants != null) {
+            return dependants;
+        }
+        dependants = new HashSet<ResourceNode>();
+        for (ResourceNode child : node.getChildren()) {
+            dependants.add(child);
+            if (!child.checkType(ResourceNode.Type.CollectionProxy)) {
+                dependants.addAll(getAllDependantsRecursive(child, nodeToDependants));
+            }
+        }
+        nodeToDependants.put(node, dependants);
+        return dependants;
+    }
+
+    @Test
+    public void testCreateManifest_DependantsOrder() throws IOException {
+        for (int seed = 0; seed < 20; ++seed) {
+            Random random = new Random(seed);
+
+            ManifestBuilder manifestBuilder = new ManifestBuilder();
+            manifestBuilder.setResourceHashAlgorithm(HashAlgorithm.HASH_SHA1);
+            manifestBuilder.setSignatureHashAlgorithm(HashAlgorithm.HASH_SHA1);
+            manifestBuilder.setSignatureSignAlgorithm(SignAlgorithm.SIGN_RSA);
+            manifestBuilder.setProjectIdentifier("Defold test");
+
+            ResourceGraph graph = new ResourceGraph(new Project(new DefaultFileSystem()));
+            manifestBuilder.setResourceGraph(graph);
+
+            // Random acyclic graph with shared nodes, excluded and included proxies
+            List<ResourceNode> nodes = new ArrayList<ResourceNode>();
+            nodes.add(graph.add("/main/main.collectionc", graph.getRootNode()));
+            for (int i = 1; i < 2000; ++i) {
+                ResourceNode parent = nodes.get(random.nextInt(nodes.size()));
+                ResourceNode node = graph.add(String.format("/r%d/node%d.goc", random.nextInt(100), i), parent);
+                int type = random.nextInt(10);
+                if (type == 0) {
+                    node.setType(ResourceNode.Type.ExcludedCollectionProxy);
+                } else if (type == 1) {
+                    node.setType(ResourceNode.Type.CollectionProxy);
+                }
+                // Shared nodes added later in the graph
+                if (i > 1 && random.nextInt(3) == 0) {
+                    graph.add(node, nodes.get(1 + random.nextInt(nodes.size() - 1)));
+                }
+                nodes.add(node);
+            }
+            graph.findAllResourcesReferencedFromMainCollection();
+
+            byte[] data = "data".getBytes();
+            for (ResourceNode node : nodes) {
+                // Leave out some resources, these aren't listed as dependants
+                if (random.nextInt(10) != 0) {
+                    manifestBuilder.addResourceEntry(node.getPath(), data, data.length, data.length, ResourceEntryFlag.BUNDLED.getNumber());
+                }
+            }
+
+            ManifestData manifestData = manifestBuilder.buildManifestData();
+            HashMap<String, Long> urlHashes = new HashMap<String, Long>();
+            for (ResourceEntry resource : manifestData.getResourcesList()) {
+                urlHashes.put(resource.getUrl(), resource.getUrlHash());
+            }
+
+            HashMap<ResourceNode, HashSet<ResourceNode>> nodeToDependants = new HashMap<ResourceNode, HashSet<ResourceNode>>();
+            int proxyCount = 0;
+            for (ResourceEntry resource : manifestData.getResourcesList()) {
+                ResourceNode node = graph.getResourceNodeFromPath(resource.getUrl());
+                List<Long> expected = new ArrayList<Long>();
+                if (node.checkType(ResourceNode.Type.ExcludedCollectionProxy)) {
+                    ++proxyCount;
+                    for (ResourceNode dependant : getAllDependantsRecursive(node, nodeToDependants)) {
+                        Long urlHash = urlHashes.get(dependant.getPath());
+                        if (!dependant.isInMainBundle() && urlHash != null) {
+                            expected.add(urlHash);
+                        }
+                    }
+                }
+                assertEquals(resource.getUrl(), expected, resource.getDependantsList());
+            }
+            assertTrue(proxyCount > 0);
+        }
+    }
 }
@@ -0,0 +1,142 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.archive.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.archive.ArchiveEntry;
+import com.dynamo.bob.archive.publisher.PublishDelta;
+import com.dynamo.bob.archive.publisher.PublisherSettings;
+import com.dynamo.bob.archive.publisher.ZipPublisher;
+import com.sun.net.httpserver.HttpServer;
+
+public class PublishDeltaTest {
+
+    private File root;
+    private File outDir;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("publishdelta").toFile();
+        outDir = Files.createTempDirectory("publishdelta_out").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.stop(0);
+        }
+        FileUtils.deleteDirectory(root);
+        FileUtils.deleteDirectory(outDir);
+    }
+
+    // Serves the index of the previous release, as a stand-in for the remote storage
+    private String serveIndex(final String index) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/liveupdate.index", exchange -> {
+            byte[] data = index.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, data.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(data);
+            }
+        });
+        server.start();
+        return String.format("http://127.0.0.1:%d/liveupdate.index", server.getAddress().getPort());
+    }
+
+    private void addEntry(ZipPublisher publisher, String path, String hexDigest) throws IOException {
+        File file = new File(root, hexDigest != null ? hexDigest : path);
+        FileUtils.writeStringToFile(file, path, StandardCharsets.UTF_8);
+        ArchiveEntry entry = new ArchiveEntry(root.getAbsolutePath(), file.getAbsolutePath());
+        if (hexDigest != null) {
+            entry.setHexDigest(hexDigest);
+        }
+        publisher.AddEntry(file, entry);
+    }
+
+    @Test
+    public void testPublishDeltaFromIndex() throws Exception {
+        String indexUrl = serveIndex("# previous release\naaaa\nbbbb\n");
+
+        PublisherSettings settings = new PublisherSettings();
+        settings.setZipFilepath(outDir.getAbsolutePath());
+        settings.setDeltaIndexUrl(indexUrl);
+        ZipPublisher publisher = new ZipPublisher(root.getAbsolutePath(), settings);
+        publisher.setFilename("resources.zip");
+
+        addEntry(publisher, "/main/unchanged.texturec", "aaaa");
+        addEntry(publisher, "/main/changed.goc", "cccc");
+        addEntry(publisher, "/main/added.scriptc", "dddd");
+        addEntry(publisher, "liveupdate.game.dmanifest", null);
+        publisher.Publish();
+
+        Set<String> names = new HashSet<String>();
+        try (ZipFile zip = new ZipFile(new File(outDir, "resources.zip"))) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                names.add(entry.getName());
+            }
+
+            List<String> index = IOUtils.readLines(zip.getInputStream(zip.getEntry(PublishDelta.INDEX_NAME)), StandardCharsets.UTF_8);
+            assertEquals(Arrays.asList("aaaa", "bbbb", "cccc", "dddd"), index);
+
+            String diff = IOUtils.toString(zip.getInputStream(zip.getEntry(PublishDelta.DIFF_MANIFEST_NAME)), StandardCharsets.UTF_8);
+            assertTrue(diff, diff.contains("\"hexDigest\":\"cccc\""));
+            assertTrue(diff, diff.contains("\"hexDigest\":\"dddd\""));
+            assertTrue(diff, !diff.contains("aaaa"));
+            assertTrue(diff, diff.contains("\"unchanged\":1"));
+        }
+
+        Set<String> expected = new HashSet<String>(Arrays.asList("cccc", "dddd", "liveupdate.game.dmanifest", PublishDelta.DIFF_MANIFEST_NAME, PublishDelta.INDEX_NAME));
+        assertEquals(expected, names);
+    }
+
+    @Test
+    public void testPublishWithoutDelta() throws Exception {
+        PublisherSettings settings = new PublisherSettings();
+        settings.setZipFilepath(outDir.getAbsolutePath());
+        ZipPublisher publisher = new ZipPublisher(root.getAbsolutePath(), settings);
+        publisher.setFilename("resources.zip");
+
+        addEntry(publisher, "/main/a.texturec", "aaaa");
+        addEntry(publisher, "/main/b.goc", "bbbb");
+        publisher.Publish();
+
+        try (ZipFile zip = new ZipFile(new File(outDir, "resources.zip"))) {
+            assertEquals(2, zip.size());
+        }
+    }
+}
@@ -0,0 +1,227 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.archive.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.dynamo.bob.NullProgress;
+import com.dynamo.bob.archive.publisher.S3Uploader;
+
+public class S3UploaderTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private File dir;
+
+    /**
+     * In-memory stand-in for an S3 bucket, implementing the requests used by the uploader.
+     * Requests for keys in failingKeys fail with the given status code the first time.
+     */
+    private static class FakeBucket {
+        final Map<String, byte[]> objects = new ConcurrentHashMap<String, byte[]>();
+        final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<String, Map<Integer, byte[]>>();
+        final Set<String> aborted = ConcurrentHashMap.newKeySet();
+        final Set<String> failingKeys = ConcurrentHashMap.newKeySet();
+        final AtomicInteger uploadIds = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final AtomicInteger concurrent = new AtomicInteger();
+        int failureStatusCode = 503;
+
+        private void failOnce(String key) {
+            if (failingKeys.remove(key)) {
+                AmazonServiceException exception = new AmazonServiceException("Injected failure");
+                exception.setStatusCode(failureStatusCode);
+                exception.setErrorCode(failureStatusCode == 503 ? "SlowDown" : "AccessDenied");
+                throw exception;
+            }
+        }
+
+        private static byte[] read(File file, long offset, long size) throws IOException {
+            byte[] data = new byte[(int) size];
+            try (RandomAccessFile f = new RandomAccessFile(file, "r")) {
+                f.seek(offset);
+                f.readFully(data);
+            }
+            return data;
+        }
+
+        private Object handle(String method, Object[] args) throws Exception {
+            switch (method) {
+                case "putObject": {
+                    String key = (String) args[1];
+                    failOnce(key);
+                    objects.put(key, FileUtils.readFileToByteArray((File) args[2]));
+                    return new PutObjectResult();
+                }
+                case "initiateMultipartUpload": {
+                    InitiateMultipartUploadRequest request = (InitiateMultipartUploadRequest) args[0];
+                    InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+                    result.setKey(request.getKey());
+                    result.setUploadId("upload" + uploadIds.incrementAndGet());
+                    uploads.put(result.getUploadId(), new ConcurrentHashMap<Integer, byte[]>());
+                    return result;
+                }
+                case "uploadPart": {
+                    UploadPartRequest request = (UploadPartRequest) args[0];
+                    failOnce(request.getKey() + "#" + request.getPartNumber());
+                    uploads.get(request.getUploadId()).put(request.getPartNumber(), read(request.getFile(), request.getFileOffset(), request.getPartSize()));
+                    UploadPartResult result = new UploadPartResult();
+                    result.setPartNumber(request.getPartNumber());
+                    result.setETag("etag" + request.getPartNumber());
+                    return result;
+                }
+                case "completeMultipartUpload": {
+                    CompleteMultipartUploadRequest request = (CompleteMultipartUploadRequest) args[0];
+                    Map<Integer, byte[]> parts = new TreeMap<Integer, byte[]>(uploads.remove(request.getUploadId()));
+                    ByteArrayOutputStream os = new ByteArrayOutputStream();
+                    for (PartETag partETag : request.getPartETags()) {
+                        os.write(parts.get(partETag.getPartNumber()));
+                    }
+                    objects.put(request.getKey(), os.toByteArray());
+                    return new CompleteMultipartUploadResult();
+                }
+                case "abortMultipartUpload":
+                    aborted.add(((AbortMultipartUploadRequest) args[0]).getKey());
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        }
+
+        AmazonS3 createClient() {
+            return (AmazonS3) Proxy.newProxyInstance(AmazonS3.class.getClassLoader(), new Class<?>[] { AmazonS3.class }, (proxy, method, args) -> {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                try {
+                    // Simulate the latency of a request
+                    Thread.sleep(1);
+                    return handle(method.getName(), args);
+                } finally {
+                    concurrent.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("s3uploader").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private Map<String, File> createFiles(int count, int size, Random random) throws IOException {
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        for (int i = 0; i < count; ++i) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            File file = new File(dir, String.format("%s_%d", size, i));
+            FileUtils.writeByteArrayToFile(file, data);
+            files.put("prefix/" + file.getName(), file);
+        }
+        return files;
+    }
+
+    @Test
+    public void testUploadWithRetries() throws IOException {
+        Random random = new Random(1234);
+        Map<String, File> files = createFiles(500, 1024, random);
+        files.putAll(createFiles(2, 12 * MB + 100, random));
+
+        FakeBucket bucket = new FakeBucket();
+        bucket.failingKeys.add("prefix/1024_10");
+        bucket.failingKeys.add("prefix/1024_20");
+        bucket.failingKeys.add("prefix/12583012_1#2");
+
+        S3Uploader uploader = new S3Uploader(bucket.createClient(), "bucket");
+        uploader.setThreadCount(8);
+        uploader.setRetryDelay(1);
+        uploader.setPartSize(S3Uploader.MIN_PART_SIZE);
+        uploader.setMultipartThreshold(8 * MB);
+        uploader.upload(files, new NullProgress());
+
+        assertEquals(files.size(), bucket.objects.size());
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            assertArrayEquals(entry.getKey(), FileUtils.readFileToByteArray(entry.getValue()), bucket.objects.get(entry.getKey()));
+        }
+        assertEquals(files.size(), uploader.getUploadedObjects());
+        assertEquals(500 * 1024 + 2 * (12 * MB + 100), uploader.getUploadedBytes());
+        assertEquals(3, uploader.getRetryCount());
+        assertTrue(bucket.failingKeys.isEmpty());
+        assertTrue(bucket.aborted.isEmpty());
+        assertTrue(bucket.maxConcurrent.get() > 1 && bucket.maxConcurrent.get() <= 8);
+    }
+
+    @Test
+    public void testUploadFailure() throws IOException {
+        Random random = new Random(1234);
+        Map<String, File> files = createFiles(1, 12 * MB, random);
+
+        FakeBucket bucket = new FakeBucket();
+        bucket.failureStatusCode = 403;
+        bucket.failingKeys.add("prefix/12582912_0#2");
+
+        S3Uploader uploader = new S3Uploader(bucket.createClient(), "bucket");
+        uploader.setRetryDelay(1);
+        uploader.setPartSize(S3Uploader.MIN_PART_SIZE);
+        uploader.setMultipartThreshold(8 * MB);
+        try {
+            uploader.upload(files, new NullProgress());
+            fail("Expected the upload to fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("prefix/12582912_0"));
+            assertTrue(e.getCause() instanceof AmazonServiceException);
+        }
+        // access errors are not retried, and the multipart upload is aborted
+        assertEquals(0, uploader.getRetryCount());
+        assertTrue(bucket.objects.isEmpty());
+        assertTrue(bucket.aborted.contains("prefix/12582912_0"));
+    }
+}
@@ -0,0 +1,119 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.bundle.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.bundle.ICanceled;
+import com.dynamo.bob.bundle.ZipUtil;
+
+public class ZipUtilTest {
+
+    private File inDir;
+    private File outFile;
+
+    private static final ICanceled notCanceled = new ICanceled() {
+        @Override
+        public boolean isCanceled() {
+            return false;
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        inDir = Files.createTempDirectory("ziputil").toFile();
+        outFile = File.createTempFile("ziputil", ".zip");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(inDir);
+        outFile.delete();
+    }
+
+    private byte[] createFile(String path, int size) throws IOException {
+        Random random = new Random(size);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            // low entropy data so that deflate actually compresses it
+            data[i] = (byte) random.nextInt(4);
+        }
+        File file = new File(inDir, path);
+        file.getParentFile().mkdirs();
+        FileUtils.writeByteArrayToFile(file, data);
+        return data;
+    }
+
+    @Test
+    public void testZipDirRecursive() throws IOException {
+        byte[] archive = createFile("assets/game.arcd", 10 * 1024 * 1024);
+        byte[] asset = createFile("assets/sub/data.bin", 1000);
+        byte[] big = createFile("lib/big.so", 9 * 1024 * 1024);
+        byte[] small = createFile("res/values.xml", 5000);
+        byte[] empty = createFile("root.txt", 0);
+
+        ZipUtil.zipDirRecursive(inDir, outFile, notCanceled);
+
+        List<String> names = new ArrayList<String>();
+        try (ZipFile zip = new ZipFile(outFile)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                names.add(entry.getName());
+                int expectedMethod = entry.getName().startsWith("assets") ? ZipEntry.STORED : ZipEntry.DEFLATED;
+                assertEquals(entry.getName(), expectedMethod, entry.getMethod());
+            }
+            assertArrayEquals(archive, IOUtils.toByteArray(zip.getInputStream(zip.getEntry("assets/game.arcd"))));
+            assertArrayEquals(asset, IOUtils.toByteArray(zip.getInputStream(zip.getEntry("assets/sub/data.bin"))));
+            assertArrayEquals(big, IOUtils.toByteArray(zip.getInputStream(zip.getEntry("lib/big.so"))));
+            assertArrayEquals(small, IOUtils.toByteArray(zip.getInputStream(zip.getEntry("res/values.xml"))));
+            assertArrayEquals(empty, IOUtils.toByteArray(zip.getInputStream(zip.getEntry("root.txt"))));
+        }
+
+        // entries are written in sorted order
+        assertEquals(Arrays.asList("assets/game.arcd", "assets/sub/data.bin", "lib/big.so", "res/values.xml", "root.txt"), names);
+
+        // the local headers must be readable when streaming the zip
+        int count = 0;
+        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(outFile))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                IOUtils.toByteArray(zis);
+                assertEquals(names.get(count++), entry.getName());
+            }
+        }
+        assertEquals(names.size(), count);
+    }
+}
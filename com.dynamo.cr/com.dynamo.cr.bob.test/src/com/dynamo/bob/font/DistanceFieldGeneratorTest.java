@@ -0,0 +1,95 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+// 
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+// 
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.font;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DistanceFieldGeneratorTest {
+
+    // Closed outline around (cx, cy) with a noisy radius
+    private static void addOutline(DistanceFieldGenerator df, Random random, double cx, double cy, double radius, int count) {
+        double firstX = 0, firstY = 0, lastX = 0, lastY = 0;
+        for (int i = 0; i < count; ++i) {
+            double a = 2.0 * Math.PI * i / count;
+            double r = radius * (0.6 + 0.4 * random.nextDouble());
+            double x = cx + Math.cos(a) * r;
+            double y = cy + Math.sin(a) * r;
+            if (i == 0) {
+                firstX = x;
+                firstY = y;
+            } else {
+                df.addLine(lastX, lastY, x, y);
+            }
+            lastX = x;
+            lastY = y;
+        }
+        df.addLine(lastX, lastY, firstX, firstY);
+    }
+
+    // The grid must give exactly the same distances as testing every segment
+    private static void assertSameAsBruteForce(DistanceFieldGenerator df, double x0, double y0, double x1, double y1, int width, int height) {
+        double[] output = new double[width * height];
+        df.render(output, x0, y0, x1, y1, width, height);
+        int ofs = 0;
+        double dx = (x1 - x0) / (double)width;
+        for (int y = 0; y < height; ++y) {
+            double py = y0 + y * (y1 - y0) / (double)height;
+            double px = x0;
+            for (int x = 0; x < width; ++x) {
+                assertEquals(Math.sqrt(df.distSqr(px, py)), output[ofs++], 0.0);
+                px += dx;
+            }
+        }
+    }
+
+    @Test
+    public void testGrid() throws Exception {
+        Random random = new Random(4711);
+        DistanceFieldGenerator df = new DistanceFieldGenerator();
+        addOutline(df, random, 20, -20, 18, 300);
+        addOutline(df, random, 25, -15, 5, 100);
+        // Some long segments that span many cells
+        df.addLine(-5, -40, 45, 2);
+        df.addLine(0, 0, 40, 0);
+        assertSameAsBruteForce(df, -8, -44, 48, 4, 56, 48);
+        // Area that doesn't cover all of the segments
+        assertSameAsBruteForce(df, 10, -30, 30, -10, 40, 40);
+    }
+
+    @Test
+    public void testFewSegments() throws Exception {
+        DistanceFieldGenerator df = new DistanceFieldGenerator();
+        df.addLine(0, 0, 10, 0);
+        df.addLine(10, 0, 10, 10);
+        df.addLine(10, 10, 0, 0);
+        assertSameAsBruteForce(df, -2, -2, 12, 12, 14, 14);
+    }
+
+    @Test
+    public void testManySegments() throws Exception {
+        // More segments than the previous fixed capacity of 32768 values
+        Random random = new Random(17);
+        DistanceFieldGenerator df = new DistanceFieldGenerator();
+        for (int i = 0; i < 40; ++i) {
+            addOutline(df, random, random.nextDouble() * 100, random.nextDouble() * 100, 4 + random.nextDouble() * 10, 250);
+        }
+        assertEquals(10000, df.getLineCount());
+        assertSameAsBruteForce(df, -10, -10, 110, 110, 60, 60);
+    }
+}
@@ -0,0 +1,89 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.font;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GlyphCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File dir = new File(tmp.getRoot(), "glyphs");
+        GlyphCache cache = new GlyphCache(dir, "key");
+        assertNull(cache.get('a'));
+        cache.put('a', new GlyphCache.Entry(1, 2, new byte[] { 0, 1, 2, 3 }));
+        cache.put(0x1F600, new GlyphCache.Entry(3, 4, new byte[] { 5 }));
+        cache.save();
+        assertTrue(cache.getFile().exists());
+
+        GlyphCache loaded = new GlyphCache(dir, "key");
+        assertEquals(2, loaded.size());
+        GlyphCache.Entry entry = loaded.get('a');
+        assertEquals(1, entry.x);
+        assertEquals(2, entry.y);
+        assertArrayEquals(new byte[] { 0, 1, 2, 3 }, entry.data);
+        assertArrayEquals(new byte[] { 5 }, loaded.get(0x1F600).data);
+
+        // New glyphs are added to the glyphs already in the cache
+        loaded.put('b', new GlyphCache.Entry(0, 0, new byte[] { 6 }));
+        loaded.save();
+        assertEquals(3, new GlyphCache(dir, "key").size());
+
+        // Other keys are stored separately
+        assertEquals(0, new GlyphCache(dir, "other").size());
+    }
+
+    @Test
+    public void testUnmodifiedNotSaved() throws Exception {
+        GlyphCache cache = new GlyphCache(tmp.getRoot(), "key");
+        assertNull(cache.get('a'));
+        cache.save();
+        assertFalse(cache.getFile().exists());
+    }
+
+    @Test
+    public void testInvalidFile() throws Exception {
+        GlyphCache cache = new GlyphCache(tmp.getRoot(), "key");
+        cache.put('a', new GlyphCache.Entry(1, 2, new byte[] { 0, 1, 2, 3 }));
+        cache.save();
+
+        // Truncated file
+        byte[] content = Files.readAllBytes(cache.getFile().toPath());
+        Files.write(cache.getFile().toPath(), Arrays.copyOf(content, content.length - 2));
+        assertEquals(0, new GlyphCache(tmp.getRoot(), "key").size());
+
+        Files.write(cache.getFile().toPath(), "not a glyph cache".getBytes());
+        GlyphCache invalid = new GlyphCache(tmp.getRoot(), "key");
+        assertNull(invalid.get('a'));
+        invalid.put('b', new GlyphCache.Entry(0, 0, new byte[] { 1 }));
+        invalid.save();
+        assertEquals(1, new GlyphCache(tmp.getRoot(), "key").size());
+    }
+}
@@ -14,13 +14,18 @@
 
 package com.dynamo.bob.fs.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -62,6 +67,33 @@ public class FileSystemTest {
         assertTrue(results.contains("test_lib4.zip"));
     }
 
+    @Test
+    public void testWalkerOrder() throws Exception {
+        File root = Files.createTempDirectory("walker").toFile();
+        try {
+            String[] files = new String[] {"b/z.txt", "b/a/y.txt", "a.txt", "c/skip/x.txt", "c/d.txt", "b/c.txt"};
+            for (String file : files) {
+                FileUtils.writeStringToFile(new File(root, file), file);
+            }
+
+            DefaultFileSystem fs = new DefaultFileSystem();
+            fs.setRootDirectory(root.getAbsolutePath());
+            List<String> results = new ArrayList<String>();
+            fs.walk("", new FileSystemWalker() {
+                @Override
+                public boolean handleDirectory(String path, Collection<String> results) {
+                    return !path.endsWith("skip");
+                }
+            }, results);
+            fs.close();
+
+            // Depth first, in name order
+            assertEquals(Arrays.asList("a.txt", "b/a/y.txt", "b/c.txt", "b/z.txt", "c/d.txt"), results);
+        } finally {
+            FileUtils.deleteDirectory(root);
+        }
+    }
+
     private static class ZipWalker extends FileSystemWalker {
         @Override
         public void handleFile(String path, Collection<String> results) {
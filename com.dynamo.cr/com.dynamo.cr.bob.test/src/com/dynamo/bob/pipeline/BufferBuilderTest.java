@@ -0,0 +1,167 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.util.MurmurHash;
+import com.dynamo.gamesys.proto.BufferProto.BufferDesc;
+import com.dynamo.gamesys.proto.BufferProto.StreamDesc;
+import com.dynamo.gamesys.proto.BufferProto.ValueType;
+import com.google.protobuf.Message;
+
+public class BufferBuilderTest extends AbstractProtoBuilderTest {
+
+    private BufferDesc buildBuffer(String source) throws Exception {
+        List<Message> outputs = build("/test.buffer", source);
+        assertEquals(1, outputs.size());
+        return (BufferDesc) outputs.get(0);
+    }
+
+    private void assertBuildError(String source, String expectedMessage) throws Exception {
+        try {
+            build("/test.buffer", source);
+            fail("Expected the buffer to fail with: " + expectedMessage);
+        } catch (CompileExceptionError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+        }
+    }
+
+    private static String stream(String name, String type, int count, String data) {
+        return String.format("{\"name\": \"%s\", \"type\": \"%s\", \"count\": %d, \"data\": [%s]}", name, type, count, data);
+    }
+
+    @Test
+    public void testValueTypes() throws Exception {
+        String source = "["
+            + stream("u8", "uint8", 1, "0, 255") + ","
+            + stream("u16", "uint16", 1, "65535") + ","
+            + stream("u32", "uint32", 1, "4294967295") + ","
+            + stream("u64", "uint64", 1, "1099511627776") + ","
+            + stream("i8", "int8", 1, "-128, 127") + ","
+            + stream("i16", "int16", 1, "-32768") + ","
+            + stream("i32", "int32", 1, "-2147483648") + ","
+            + stream("i64", "int64", 1, "-1099511627776") + ","
+            + stream("f32", "float32", 3, "0.5, -1.25, 3")
+            + "]";
+        BufferDesc buffer = buildBuffer(source);
+        assertEquals(9, buffer.getStreamsCount());
+
+        StreamDesc u8 = buffer.getStreams(0);
+        assertEquals("u8", u8.getName());
+        assertEquals(MurmurHash.hash64("u8"), u8.getNameHash());
+        assertEquals(ValueType.VALUE_TYPE_UINT8, u8.getValueType());
+        assertEquals(1, u8.getValueCount());
+        assertEquals(Arrays.asList(0, 255), u8.getUiList());
+
+        assertEquals(ValueType.VALUE_TYPE_UINT16, buffer.getStreams(1).getValueType());
+        assertEquals(Arrays.asList(65535), buffer.getStreams(1).getUiList());
+        // Unsigned 32 bit values are stored in an int field, same as before
+        assertEquals(ValueType.VALUE_TYPE_UINT32, buffer.getStreams(2).getValueType());
+        assertEquals(Arrays.asList((int) 4294967295.0), buffer.getStreams(2).getUiList());
+        assertEquals(ValueType.VALUE_TYPE_UINT64, buffer.getStreams(3).getValueType());
+        assertEquals(Arrays.asList(1099511627776L), buffer.getStreams(3).getUi64List());
+        assertEquals(ValueType.VALUE_TYPE_INT8, buffer.getStreams(4).getValueType());
+        assertEquals(Arrays.asList(-128, 127), buffer.getStreams(4).getIList());
+        assertEquals(ValueType.VALUE_TYPE_INT16, buffer.getStreams(5).getValueType());
+        assertEquals(Arrays.asList(-32768), buffer.getStreams(5).getIList());
+        assertEquals(ValueType.VALUE_TYPE_INT32, buffer.getStreams(6).getValueType());
+        assertEquals(Arrays.asList(-2147483648), buffer.getStreams(6).getIList());
+        assertEquals(ValueType.VALUE_TYPE_INT64, buffer.getStreams(7).getValueType());
+        assertEquals(Arrays.asList(-1099511627776L), buffer.getStreams(7).getI64List());
+
+        StreamDesc f32 = buffer.getStreams(8);
+        assertEquals(ValueType.VALUE_TYPE_FLOAT32, f32.getValueType());
+        assertEquals(3, f32.getValueCount());
+        assertEquals(Arrays.asList(0.5f, -1.25f, 3.0f), f32.getFList());
+    }
+
+    @Test
+    public void testCoercion() throws Exception {
+        // Values are converted like JsonNode.asDouble() and the count like JsonNode.asInt()
+        String source = "["
+            + "{\"name\": \"ints\", \"type\": \"int32\", \"count\": \"2\", \"data\": [1.9, -2.7, \"3\", \"x\", true, false, null, [4], {\"a\": 5}]},"
+            + "{\"name\": \"floats\", \"type\": \"float32\", \"count\": 2.9, \"data\": [1, \"2.5\", true]},"
+            + "{\"name\": \"empty\", \"type\": \"uint8\", \"count\": [3], \"data\": 7}"
+            + "]";
+        BufferDesc buffer = buildBuffer(source);
+
+        StreamDesc ints = buffer.getStreams(0);
+        assertEquals(2, ints.getValueCount());
+        assertEquals(Arrays.asList(1, -2, 3, 0, 1, 0, 0, 0, 0), ints.getIList());
+
+        StreamDesc floats = buffer.getStreams(1);
+        assertEquals(2, floats.getValueCount());
+        assertEquals(Arrays.asList(1.0f, 2.5f, 1.0f), floats.getFList());
+
+        // A count that isn't a value is 0, and data that isn't an array is ignored
+        StreamDesc empty = buffer.getStreams(2);
+        assertEquals(0, empty.getValueCount());
+        assertEquals(0, empty.getUiCount());
+    }
+
+    @Test
+    public void testDataBeforeType() throws Exception {
+        String source = "[{\"data\": [1.5, -2, 1099511627776], \"count\": 1, \"name\": \"late\", \"type\": \"int64\"},"
+            + "{\"data\": [0.25, 2], \"name\": \"f\", \"count\": 1, \"type\": \"float32\"}]";
+        BufferDesc buffer = buildBuffer(source);
+
+        StreamDesc late = buffer.getStreams(0);
+        assertEquals(ValueType.VALUE_TYPE_INT64, late.getValueType());
+        assertEquals(Arrays.asList(1L, -2L, 1099511627776L), late.getI64List());
+        assertEquals(Arrays.asList(0.25f, 2.0f), buffer.getStreams(1).getFList());
+    }
+
+    @Test
+    public void testRootObject() throws Exception {
+        // The streams are the values of a root object, in document order
+        String source = "{\"first\": " + stream("position", "float32", 3, "1, 2, 3")
+            + ", \"second\": " + stream("index", "uint16", 1, "0, 1, 2") + "}";
+        BufferDesc buffer = buildBuffer(source);
+        assertEquals(2, buffer.getStreamsCount());
+        assertEquals("position", buffer.getStreams(0).getName());
+        assertEquals(Arrays.asList(1.0f, 2.0f, 3.0f), buffer.getStreams(0).getFList());
+        assertEquals("index", buffer.getStreams(1).getName());
+        assertEquals(Arrays.asList(0, 1, 2), buffer.getStreams(1).getUiList());
+    }
+
+    @Test
+    public void testRootArray() throws Exception {
+        String source = "[" + stream("position", "float32", 3, "1, 2, 3") + ", " + stream("index", "uint16", 1, "0, 1, 2") + "]";
+        BufferDesc buffer = buildBuffer(source);
+        assertEquals(2, buffer.getStreamsCount());
+        assertEquals("position", buffer.getStreams(0).getName());
+        assertEquals("index", buffer.getStreams(1).getName());
+        assertEquals(Arrays.asList(0, 1, 2), buffer.getStreams(1).getUiList());
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        assertBuildError("[{\"type\": \"float32\", \"count\": 1, \"data\": [1]}]", "Stream is missing required name field.");
+        assertBuildError("[{\"name\": \"s\", \"count\": 1, \"data\": [1]}]", "Stream 's' is missing required type field.");
+        assertBuildError("[{\"name\": \"s\", \"type\": \"float32\", \"data\": [1]}]", "Stream 's' is missing required count field.");
+        assertBuildError("[{\"name\": \"s\", \"type\": \"float64\", \"count\": 1, \"data\": [1]}]", "Unknown stream type: float64 (allowed types: " + BufferBuilder.allowedTypeStrings + ").");
+        assertBuildError("[{\"name\": \"s\", ", "JSON error while parsing buffer resource");
+        assertBuildError("", "JSON error while parsing buffer resource: No content");
+    }
+}
@@ -16,6 +16,8 @@ package com.dynamo.bob.pipeline;
 
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +32,11 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.NullProgress;
+import com.dynamo.bob.Project;
+import com.dynamo.bob.Task;
+import com.dynamo.bob.TaskResult;
+import com.dynamo.bob.fs.IResource;
 import com.dynamo.bob.test.util.PropertiesTestUtil;
 import com.dynamo.bob.util.MurmurHash;
 import com.dynamo.bob.util.ComponentsCounter;
@@ -373,6 +380,112 @@ public class CollectionBuilderTest extends AbstractProtoBuilderTest {
         Assert.assertTrue(instance.getComponentProperties(0).getProperties(0).getValue().equals("2"));
     }
 
+    private void addCollectionInstanceWithNumber(StringBuilder src, String id, String collection, Point3d p, String instanceId, String number) {
+        src.append("collection_instances {\n");
+        src.append("  id: \"").append(id).append("\"\n");
+        src.append("  collection: \"").append(collection).append("\"\n");
+        src.append("  position: { x: ").append(p.getX()).append(" y: ").append(p.getY()).append(" z: ").append(p.getZ()).append(" }\n");
+        if (number != null) {
+            src.append("  instance_properties: {\n");
+            src.append("    id: \"").append(instanceId).append("\"\n");
+            src.append("    properties {\n");
+            src.append("      id: \"test\"\n");
+            src.append("      properties { id: \"number\" value: \"").append(number).append("\" type: PROPERTY_TYPE_NUMBER }\n");
+            src.append("    }\n");
+            src.append("  }\n");
+        }
+        src.append("}\n");
+    }
+
+    /**
+     * Test that a sub collection included by several collections is merged
+     * once per build, without the prefixes, transforms or overrides of one
+     * include leaking into another.
+     * Structure:
+     * - a [collection, mid_a]
+     *   - shared [collection, number = 2]
+     * - b [collection, mid_b]
+     *   - shared [collection, number = 3]
+     *   - shared2 [collection]
+     * - c [collection, shared]
+     * The shared collection has go [instance, number = 1] with child [instance].
+     * @throws Exception
+     */
+    @Test
+    public void testSharedSubCollection() throws Exception {
+        addFile("/test.go", "");
+        addFile(ComponentsCounter.replaceExt("/build/test.go"), ComponentsCounter.createStorage().toByteArray());
+
+        Point3d origin = new Point3d(0.0, 0.0, 0.0);
+        StringBuilder src = new StringBuilder();
+        src.append("name: \"shared\"\n");
+        src.append("instances {\n");
+        src.append("  id: \"go\"\n");
+        src.append("  prototype: \"/test.go\"\n");
+        src.append("  children: \"child\"\n");
+        src.append("  component_properties {\n");
+        src.append("    id: \"test\"\n");
+        src.append("    properties { id: \"number\" value: \"1\" type: PROPERTY_TYPE_NUMBER }\n");
+        src.append("  }\n");
+        src.append("}\n");
+        src.append("instances {\n");
+        src.append("  id: \"child\"\n");
+        src.append("  prototype: \"/test.go\"\n");
+        src.append("}\n");
+        addFile("/shared.collection", src.toString());
+        addFile(ComponentsCounter.replaceExt("/build/shared.collection"), ComponentsCounter.createStorage().toByteArray());
+
+        src = new StringBuilder();
+        src.append("name: \"mid_a\"\n");
+        addCollectionInstanceWithNumber(src, "shared", "/shared.collection", new Point3d(1.0, 0.0, 0.0), "go", "2");
+        addFile("/mid_a.collection", src.toString());
+        addFile(ComponentsCounter.replaceExt("/build/mid_a.collection"), ComponentsCounter.createStorage().toByteArray());
+
+        src = new StringBuilder();
+        src.append("name: \"mid_b\"\n");
+        addCollectionInstanceWithNumber(src, "shared", "/shared.collection", new Point3d(0.0, 1.0, 0.0), "go", "3");
+        addCollectionInstanceWithNumber(src, "shared2", "/shared.collection", new Point3d(0.0, 2.0, 0.0), null, null);
+        addFile("/mid_b.collection", src.toString());
+        addFile(ComponentsCounter.replaceExt("/build/mid_b.collection"), ComponentsCounter.createStorage().toByteArray());
+
+        src = new StringBuilder();
+        src.append("name: \"main\"\n");
+        addCollectionInstanceWithNumber(src, "a", "/mid_a.collection", new Point3d(10.0, 0.0, 0.0), null, null);
+        addCollectionInstanceWithNumber(src, "b", "/mid_b.collection", new Point3d(20.0, 0.0, 0.0), null, null);
+        addCollectionInstanceWithNumber(src, "c", "/shared.collection", new Point3d(30.0, 0.0, 0.0), null, null);
+
+        List<Message> messages = build("/test.collection", src.toString());
+        Assert.assertEquals(1, messages.size());
+
+        CollectionDesc collection = (CollectionDesc)messages.get(0);
+        Assert.assertEquals(8, collection.getInstancesCount());
+        Assert.assertEquals(0, collection.getCollectionInstancesCount());
+
+        Map<String, InstanceDesc> instances = new HashMap<String, InstanceDesc>();
+        for (InstanceDesc inst : collection.getInstancesList()) {
+            instances.put(inst.getId(), inst);
+        }
+
+        String[] prefixes = { "/a/shared/", "/b/shared/", "/b/shared2/", "/c/" };
+        String[] numbers = { "2", "3", "1", "1" };
+        Point3d[] positions = { new Point3d(11.0, 0.0, 0.0), new Point3d(20.0, 1.0, 0.0), new Point3d(20.0, 2.0, 0.0), new Point3d(30.0, 0.0, 0.0) };
+        for (int i = 0; i < prefixes.length; ++i) {
+            InstanceDesc go = instances.get(prefixes[i] + "go");
+            Assert.assertNotNull(prefixes[i] + "go", go);
+            assertEquals(positions[i], go.getPosition(), epsilon);
+            Assert.assertEquals(1, go.getChildrenCount());
+            Assert.assertEquals(prefixes[i] + "child", go.getChildren(0));
+            Assert.assertEquals(1, go.getComponentPropertiesCount());
+            Assert.assertEquals(1, go.getComponentProperties(0).getPropertiesCount());
+            Assert.assertEquals(numbers[i], go.getComponentProperties(0).getProperties(0).getValue());
+
+            InstanceDesc child = instances.get(prefixes[i] + "child");
+            Assert.assertNotNull(prefixes[i] + "child", child);
+            assertEquals(origin, child.getPosition(), epsilon);
+            Assert.assertEquals(0, child.getComponentPropertiesCount());
+        }
+    }
+
     /**
      * Test that a collection is flattened properly w.r.t. sub properties of embedded game objects.
      * Structure:
@@ -906,4 +1019,114 @@ public class CollectionBuilderTest extends AbstractProtoBuilderTest {
             }
         }
     }
+
+    // Build all inputs in one build, and return the tasks in the order they ran
+    private List<Task<?>> buildAll(Map<String, byte[]> outputs, List<String> paths) throws Exception {
+        Project project = GetProject();
+        project.setInputs(paths);
+        List<Task<?>> tasks = new ArrayList<Task<?>>();
+        for (TaskResult result : project.build(new NullProgress(), "build")) {
+            assertTrue(result.getMessage(), result.isOk());
+            tasks.add(result.getTask());
+            for (IResource output : result.getTask().getOutputs()) {
+                outputs.put(output.getPath(), output.getContent());
+            }
+        }
+        // Remove the outputs, so that the next build runs every task again
+        for (String path : outputs.keySet()) {
+            project.getResource(path).remove();
+        }
+        return tasks;
+    }
+
+    private static List<String> describeTasks(List<Task<?>> tasks) {
+        List<String> descriptions = new ArrayList<String>();
+        for (Task<?> task : tasks) {
+            descriptions.add(task.getInputsString() + " -> " + task.getOutputsString());
+        }
+        return descriptions;
+    }
+
+    // Get the main inputs of the tasks that output a generated resource with the given extension
+    private static List<String> getGeneratedResourceOwners(List<Task<?>> tasks, String ext) {
+        List<String> owners = new ArrayList<String>();
+        for (Task<?> task : tasks) {
+            for (IResource output : task.getOutputs()) {
+                if (output.getPath().contains("_generated_") && output.getPath().endsWith(ext)) {
+                    owners.add(task.input(0).getPath());
+                }
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Test that game objects and collections sharing embedded components and
+     * game objects produce the same tasks and outputs in every build, when
+     * the tasks are created in parallel. The first input that embeds a
+     * resource owns the generated resource.
+     * Structure:
+     * - go0 .. go7 [go]
+     *   - sprite [emb_component, shared]
+     * - col0 .. col3 [collection]
+     *   - go [emb_instance, shared]
+     *     - sprite [emb_component, shared]
+     * - s0 .. s7 [sprite]
+     * @throws Exception
+     */
+    @Test
+    public void testSharedEmbeddedResourcesInParallel() throws Exception {
+        addFile("/test.atlas", "");
+        addFile("build/test.a.texturesetc", "DUMMY_DATA");
+
+        StringBuilder spriteSrc = new StringBuilder();
+        spriteSrc.append("tile_set: \"/test.atlas\"\n");
+        spriteSrc.append("default_animation: \"\"\n");
+        spriteSrc.append("material: \"\"\n");
+
+        StringBuilder goSrc = new StringBuilder();
+        goSrc.append("embedded_components {\n");
+        goSrc.append("  id: \"sprite\"\n");
+        goSrc.append("  type: \"sprite\"\n");
+        goSrc.append("  data: \"").append(StringEscapeUtils.escapeJava(spriteSrc.toString())).append("\"\n");
+        goSrc.append("}\n");
+
+        StringBuilder src = new StringBuilder();
+        src.append("name: \"main\"\n");
+        src.append("embedded_instances {\n");
+        src.append("  id: \"go\"\n");
+        src.append("  data: \"").append(StringEscapeUtils.escapeJava(goSrc.toString())).append("\"\n");
+        src.append("}\n");
+
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < 8; ++i) {
+            addFile("/go" + i + ".go", goSrc.toString());
+            paths.add("/go" + i + ".go");
+        }
+        for (int i = 0; i < 4; ++i) {
+            addFile("/col" + i + ".collection", src.toString());
+            paths.add("/col" + i + ".collection");
+        }
+        // Tasks that are created in parallel with the game objects and collections
+        for (int i = 0; i < 8; ++i) {
+            addFile("/s" + i + ".sprite", spriteSrc.toString());
+            paths.add("/s" + i + ".sprite");
+        }
+
+        GetProject().setOption("max-cpu-threads", "8");
+        Map<String, byte[]> expectedOutputs = new HashMap<String, byte[]>();
+        List<Task<?>> expectedTasks = buildAll(expectedOutputs, paths);
+        Project project = GetProject();
+        Assert.assertEquals(Arrays.asList(project.getResource("/go0.go").getPath()), getGeneratedResourceOwners(expectedTasks, ".sprite"));
+        Assert.assertEquals(Arrays.asList(project.getResource("/col0.collection").getPath()), getGeneratedResourceOwners(expectedTasks, ".go"));
+
+        for (int i = 0; i < 4; ++i) {
+            Map<String, byte[]> outputs = new HashMap<String, byte[]>();
+            Assert.assertEquals(describeTasks(expectedTasks), describeTasks(buildAll(outputs, paths)));
+            Assert.assertEquals(expectedOutputs.keySet(), outputs.keySet());
+            for (String path : expectedOutputs.keySet()) {
+                Assert.assertArrayEquals(path, expectedOutputs.get(path), outputs.get(path));
+            }
+        }
+    }
 }
@@ -20,7 +20,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Arrays;
 
@@ -30,6 +32,8 @@ import org.eclipse.core.runtime.Path;
 import org.junit.Test;
 import org.junit.Assert;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 
@@ -41,6 +45,9 @@ import com.dynamo.bob.BuilderParams;
 import com.dynamo.bob.ProtoParams;
 import com.dynamo.bob.ProtoBuilder;
 import com.dynamo.bob.ClassLoaderScanner;
+import com.dynamo.bob.NullProgress;
+import com.dynamo.bob.Project;
+import com.dynamo.bob.TaskResult;
 
 public class GuiBuilderTest extends AbstractProtoBuilderTest {
 
@@ -209,6 +216,68 @@ public class GuiBuilderTest extends AbstractProtoBuilderTest {
         return null;
     }
 
+    private void addTextOverride(StringBuilder src, String id, String parent, String text) {
+        startOverridedNode(src, "TYPE_TEXT", id, parent, Arrays.asList(8));
+        src.append("  template_node_child: true\n");
+        src.append("  text: \""+text+"\"\n");
+        finishOverridedNode(src);
+    }
+
+    private void addTemplateWithTextNodes(String path, int textNodeCount) {
+        StringBuilder src = createGui();
+        addBoxNode(src, "box", "");
+        for (int i = 0; i < textNodeCount; ++i) {
+            addTextNode(src, "text" + i, "box", "templateText" + i);
+        }
+        addFile(path, src.toString());
+    }
+
+    // Build the scenes in one build, so that they share the template scenes
+    private Map<String, Gui.SceneDesc> buildGuis(String... paths) throws Exception {
+        Project project = GetProject();
+        for (String path : paths) {
+            // Remove the outputs of earlier builds, so that the scenes are built again
+            project.getResource(path).changeExt(".guic").remove();
+        }
+        project.setInputs(Arrays.asList(paths));
+        int guiCount = 0;
+        for (TaskResult result : project.build(new NullProgress(), "build")) {
+            assertTrue(result.getMessage(), result.isOk());
+            if (result.getTask().getOutputsString().contains(".guic")) {
+                ++guiCount;
+            }
+        }
+        assertEquals(paths.length, guiCount);
+
+        Map<String, Gui.SceneDesc> scenes = new HashMap<String, Gui.SceneDesc>();
+        for (String path : paths) {
+            scenes.put(path, Gui.SceneDesc.parseFrom(project.getResource(path).changeExt(".guic").getContent()));
+        }
+        return scenes;
+    }
+
+    // Build each scene on its own and merge the layouts on one thread, as before the templates were shared
+    private Map<String, Gui.SceneDesc> buildGuisSerially(String... paths) throws Exception {
+        int minParallelLayoutNodes = GuiBuilder.minParallelLayoutNodes;
+        GuiBuilder.minParallelLayoutNodes = Integer.MAX_VALUE;
+        try {
+            Map<String, Gui.SceneDesc> scenes = new HashMap<String, Gui.SceneDesc>();
+            for (String path : paths) {
+                scenes.putAll(buildGuis(path));
+            }
+            return scenes;
+        } finally {
+            GuiBuilder.minParallelLayoutNodes = minParallelLayoutNodes;
+        }
+    }
+
+    private void assertSameScenes(Map<String, Gui.SceneDesc> expected, Map<String, Gui.SceneDesc> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String path : expected.keySet()) {
+            assertArrayEquals(path, expected.get(path).toByteArray(), actual.get(path).toByteArray());
+        }
+    }
+
     @Test
     public void test() throws Exception {
         // Kept empty as a future working template
@@ -247,4 +316,86 @@ public class GuiBuilderTest extends AbstractProtoBuilderTest {
         Assert.assertFalse(boxNode.getEnabled());
         Assert.assertTrue(textNode.getEnabled());
     }
+
+    @Test
+    public void testSharedTemplateWithDifferentOverrides() throws Exception {
+        addTemplateWithTextNodes("/template.gui", 2);
+
+        StringBuilder src = createGui();
+        addBoxNode(src, "box", "");
+        addTemplateNode(src, "a", "box", "/template.gui");
+        addTextOverride(src, "a/text0", "a/box", "a-default");
+        startLayout(src, "Landscape");
+        addTextOverride(src, "a/text1", "a/box", "a-landscape");
+        finishLayout(src);
+        addFile("/a.gui", src.toString());
+
+        src = createGui();
+        addTemplateNode(src, "b", "", "/template.gui");
+        addTextOverride(src, "b/text1", "b/box", "b-default");
+        startLayout(src, "Portrait");
+        addTextOverride(src, "b/text0", "b/box", "b-portrait");
+        finishLayout(src);
+        startLayout(src, "Landscape");
+        finishLayout(src);
+        addFile("/b.gui", src.toString());
+
+        Map<String, Gui.SceneDesc> expected = buildGuisSerially("/a.gui", "/b.gui");
+        Map<String, Gui.SceneDesc> scenes = buildGuis("/a.gui", "/b.gui");
+        assertSameScenes(expected, scenes);
+
+        // The overrides of one scene don't leak into the other scene through the shared template
+        Gui.SceneDesc a = scenes.get("/a.gui");
+        assertEquals("a-default", findNode(a, "", "a/text0").getText());
+        assertEquals("templateText1", findNode(a, "", "a/text1").getText());
+        assertEquals("a-default", findNode(a, "Landscape", "a/text0").getText());
+        assertEquals("a-landscape", findNode(a, "Landscape", "a/text1").getText());
+
+        Gui.SceneDesc b = scenes.get("/b.gui");
+        assertEquals("templateText0", findNode(b, "", "b/text0").getText());
+        assertEquals("b-default", findNode(b, "", "b/text1").getText());
+        assertEquals("b-portrait", findNode(b, "Portrait", "b/text0").getText());
+        assertEquals("b-default", findNode(b, "Portrait", "b/text1").getText());
+        assertEquals("templateText0", findNode(b, "Landscape", "b/text0").getText());
+        assertEquals("b-default", findNode(b, "Landscape", "b/text1").getText());
+    }
+
+    @Test
+    public void testParallelLayoutMerge() throws Exception {
+        // Enough layouts times template nodes to merge and flatten the layouts in parallel
+        int nodeCount = 48;
+        int layoutCount = 16;
+        assertTrue(layoutCount * (nodeCount + 1) >= GuiBuilder.minParallelLayoutNodes);
+        addTemplateWithTextNodes("/template.gui", nodeCount);
+
+        StringBuilder src = createGui();
+        addBoxNode(src, "box", "");
+        addTemplateNode(src, "template", "box", "/template.gui");
+        addTextOverride(src, "template/text0", "template/box", "default");
+        for (int l = 0; l < layoutCount; ++l) {
+            startLayout(src, "layout" + l);
+            addTextOverride(src, "template/text" + l, "template/box", "layout" + l);
+            finishLayout(src);
+        }
+        addFile("/test.gui", src.toString());
+
+        Map<String, Gui.SceneDesc> expected = buildGuisSerially("/test.gui");
+        Map<String, Gui.SceneDesc> scenes = buildGuis("/test.gui");
+        assertSameScenes(expected, scenes);
+
+        Gui.SceneDesc gui = scenes.get("/test.gui");
+        // Templates are flattened, so the template node itself is gone
+        assertEquals(nodeCount + 2, gui.getNodesCount());
+        assertEquals(layoutCount, gui.getLayoutsCount());
+        for (int l = 0; l < layoutCount; ++l) {
+            LayoutDesc layout = gui.getLayouts(l);
+            assertEquals("layout" + l, layout.getName());
+            // The layout has the template box and text nodes, the other scene nodes aren't overridden
+            assertEquals(nodeCount + 1, layout.getNodesCount());
+            assertEquals("layout" + l, findNode(gui, layout.getName(), "template/text" + l).getText());
+            int other = (l + 1) % layoutCount;
+            String otherText = other == 0 ? "default" : "templateText" + other;
+            assertEquals(otherText, findNode(gui, layout.getName(), "template/text" + other).getText());
+        }
+    }
 }
@@ -0,0 +1,101 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImageCacheTest {
+
+    @Before
+    public void setUp() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    private static byte[] createPng(int width, int height, int color) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                image.setRGB(x, y, color + x + y * width);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        byte[] png = createPng(7, 5, 0xff102030);
+        BufferedImage image = ImageCache.decode(png);
+        BufferedImage reference = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(reference.getWidth(), image.getWidth());
+        assertEquals(reference.getHeight(), image.getHeight());
+        for (int y = 0; y < image.getHeight(); ++y) {
+            for (int x = 0; x < image.getWidth(); ++x) {
+                assertEquals(reference.getRGB(x, y), image.getRGB(x, y));
+            }
+        }
+        assertNull(ImageCache.decode("not an image".getBytes()));
+    }
+
+    @Test
+    public void testSameContent() throws Exception {
+        ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+        byte[] png = createPng(8, 8, 0xff000000);
+        BufferedImage image = cache.read(png);
+        // The same content from another resource is only decoded once
+        assertSame(image, cache.read(png.clone()));
+        assertNotSame(image, cache.read(createPng(8, 8, 0xff001000)));
+        assertEquals(2, cache.size());
+        assertEquals(2 * ImageCache.getSizeInBytes(image), cache.getSizeInBytes());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        byte[] a = createPng(16, 16, 0xff000000);
+        byte[] b = createPng(16, 16, 0xff010000);
+        byte[] c = createPng(16, 16, 0xff020000);
+        long imageSize = ImageCache.getSizeInBytes(ImageCache.decode(a));
+        ImageCache cache = new ImageCache(2 * imageSize);
+
+        BufferedImage imageA = cache.read(a);
+        BufferedImage imageB = cache.read(b);
+        // Use a, so that b is the least recently used image
+        assertSame(imageA, cache.read(a));
+        cache.read(c);
+        assertEquals(2, cache.size());
+        assertEquals(2 * imageSize, cache.getSizeInBytes());
+        assertSame(imageA, cache.read(a));
+        assertNotSame(imageB, cache.read(b));
+
+        // Images larger than the cache are not kept
+        ImageCache small = new ImageCache(imageSize - 1);
+        small.read(a);
+        assertEquals(0, small.size());
+    }
+}
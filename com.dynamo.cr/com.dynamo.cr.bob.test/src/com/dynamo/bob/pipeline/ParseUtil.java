@@ -23,6 +23,7 @@ import org.apache.commons.io.FilenameUtils;
 import com.dynamo.bob.fs.IResource;
 import com.dynamo.gameobject.proto.GameObject.CollectionDesc;
 import com.dynamo.gameobject.proto.GameObject.PrototypeDesc;
+import com.dynamo.gamesys.proto.BufferProto.BufferDesc;
 import com.dynamo.gamesys.proto.GameSystem.FactoryDesc;
 import com.dynamo.gamesys.proto.GameSystem.CollectionFactoryDesc;
 import com.dynamo.gamesys.proto.Gui;
@@ -235,6 +236,12 @@ public class ParseUtil {
                 return CollectionFactoryDesc.parseFrom(content);
             }
         });
+        parseMap.put("bufferc", new IParser() {
+            @Override
+            public Message parse(byte[] content) throws InvalidProtocolBufferException {
+                return BufferDesc.parseFrom(content);
+            }
+        });
         parseMap.put("compcount_col", new IParser() {
             @Override
             public Message parse(byte[] content) throws InvalidProtocolBufferException {
@@ -15,6 +15,7 @@
 package com.dynamo.bob.pipeline;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.image.BufferedImage;
@@ -22,8 +23,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import com.dynamo.bob.cache.ResourceCache;
 import com.dynamo.bob.util.TextureUtil;
 import com.dynamo.bob.Platform;
 import com.dynamo.bob.TexcLibrary.FlipAxis;
@@ -38,6 +42,9 @@ import com.dynamo.graphics.proto.Graphics.TextureProfile;
 
 public class TextureGeneratorTest {
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     //                                AABBGGRR
     private static int pixelWhite = 0xFF332211;
     private static int pixelRed   = 0xFF000011;
@@ -613,4 +620,52 @@ public class TextureGeneratorTest {
         assertEquals(TextureFormat.TEXTURE_FORMAT_RGBA_16BPP, texture.getAlternatives(1).getFormat());
         assertEquals(128*64*2, texture.getAlternatives(1).getData().toByteArray().length);
     }
+
+    private static TextureProfile createProfile(String name, TextureFormat format) {
+        PlatformProfile.Builder platformProfile = PlatformProfile.newBuilder();
+        platformProfile.setOs(PlatformProfile.OS.OS_ID_GENERIC);
+        platformProfile.addFormats(TextureFormatAlternative.newBuilder().setFormat(format).setCompressionLevel(CompressionLevel.FAST).build());
+        platformProfile.setMipmaps(false);
+        platformProfile.setMaxTextureSize(0);
+        return TextureProfile.newBuilder().setName(name).addPlatforms(platformProfile.build()).build();
+    }
+
+    @Test
+    public void testCacheKey() {
+        BufferedImage image = createFlipTestImage();
+        EnumSet<FlipAxis> flipY = EnumSet.of(FlipAxis.FLIP_AXIS_Y);
+        TextureProfile profile = createProfile("Test Profile", TextureFormat.TEXTURE_FORMAT_RGBA);
+        String key = TextureGenerator.calculateCacheKey(image, image.getColorModel(), profile, true, flipY);
+
+        // The name of the profile doesn't change the texture
+        assertEquals(key, TextureGenerator.calculateCacheKey(createFlipTestImage(), image.getColorModel(), createProfile("Other Profile", TextureFormat.TEXTURE_FORMAT_RGBA), true, flipY));
+
+        assertNotEquals(key, TextureGenerator.calculateCacheKey(image, image.getColorModel(), createProfile("Test Profile", TextureFormat.TEXTURE_FORMAT_RGBA_16BPP), true, flipY));
+        assertNotEquals(key, TextureGenerator.calculateCacheKey(image, image.getColorModel(), profile, false, flipY));
+        assertNotEquals(key, TextureGenerator.calculateCacheKey(image, image.getColorModel(), profile, true, EnumSet.noneOf(FlipAxis.class)));
+        assertNotEquals(key, TextureGenerator.calculateCacheKey(image, image.getColorModel(), null, true, flipY));
+
+        BufferedImage otherImage = createFlipTestImage();
+        otherImage.setRGB(1, 1, pixelWhite);
+        assertNotEquals(key, TextureGenerator.calculateCacheKey(otherImage, image.getColorModel(), profile, true, flipY));
+    }
+
+    @Test
+    public void testResourceCache() throws TextureGeneratorException, IOException {
+        ResourceCache resourceCache = new ResourceCache();
+        resourceCache.init(tmp.getRoot().getAbsolutePath(), null);
+        TextureProfile profile = createProfile("Test Profile", TextureFormat.TEXTURE_FORMAT_RGBA);
+
+        TextureImage texture = TextureGenerator.generate(createFlipTestImage(), profile, false, resourceCache);
+        assertEquals(1, tmp.getRoot().list().length);
+        assertEquals(texture, TextureGenerator.generate(createFlipTestImage(), profile, false));
+
+        // The same pixels are taken from the cache
+        TextureImage cached = TextureGenerator.generate(createFlipTestImage(), profile, false, resourceCache);
+        assertEquals(texture, cached);
+        assertEquals(1, tmp.getRoot().list().length);
+
+        TextureGenerator.generate(createFlipTestImage(), profile, false, EnumSet.noneOf(FlipAxis.class), resourceCache);
+        assertEquals(2, tmp.getRoot().list().length);
+    }
 }
@@ -0,0 +1,247 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.pipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jagatoo.loaders.models.collada.stax.XMLFloatArray;
+import org.jagatoo.loaders.models.collada.stax.XMLNumberParser;
+import org.junit.Test;
+
+public class XMLNumberParserTest {
+
+    private static final String[] ASSETS = {
+        "asset_unit.dae", "blender_animated_cube.dae", "blender_polylist_quad.dae", "bone_box5.dae",
+        "bone_influences.dae", "bonelist_anim_test.dae", "bonelist_mesh_test.dae", "chest_model.dae",
+        "chest_model_noskin.dae", "chest_open.dae", "maya_quad.dae", "no_mesh.dae", "non_animated_bones.dae",
+        "one_bone_no_initial_keyframe.dae", "one_vertice_bone.dae", "one_vertice_bone_noanim.dae",
+        "quad_normals.dae", "rotating_box.dae", "scene_time_test.dae", "skeleton_scale.dae", "testanim.dae",
+        "translate_rot_test.dae", "two_bone.dae", "two_bone_two_triangles.dae", "two_roots.dae",
+    };
+
+    // The previous implementation of XMLFloatArray.toArray
+    private static float[] toFloatArrayReference(String text) {
+        StringTokenizer tknz = new StringTokenizer(text);
+        float[] floats = new float[tknz.countTokens()];
+        for (int i = 0; i < floats.length; i++) {
+            try {
+                floats[i] = Float.parseFloat(tknz.nextToken());
+            } catch (NumberFormatException e) {
+                floats[i] = 0.0f;
+            }
+        }
+        return floats;
+    }
+
+    private static float parseFloat(String s) {
+        return XMLNumberParser.parseFloat(s.toCharArray(), 0, s.length());
+    }
+
+    private static void assertSameFloat(String s) {
+        float expected;
+        try {
+            expected = Float.parseFloat(s);
+        } catch (NumberFormatException e) {
+            expected = 0.0f;
+        }
+        assertEquals(s, Float.floatToRawIntBits(expected), Float.floatToRawIntBits(parseFloat(s)));
+    }
+
+    @Test
+    public void testParseFloat() {
+        String[] values = { "0", "-0", "0.0", "-0.000000", "1", "+1", "-1", "1.5", ".5", "5.", "-.25", "3.1415927",
+            "0.7071068", "-0.3826834", "16777216", "16777217", "167772161", "1.0000000000000000001",
+            "0.99999994", "0.9999999403953552", "123456789012345678901234567890", "1e10", "1E-10", "1.5e+3",
+            "-2.5e-7", "1e38", "1e39", "1e-46", "1.0f", "2d", "NaN", "-Infinity", "0x1.8p1",
+            "-1.#IND00", "1.#QNAN0", "-", ".", "e5", "1e", "1e+", "1.2.3", "--1" };
+        for (String value : values) {
+            assertSameFloat(value);
+        }
+
+        Random random = new Random(1234);
+        for (int i = 0; i < 100000; ++i) {
+            float f = Float.intBitsToFloat(random.nextInt());
+            float g = (random.nextFloat() - 0.5f) * (float) Math.pow(10, random.nextInt(12) - 6);
+            assertSameFloat(Float.toString(f));
+            assertSameFloat(Float.toString(g));
+            assertSameFloat(String.format(Locale.US, "%f", g));
+            assertSameFloat(String.format(Locale.US, "%.7f", g));
+            assertSameFloat(String.format(Locale.US, "%.9g", g));
+            assertSameFloat(String.format(Locale.US, "%e", g));
+        }
+    }
+
+    @Test
+    public void testParseInt() {
+        String[] values = { "0", "-0", "+7", "-1", "123456789", "-987654321", "2147483647", "-2147483648" };
+        for (String value : values) {
+            assertEquals(Integer.parseInt(value), XMLNumberParser.parseInt(value.toCharArray(), 0, value.length()));
+        }
+        String[] invalid = { "", "-", "2147483648", "1.0", "1a", "--1" };
+        for (String value : invalid) {
+            try {
+                XMLNumberParser.parseInt(value.toCharArray(), 0, value.length());
+                fail("Expected NumberFormatException for " + value);
+            } catch (NumberFormatException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testSplitText() {
+        Random random = new Random(5678);
+        StringBuilder text = new StringBuilder();
+        String[] delimiters = { " ", "  ", "\n", "\r\n", "\t", " \n\t " };
+        for (int i = 0; i < 10000; ++i) {
+            text.append(delimiters[random.nextInt(delimiters.length)]);
+            if (random.nextInt(100) == 0) {
+                text.append("-1.#IND00");
+            } else {
+                text.append(String.format(Locale.US, "%f", (random.nextFloat() - 0.5f) * 1000.0f));
+            }
+        }
+        char[] chars = text.toString().toCharArray();
+        float[] expected = toFloatArrayReference(text.toString());
+
+        // Feed the text in chunks of random size, splitting numbers between chunks
+        XMLNumberParser numbers = XMLNumberParser.forFloats(100);
+        int start = 0;
+        while (start < chars.length) {
+            int length = Math.min(chars.length - start, random.nextInt(16));
+            numbers.characters(chars, start, length);
+            start += length;
+        }
+        assertArrayEquals(expected, numbers.toFloatArray(), 0.0f);
+
+        XMLNumberParser ints = XMLNumberParser.forInts(-1);
+        ints.characters(" 1 22\n");
+        ints.characters("3 -4");
+        ints.characters("4");
+        assertArrayEquals(new int[] { 1, 22, 3, -44 }, ints.toIntArray());
+        assertArrayEquals(new float[0], XMLFloatArray.toArray(" \n "), 0.0f);
+    }
+
+    private static XMLStreamReader createReader(InputStream is) throws Exception {
+        // Same settings as ColladaUtil.loadDAE
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty("javax.xml.stream.isCoalescing", true);
+        return factory.createXMLStreamReader(is);
+    }
+
+    private List<float[]> parseAssetReference(String asset) throws Exception {
+        List<float[]> arrays = new ArrayList<float[]>();
+        XMLStreamReader reader = createReader(getClass().getResourceAsStream(asset));
+        StringBuffer buffer = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("float_array")) {
+                buffer = new StringBuffer();
+            } else if (event == XMLStreamConstants.CHARACTERS && buffer != null) {
+                buffer.append(reader.getText());
+            } else if (event == XMLStreamConstants.END_ELEMENT && buffer != null) {
+                arrays.add(toFloatArrayReference(buffer.toString()));
+                buffer = null;
+            }
+        }
+        reader.close();
+        return arrays;
+    }
+
+    private List<float[]> parseAsset(String asset) throws Exception {
+        List<float[]> arrays = new ArrayList<float[]>();
+        XMLStreamReader reader = createReader(getClass().getResourceAsStream(asset));
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("float_array")) {
+                XMLFloatArray array = new XMLFloatArray();
+                array.parse(reader);
+                arrays.add(array.floats);
+            }
+        }
+        reader.close();
+        return arrays;
+    }
+
+    /*
+     * Parses the <float_array> elements of the Collada test assets with the
+     * previous and the streaming parser, and checks that the results are the
+     * same.
+     */
+    @Test
+    public void testColladaAssets() throws Exception {
+        int floatCount = 0;
+        for (String asset : ASSETS) {
+            List<float[]> expected = parseAssetReference(asset);
+            List<float[]> actual = parseAsset(asset);
+            assertEquals(asset, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); ++i) {
+                assertArrayEquals(asset, expected.get(i), actual.get(i), 0.0f);
+                floatCount += expected.get(i).length;
+            }
+        }
+        assertTrue(floatCount > 0);
+    }
+
+    /*
+     * Benchmark of the previous and the streaming parser on the Collada test
+     * assets. Only run when DM_BOB_BENCHMARKS is set, e.g. DM_BOB_BENCHMARKS=1
+     */
+    @Test
+    public void benchmarkColladaAssets() throws Exception {
+        assumeTrue(System.getenv("DM_BOB_BENCHMARKS") != null);
+        int floatCount = 0;
+        for (String asset : ASSETS) {
+            for (float[] array : parseAsset(asset)) {
+                floatCount += array.length;
+            }
+        }
+
+        final int warmup = 5;
+        final int iterations = 20;
+        long referenceTime = 0;
+        long time = 0;
+        for (int i = 0; i < warmup + iterations; ++i) {
+            for (String asset : ASSETS) {
+                long start = System.nanoTime();
+                parseAssetReference(asset);
+                long mid = System.nanoTime();
+                parseAsset(asset);
+                long end = System.nanoTime();
+                if (i >= warmup) {
+                    referenceTime += mid - start;
+                    time += end - mid;
+                }
+            }
+        }
+        System.out.printf("Parsed %d floats in %d assets %d times: StringTokenizer %.1f ms, XMLNumberParser %.1f ms%n",
+            floatCount, ASSETS.length, iterations, referenceTime / 1e6, time / 1e6);
+    }
+}
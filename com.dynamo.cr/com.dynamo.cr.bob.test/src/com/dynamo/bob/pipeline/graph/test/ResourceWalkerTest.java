@@ -0,0 +1,199 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.pipeline.graph.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.Project;
+import com.dynamo.bob.ProtoBuilder;
+import com.dynamo.bob.fs.IResource;
+import com.dynamo.bob.pipeline.graph.ResourceWalker;
+import com.dynamo.bob.pipeline.graph.ResourceWalker.IResourceVisitor;
+import com.dynamo.bob.pipeline.graph.ResourceWalker.ParsedResource;
+import com.dynamo.bob.test.util.MockFileSystem;
+import com.dynamo.gameobject.proto.GameObject.CollectionDesc;
+import com.dynamo.gameobject.proto.GameObject.InstanceDesc;
+import com.dynamo.gameobject.proto.GameObject.PrototypeDesc;
+import com.google.protobuf.Message;
+
+public class ResourceWalkerTest {
+
+    private MockFileSystem fileSystem;
+    private Project project;
+
+    /**
+     * Records the calls in order. Each resource is only visited once, like ResourceGraph.
+     */
+    private static class RecordingVisitor implements IResourceVisitor {
+        List<String> calls = new ArrayList<String>();
+        Set<String> visited = ConcurrentHashMap.newKeySet();
+        Set<String> excluded = new HashSet<String>();
+
+        private static String path(IResource resource) {
+            return resource != null ? resource.getPath() : "<root>";
+        }
+
+        @Override
+        public void visit(IResource resource, IResource parentResource) throws CompileExceptionError {
+            visited.add(resource.getPath());
+            calls.add("visit " + path(resource) + " from " + path(parentResource));
+        }
+
+        @Override
+        public void visitMessage(Message message, IResource resource, IResource parentResource) throws CompileExceptionError {
+            calls.add("message " + path(resource) + " " + message.getClass().getSimpleName());
+        }
+
+        @Override
+        public void leave(IResource resource, IResource parentResource) throws CompileExceptionError {
+            calls.add("leave " + path(resource));
+        }
+
+        @Override
+        public void skip(IResource resource, IResource parentResource) throws CompileExceptionError {
+            calls.add("skip " + path(resource) + " from " + path(parentResource));
+        }
+
+        @Override
+        public boolean shouldVisit(IResource resource, IResource parentResource) {
+            return !visited.contains(resource.getPath()) && !excluded.contains(resource.getPath());
+        }
+    }
+
+    private void addOutput(String path, Message message) {
+        project.getResource(path).output().setContent(message.toByteArray());
+    }
+
+    private static PrototypeDesc gameObject(String... resources) {
+        return PrototypeDesc.newBuilder().addAllPropertyResources(Arrays.asList(resources)).build();
+    }
+
+    private String key(String path) {
+        return project.getResource(path).getPath();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        fileSystem = new MockFileSystem();
+        project = new Project(fileSystem);
+        ProtoBuilder.addMessageClass(".goc", PrototypeDesc.class);
+        ProtoBuilder.addMessageClass(".collectionc", CollectionDesc.class);
+
+        /*
+        main.collectionc -> a.goc, b.goc, shared.goc
+        a.goc            -> shared.goc, b.goc, leaf.dat
+        b.goc            -> a.goc, shared.goc
+        shared.goc       -> leaf.dat, main.collectionc
+        */
+        addOutput("/main.collectionc", CollectionDesc.newBuilder()
+                .setName("main")
+                .addInstances(InstanceDesc.newBuilder().setId("a").setPrototype("/a.goc"))
+                .addInstances(InstanceDesc.newBuilder().setId("b").setPrototype("/b.goc"))
+                .addInstances(InstanceDesc.newBuilder().setId("shared").setPrototype("/shared.goc"))
+                .build());
+        addOutput("/a.goc", gameObject("/shared.goc", "/b.goc", "/leaf.dat"));
+        addOutput("/b.goc", gameObject("/a.goc", "/shared.goc"));
+        addOutput("/shared.goc", gameObject("/leaf.dat", "/main.collectionc"));
+        project.getResource("/leaf.dat").output().setContent(new byte[] {1, 2, 3});
+    }
+
+    @After
+    public void tearDown() {
+        project.dispose();
+    }
+
+    private RecordingVisitor walk(String root) throws CompileExceptionError {
+        RecordingVisitor visitor = new RecordingVisitor();
+        ResourceWalker.walk(project, project.getResource(root), visitor);
+        return visitor;
+    }
+
+    private RecordingVisitor walkParallel(String root, Map<String, ParsedResource> parsedResources) throws CompileExceptionError {
+        RecordingVisitor visitor = new RecordingVisitor();
+        ResourceWalker.walkParallel(project, project.getResource(root), visitor, parsedResources);
+        return visitor;
+    }
+
+    @Test
+    public void testVisitOrderMatchesSerialWalk() throws Exception {
+        RecordingVisitor serial = walk("/main.collectionc");
+
+        Set<String> expected = new HashSet<String>(Arrays.asList(key("/main.collectionc"), key("/a.goc"), key("/b.goc"), key("/shared.goc"), key("/leaf.dat")));
+        assertEquals(expected, serial.visited);
+        assertTrue(serial.calls.contains("skip " + key("/main.collectionc") + " from " + key("/shared.goc")));
+
+        for (int i = 0; i < 20; ++i) {
+            RecordingVisitor parallel = walkParallel("/main.collectionc", new ConcurrentHashMap<String, ParsedResource>());
+            assertEquals(serial.calls, parallel.calls);
+            assertEquals(serial.visited, parallel.visited);
+        }
+    }
+
+    @Test
+    public void testSharedParsedResources() throws Exception {
+        // The same table is used for several walks, like ResourceGraph does for its roots
+        Map<String, ParsedResource> parsedResources = new ConcurrentHashMap<String, ParsedResource>();
+        RecordingVisitor first = walkParallel("/main.collectionc", parsedResources);
+        RecordingVisitor second = walkParallel("/b.goc", parsedResources);
+
+        assertEquals(walk("/main.collectionc").calls, first.calls);
+        assertEquals(walk("/b.goc").calls, second.calls);
+    }
+
+    @Test
+    public void testSkippedResourcesAreNotParsed() throws Exception {
+        RecordingVisitor serial = new RecordingVisitor();
+        serial.excluded.add(key("/b.goc"));
+        ResourceWalker.walk(project, project.getResource("/main.collectionc"), serial);
+
+        RecordingVisitor parallel = new RecordingVisitor();
+        parallel.excluded.add(key("/b.goc"));
+        Map<String, ParsedResource> parsedResources = new ConcurrentHashMap<String, ParsedResource>();
+        ResourceWalker.walkParallel(project, project.getResource("/main.collectionc"), parallel, parsedResources);
+
+        assertEquals(serial.calls, parallel.calls);
+        assertFalse(parallel.visited.contains(key("/b.goc")));
+        assertFalse(parsedResources.containsKey(key("/b.goc")));
+        assertTrue(parsedResources.containsKey(key("/a.goc")));
+    }
+
+    @Test
+    public void testBuiltMessageIsReused() throws Exception {
+        // Only known as a built message, nothing on disk
+        ProtoBuilder.setBuiltMessage(project, project.getResource("/built.goc").output(), gameObject("/leaf.dat"));
+        assertFalse(project.getResource("/built.goc").output().exists());
+
+        RecordingVisitor serial = walk("/built.goc");
+        RecordingVisitor parallel = walkParallel("/built.goc", new ConcurrentHashMap<String, ParsedResource>());
+
+        assertEquals(new HashSet<String>(Arrays.asList(key("/built.goc"), key("/leaf.dat"))), parallel.visited);
+        assertEquals(serial.calls, parallel.calls);
+    }
+}
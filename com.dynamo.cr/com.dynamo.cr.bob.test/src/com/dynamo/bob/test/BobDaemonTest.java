@@ -0,0 +1,230 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dynamo.bob.Bob;
+import com.dynamo.bob.BobDaemon;
+import com.dynamo.bob.Builder;
+import com.dynamo.bob.BuilderParams;
+import com.dynamo.bob.ClassLoaderScanner;
+import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.Project;
+import com.dynamo.bob.Task;
+import com.dynamo.bob.fs.DefaultFileSystem;
+import com.dynamo.bob.fs.IResource;
+
+public class BobDaemonTest {
+
+    @BuilderParams(name = "DaemonTestBuilder", inExts = ".daemon_in", outExt = ".daemon_out")
+    public static class DaemonTestBuilder extends Builder<Void> {
+        static AtomicInteger buildCount = new AtomicInteger();
+
+        @Override
+        public Task<Void> create(IResource input) {
+            return defaultTask(input);
+        }
+
+        @Override
+        public void signature(MessageDigest digest) {
+            digest.update(project.option("daemon-test-suffix", "").getBytes());
+        }
+
+        @Override
+        public void build(Task<Void> task) throws CompileExceptionError, IOException {
+            buildCount.incrementAndGet();
+            String content = new String(task.input(0).getContent());
+            if (content.equals("fail")) {
+                // Leave a partial output behind, like a builder failing halfway
+                task.output(0).setContent("partial".getBytes());
+                throw new CompileExceptionError(task.input(0), 1, "Failed to build");
+            }
+            task.output(0).setContent((content + project.option("daemon-test-suffix", "")).getBytes());
+        }
+    }
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File root;
+    private Project project;
+    private int port;
+    private Thread serveThread;
+
+    private void writeSource(String path, String content) throws IOException {
+        File file = new File(root, path);
+        long lastModified = file.exists() ? file.lastModified() : 0;
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        // The digest cache is keyed on the modification time, make sure it changes
+        if (lastModified != 0) {
+            file.setLastModified(lastModified + 2000);
+        }
+    }
+
+    private String readOutput(String path) throws IOException {
+        return FileUtils.readFileToString(new File(root, "build/" + path), StandardCharsets.UTF_8);
+    }
+
+    // Send a request and return the reply lines, the last one being "OK" or "FAILED"
+    private List<String> request(String request) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            out.println(request);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        }
+    }
+
+    private void assertBuild(String expected) throws IOException {
+        List<String> reply = request("build");
+        assertEquals(reply.toString(), expected, reply.get(reply.size() - 1));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        root = tmp.newFolder("project");
+        writeSource("a.daemon_in", "a");
+        writeSource("b.daemon_in", "b");
+
+        project = new Project(new DefaultFileSystem(), root.getAbsolutePath(), "build");
+        project.scan(new ClassLoaderScanner(), "com.dynamo.bob.test");
+        Set<String> skipDirs = new HashSet<>(Arrays.asList("build"));
+        project.findSources(root.getAbsolutePath(), skipDirs);
+        DaemonTestBuilder.buildCount.set(0);
+
+        BobDaemon daemon = new BobDaemon(project, root.getAbsolutePath(), skipDirs, false);
+        port = daemon.start(0);
+        serveThread = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serveThread.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        assertEquals(Arrays.asList("OK"), request("shutdown"));
+        serveThread.join();
+        project.dispose();
+    }
+
+    @Test
+    public void testReuseBuildState() throws Exception {
+        assertBuild("OK");
+        assertEquals(2, DaemonTestBuilder.buildCount.get());
+        assertEquals("a", readOutput("a.daemon_out"));
+
+        assertBuild("OK");
+        assertEquals(2, DaemonTestBuilder.buildCount.get());
+
+        // The build state is kept in memory, the one on disk isn't read again
+        Files.write(new File(root, "build/_BobBuildState_").toPath(), new byte[] {1, 2, 3});
+        assertBuild("OK");
+        assertEquals(2, DaemonTestBuilder.buildCount.get());
+    }
+
+    @Test
+    public void testRebuildChangedSource() throws Exception {
+        assertBuild("OK");
+        assertEquals(2, DaemonTestBuilder.buildCount.get());
+
+        writeSource("a.daemon_in", "a2");
+        assertBuild("OK");
+        assertEquals(3, DaemonTestBuilder.buildCount.get());
+        assertEquals("a2", readOutput("a.daemon_out"));
+        assertEquals("b", readOutput("b.daemon_out"));
+    }
+
+    @Test
+    public void testRebuildChangedOption() throws Exception {
+        assertBuild("OK");
+        assertEquals(2, DaemonTestBuilder.buildCount.get());
+
+        project.setOption("daemon-test-suffix", "_x");
+        assertBuild("OK");
+        assertEquals(4, DaemonTestBuilder.buildCount.get());
+        assertEquals("a_x", readOutput("a.daemon_out"));
+        assertEquals("b_x", readOutput("b.daemon_out"));
+
+        assertBuild("OK");
+        assertEquals(4, DaemonTestBuilder.buildCount.get());
+    }
+
+    @Test
+    public void testFailedBuild() throws Exception {
+        assertBuild("OK");
+        assertEquals(2, DaemonTestBuilder.buildCount.get());
+
+        writeSource("a.daemon_in", "fail");
+        List<String> reply = request("build");
+        assertEquals("FAILED", reply.get(reply.size() - 1));
+        assertTrue(reply.toString(), String.join("\n", reply).contains("Failed to build"));
+        assertEquals(3, DaemonTestBuilder.buildCount.get());
+
+        // Back to the content of the first build, the partial output must not be kept
+        writeSource("a.daemon_in", "a");
+        assertBuild("OK");
+        assertEquals(4, DaemonTestBuilder.buildCount.get());
+        assertEquals("a", readOutput("a.daemon_out"));
+
+        assertBuild("OK");
+        assertEquals(4, DaemonTestBuilder.buildCount.get());
+    }
+
+    @Test
+    public void testDaemonPortOption() throws Exception {
+        assertEquals(BobDaemon.DEFAULT_PORT, Bob.parseDaemonPort(null));
+        assertEquals(7000, Bob.parseDaemonPort("7000"));
+        assertEquals(0, Bob.parseDaemonPort("0"));
+        assertEquals(-1, Bob.parseDaemonPort("port"));
+        assertEquals(-1, Bob.parseDaemonPort("-2"));
+        assertEquals(-1, Bob.parseDaemonPort("70000"));
+    }
+}
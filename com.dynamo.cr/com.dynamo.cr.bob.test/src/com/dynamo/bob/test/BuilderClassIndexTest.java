@@ -0,0 +1,154 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.dynamo.bob.BuilderClassIndex;
+
+public class BuilderClassIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File createJar(String name, byte[] content) throws IOException {
+        File jar = tmp.newFile(name);
+        Files.write(jar.toPath(), content);
+        return jar;
+    }
+
+    private static BuilderClassIndex createIndex(String key) {
+        BuilderClassIndex index = new BuilderClassIndex(key);
+
+        BuilderClassIndex.Entry builder = new BuilderClassIndex.Entry();
+        builder.className = "com.dynamo.bob.pipeline.FooBuilder";
+        builder.kind = BuilderClassIndex.KIND_BUILDER;
+        builder.inExts = new String[] {".foo", ".bar"};
+        builder.outExt = ".fooc";
+        builder.createOrder = 100;
+        builder.serialTaskCreation = true;
+        builder.messageClass = "com.dynamo.foo.proto.Foo$FooDesc";
+        index.add(builder);
+
+        BuilderClassIndex.Entry bundler = new BuilderClassIndex.Entry();
+        bundler.className = "com.dynamo.bob.bundle.FooBundler";
+        bundler.kind = BuilderClassIndex.KIND_BUNDLER;
+        index.add(bundler);
+        return index;
+    }
+
+    @Test
+    public void testHit() throws Exception {
+        List<File> jars = Arrays.asList(createJar("bob.jar", new byte[] {1, 2, 3}), createJar("plugin.jar", new byte[] {4, 5}));
+        String key = BuilderClassIndex.createKey(jars);
+        assertNotNull(key);
+        assertEquals(key, BuilderClassIndex.createKey(jars));
+
+        File file = new File(tmp.getRoot(), "_BobClassIndex_");
+        createIndex(key).save(file);
+        // Nothing but the index is left in the directory
+        String[] names = tmp.getRoot().list();
+        Arrays.sort(names);
+        assertArrayEquals(new String[] {"_BobClassIndex_", "bob.jar", "plugin.jar"}, names);
+
+        BuilderClassIndex index = BuilderClassIndex.load(file, key);
+        assertNotNull(index);
+        assertEquals(key, index.getKey());
+        assertEquals(2, index.getEntries().size());
+
+        BuilderClassIndex.Entry builder = index.getEntries().get(0);
+        assertEquals("com.dynamo.bob.pipeline.FooBuilder", builder.className);
+        assertTrue(builder.isBuilder());
+        assertArrayEquals(new String[] {".foo", ".bar"}, builder.inExts);
+        assertEquals(".fooc", builder.outExt);
+        assertEquals(100, builder.createOrder);
+        assertEquals(false, builder.ignoreTaskAutoCreation);
+        assertEquals(true, builder.serialTaskCreation);
+        assertEquals("com.dynamo.foo.proto.Foo$FooDesc", builder.messageClass);
+        assertNull(builder.srcClass);
+
+        BuilderClassIndex.Entry bundler = index.getEntries().get(1);
+        assertEquals("com.dynamo.bob.bundle.FooBundler", bundler.className);
+        assertTrue(bundler.isBundler());
+        assertEquals(0, bundler.inExts.length);
+    }
+
+    @Test
+    public void testMiss() throws Exception {
+        List<File> jars = Arrays.asList(createJar("bob.jar", new byte[] {1, 2, 3}));
+        String key = BuilderClassIndex.createKey(jars);
+        File file = new File(tmp.getRoot(), "_BobClassIndex_");
+
+        // No index saved yet
+        assertNull(BuilderClassIndex.load(file, key));
+
+        createIndex(key).save(file);
+        assertNull(BuilderClassIndex.load(file, "other"));
+        assertNull(BuilderClassIndex.load(file, null));
+
+        // Class directories can't be keyed
+        assertNull(BuilderClassIndex.createKey(Arrays.asList(jars.get(0), tmp.newFolder("classes"))));
+
+        // Corrupt index
+        Files.write(file.toPath(), new byte[] {0, 0, 0});
+        assertNull(BuilderClassIndex.load(file, key));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        File bob = createJar("bob.jar", new byte[] {1, 2, 3});
+        File plugin = createJar("plugin.jar", new byte[] {4, 5});
+        List<File> jars = Arrays.asList(bob, plugin);
+        String key = BuilderClassIndex.createKey(jars);
+        File file = new File(tmp.getRoot(), "_BobClassIndex_");
+        createIndex(key).save(file);
+
+        // Same size and modification time, different content
+        long lastModified = plugin.lastModified();
+        Files.write(plugin.toPath(), new byte[] {4, 6});
+        assertTrue(plugin.setLastModified(lastModified));
+        String changedKey = BuilderClassIndex.createKey(jars);
+        assertNotEquals(key, changedKey);
+        assertNull(BuilderClassIndex.load(file, changedKey));
+
+        // A rescan replaces the index
+        createIndex(changedKey).save(file);
+        assertNotNull(BuilderClassIndex.load(file, changedKey));
+        assertNull(BuilderClassIndex.load(file, key));
+
+        // Moving content between the jars changes the key
+        Files.write(bob.toPath(), new byte[] {1, 2, 3, 4});
+        Files.write(plugin.toPath(), new byte[] {6});
+        assertNotEquals(changedKey, BuilderClassIndex.createKey(jars));
+
+        // The jar order matters, later builders take precedence
+        assertNotEquals(BuilderClassIndex.createKey(jars), BuilderClassIndex.createKey(Arrays.asList(plugin, bob)));
+    }
+}
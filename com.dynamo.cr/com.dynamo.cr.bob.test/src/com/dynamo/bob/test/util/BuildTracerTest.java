@@ -0,0 +1,130 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.test.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+
+import com.dynamo.bob.util.BuildTracer;
+import com.dynamo.bob.util.TimeProfiler;
+
+public class BuildTracerTest {
+
+    @After
+    public void tearDown() throws Exception {
+        BuildTracer.finish(true);
+    }
+
+    private JsonNode writeTrace() throws Exception {
+        StringWriter writer = new StringWriter();
+        BuildTracer.writeTrace(writer);
+        return new ObjectMapper().readTree(writer.toString());
+    }
+
+    @Test
+    public void testThreads() throws Exception {
+        File traceFile = File.createTempFile("trace", ".json");
+        traceFile.deleteOnExit();
+        BuildTracer.init(traceFile, true);
+
+        final int threadCount = 4;
+        final int scopeCount = 3000;
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; ++t) {
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < scopeCount; ++i) {
+                        BuildTracer.begin("outer");
+                        BuildTracer.addData("thread", id);
+                        // Scopes of the time profiler are traced on every thread
+                        TimeProfiler.start();
+                        TimeProfiler.addData("name", "inner");
+                        TimeProfiler.addData("takenFromCache", true);
+                        TimeProfiler.stop();
+                        BuildTracer.end();
+                    }
+                }
+            }, "worker-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        JsonNode trace = writeTrace();
+        Set<String> threadNames = new HashSet<String>();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (JsonNode event : trace.get("traceEvents")) {
+            String ph = event.get("ph").getTextValue();
+            if (ph.equals("M")) {
+                threadNames.add(event.get("args").get("name").getTextValue());
+                continue;
+            }
+            assertEquals("X", ph);
+            assertTrue(event.get("dur").getDoubleValue() >= 0.0);
+            String name = event.get("name").getTextValue();
+            Integer count = counts.get(name);
+            counts.put(name, count == null ? 1 : count + 1);
+            if (name.equals("inner")) {
+                assertTrue(event.get("args").get("takenFromCache").getBooleanValue());
+            } else {
+                assertTrue(event.get("args").has("thread"));
+            }
+        }
+        for (int t = 0; t < threadCount; ++t) {
+            assertTrue(threadNames.contains("worker-" + t));
+        }
+        assertEquals(threadCount * scopeCount, (int) counts.get("outer"));
+        assertEquals(threadCount * scopeCount, (int) counts.get("inner"));
+
+        BuildTracer.finish(true);
+        assertFalse(BuildTracer.isEnabled());
+        JsonNode written = new ObjectMapper().readTree(traceFile);
+        assertEquals(trace.get("traceEvents").size(), written.get("traceEvents").size());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        BuildTracer.begin("scope");
+        BuildTracer.addMark("mark");
+        BuildTracer.end();
+
+        File traceFile = File.createTempFile("trace", ".json");
+        traceFile.deleteOnExit();
+        BuildTracer.init(traceFile, true);
+        // Events from before init are not part of the trace
+        assertEquals(0, writeTrace().get("traceEvents").size());
+
+        BuildTracer.addMark("mark");
+        JsonNode events = writeTrace().get("traceEvents");
+        assertEquals(2, events.size());
+        assertEquals("i", events.get(1).get("ph").getTextValue());
+    }
+}
@@ -14,9 +14,11 @@
 
 package com.dynamo.bob.test.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 
 import java.awt.FontFormatException;
 import java.awt.image.BufferedImage;
@@ -37,7 +39,9 @@ import java.util.HashMap;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import com.dynamo.bob.font.BMFont;
 import com.dynamo.bob.font.BMFont.BMFontFormatException;
@@ -45,7 +49,10 @@ import com.dynamo.bob.font.BMFont.ChannelData;
 import com.dynamo.bob.font.BMFont.Char;
 import com.dynamo.bob.font.Fontc;
 import com.dynamo.bob.font.Fontc.FontResourceResolver;
+import com.dynamo.bob.font.GlyphCache;
 import com.dynamo.render.proto.Font.FontDesc;
+import com.dynamo.render.proto.Font.FontRenderMode;
+import com.dynamo.render.proto.Font.FontTextureFormat;
 import com.dynamo.render.proto.Font.FontMap;
 import com.dynamo.render.proto.Font.GlyphBank;
 import com.dynamo.render.proto.Font.GlyphBank.Glyph;
@@ -54,6 +61,9 @@ public class FontTest {
 
     private static final double EPSILON = 0.000001;
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     private String copyResourceToDir(String tmpDir, String resName) throws IOException {
         String outputPath = Paths.get(tmpDir, resName).toString();
 
@@ -519,4 +529,182 @@ public class FontTest {
         assertTrue(false);
     }
 
+    private GlyphBank compileGlyphBank(FontDesc fontDesc, boolean preview, int maxThreads) throws Exception {
+        return compileGlyphBank(fontDesc, preview, maxThreads, null);
+    }
+
+    private GlyphBank compileGlyphBank(FontDesc fontDesc, boolean preview, int maxThreads, GlyphCache glyphCache) throws Exception {
+        int oldMaxThreads = Fontc.maxThreads;
+        Fontc.maxThreads = maxThreads;
+        try {
+            Fontc fontc = new Fontc();
+            fontc.setGlyphCache(glyphCache);
+            InputStream fontInputStream = getClass().getResourceAsStream(fontDesc.getFont());
+            final String searchPath = FilenameUtils.getBaseName(fontDesc.getFont());
+            fontc.compile(fontInputStream, fontDesc, preview, new FontResourceResolver() {
+                    @Override
+                    public InputStream getResource(String resourceName)
+                            throws FileNotFoundException {
+                        return new FileInputStream(Paths.get(searchPath, resourceName).toString());
+                    }
+                });
+            fontInputStream.close();
+            return fontc.getGlyphBank();
+        } finally {
+            Fontc.maxThreads = oldMaxThreads;
+        }
+    }
+
+    private void assertSameGlyphBankOnThreads(FontDesc fontDesc, boolean preview) throws Exception {
+        GlyphBank serial = compileGlyphBank(fontDesc, preview, 1);
+        GlyphBank parallel = compileGlyphBank(fontDesc, preview, 4);
+
+        // Enough glyphs to be rendered on more than one thread
+        assertTrue(serial.getGlyphsCount() > 64);
+
+        assertEquals(serial.getCacheWidth(), parallel.getCacheWidth());
+        assertEquals(serial.getCacheHeight(), parallel.getCacheHeight());
+        assertEquals(serial.getCacheCellWidth(), parallel.getCacheCellWidth());
+        assertEquals(serial.getCacheCellHeight(), parallel.getCacheCellHeight());
+        assertEquals(serial.getCacheCellMaxAscent(), parallel.getCacheCellMaxAscent());
+        assertEquals(serial.getGlyphsCount(), parallel.getGlyphsCount());
+        for (int i = 0; i < serial.getGlyphsCount(); i++) {
+            Glyph s = serial.getGlyphs(i);
+            Glyph p = parallel.getGlyphs(i);
+            assertEquals(s.getCharacter(), p.getCharacter());
+            assertEquals(s.getX(), p.getX());
+            assertEquals(s.getY(), p.getY());
+            assertEquals(s.getGlyphDataOffset(), p.getGlyphDataOffset());
+            assertEquals(s.getGlyphDataSize(), p.getGlyphDataSize());
+        }
+        assertArrayEquals(serial.getGlyphData().toByteArray(), parallel.getGlyphData().toByteArray());
+        assertArrayEquals(serial.toByteArray(), parallel.toByteArray());
+    }
+
+    @Test
+    public void testTTFParallelBitmap() throws Exception {
+        FontDesc fontDesc = FontDesc.newBuilder()
+            .setFont("Tuffy.ttf")
+            .setMaterial("font.material")
+            .setSize(24)
+            .setAllChars(true)
+            .build();
+        assertSameGlyphBankOnThreads(fontDesc, false);
+    }
+
+    @Test
+    public void testTTFParallelOutlineShadow() throws Exception {
+        FontDesc fontDesc = FontDesc.newBuilder()
+            .setFont("Tuffy.ttf")
+            .setMaterial("font.material")
+            .setSize(24)
+            .setAllChars(true)
+            .setOutlineAlpha(1.0f)
+            .setOutlineWidth(2.0f)
+            .setShadowAlpha(1.0f)
+            .setShadowBlur(2)
+            .setRenderMode(FontRenderMode.MODE_MULTI_LAYER)
+            .build();
+        assertSameGlyphBankOnThreads(fontDesc, false);
+    }
+
+    @Test
+    public void testTTFParallelDistanceField() throws Exception {
+        FontDesc fontDesc = FontDesc.newBuilder()
+            .setFont("Tuffy.ttf")
+            .setMaterial("font.material")
+            .setSize(24)
+            .setAllChars(true)
+            .setOutputFormat(FontTextureFormat.TYPE_DISTANCE_FIELD)
+            .setOutlineAlpha(1.0f)
+            .setOutlineWidth(2.0f)
+            .setShadowAlpha(1.0f)
+            .setShadowBlur(2)
+            .setRenderMode(FontRenderMode.MODE_MULTI_LAYER)
+            .build();
+        assertSameGlyphBankOnThreads(fontDesc, false);
+    }
+
+    @Test
+    public void testTTFParallelPreview() throws Exception {
+        // Previews store the cache cell position of each glyph
+        FontDesc fontDesc = FontDesc.newBuilder()
+            .setFont("Tuffy.ttf")
+            .setMaterial("font.material")
+            .setSize(32)
+            .setAllChars(true)
+            .build();
+        assertSameGlyphBankOnThreads(fontDesc, true);
+    }
+
+    // Same cache as GlyphBankBuilder uses for the font
+    private GlyphCache createGlyphCache(File dir, FontDesc fontDesc) throws IOException {
+        byte[] fontData = IOUtils.toByteArray(getClass().getResourceAsStream(fontDesc.getFont()));
+        return new GlyphCache(dir, GlyphCache.calculateKey(fontData, fontDesc));
+    }
+
+    @Test
+    public void testTTFGlyphCache() throws Exception {
+        FontDesc fontDesc = FontDesc.newBuilder()
+            .setFont("Tuffy.ttf")
+            .setMaterial("font.material")
+            .setSize(24)
+            .setOutlineAlpha(1.0f)
+            .setOutlineWidth(2.0f)
+            .build();
+        File dir = tmp.newFolder("glyphs");
+        byte[] uncached = compileGlyphBank(fontDesc, false, 4).toByteArray();
+
+        // Cold build, all glyphs are rendered and added to the cache
+        GlyphCache cold = createGlyphCache(dir, fontDesc);
+        assertEquals(0, cold.size());
+        assertArrayEquals(uncached, compileGlyphBank(fontDesc, false, 4, cold).toByteArray());
+        cold.save();
+        assertTrue(cold.size() > 64);
+
+        // Warm build, all glyphs are taken from the cache so nothing is written
+        assertTrue(cold.getFile().setLastModified(0));
+        GlyphCache warm = createGlyphCache(dir, fontDesc);
+        assertEquals(cold.size(), warm.size());
+        assertArrayEquals(uncached, compileGlyphBank(fontDesc, false, 4, warm).toByteArray());
+        warm.save();
+        assertEquals(0, warm.getFile().lastModified());
+
+        // More characters, only the new glyphs are added
+        FontDesc extraDesc = fontDesc.toBuilder().setExtraCharacters("åäöÅÄÖ").build();
+        assertEquals(cold.getFile(), createGlyphCache(dir, extraDesc).getFile());
+        GlyphCache extra = createGlyphCache(dir, extraDesc);
+        assertArrayEquals(compileGlyphBank(extraDesc, false, 4).toByteArray(), compileGlyphBank(extraDesc, false, 4, extra).toByteArray());
+        assertEquals(cold.size() + 6, extra.size());
+    }
+
+    @Test
+    public void testTTFGlyphCacheParameterChange() throws Exception {
+        FontDesc fontDesc = FontDesc.newBuilder()
+            .setFont("Tuffy.ttf")
+            .setMaterial("font.material")
+            .setSize(24)
+            .build();
+        File dir = tmp.newFolder("glyphs");
+        GlyphCache cache = createGlyphCache(dir, fontDesc);
+        compileGlyphBank(fontDesc, false, 4, cache);
+        cache.save();
+
+        FontDesc[] changedDescs = {
+            fontDesc.toBuilder().setSize(28).build(),
+            fontDesc.toBuilder().setOutlineAlpha(1.0f).setOutlineWidth(2.0f).build(),
+            fontDesc.toBuilder().setShadowAlpha(1.0f).setShadowBlur(2).build(),
+            fontDesc.toBuilder().setAntialias(0).build(),
+            fontDesc.toBuilder().setOutputFormat(FontTextureFormat.TYPE_DISTANCE_FIELD).build(),
+        };
+        for (FontDesc changedDesc : changedDescs) {
+            // A changed parameter misses the cache and renders the same glyphs as a build without it
+            GlyphCache changed = createGlyphCache(dir, changedDesc);
+            assertNotEquals(cache.getFile(), changed.getFile());
+            assertEquals(0, changed.size());
+            byte[] expected = compileGlyphBank(changedDesc, false, 4).toByteArray();
+            assertArrayEquals(expected, compileGlyphBank(changedDesc, false, 4, changed).toByteArray());
+            assertNotEquals(0, changed.size());
+        }
+    }
 }
@@ -14,6 +14,7 @@
 
 package com.dynamo.bob.tile.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertThat;
@@ -27,6 +28,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Random;
 
 import javax.imageio.ImageIO;
 
@@ -265,6 +267,48 @@ public class ConvexHull2DTest {
         assertTrue(simpleCross(sub(points[2], points[0]), sub(points[3], points[0])) < 0);
     }
 
+    // Reference dilation, testing every pixel under the kernel
+    private static byte[] dilateBruteForce(byte[] mask, int width, int height, int kernelSize) {
+        int r = kernelSize / 2;
+        byte[] out = new byte[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                for (int ky = Math.max(0, y - r); ky <= Math.min(height - 1, y + r) && out[y * width + x] == 0; ++ky) {
+                    for (int kx = Math.max(0, x - r); kx <= Math.min(width - 1, x + r); ++kx) {
+                        if (mask[ky * width + kx] != 0) {
+                            out[y * width + x] = 1;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void testDilate() {
+        Random random = new Random(4711);
+        int[][] sizes = { {1, 1}, {1, 9}, {9, 1}, {7, 5}, {32, 32}, {61, 17} };
+        int[] kernelSizes = { 1, 3, 5, 9, 21, 101 };
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            byte[] tmp = new byte[width * height];
+            byte[] out = new byte[width * height];
+            for (int density : new int[] { 0, 2, 30 }) {
+                byte[] mask = new byte[width * height];
+                for (int i = 0; i < mask.length; ++i) {
+                    mask[i] = (byte) (random.nextInt(100) < density ? random.nextInt(255) + 1 : 0);
+                }
+                for (int kernelSize : kernelSizes) {
+                    byte[] expected = dilateBruteForce(mask, width, height, kernelSize);
+                    assertArrayEquals(expected, ConvexHull2D.dilate(mask, width, height, kernelSize, tmp, out));
+                }
+            }
+        }
+    }
+
     @Test
     public void testImageHullTargetCount() throws Exception {
         HashSet<Point> points = calcTrim("test/test_image_7389.png", 8);
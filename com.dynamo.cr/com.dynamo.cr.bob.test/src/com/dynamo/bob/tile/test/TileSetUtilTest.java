@@ -0,0 +1,104 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.tile.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dynamo.bob.tile.ConvexHull2D;
+import com.dynamo.bob.tile.TileSetUtil;
+import com.dynamo.bob.tile.TileSetUtil.ConvexHulls;
+
+public class TileSetUtilTest {
+
+    @Before
+    public void setUp() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    private static BufferedImage createImage(int type, int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(seed);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int alpha = random.nextInt(4) == 0 ? random.nextInt(256) : 0;
+                image.setRGB(x, y, (alpha << 24) | random.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+
+    private static byte[] getMaskReference(Raster raster, int x, int y, int width, int height) {
+        int[] pixels = raster.getPixels(x, y, width, height, new int[width * height]);
+        return ConvexHull2D.toByteMask(pixels);
+    }
+
+    @Test
+    public void testGetMask() {
+        int[] types = { BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_ARGB };
+        for (int type : types) {
+            BufferedImage image = createImage(type, 37, 23, type);
+            Raster raster = image.getAlphaRaster();
+            assertArrayEquals(getMaskReference(raster, 0, 0, 37, 23), TileSetUtil.getMask(raster, 0, 0, 37, 23, new byte[37 * 23]));
+            assertArrayEquals(getMaskReference(raster, 5, 3, 11, 17), TileSetUtil.getMask(raster, 5, 3, 11, 17, new byte[11 * 17]));
+
+            // Raster of a sub image, with translated sample model
+            Raster subRaster = image.getSubimage(7, 4, 20, 12).getAlphaRaster();
+            assertArrayEquals(getMaskReference(subRaster, 2, 1, 9, 10), TileSetUtil.getMask(subRaster, 2, 1, 9, 10, new byte[9 * 10]));
+        }
+    }
+
+    @Test
+    public void testConvexHulls() {
+        int tileSize = 16;
+        int margin = 1;
+        int spacing = 2;
+        int tiles = 12;
+        int size = tiles * (tileSize + 2 * margin + spacing);
+        BufferedImage image = createImage(BufferedImage.TYPE_4BYTE_ABGR, size, size, 1234);
+        Raster raster = image.getAlphaRaster();
+
+        ConvexHulls convexHulls = TileSetUtil.calculateConvexHulls(raster, 16, size, size, tileSize, tileSize, margin, spacing);
+        assertEquals(tiles * tiles, convexHulls.hulls.length);
+
+        // Same result as calculating the hulls one tile at a time
+        int pointIndex = 0;
+        for (int row = 0; row < tiles; ++row) {
+            for (int col = 0; col < tiles; ++col) {
+                int x = margin + col * (2 * margin + spacing + tileSize);
+                int y = margin + row * (2 * margin + spacing + tileSize);
+                int[] mask = raster.getPixels(x, y, tileSize, tileSize, new int[tileSize * tileSize]);
+                ConvexHull2D.Point[] points = ConvexHull2D.imageConvexHull(mask, tileSize, tileSize, 16);
+
+                int index = col + row * tiles;
+                assertEquals(pointIndex, convexHulls.hulls[index].getIndex());
+                assertEquals(points.length, convexHulls.hulls[index].getCount());
+                for (ConvexHull2D.Point point : points) {
+                    assertEquals(point.getX(), convexHulls.points[pointIndex * 2], 0.0f);
+                    assertEquals(point.getY(), convexHulls.points[pointIndex * 2 + 1], 0.0f);
+                    ++pointIndex;
+                }
+            }
+        }
+        assertEquals(pointIndex * 2, convexHulls.points.length);
+    }
+}
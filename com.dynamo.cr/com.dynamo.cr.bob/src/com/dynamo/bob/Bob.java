@@ -58,6 +58,7 @@ import com.dynamo.bob.logging.Logger;
 import com.dynamo.bob.logging.LogHelper;
 import com.dynamo.bob.util.LibraryUtil;
 import com.dynamo.bob.util.BobProjectProperties;
+import com.dynamo.bob.util.BuildTracer;
 import com.dynamo.bob.util.TimeProfiler;
 import com.dynamo.bob.util.HttpUtil;
 import com.dynamo.bob.cache.ResourceCacheKey;
@@ -110,7 +111,7 @@ public class Bob {
         }));
       }
 
-    public static void init() {
+    public static synchronized void init() {
         if (rootFolder != null) {
             return;
         }
@@ -137,7 +138,7 @@ public class Bob {
         TimeProfiler.stop();
     }
 
-    public static void initLua() {
+    public static synchronized void initLua() {
         if (luaInitialized) {
             return;
         }
@@ -512,6 +513,7 @@ public class Bob {
         addOption(options, "br", "build-report", true, "DEPRECATED! Use --build-report-json instead", false);
         addOption(options, "brjson", "build-report-json", true, "Filepath where to save a build report as JSON", false);
         addOption(options, "brhtml", "build-report-html", true, "Filepath where to save a build report as HTML", false);
+        addOption(options, null, "build-trace", true, "Filepath where to save a Chrome/Perfetto trace of the build as JSON", false);
 
         addOption(options, null, "build-server", true, "The build server (when using native extensions)", true);
         addOption(options, null, "build-server-header", true, "Additional build server header to set", true);
@@ -546,6 +548,8 @@ public class Bob {
 
         addOption(options, null, "max-cpu-threads", true, "Max count of threads that bob.jar can use", false);
 
+        addOption(options, null, "daemon-port", true, "Local port to listen to for build requests when running the 'daemon' command. Default is " + BobDaemon.DEFAULT_PORT, false);
+
         // debug options
         addOption(options, null, "debug-ne-upload", false, "Outputs the files sent to build server as upload.zip", false);
         addOption(options, null, "debug-output-spirv", true, "Force build SPIR-V shaders", false);
@@ -660,12 +664,32 @@ public class Bob {
         }
         project.mount(new ClassLoaderResourceScanner());
 
-        Set<String> skipDirs = new HashSet<String>(Arrays.asList(".git", project.getBuildDirectory(), ".internal", "build"));
         TimeProfiler.start("findSources");
-        project.findSources(sourceDirectory, skipDirs);
+        project.findSources(sourceDirectory, getSkipDirs(project));
         TimeProfiler.stop();
     }
 
+    /**
+     * Parse the value of the --daemon-port option
+     * @param value option value, null if the option isn't set
+     * @return the port, BobDaemon.DEFAULT_PORT if not set or -1 if the value isn't a valid port
+     */
+    public static int parseDaemonPort(String value) {
+        if (value == null) {
+            return BobDaemon.DEFAULT_PORT;
+        }
+        try {
+            int port = Integer.parseInt(value.trim());
+            return port >= 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Set<String> getSkipDirs(Project project) {
+        return new HashSet<String>(Arrays.asList(".git", project.getBuildDirectory(), ".internal", "build"));
+    }
+
     private static void validateChoices(String optionName, String value, List<String> validChoices) {
         if (!validChoices.contains(value)) {
             System.out.printf("%s option must be one of: ", optionName);
@@ -713,6 +737,39 @@ public class Bob {
        return expected.isInstance(exc) || (exc != null && isCause(expected, exc.getCause()));
     }
 
+    static String getTaskErrors(List<TaskResult> result, boolean verbose) {
+        StringBuilder errors = new StringBuilder();
+        for (TaskResult taskResult : result) {
+            if (!taskResult.isOk()) {
+                String message = taskResult.getMessage();
+                if (message == null || message.isEmpty()) {
+                    if (taskResult.getException() != null) {
+                        message = taskResult.getException().getMessage();
+                    } else {
+                        message = "undefined";
+                    }
+                }
+                errors.append(String.format("ERROR %s%s %s\n", taskResult.getTask().input(0),
+                        (taskResult.getLineNumber() != -1) ? String.format(":%d", taskResult.getLineNumber()) : "",
+                        message));
+                if (verbose) {
+                    if (taskResult.getException() != null) {
+                        errors.append("  ")
+                                .append(taskResult.getException().toString())
+                                .append("\n");
+                        StackTraceElement[] elements = taskResult
+                                .getException().getStackTrace();
+                        for (StackTraceElement element : elements) {
+                            errors.append("  ").append(element.toString())
+                                    .append("\n");
+                        }
+                    }
+                }
+            }
+        }
+        return errors.toString();
+    }
+
     private static void mainInternal(String[] args) throws IOException, CompileExceptionError, URISyntaxException, LibraryException {
         System.setProperty("java.awt.headless", "true");
         System.setProperty("file.encoding", "UTF-8");
@@ -737,6 +794,9 @@ public class Bob {
             }
             TimeProfiler.init(reportFiles, false);
         }
+        if (cmd.hasOption("build-trace")) {
+            BuildTracer.init(new File(cmd.getOptionValue("build-trace")), false);
+        }
 
         if (cmd.hasOption("version")) {
             System.out.println(String.format("bob.jar version: %s  sha1: %s  built: %s", EngineVersion.version, EngineVersion.sha1, EngineVersion.timestamp));
@@ -940,6 +1000,20 @@ public class Bob {
             project.setOption("output-spirv", getSpirvRequired(project) ? "true" : "false");
         }
 
+        if (Arrays.asList(commands).contains("daemon")) {
+            int port = parseDaemonPort(cmd.getOptionValue("daemon-port"));
+            if (port == -1) {
+                System.out.println("`--daemon-port` expects a port number between 0 and 65535.");
+                System.exit(1);
+                return;
+            }
+            BobDaemon daemon = new BobDaemon(project, sourceDirectory, getSkipDirs(project), verbose);
+            daemon.run(port);
+            project.dispose();
+            System.exit(0);
+            return;
+        }
+
         boolean ret = true;
         StringBuilder errors = new StringBuilder();
 
@@ -957,34 +1031,10 @@ public class Bob {
                 throw e;
             }
         }
-        for (TaskResult taskResult : result) {
-            if (!taskResult.isOk()) {
-                ret = false;
-                String message = taskResult.getMessage();
-                if (message == null || message.isEmpty()) {
-                    if (taskResult.getException() != null) {
-                        message = taskResult.getException().getMessage();
-                    } else {
-                        message = "undefined";
-                    }
-                }
-                errors.append(String.format("ERROR %s%s %s\n", taskResult.getTask().input(0),
-                        (taskResult.getLineNumber() != -1) ? String.format(":%d", taskResult.getLineNumber()) : "",
-                        message));
-                if (verbose) {
-                    if (taskResult.getException() != null) {
-                        errors.append("  ")
-                                .append(taskResult.getException().toString())
-                                .append("\n");
-                        StackTraceElement[] elements = taskResult
-                                .getException().getStackTrace();
-                        for (StackTraceElement element : elements) {
-                            errors.append("  ").append(element.toString())
-                                    .append("\n");
-                        }
-                    }
-                }
-            }
+        String taskErrors = getTaskErrors(result, verbose);
+        if (!taskErrors.isEmpty()) {
+            ret = false;
+            errors.append(taskErrors);
         }
         if (!ret) {
             System.out.println("\nThe build failed for the following reasons:");
@@ -0,0 +1,317 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FilenameUtils;
+
+import com.dynamo.bob.fs.DefaultFileSystem;
+import com.dynamo.bob.fs.IFileSystem;
+import com.dynamo.bob.logging.Logger;
+
+/**
+ * Long running build process that keeps a mounted and scanned project in memory
+ * and rebuilds it on request.
+ *
+ * The source tree is watched with a {@link WatchService}. Modified files only get
+ * their cached digests dropped, while created or deleted files trigger a new
+ * findSources before the next build. The build state, digest cache and builder
+ * classes are kept between builds, so only tasks whose signatures changed (and
+ * the tasks depending on their outputs) are built again.
+ *
+ * Requests are read from a socket bound to the loopback interface, one request
+ * per connection. A request is a single line with the bob commands to run, e.g.
+ * "build" or "clean build", or "shutdown" to stop the daemon. The reply is
+ * any error lines followed by a final line with either "OK" or "FAILED".
+ */
+public class BobDaemon {
+
+    private static Logger logger = Logger.getLogger(BobDaemon.class.getName());
+
+    public static final int DEFAULT_PORT = 6120;
+
+    private final Project project;
+    private final String sourceDirectory;
+    private final Set<String> skipDirs;
+    private final boolean verbose;
+    private final Path rootPath;
+
+    private WatchService watchService;
+    private ServerSocket serverSocket;
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    // Changes reported by the watcher thread, consumed before the next build
+    private final Set<String> modifiedPaths = ConcurrentHashMap.newKeySet();
+    private volatile boolean sourcesChanged = false;
+    private volatile boolean pluginsChanged = false;
+    private volatile boolean running = false;
+
+    public BobDaemon(Project project, String sourceDirectory, Set<String> skipDirs, boolean verbose) {
+        this.project = project;
+        this.sourceDirectory = sourceDirectory;
+        this.skipDirs = skipDirs;
+        this.verbose = verbose;
+        this.rootPath = Paths.get(project.getRootDirectory()).toAbsolutePath().normalize();
+        project.setReuseBuildState(true);
+    }
+
+    private String relativePath(Path path) {
+        return FilenameUtils.separatorsToUnix(rootPath.relativize(path).toString());
+    }
+
+    // True for paths in a plugins directory, at the project root or in an extension
+    private static boolean isInPluginsDir(String path) {
+        for (String segment : path.split("/")) {
+            if (segment.equals("plugins")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Same rules as the Project.Walker used by findSources
+    private boolean isSkipped(String path) {
+        if (skipDirs == null) {
+            return false;
+        }
+        for (String sd : skipDirs) {
+            if (FilenameUtils.equalsNormalized(sd, path) || FilenameUtils.wildcardMatch(path, sd + "/*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void registerTree(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                if (!d.equals(rootPath) && isSkipped(relativePath(d))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = d.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                watchedDirs.put(key, d);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watch() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException|ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = watchedDirs.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        // We lost track of the changes, start over with a full walk
+                        sourcesChanged = true;
+                        pluginsChanged = true;
+                        modifiedPaths.add("");
+                        continue;
+                    }
+
+                    Path path = dir.resolve((Path) event.context());
+                    String relativePath = relativePath(path);
+                    if (isSkipped(relativePath)) {
+                        continue;
+                    }
+                    if (isInPluginsDir(relativePath)) {
+                        pluginsChanged = true;
+                    }
+
+                    if (event.kind() == ENTRY_MODIFY) {
+                        modifiedPaths.add(relativePath);
+                    } else {
+                        sourcesChanged = true;
+                        modifiedPaths.add(relativePath);
+                        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                            try {
+                                registerTree(path);
+                            } catch (IOException e) {
+                                logger.warning("Unable to watch directory '%s': %s", path, e.getMessage());
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (!key.reset()) {
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    // Apply the changes collected by the watcher. Called on the request thread only.
+    private void applyChanges() throws IOException {
+        IFileSystem fileSystem = project.getFileSystem();
+        List<String> paths = new ArrayList<>(modifiedPaths);
+        modifiedPaths.removeAll(paths);
+        if (fileSystem instanceof DefaultFileSystem) {
+            DefaultFileSystem defaultFileSystem = (DefaultFileSystem) fileSystem;
+            for (String path : paths) {
+                if (path.isEmpty()) {
+                    // overflow, the digest cache can't be trusted
+                    defaultFileSystem.invalidateCache();
+                } else {
+                    defaultFileSystem.invalidateCache(path);
+                }
+            }
+        }
+
+        if (pluginsChanged) {
+            pluginsChanged = false;
+            project.invalidateJavaClasses();
+        }
+
+        if (sourcesChanged) {
+            sourcesChanged = false;
+            project.findSources(sourceDirectory, skipDirs);
+        }
+    }
+
+    private boolean handleRequest(String request, PrintWriter out) {
+        String[] commands = request.trim().split("\\s+");
+        if (commands.length == 1 && commands[0].equals("shutdown")) {
+            out.println("OK");
+            return false;
+        }
+        if (commands.length == 1 && commands[0].isEmpty()) {
+            commands = new String[] { "build" };
+        }
+
+        boolean ok = true;
+        long start = System.currentTimeMillis();
+        try {
+            applyChanges();
+            List<TaskResult> result = project.build(new ConsoleProgress(), commands);
+            String errors = Bob.getTaskErrors(result, verbose);
+            if (!errors.isEmpty()) {
+                ok = false;
+                out.print(errors);
+            }
+        } catch (MultipleCompileException e) {
+            ok = false;
+            for (MultipleCompileException.Info info : e.issues) {
+                out.print(Bob.logExceptionToString(info.getSeverity(), info.getResource(), info.getLineNumber(), info.getMessage()));
+            }
+        } catch (Exception e) {
+            ok = false;
+            out.println("ERROR " + e.getMessage());
+        }
+        logger.info("Request '%s' finished in %d ms", request.trim(), System.currentTimeMillis() - start);
+        out.println(ok ? "OK" : "FAILED");
+        return true;
+    }
+
+    /**
+     * Start watching the project and listening for requests
+     * @param port local port to listen to, 0 for any free port
+     * @return the port that is listened to
+     */
+    public int start(int port) throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        running = true;
+        try {
+            registerTree(rootPath);
+            serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            running = false;
+            watchService.close();
+            throw e;
+        }
+
+        Thread watcher = new Thread(this::watch, "bob-daemon-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+
+        logger.info("Bob daemon listening on port %d, watching %d directories", serverSocket.getLocalPort(), watchedDirs.size());
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Serve build requests until a shutdown request is received. The daemon
+     * must have been started.
+     */
+    public void serve() throws IOException {
+        try {
+            boolean keepRunning = true;
+            while (keepRunning) {
+                try (Socket socket = serverSocket.accept()) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+                    String request = in.readLine();
+                    if (request != null) {
+                        keepRunning = handleRequest(request, out);
+                    }
+                } catch (IOException e) {
+                    logger.warning("Failed to handle request: %s", e.getMessage());
+                }
+            }
+        } finally {
+            running = false;
+            serverSocket.close();
+            watchService.close();
+        }
+    }
+
+    /**
+     * Watch the project and serve build requests until a shutdown request is received
+     * @param port local port to listen to
+     */
+    public void run(int port) throws IOException {
+        start(port);
+        serve();
+    }
+}
@@ -0,0 +1,224 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact record of the classes found by the builder class scan, so that
+ * the scan (which loads and initializes every class in the scanned packages)
+ * can be skipped when none of the scanned jars have changed.
+ *
+ * Only class names and annotation values are stored. The classes themselves
+ * are loaded by the project on first use.
+ */
+public class BuilderClassIndex {
+
+    private static final int VERSION = 2;
+
+    public static final int KIND_BUILDER = 1;
+    public static final int KIND_BUNDLER = 2;
+    public static final int KIND_SHADER_COMPILER = 4;
+
+    public static class Entry {
+        public String className;
+        public int kind;
+
+        // BuilderParams
+        public String[] inExts = new String[0];
+        public String outExt = "";
+        public int createOrder;
+        public boolean ignoreTaskAutoCreation;
+        public boolean serialTaskCreation;
+
+        // ProtoParams, null if not a proto builder
+        public String messageClass;
+        public String srcClass;
+
+        public boolean isBuilder() {
+            return (kind & KIND_BUILDER) != 0;
+        }
+
+        public boolean isBundler() {
+            return (kind & KIND_BUNDLER) != 0;
+        }
+
+        public boolean isShaderCompiler() {
+            return (kind & KIND_SHADER_COMPILER) != 0;
+        }
+    }
+
+    private final String key;
+    private final List<Entry> entries = new ArrayList<>();
+
+    public BuilderClassIndex(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    /**
+     * Entries in the order they were scanned. Later entries take precedence
+     * when several builders register the same extension.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Create the index key for a set of jars. The key is a hash of the contents of
+     * the jars, in order, so a changed jar is detected even if it keeps its size and
+     * modification time (e.g. when copied with preserved timestamps).
+     * @param jars the jars that are scanned
+     * @return the key, or null if any of the class path entries isn't a jar file
+     */
+    public static String createKey(List<File> jars) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        for (File jar : jars) {
+            if (!jar.isFile() || !jar.getName().endsWith(".jar")) {
+                return null;
+            }
+            // Separate the jars, so that content can't move from one jar to the next
+            digest.update(String.format("%d;", jar.length()).getBytes(StandardCharsets.UTF_8));
+            try (InputStream is = new FileInputStream(jar)) {
+                int n;
+                while ((n = is.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static void writeString(DataOutputStream os, String s) throws IOException {
+        os.writeBoolean(s != null);
+        if (s != null) {
+            os.writeUTF(s);
+        }
+    }
+
+    private static String readString(DataInputStream is) throws IOException {
+        return is.readBoolean() ? is.readUTF() : null;
+    }
+
+    /**
+     * Save the index. The file is written to a unique temporary file in the same
+     * directory and then atomically moved in place, so that concurrent bob processes
+     * never see a partially written index or write to each other's temporary file.
+     * @param file file to write to
+     */
+    public void save(File file) throws IOException {
+        Path tmp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            write(tmp.toFile());
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void write(File file) throws IOException {
+        try (DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            os.writeInt(VERSION);
+            os.writeUTF(key);
+            os.writeInt(entries.size());
+            for (Entry entry : entries) {
+                os.writeUTF(entry.className);
+                os.writeByte(entry.kind);
+                os.writeByte(entry.inExts.length);
+                for (String inExt : entry.inExts) {
+                    os.writeUTF(inExt);
+                }
+                os.writeUTF(entry.outExt);
+                os.writeInt(entry.createOrder);
+                os.writeBoolean(entry.ignoreTaskAutoCreation);
+                os.writeBoolean(entry.serialTaskCreation);
+                writeString(os, entry.messageClass);
+                writeString(os, entry.srcClass);
+            }
+        }
+    }
+
+    /**
+     * Load an index
+     * @param file file to read from
+     * @param key the expected key
+     * @return the index, or null if it's missing, unreadable or has a different key
+     */
+    public static BuilderClassIndex load(File file, String key) {
+        if (key == null || !file.isFile()) {
+            return null;
+        }
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (is.readInt() != VERSION || !is.readUTF().equals(key)) {
+                return null;
+            }
+            BuilderClassIndex index = new BuilderClassIndex(key);
+            int count = is.readInt();
+            for (int i = 0; i < count; ++i) {
+                Entry entry = new Entry();
+                entry.className = is.readUTF();
+                entry.kind = is.readByte();
+                entry.inExts = new String[is.readByte()];
+                for (int j = 0; j < entry.inExts.length; ++j) {
+                    entry.inExts[j] = is.readUTF();
+                }
+                entry.outExt = is.readUTF();
+                entry.createOrder = is.readInt();
+                entry.ignoreTaskAutoCreation = is.readBoolean();
+                entry.serialTaskCreation = is.readBoolean();
+                entry.messageClass = readString(is);
+                entry.srcClass = readString(is);
+                index.add(entry);
+            }
+            return index;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
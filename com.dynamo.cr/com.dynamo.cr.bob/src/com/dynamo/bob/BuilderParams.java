@@ -61,4 +61,12 @@ public @interface BuilderParams {
      * @return if task should be ignored
      */
     boolean ignoreTaskAutoCreation() default false;
+
+    /**
+     * Get bool that shows if tasks using this builder must be created one
+     * at a time, in input order. Builders that claim generated resources
+     * need this, so that the same task owns a generated resource in every build.
+     * @return if tasks should be created serially
+     */
+    boolean serialTaskCreation() default false;
 }
@@ -46,11 +46,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -84,6 +89,7 @@ import com.dynamo.bob.fs.FileSystemWalker;
 import com.dynamo.bob.fs.IFileSystem;
 import com.dynamo.bob.fs.IResource;
 import com.dynamo.bob.fs.ZipMountPoint;
+import com.dynamo.bob.font.Fontc;
 import com.dynamo.bob.pipeline.ExtenderUtil;
 import com.dynamo.bob.pipeline.IShaderCompiler;
 import com.dynamo.bob.pipeline.ShaderCompilers;
@@ -93,6 +99,7 @@ import com.dynamo.bob.util.BobProjectProperties;
 import com.dynamo.bob.util.LibraryUtil;
 import com.dynamo.bob.util.ReportGenerator;
 import com.dynamo.bob.util.HttpUtil;
+import com.dynamo.bob.util.BuildTracer;
 import com.dynamo.bob.util.TimeProfiler;
 import com.dynamo.bob.util.StringUtil;
 import com.dynamo.graphics.proto.Graphics.TextureProfiles;
@@ -122,13 +129,20 @@ public class Project {
 
     private ExecutorService executor = Executors.newCachedThreadPool();
     private ResourceCache resourceCache = new ResourceCache();
+    // Data shared between builders during a single build, see getBuildScopedData()
+    private Map<String, Object> buildScopedData = new ConcurrentHashMap<>();
     private IFileSystem fileSystem;
-    private Map<String, Class<? extends Builder<?>>> extToBuilder = new HashMap<String, Class<? extends Builder<?>>>();
+    // Builders are registered by class name and only loaded on first use of an extension
+    private Map<String, BuilderClassIndex.Entry> extToBuilderEntry = new HashMap<>();
+    private Map<String, Class<? extends Builder<?>>> extToBuilder = new ConcurrentHashMap<String, Class<? extends Builder<?>>>();
     private Map<String, String> inextToOutext = new HashMap<>();
-    private List<Class<? extends Builder<?>>> ignoreTaskAutoCreation = new ArrayList<Class<? extends Builder<?>>>();
+    private Set<String> ignoreTaskAutoCreation = new HashSet<>();
     private List<String> inputs = new ArrayList<String>();
     private HashMap<String, EnumSet<OutputFlags>> outputs = new HashMap<String, EnumSet<OutputFlags>>();
-    private HashMap<String, Task<?>> tasks;
+    private Map<String, Task<?>> tasks;
+    // Tasks being created, or already created, keyed like the tasks map. Lets concurrent
+    // createTask calls for the same resource wait for a single builder.create()
+    private Map<String, FutureTask<Task<?>>> taskCreations;
     private State state;
     private String rootDirectory = ".";
     private String buildDirectory = "build";
@@ -141,13 +155,22 @@ public class Project {
 
     private BobProjectProperties projectProperties;
     private Publisher publisher;
-    private Map<String, Map<Long, IResource>> hashToResource = new HashMap<>();
+    private Map<String, Map<Long, IResource>> hashToResource = new ConcurrentHashMap<>();
 
     private TextureProfiles textureProfiles;
-    private List<Class<? extends IBundler>> bundlerClasses = new ArrayList<>();
+    private List<String> bundlerClasses = new ArrayList<>();
     private ClassLoader classLoader = null;
 
-    private List<Class<? extends IShaderCompiler>> shaderCompilerClasses = new ArrayList();
+    private List<String> shaderCompilerClasses = new ArrayList<>();
+    // Index being recorded by the current full class scan, if any
+    private BuilderClassIndex scanIndex = null;
+    // Class loader used to load the registered classes on first use
+    private ClassLoader registeredClassLoader = null;
+
+    // When set, the build state, digest cache and scanned classes are kept
+    // in memory between calls to build() instead of being reloaded (see BobDaemon)
+    private boolean reuseBuildState = false;
+    private boolean javaClassesScanned = false;
 
     public Project(IFileSystem fileSystem) {
         this.fileSystem = fileSystem;
@@ -180,6 +203,28 @@ public class Project {
         this.fileSystem.close();
     }
 
+    /**
+     * Keep the build state, file digest cache and scanned builder classes in memory
+     * between builds. Used by long running processes that build the same project
+     * several times.
+     * @param reuseBuildState true to reuse the state from the previous build
+     */
+    public void setReuseBuildState(boolean reuseBuildState) {
+        this.reuseBuildState = reuseBuildState;
+    }
+
+    /**
+     * Force a new scan of the builder classes on the next build, e.g. when
+     * pipeline plugins have changed.
+     */
+    public void invalidateJavaClasses() {
+        this.javaClassesScanned = false;
+    }
+
+    public IFileSystem getFileSystem() {
+        return fileSystem;
+    }
+
     public String getRootDirectory() {
         return rootDirectory;
     }
@@ -212,6 +257,10 @@ public class Project {
         return System.getProperty(name);
     }
 
+    public ResourceCache getResourceCache() {
+        return resourceCache;
+    }
+
     public String getLocalResourceCacheDirectory() {
         return option("resource-cache-local", null);
     }
@@ -317,9 +366,9 @@ public class Project {
         return null;
     }
 
-    @SuppressWarnings("unchecked")
     private void doScan(IClassScanner scanner, Set<String> classNames) {
         boolean is_bob_light = getManifestInfo("is-bob-light") != null;
+        registeredClassLoader = scanner.getClassLoader();
 
         for (String className : classNames) {
             // Ignore TexcLibrary to avoid it being loaded and initialized
@@ -332,48 +381,86 @@ public class Project {
             if (!skip) {
                 try {
                     Class<?> klass = Class.forName(className, true, scanner.getClassLoader());
-                    BuilderParams builderParams = klass.getAnnotation(BuilderParams.class);
-                    if (builderParams != null) {
-                        for (String inExt : builderParams.inExts()) {
-                            extToBuilder.put(inExt, (Class<? extends Builder<?>>) klass);
-                            inextToOutext.put(inExt, builderParams.outExt());
-                            if (builderParams.ignoreTaskAutoCreation()) {
-                                ignoreTaskAutoCreation.add((Class<? extends Builder<?>>) klass);
-                            }
+                    BuilderClassIndex.Entry entry = createIndexEntry(klass);
+                    if (entry != null) {
+                        registerClass(entry);
+                        if (scanIndex != null) {
+                            scanIndex.add(entry);
                         }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
 
-                        ProtoParams protoParams = klass.getAnnotation(ProtoParams.class);
-                        if (protoParams != null) {
-                            ProtoBuilder.addMessageClass(builderParams.outExt(), protoParams.messageClass());
+    private static BuilderClassIndex.Entry createIndexEntry(Class<?> klass) {
+        BuilderClassIndex.Entry entry = new BuilderClassIndex.Entry();
+        entry.className = klass.getName();
 
-                            for (String ext : builderParams.inExts()) {
-                                Class<?> inputClass = protoParams.srcClass();
-                                if (inputClass != null) {
-                                    ProtoBuilder.addMessageClass(ext, protoParams.srcClass());
-                                }
-                            }
-                        }
-                    }
+        BuilderParams builderParams = klass.getAnnotation(BuilderParams.class);
+        if (builderParams != null) {
+            entry.kind |= BuilderClassIndex.KIND_BUILDER;
+            entry.inExts = builderParams.inExts();
+            entry.outExt = builderParams.outExt();
+            entry.createOrder = builderParams.createOrder();
+            entry.ignoreTaskAutoCreation = builderParams.ignoreTaskAutoCreation();
+            entry.serialTaskCreation = builderParams.serialTaskCreation();
 
-                    if (IBundler.class.isAssignableFrom(klass))
-                    {
-                        if (!klass.equals(IBundler.class)) {
-                            bundlerClasses.add( (Class<? extends IBundler>) klass);
-                        }
-                    }
+            ProtoParams protoParams = klass.getAnnotation(ProtoParams.class);
+            if (protoParams != null) {
+                entry.messageClass = protoParams.messageClass().getName();
+                entry.srcClass = protoParams.srcClass().getName();
+            }
+        }
 
-                    if (IShaderCompiler.class.isAssignableFrom(klass))
-                    {
-                        if (!klass.equals(IShaderCompiler.class)) {
-                            shaderCompilerClasses.add((Class<? extends IShaderCompiler>) klass);
-                        }
-                    }
+        if (IBundler.class.isAssignableFrom(klass) && !klass.equals(IBundler.class)) {
+            entry.kind |= BuilderClassIndex.KIND_BUNDLER;
+        }
 
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+        if (IShaderCompiler.class.isAssignableFrom(klass) && !klass.equals(IShaderCompiler.class)) {
+            entry.kind |= BuilderClassIndex.KIND_SHADER_COMPILER;
+        }
+
+        return entry.kind != 0 ? entry : null;
+    }
+
+    // Register a scanned class by name, the class itself is loaded on first use
+    private void registerClass(BuilderClassIndex.Entry entry) {
+        if (entry.isBuilder()) {
+            for (String inExt : entry.inExts) {
+                extToBuilderEntry.put(inExt, entry);
+                extToBuilder.remove(inExt);
+                inextToOutext.put(inExt, entry.outExt);
+                if (entry.ignoreTaskAutoCreation) {
+                    ignoreTaskAutoCreation.add(entry.className);
+                }
+            }
+
+            if (entry.messageClass != null) {
+                ProtoBuilder.addMessageClassName(entry.outExt, entry.messageClass, registeredClassLoader);
+                for (String ext : entry.inExts) {
+                    ProtoBuilder.addMessageClassName(ext, entry.srcClass, registeredClassLoader);
                 }
             }
         }
+
+        if (entry.isBundler()) {
+            bundlerClasses.add(entry.className);
+        }
+
+        if (entry.isShaderCompiler()) {
+            shaderCompilerClasses.add(entry.className);
+        }
+    }
+
+    private Class<?> loadClass(String className) {
+        try {
+            return Class.forName(className, true, registeredClassLoader);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     static String[][] extensionMapping = new String[][] {
@@ -411,12 +498,24 @@ public class Project {
         return inExt;
     }
 
+    @SuppressWarnings("unchecked")
     private Class<? extends Builder<?>> getBuilderFromExtension(String input) {
         String ext = "." + FilenameUtils.getExtension(input);
         Class<? extends Builder<?>> builderClass = extToBuilder.get(ext);
+        if (builderClass == null) {
+            BuilderClassIndex.Entry entry = extToBuilderEntry.get(ext);
+            if (entry != null) {
+                builderClass = (Class<? extends Builder<?>>) loadClass(entry.className);
+                extToBuilder.put(ext, builderClass);
+            }
+        }
         return builderClass;
     }
 
+    private BuilderClassIndex.Entry getBuilderEntry(String input) {
+        return extToBuilderEntry.get("." + FilenameUtils.getExtension(input));
+    }
+
     /**
      * Returns builder class for resource
      * @param input input resource
@@ -470,6 +569,34 @@ public class Project {
         if (task != null) {
             return task;
         }
+
+        FutureTask<Task<?>> creation = new FutureTask<Task<?>>(() -> doCreateTask(key, inputResource, builderClass));
+        FutureTask<Task<?>> existing = taskCreations.putIfAbsent(key, creation);
+        if (existing == null) {
+            existing = creation;
+            creation.run();
+        }
+
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompileExceptionError) {
+                throw (CompileExceptionError) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private Task<?> doCreateTask(String key, IResource inputResource, Class<? extends Builder<?>> builderClass) throws CompileExceptionError {
+        Task<?> task;
         TimeProfiler.start();
         TimeProfiler.addData("type", "createTask");
         Builder<?> builder;
@@ -499,13 +626,11 @@ public class Project {
 
             @Override
             public int compare(String i1, String i2) {
-                Class<? extends Builder<?>> b1 = getBuilderFromExtension(i1);
-                Class<? extends Builder<?>> b2 = getBuilderFromExtension(i2);
+                // Sort on the indexed create order, without loading the builder classes
+                BuilderClassIndex.Entry p1 = getBuilderEntry(i1);
+                BuilderClassIndex.Entry p2 = getBuilderEntry(i2);
 
-                BuilderParams p1 = b1.getAnnotation(BuilderParams.class);
-                BuilderParams p2 = b2.getAnnotation(BuilderParams.class);
-
-                return p1.createOrder() - p2.createOrder();
+                return p1.createOrder - p2.createOrder;
             }
         });
         return sortedInputs;
@@ -543,14 +668,110 @@ public class Project {
         }
     }
 
+    /**
+     * Create the tasks for a list of inputs using up to max-cpu-threads threads.
+     * Inputs are handed out in list order, and if several creations fail the
+     * error of the first input in the list is thrown, same as a serial loop would.
+     * Inputs of builders with serialTaskCreation are created one at a time on the
+     * calling thread, in list order, while the other inputs are created in parallel.
+     */
+    private void createTasksInParallel(final List<String> inputs) throws CompileExceptionError {
+        final List<Integer> serialInputs = new ArrayList<>();
+        final List<Integer> parallelInputs = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); ++i) {
+            if (getBuilderEntry(inputs.get(i)).serialTaskCreation) {
+                serialInputs.add(i);
+            } else {
+                parallelInputs.add(i);
+            }
+        }
+
+        int threadCount = Math.min(getMaxCpuThreads(), parallelInputs.size());
+        if (threadCount <= 1) {
+            for (String input : inputs) {
+                createTask(input, getBuilderFromExtension(input));
+            }
+            return;
+        }
+
+        final AtomicInteger nextInput = new AtomicInteger();
+        // Index of the first input that failed so far
+        final AtomicInteger firstError = new AtomicInteger(Integer.MAX_VALUE);
+        final Map<Integer, Exception> errors = new ConcurrentHashMap<>();
+        // The create task scopes of the worker threads are part of the calling thread's profile
+        final Object profilerScope = TimeProfiler.getCurrentScope();
+        List<Future<Void>> futures = new ArrayList<>(threadCount);
+        for (int t = 0; t < threadCount; ++t) {
+            futures.add(executor.submit(() -> {
+                TimeProfiler.attachThread(profilerScope);
+                try {
+                    int next;
+                    // Stop handing out inputs after the first failure. Inputs before the failing
+                    // one have already been handed out, so the first error is still found.
+                    while ((next = nextInput.getAndIncrement()) < parallelInputs.size()) {
+                        int i = parallelInputs.get(next);
+                        if (i > firstError.get()) {
+                            break;
+                        }
+                        createInputTask(inputs, i, errors, firstError);
+                    }
+                } finally {
+                    TimeProfiler.detachThread();
+                }
+                return null;
+            }));
+        }
+
+        for (int i : serialInputs) {
+            if (i > firstError.get()) {
+                break;
+            }
+            createInputTask(inputs, i, errors, firstError);
+        }
+
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            Exception error = errors.get(Collections.min(errors.keySet()));
+            if (error instanceof CompileExceptionError) {
+                throw (CompileExceptionError) error;
+            }
+            throw (RuntimeException) error;
+        }
+    }
+
+    // Create the task of inputs[i], recording the error if it fails
+    private void createInputTask(List<String> inputs, int i, Map<Integer, Exception> errors, AtomicInteger firstError) {
+        String input = inputs.get(i);
+        try {
+            createTask(input, getBuilderFromExtension(input));
+        } catch (CompileExceptionError|RuntimeException e) {
+            errors.put(i, e);
+            firstError.accumulateAndGet(i, Math::min);
+        }
+    }
+
     private void createTasks() throws CompileExceptionError {
-        tasks = new HashMap<String, Task<?>>();
+        tasks = new ConcurrentHashMap<String, Task<?>>();
+        taskCreations = new ConcurrentHashMap<String, FutureTask<Task<?>>>();
+        // Generated resources are claimed by the tasks that create them, in each build
+        hashToResource.clear();
         List<String> sortedInputs = sortInputs(); // from findSources
 
         // To currently know the output resources, we need to parse the main.collectionc
         // We would need to alter that to get a correct behavior (e.g. using GameProjectBuilder.findResources(this, rootNode))
 
-        // create tasks for inputs that are not excluded
+        // collect the inputs that are not excluded
+        List<String> createInputs = new ArrayList<String>();
         for (String input : sortedInputs) {
             boolean skipped = false;
             // Ignore for resources.
@@ -562,12 +783,25 @@ public class Project {
                 }
             }
             if (!skipped) {
-                Class<? extends Builder<?>> builderClass = getBuilderFromExtension(input);
-                if (!ignoreTaskAutoCreation.contains(builderClass)) {
-                    Task<?> task = createTask(input, builderClass);
+                BuilderClassIndex.Entry entry = getBuilderEntry(input);
+                if (!ignoreTaskAutoCreation.contains(entry.className)) {
+                    createInputs.add(input);
                 }
             }
         }
+
+        // Tasks with the same create order are created in parallel, and a create order
+        // group is only started once all tasks of the previous groups have been created
+        int start = 0;
+        while (start < createInputs.size()) {
+            int createOrder = getBuilderEntry(createInputs.get(start)).createOrder;
+            int end = start + 1;
+            while (end < createInputs.size() && getBuilderEntry(createInputs.get(end)).createOrder == createOrder) {
+                ++end;
+            }
+            createTasksInParallel(createInputs.subList(start, end));
+            start = end;
+        }
     }
 
     private void logWarning(String fmt, Object... args) {
@@ -718,6 +952,11 @@ public class Project {
                 reportFiles.add(new File(this.option("build-report-html", "report.html")));
                 TimeProfiler.init(reportFiles, true);
             }
+            if (this.hasOption("build-trace")) {
+                BuildTracer.init(new File(this.option("build-trace", "trace.json")), true);
+            }
+            // Tasks may have been created outside of a build, and their data can be out of date
+            buildScopedData.clear();
             loadProjectFile();
             String title = projectProperties.getStringValue("project", "title");
             if (title != null && title.isEmpty()) {
@@ -740,10 +979,25 @@ public class Project {
         } catch (Throwable e) {
             throw new CompileExceptionError(null, 0, e.getMessage(), e);
         } finally {
+            buildScopedData.clear();
             TimeProfiler.createReport(true);
+            BuildTracer.finish(true);
         }
     }
 
+    /**
+     * Get data that is shared between builders during a single build, such as
+     * a cache of something that many resources read. The data is created on
+     * first use and released when the build finishes.
+     * @param key key of the data, e.g. the name of the class that uses it
+     * @param factory creates the data on first use
+     * @return the data
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getBuildScopedData(String key, Supplier<T> factory) {
+        return (T) buildScopedData.computeIfAbsent(key, k -> factory.get());
+    }
+
     /**
      * Mounts all the mount point associated with the project.
      * @param resourceScanner scanner to use for finding resources in the java class path
@@ -840,8 +1094,10 @@ public class Project {
         }
     }
 
+    @SuppressWarnings("unchecked")
     private Class<? extends IBundler> getBundlerClass(Platform platform) {
-        for (Class<? extends IBundler> klass : bundlerClasses) {
+        for (String className : bundlerClasses) {
+            Class<? extends IBundler> klass = (Class<? extends IBundler>) loadClass(className);
             BundlerParams bundlerParams = klass.getAnnotation(BundlerParams.class);
             if (bundlerParams == null) {
                 logWarning("Bundler class '%s' has no BundlerParams", klass.getName());
@@ -889,8 +1145,10 @@ public class Project {
         m.done();
     }
 
+    @SuppressWarnings("unchecked")
     private Class<? extends IShaderCompiler> getShaderCompilerClass(Platform platform) {
-        for (Class<? extends IShaderCompiler> klass : shaderCompilerClasses) {
+        for (String className : shaderCompilerClasses) {
+            Class<? extends IShaderCompiler> klass = (Class<? extends IShaderCompiler>) loadClass(className);
             BundlerParams bundlerParams = klass.getAnnotation(BundlerParams.class);
             if (bundlerParams == null) {
                 continue;
@@ -1283,7 +1541,7 @@ public class Project {
         logger.info("Set %s to '%s'", variable, newPath);
     }
 
-    private void registerPipelinePlugins() throws CompileExceptionError {
+    private List<File> registerPipelinePlugins() throws CompileExceptionError {
         // Find the plugins and register them now, before we're building the content
         BundleHelper.extractPipelinePlugins(this, getPluginsDirectory());
         List<File> plugins = BundleHelper.getPipelinePlugins(this, getPluginsDirectory());
@@ -1309,6 +1567,7 @@ public class Project {
             logger.info("  %s", relativePath);
         }
         logger.info("");
+        return plugins;
     }
 
     private boolean shouldBuildArtifact(String artifact) {
@@ -1323,11 +1582,59 @@ public class Project {
     }
 
     public void scanJavaClasses() throws IOException, CompileExceptionError {
+        if (reuseBuildState && javaClassesScanned) {
+            return;
+        }
+        // A rescan registers every class again
+        bundlerClasses.clear();
+        shaderCompilerClasses.clear();
         createClassLoaderScanner();
-        registerPipelinePlugins();
-        scan(scanner, "com.dynamo.bob");
-        scan(scanner, "com.dynamo.bob.pipeline");
-        scan(scanner, "com.defold.extension.pipeline");
+        List<File> plugins = registerPipelinePlugins();
+
+        // Reuse the result of the last scan if bob.jar and the plugins are unchanged
+        String indexKey = getClassIndexKey(plugins);
+        File indexFile = new File(FilenameUtils.concat(FilenameUtils.concat(rootDirectory, buildDirectory), "_BobClassIndex_"));
+        BuilderClassIndex index = BuilderClassIndex.load(indexFile, indexKey);
+        if (index != null) {
+            registeredClassLoader = scanner.getClassLoader();
+            for (BuilderClassIndex.Entry entry : index.getEntries()) {
+                registerClass(entry);
+            }
+        } else {
+            scanIndex = new BuilderClassIndex(indexKey);
+            try {
+                scan(scanner, "com.dynamo.bob");
+                scan(scanner, "com.dynamo.bob.pipeline");
+                scan(scanner, "com.defold.extension.pipeline");
+            } finally {
+                index = scanIndex;
+                scanIndex = null;
+            }
+            if (indexKey != null && indexFile.getParentFile().isDirectory()) {
+                try {
+                    index.save(indexFile);
+                } catch (IOException e) {
+                    logWarning("Unable to save class index: %s", e.getMessage());
+                }
+            }
+        }
+        javaClassesScanned = true;
+    }
+
+    // The scanned jars: bob.jar itself and the pipeline plugins
+    private String getClassIndexKey(List<File> plugins) {
+        if (getClassLoader() != Project.class.getClassLoader()) {
+            // Custom class loader (e.g. the editor), we don't know what it contains
+            return null;
+        }
+        try {
+            List<File> jars = new ArrayList<>();
+            jars.add(new File(Project.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+            jars.addAll(plugins);
+            return BuilderClassIndex.createKey(jars);
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     private Future buildRemoteEngine(IProgress monitor, ExecutorService executor) {
@@ -1419,6 +1726,11 @@ public class Project {
         TimeProfiler.stop();
         mrep.done();
 
+        if (this.publisher != null) {
+            // The publisher runs as part of the game project task, its progress doesn't add to the build progress
+            this.publisher.setProgress(m.subProgress(0));
+        }
+
         BundleHelper.throwIfCanceled(monitor);
         m.beginTask("Building...", tasks.size());
         TimeProfiler.start("Build tasks");
@@ -1493,9 +1805,11 @@ public class Project {
         TimeProfiler.start("Prepare cache");
         resourceCache.init(getLocalResourceCacheDirectory(), getRemoteResourceCacheDirectory());
         resourceCache.setRemoteAuthentication(getRemoteResourceCacheUser(), getRemoteResourceCachePass());
-        fileSystem.loadCache();
         IResource stateResource = fileSystem.get(FilenameUtils.concat(buildDirectory, "_BobBuildState_"));
-        state = State.load(stateResource);
+        if (state == null || !reuseBuildState) {
+            fileSystem.loadCache();
+            state = State.load(stateResource);
+        }
         TimeProfiler.stop();
         List<TaskResult> result = new ArrayList<TaskResult>();
 
@@ -1610,8 +1924,10 @@ public class Project {
             allOutputs.addAll(task.getOutputs());
         }
         tasks.clear();
+        taskCreations.clear();
 
         TextureGenerator.maxThreads = getMaxCpuThreads();
+        Fontc.maxThreads = getMaxCpuThreads();
 
         // Keep track of the paths for all outputs
         outputs = new HashMap<>(allOutputs.size());
@@ -1619,6 +1935,12 @@ public class Project {
             outputs.put(res.getAbsPath(), EnumSet.noneOf(OutputFlags.class));
         }
 
+        // Time each output was completed, used to trace how long a task waited
+        // after all of its inputs were generated
+        final boolean trace = BuildTracer.isEnabled();
+        final long runStartTime = System.nanoTime();
+        Map<IResource, Long> outputCompletionTimes = new HashMap<>();
+
         // This flag is set to true as soon as one task has failed. This will
         // break out of the outer loop after the remaining tasks has been tried once.
         // NOTE The underlying problem is that if a task fails and has dependent
@@ -1677,6 +1999,12 @@ run:
                         // output files to the completed output set
                         completedTasks.add(task);
                         completedOutputs.addAll(outputResources);
+                        if (trace) {
+                            long now = System.nanoTime();
+                            for (IResource r : outputResources) {
+                                outputCompletionTimes.put(r, now);
+                            }
+                        }
                     }
 
                     monitor.worked(1);
@@ -1686,6 +2014,18 @@ run:
                 TimeProfiler.start(task.getName());
                 TimeProfiler.addData("output", task.getOutputsString());
                 TimeProfiler.addData("type", "buildTask");
+                if (trace) {
+                    long readyTime = runStartTime;
+                    for (IResource input : task.getInputs()) {
+                        Long t = outputCompletionTimes.get(input);
+                        if (t != null && t > readyTime) {
+                            readyTime = t;
+                        }
+                    }
+                    BuildTracer.addData("inputs", StringUtil.truncate(task.getInputsString(), 1000));
+                    BuildTracer.addData("cacheable", task.isCacheable() && resourceCache.isCacheEnabled());
+                    BuildTracer.addData("queueWaitMs", (System.nanoTime() - readyTime) / 1000000.0);
+                }
 
                 completedTasks.add(task);
 
@@ -1748,6 +2088,12 @@ run:
                         }
                     }
                     completedOutputs.addAll(outputResources);
+                    if (trace) {
+                        long now = System.nanoTime();
+                        for (IResource r : outputResources) {
+                            outputCompletionTimes.put(r, now);
+                        }
+                    }
                     TimeProfiler.stop();
 
                 } catch (CompileExceptionError e) {
@@ -1791,6 +2137,7 @@ run:
             }
             buildTasks.addAll(this.getTasks());
             tasks.clear();
+            taskCreations.clear();
         }
         return result;
     }
@@ -2099,8 +2446,7 @@ run:
         List<String> results = new ArrayList<>();
         for (String path : inputs) {
             String ext = "." + FilenameUtils.getExtension(path);
-            Class<? extends Builder<?>> builderClass = extToBuilder.get(ext);
-            if (builderClass != null)
+            if (extToBuilderEntry.containsKey(ext))
             {
                 results.add(path);
             }
@@ -2145,15 +2491,21 @@ run:
     }
 
     public IResource createGeneratedResource(long hash, String suffix) {
-        Map<Long, IResource> submap = hashToResource.get(suffix);
-        if (submap == null) {
-            submap = new HashMap<>();
-            hashToResource.put(suffix, submap);
-        }
+        Map<Long, IResource> submap = hashToResource.computeIfAbsent(suffix, s -> new ConcurrentHashMap<>());
+        return submap.computeIfAbsent(hash, h -> fileSystem.get(String.format("_generated_%x.%s", hash, suffix)).output());
+    }
 
+    /**
+     * Create a generated resource, unless it has already been created. The check
+     * and the creation are atomic, so exactly one caller gets the new resource.
+     * @param hash hash of the resource content
+     * @param suffix resource type
+     * @return the new resource, or null if it already existed
+     */
+    public IResource createGeneratedResourceIfAbsent(long hash, String suffix) {
+        Map<Long, IResource> submap = hashToResource.computeIfAbsent(suffix, s -> new ConcurrentHashMap<>());
         IResource genResource = fileSystem.get(String.format("_generated_%x.%s", hash, suffix)).output();
-        submap.put(hash, genResource);
-        return genResource;
+        return submap.putIfAbsent(hash, genResource) == null ? genResource : null;
     }
 
     public static String stripLeadingSlash(String path) {
@@ -2213,8 +2565,13 @@ run:
         }, result);
     }
 
+    /**
+     * Get the created tasks, sorted on input path and builder so that the order
+     * doesn't depend on which thread happened to create a task first.
+     * @return list of tasks
+     */
     public List<Task<?>> getTasks() {
-        return Collections.unmodifiableList(new ArrayList(this.tasks.values()));
+        return Collections.unmodifiableList(new ArrayList<Task<?>>(new TreeMap<String, Task<?>>(this.tasks).values()));
     }
 
     public TextureProfiles getTextureProfiles() {
@@ -16,9 +16,11 @@ package com.dynamo.bob;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.AbstractMap.SimpleEntry;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.dynamo.bob.fs.IResource;
 import com.dynamo.bob.pipeline.ProtoUtil;
@@ -29,7 +31,12 @@ public abstract class ProtoBuilder<B extends GeneratedMessageV3.Builder<B>> exte
 
     private ProtoParams protoParams;
 
-    private static Map<String, Class<? extends GeneratedMessageV3>> extToMessageClass = new HashMap<String, Class<? extends GeneratedMessageV3>>();
+    // Concurrent since builders are created from several threads during task creation
+    private static Map<String, Class<? extends GeneratedMessageV3>> extToMessageClass = new ConcurrentHashMap<String, Class<? extends GeneratedMessageV3>>();
+    private static Map<String, Map.Entry<String, ClassLoader>> extToMessageClassName = new ConcurrentHashMap<String, Map.Entry<String, ClassLoader>>();
+
+    // Build scoped data key of the messages written by builders, see setBuiltMessage()
+    private static final String BUILT_MESSAGES_KEY = ProtoBuilder.class.getName() + ".builtMessages";
 
     public ProtoBuilder() {
         protoParams = getClass().getAnnotation(ProtoParams.class);
@@ -42,8 +49,57 @@ public abstract class ProtoBuilder<B extends GeneratedMessageV3.Builder<B>> exte
         extToMessageClass.put(ext, klass);
     }
 
+    /**
+     * Register a message class by name. The class is loaded the first time
+     * the extension is looked up.
+     */
+    static public void addMessageClassName(String ext, String className, ClassLoader classLoader) {
+        extToMessageClass.remove(ext);
+        extToMessageClassName.put(ext, new SimpleEntry<String, ClassLoader>(className, classLoader));
+    }
+
+    @SuppressWarnings("unchecked")
     static public Class<? extends GeneratedMessageV3> getMessageClassFromExt(String ext) {
-        return extToMessageClass.get(ext);
+        Class<? extends GeneratedMessageV3> klass = extToMessageClass.get(ext);
+        if (klass == null) {
+            Map.Entry<String, ClassLoader> name = extToMessageClassName.get(ext);
+            if (name != null) {
+                try {
+                    klass = (Class<? extends GeneratedMessageV3>) Class.forName(name.getKey(), true, name.getValue());
+                } catch (ClassNotFoundException e) {
+                    throw new RuntimeException(e);
+                }
+                extToMessageClass.put(ext, klass);
+            }
+        }
+        return klass;
+    }
+
+    private static Map<String, SoftReference<Message>> getBuiltMessages(Project project) {
+        return project.getBuildScopedData(BUILT_MESSAGES_KEY, ConcurrentHashMap<String, SoftReference<Message>>::new);
+    }
+
+    /**
+     * Remember the message written to an output during the current build, so that
+     * readers of the output later in the build don't have to read and parse it again.
+     * The message is softly referenced and released when the build finishes.
+     * @param project project being built
+     * @param output output resource the message was written to
+     * @param message the written message
+     */
+    static public void setBuiltMessage(Project project, IResource output, Message message) {
+        getBuiltMessages(project).put(output.getAbsPath(), new SoftReference<Message>(message));
+    }
+
+    /**
+     * Get the message written to an output during the current build
+     * @param project project being built
+     * @param output output resource
+     * @return the message, or null if it wasn't built in this build or has been collected
+     */
+    static public Message getBuiltMessage(Project project, IResource output) {
+        SoftReference<Message> message = getBuiltMessages(project).get(output.getAbsPath());
+        return message != null ? message.get() : null;
     }
 
     static public boolean supportsType(String ext) {
@@ -96,6 +152,7 @@ public abstract class ProtoBuilder<B extends GeneratedMessageV3.Builder<B>> exte
         msg.writeTo(out);
         out.close();
         task.output(0).setContent(out.toByteArray());
+        setBuiltMessage(project, task.output(0), msg);
     }
 
 }
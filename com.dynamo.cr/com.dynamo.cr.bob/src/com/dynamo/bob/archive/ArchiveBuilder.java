@@ -24,6 +24,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -61,6 +62,8 @@ public class ArchiveBuilder {
     public static final int HASH_MAX_LENGTH = 64; // 512 bits
     public static final int HASH_LENGTH = 20;
     public static final int MD5_HASH_DIGEST_BYTE_LENGTH = 16; // 128 bits
+    // Resources are hashed in chunks of this size as they are written to the archive
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
 
     private List<ArchiveEntry> entries = new ArrayList<ArchiveEntry>();
     private List<ArchiveEntry> excludedEntries = new ArrayList<ArchiveEntry>();
@@ -160,6 +163,24 @@ public class ArchiveBuilder {
         return excludedEntries;
     }
 
+    // Write the buffer in chunks, and update the digest with each chunk right after
+    // it's written while it's still in the cpu cache
+    private static void writeAndHash(RandomAccessFile outFile, byte[] buffer, MessageDigest digest) throws IOException {
+        for (int offset = 0; offset < buffer.length; offset += WRITE_CHUNK_SIZE) {
+            int length = Math.min(WRITE_CHUNK_SIZE, buffer.length - offset);
+            outFile.write(buffer, offset, length);
+            digest.update(buffer, offset, length);
+        }
+    }
+
+    private void setEntryHash(ArchiveEntry entry, byte[] hashDigest) {
+        entry.setHash(new byte[HASH_MAX_LENGTH]);
+        System.arraycopy(hashDigest, 0, entry.getHash(), 0, hashDigest.length);
+        String hexDigest = ManifestBuilder.CryptographicOperations.hexdigest(hashDigest);
+        entry.setHexDigest(hexDigest);
+        hexDigestCache.put(entry.getRelativeFilename(), hexDigest);
+    }
+
     public void write(RandomAccessFile archiveIndex, RandomAccessFile archiveData, Path resourcePackDirectory, List<String> excludedResources) throws IOException, CompileExceptionError {
         // INDEX
         archiveIndex.writeInt(VERSION); // Version
@@ -175,6 +196,14 @@ public class ArchiveBuilder {
 
         Collections.sort(entries); // Since it has no hash, it sorts on path
 
+        // One digest for all resources, the resource hash is shared with the manifest
+        MessageDigest resourceDigest;
+        try {
+            resourceDigest = ManifestBuilder.CryptographicOperations.createMessageDigest(manifestBuilder.getResourceHashAlgorithm());
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IOException("Unable to create a Resource Pack, the hashing algorithm is not supported!");
+        }
+
         for (int i = entries.size() - 1; i >= 0; --i) {
             TimeProfiler.start("Write file");
             ArchiveEntry entry = entries.get(i);
@@ -211,25 +240,14 @@ public class ArchiveBuilder {
             // Add entry to manifest
             String normalisedPath = FilenameUtils.separatorsToUnix(entry.getRelativeFilename());
 
-            // Calculate hash digest values for resource
-            String hexDigest = null;
-            try {
-                TimeProfiler.start("Hex");
-                byte[] hashDigest = ManifestBuilder.CryptographicOperations.hash(buffer, manifestBuilder.getResourceHashAlgorithm());
-                entry.setHash(new byte[HASH_MAX_LENGTH]);
-                System.arraycopy(hashDigest, 0, entry.getHash(), 0, hashDigest.length);
-                hexDigest = ManifestBuilder.CryptographicOperations.hexdigest(hashDigest);
-                TimeProfiler.stop();
-            } catch (NoSuchAlgorithmException exception) {
-                throw new IOException("Unable to create a Resource Pack, the hashing algorithm is not supported!");
-            }
-
-            entry.setHexDigest(hexDigest);
-            hexDigestCache.put(entry.getRelativeFilename(), hexDigest);
-
             TimeProfiler.start("Write");
-            // Write resource to resource pack or data archive
+            // Write resource to resource pack or data archive, and calculate the hash digest of the resource
+            byte[] hashDigest;
             if (excludedResources.contains(normalisedPath)) {
+                // The resource pack file is named after the hash, so it's needed before writing
+                resourceDigest.update(buffer);
+                hashDigest = resourceDigest.digest();
+                setEntryHash(entry, hashDigest);
                 this.writeResourcePack(entry, resourcePackDirectory.toString(), buffer);
                 entries.remove(i);
                 excludedEntries.add(entry);
@@ -237,12 +255,14 @@ public class ArchiveBuilder {
             } else {
                 alignBuffer(archiveData, this.resourcePadding);
                 entry.setResourceOffset((int) archiveData.getFilePointer());
-                archiveData.write(buffer, 0, buffer.length);
+                writeAndHash(archiveData, buffer, resourceDigest);
+                hashDigest = resourceDigest.digest();
+                setEntryHash(entry, hashDigest);
                 resourceEntryFlags |= ResourceEntryFlag.BUNDLED.getNumber();
             }
             TimeProfiler.stop();
 
-            manifestBuilder.addResourceEntry(normalisedPath, buffer, entry.getSize(), entry.getCompressedSize(), resourceEntryFlags);
+            manifestBuilder.addResourceEntryWithDigest(normalisedPath, hashDigest, entry.getSize(), entry.getCompressedSize(), resourceEntryFlags);
             TimeProfiler.stop();
         }
 
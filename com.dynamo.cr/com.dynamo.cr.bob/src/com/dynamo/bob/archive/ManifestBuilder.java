@@ -32,6 +32,7 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.LinkedList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -72,20 +73,25 @@ public class ManifestBuilder {
 
         }
 
-        public static byte[] hash(byte[] data, HashAlgorithm algorithm) throws NoSuchAlgorithmException {
-            MessageDigest messageDigest = null;
+        /**
+         * Create a message digest for incremental hashing. The digest can be
+         * reused for several resources, since digest() resets it.
+         */
+        public static MessageDigest createMessageDigest(HashAlgorithm algorithm) throws NoSuchAlgorithmException {
             if (algorithm.equals(HashAlgorithm.HASH_MD5)) {
-                messageDigest = MessageDigest.getInstance("MD5");
+                return MessageDigest.getInstance("MD5");
             } else if (algorithm.equals(HashAlgorithm.HASH_SHA1)) {
-                messageDigest = MessageDigest.getInstance("SHA-1");
+                return MessageDigest.getInstance("SHA-1");
             } else if (algorithm.equals(HashAlgorithm.HASH_SHA256)) {
-                messageDigest = MessageDigest.getInstance("SHA-256");
+                return MessageDigest.getInstance("SHA-256");
             } else if (algorithm.equals(HashAlgorithm.HASH_SHA512)) {
-                messageDigest = MessageDigest.getInstance("SHA-512");
-            } else {
-                throw new NoSuchAlgorithmException("The algorithm specified is not supported!");
+                return MessageDigest.getInstance("SHA-512");
             }
+            throw new NoSuchAlgorithmException("The algorithm specified is not supported!");
+        }
 
+        public static byte[] hash(byte[] data, HashAlgorithm algorithm) throws NoSuchAlgorithmException {
+            MessageDigest messageDigest = createMessageDigest(algorithm);
             messageDigest.update(data);
             return messageDigest.digest();
         }
@@ -162,7 +168,10 @@ public class ManifestBuilder {
         }
 
         public static HashDigest createHashDigest(byte[] data, HashAlgorithm algorithm) throws NoSuchAlgorithmException {
-            byte[] hashDigest = CryptographicOperations.hash(data, algorithm);
+            return createHashDigest(CryptographicOperations.hash(data, algorithm));
+        }
+
+        public static HashDigest createHashDigest(byte[] hashDigest) {
             HashDigest.Builder builder = HashDigest.newBuilder();
             builder.setData(ByteString.copyFrom(hashDigest));
             return builder.build();
@@ -291,8 +300,9 @@ public class ManifestBuilder {
     private boolean outputManifestHash = false;
     private byte[] manifestDataHash = null;
     private byte[] archiveIdentifier = new byte[ArchiveBuilder.MD5_HASH_DIGEST_BYTE_LENGTH];
-    private HashMap<ResourceNode, HashSet<ResourceNode>> pathToDependants = new HashMap<>();
     private HashMap<String, ResourceEntry> urlToResource = new HashMap<>();
+    // Dependants of the queried nodes (the excluded collection proxies)
+    private HashMap<ResourceNode, HashSet<ResourceNode>> proxyToDependants = new HashMap<>();
     private Set<HashDigest> supportedEngineVersions = new HashSet<HashDigest>();
     private Set<ResourceEntry> resourceEntries = new TreeSet<ResourceEntry>(new Comparator<ResourceEntry>() {
         // We need to make sure the entries are sorted properly in order to do the binary search
@@ -355,6 +365,7 @@ public class ManifestBuilder {
 
     public void setResourceGraph(ResourceGraph resourceGraph) {
         this.resourceGraph = resourceGraph;
+        this.proxyToDependants.clear();
     }
 
     public ResourceGraph getResourceGraph() {
@@ -403,55 +414,128 @@ public class ManifestBuilder {
     }
 
     public void addResourceEntry(String url, byte[] data, int size, int compressed_size, int flags) throws IOException {
+        byte[] hashDigest;
         try {
-            ResourceEntry.Builder builder = ResourceEntry.newBuilder();
-            builder.setUrl(url);
-            builder.setUrlHash(MurmurHash.hash64(url)); // sort on this
-            HashDigest hash = CryptographicOperations.createHashDigest(data, this.resourceHashAlgorithm);
-            builder.setHash(hash);
-            builder.setFlags(flags);
-            builder.setSize(size);
-            builder.setCompressedSize(compressed_size);
-            this.resourceEntries.add(builder.buildPartial());
+            hashDigest = CryptographicOperations.hash(data, this.resourceHashAlgorithm);
         } catch (NoSuchAlgorithmException exception) {
             throw new IOException("Unable to create Manifest, hashing algorithm is not supported!");
         }
+        addResourceEntryWithDigest(url, hashDigest, size, compressed_size, flags);
     }
 
-    public HashSet<ResourceNode> getAllDependants(ResourceNode node) throws IOException {
-        /* Once a candidate has been found the children, the children, and so
-           on are added to the list of dependants. If a CollectionProxy is
-           found that resource itself is added to the list of dependants, but
-           it is seen as a leaf and the Collection that it points to is ignored.
-
-           The reason children of a CollectionProxy is ignored is that they are
-           not required to load the parent Collection. This allows us to
-           exclude an entire Collection that is loaded through a CollectionProxy
-           and thus create a partial archive that has to be updated (through
-           LiveUpdate) before that CollectionProxy can be loaded.
-        */
+    /**
+     * Add a resource entry with an already calculated hash of the resource data,
+     * e.g. a hash calculated while the data was written to the archive.
+     * @param url resource url
+     * @param hashDigest hash of the resource data, using the resource hash algorithm
+     * @param size uncompressed size
+     * @param compressed_size compressed size
+     * @param flags resource entry flags
+     */
+    public void addResourceEntryWithDigest(String url, byte[] hashDigest, int size, int compressed_size, int flags) throws IOException {
+        int hashSize = CryptographicOperations.getHashSize(this.resourceHashAlgorithm);
+        if (hashDigest.length != hashSize) {
+            throw new IOException(String.format("Unable to create Manifest, the hash of '%s' is %d bytes, expected %d bytes for %s", url, hashDigest.length, hashSize, this.resourceHashAlgorithm));
+        }
+        ResourceEntry.Builder builder = ResourceEntry.newBuilder();
+        builder.setUrl(url);
+        builder.setUrlHash(MurmurHash.hash64(url)); // sort on this
+        builder.setHash(CryptographicOperations.createHashDigest(hashDigest));
+        builder.setFlags(flags);
+        builder.setSize(size);
+        builder.setCompressedSize(compressed_size);
+        this.resourceEntries.add(builder.buildPartial());
+    }
 
+    /**
+     * Get the dependants of a node.
+     *
+     * Once a candidate has been found the children, the children, and so
+     * on are added to the list of dependants. If a CollectionProxy is
+     * found that resource itself is added to the list of dependants, but
+     * it is seen as a leaf and the Collection that it points to is ignored.
+     *
+     * The reason children of a CollectionProxy is ignored is that they are
+     * not required to load the parent Collection. This allows us to
+     * exclude an entire Collection that is loaded through a CollectionProxy
+     * and thus create a partial archive that has to be updated (through
+     * LiveUpdate) before that CollectionProxy can be loaded.
+     *
+     * The dependants are written to the manifest in the iteration order of
+     * the returned set, so each node's set is built with the same sequence
+     * of adds as a recursive walk would (children first, each child followed
+     * by its own dependants). The sets of the nodes below the queried node are
+     * released as soon as all of their parents have been built, and only the
+     * result for the queried node is kept. The graph is walked iteratively,
+     * so deep graphs can't overflow the stack.
+     * @param node The node to get dependants for
+     * @return The dependant nodes
+     */
+    public HashSet<ResourceNode> getAllDependants(ResourceNode node) throws IOException {
         if (node == null) {
             return new HashSet<ResourceNode>();
         }
-
-        HashSet<ResourceNode> dependants = pathToDependants.get(node);
+        HashSet<ResourceNode> dependants = proxyToDependants.get(node);
         if (dependants != null) {
             return dependants;
         }
 
-        dependants = new HashSet<ResourceNode>();
+        // Find the nodes below the queried node, children before parents, and count
+        // the number of times each node is used by a parent
+        List<ResourceNode> postOrder = new ArrayList<>();
+        HashMap<ResourceNode, Integer> useCounts = new HashMap<>();
+        HashSet<ResourceNode> expanded = new HashSet<>();
+        HashSet<ResourceNode> done = new HashSet<>();
+        ArrayDeque<ResourceNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            ResourceNode current = stack.peek();
+            if (expanded.add(current)) {
+                List<ResourceNode> children = current.getChildren();
+                // Push in reverse, so that the children are handled in order
+                for (int i = children.size() - 1; i >= 0; --i) {
+                    ResourceNode child = children.get(i);
+                    if (child.checkType(ResourceNode.Type.CollectionProxy)) {
+                        continue;
+                    }
+                    useCounts.merge(child, 1, Integer::sum);
+                    // Nodes already being expanded are only reached through a cycle
+                    if (!expanded.contains(child)) {
+                        stack.push(child);
+                    }
+                }
+                continue;
+            }
+            stack.pop();
+            if (done.add(current)) {
+                postOrder.add(current);
+            }
+        }
 
-        for (ResourceNode child : node.getChildren()) {
-            dependants.add(child);
+        HashMap<ResourceNode, HashSet<ResourceNode>> nodeToDependants = new HashMap<>();
+        for (ResourceNode current : postOrder) {
+            dependants = new HashSet<ResourceNode>();
+            for (ResourceNode child : current.getChildren()) {
+                dependants.add(child);
 
-            if (!child.checkType(ResourceNode.Type.CollectionProxy)) {
-                dependants.addAll(getAllDependants(child));
+                if (!child.checkType(ResourceNode.Type.CollectionProxy)) {
+                    HashSet<ResourceNode> childDependants = nodeToDependants.get(child);
+                    if (childDependants != null) {
+                        dependants.addAll(childDependants);
+                    }
+                    // Release the set once the last parent has used it
+                    if (useCounts.merge(child, -1, Integer::sum) == 0) {
+                        nodeToDependants.remove(child);
+                    }
+                }
             }
+            nodeToDependants.put(current, dependants);
         }
 
-        pathToDependants.put(node, dependants);
-
+        dependants = nodeToDependants.get(node);
+        if (node.checkType(ResourceNode.Type.ExcludedCollectionProxy)) {
+            proxyToDependants.put(node, dependants);
+        }
         return dependants;
     }
 
@@ -14,20 +14,29 @@
 
 package com.dynamo.bob.archive.publisher;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.profile.ProfileCredentialsProvider;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
 import com.amazonaws.services.s3.model.AccessControlList;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.Grant;
 import com.amazonaws.services.s3.model.Permission;
 import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.IProgress;
 import com.dynamo.bob.archive.ArchiveEntry;
 import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class AWSPublisher extends Publisher {
 
+    private static final int UPLOAD_THREADS = 16;
+
     public AWSPublisher(PublisherSettings settings) {
         super(settings);
     }
@@ -66,21 +75,49 @@ public class AWSPublisher extends Publisher {
         try {
         	String credentialProfile = this.getPublisherSettings().getAmazonCredentialProfile();
     		AWSCredentialsProvider credentials = new ProfileCredentialsProvider(credentialProfile);
-    		AmazonS3Client client = new AmazonS3Client(credentials);
+    		// One keep-alive connection per concurrent upload
+    		ClientConfiguration configuration = new ClientConfiguration()
+    		        .withMaxConnections(UPLOAD_THREADS)
+    		        .withTcpKeepAlive(true);
+    		AmazonS3Client client = new AmazonS3Client(credentials, configuration);
+    		String endpoint = this.getPublisherSettings().getAmazonEndpoint();
+    		if (endpoint != null) {
+    		    client.setEndpoint(endpoint);
+    		    client.setS3ClientOptions(S3ClientOptions.builder().setPathStyleAccess(true).build());
+    		}
         	String bucket = this.getPublisherSettings().getAmazonBucket();
             
             if (client.doesBucketExist(bucket)) {
                 if (hasWritePermissions(client, bucket)) {
                 	String prefix = this.getPublisherSettings().getAmazonPrefix();
-                    for (File fhandle : this.getEntries().keySet()) {
-                        ArchiveEntry archiveEntry = this.getEntries().get(fhandle);
-                        String hexDigest = archiveEntry.getHexDigest();
-                        String key = (prefix + "/" + hexDigest).replaceAll("//+", "/");
-                        try {
-                        	client.putObject(bucket, key, fhandle);
-                        } catch (AmazonS3Exception exception) {
-                        	throw amazonException("Unable to upload file, " + exception.getErrorMessage() + ": " + key, exception);
+                    // Resources are stored by content, anything else (manifest, delta files) by name.
+                    // The named files are uploaded last, so that they never refer to missing resources.
+                    Map<String, File> resources = new LinkedHashMap<String, File>();
+                    Map<String, File> namedFiles = new LinkedHashMap<String, File>();
+                    Map<File, ArchiveEntry> entries = this.getPublishEntries();
+                    for (File fhandle : entries.keySet()) {
+                        String hexDigest = entries.get(fhandle).getHexDigest();
+                        if (hexDigest != null) {
+                            resources.put((prefix + "/" + hexDigest).replaceAll("//+", "/"), fhandle);
+                        } else {
+                            namedFiles.put((prefix + "/" + fhandle.getName()).replaceAll("//+", "/"), fhandle);
+                        }
+                    }
+
+                    S3Uploader uploader = new S3Uploader(client, bucket);
+                    uploader.setThreadCount(UPLOAD_THREADS);
+                    try {
+                        IProgress progress = this.getProgress();
+                        progress.beginTask("Publishing to Amazon S3...", 2);
+                        uploader.upload(resources, progress.subProgress(1));
+                        uploader.upload(namedFiles, progress.subProgress(1));
+                        progress.done();
+                    } catch (IOException exception) {
+                        if (exception.getCause() instanceof AmazonServiceException) {
+                            AmazonServiceException cause = (AmazonServiceException) exception.getCause();
+                            throw amazonException(exception.getMessage() + " (" + cause.getErrorCode() + ")", cause);
                         }
+                        throw compileException(exception.getMessage(), exception);
                     }
                 } else {
                 	throw amazonException("The account does not have permission to upload resources", null);
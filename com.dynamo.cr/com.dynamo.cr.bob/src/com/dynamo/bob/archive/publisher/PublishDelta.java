@@ -0,0 +1,214 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.archive.publisher;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.io.IOUtils;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+import com.dynamo.bob.archive.ArchiveEntry;
+import com.dynamo.bob.archive.ManifestBuilder;
+import com.dynamo.liveupdate.proto.Manifest.ManifestData;
+import com.dynamo.liveupdate.proto.Manifest.ManifestFile;
+import com.dynamo.liveupdate.proto.Manifest.ResourceEntry;
+import com.dynamo.liveupdate.proto.Manifest.ResourceEntryFlag;
+
+/**
+ * The resources published by a previous release, used to publish only the
+ * resources that are new or changed since then.
+ *
+ * The previous release is either read from its liveupdate manifest, where every
+ * excluded resource counts as published, or from an index of published hex
+ * digests (one per line) at any URL that {@link URL#openStream} can read.
+ * Resources are content addressed, so an entry is skipped whenever its hex
+ * digest is already published, regardless of its url.
+ */
+public class PublishDelta {
+
+    public static final String DIFF_MANIFEST_NAME = "liveupdate.delta.json";
+    public static final String INDEX_NAME = "liveupdate.index";
+
+    private final String base;
+    private final Set<String> publishedDigests;
+    // url -> hex digest of the previous release, null when the base is an index
+    private final Map<String, String> publishedUrls;
+
+    private PublishDelta(String base, Set<String> publishedDigests, Map<String, String> publishedUrls) {
+        this.base = base;
+        this.publishedDigests = publishedDigests;
+        this.publishedUrls = publishedUrls;
+    }
+
+    /**
+     * Read the excluded resources of a previous liveupdate manifest
+     * @param manifestFile the liveupdate manifest of the previous release
+     * @return the delta base
+     */
+    public static PublishDelta fromManifest(File manifestFile) throws IOException {
+        ManifestData manifestData;
+        try (InputStream is = new FileInputStream(manifestFile)) {
+            manifestData = ManifestData.parseFrom(ManifestFile.parseFrom(is).getData());
+        }
+        Set<String> digests = new HashSet<String>();
+        Map<String, String> urls = new HashMap<String, String>();
+        for (ResourceEntry resource : manifestData.getResourcesList()) {
+            if ((resource.getFlags() & ResourceEntryFlag.EXCLUDED.getNumber()) == 0) {
+                continue;
+            }
+            String hexDigest = ManifestBuilder.CryptographicOperations.hexdigest(resource.getHash().getData().toByteArray());
+            digests.add(hexDigest);
+            urls.put(resource.getUrl(), hexDigest);
+        }
+        return new PublishDelta(manifestFile.getPath(), digests, urls);
+    }
+
+    /**
+     * Read an index of published resources
+     * @param url location of the index, e.g. a file:// or http:// url
+     * @return the delta base
+     */
+    public static PublishDelta fromIndex(URL url) throws IOException {
+        Set<String> digests = new HashSet<String>();
+        try (InputStream is = url.openStream()) {
+            for (String line : IOUtils.readLines(is, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    digests.add(line);
+                }
+            }
+        }
+        return new PublishDelta(url.toString(), digests, null);
+    }
+
+    public boolean isPublished(String hexDigest) {
+        return publishedDigests.contains(hexDigest);
+    }
+
+    /**
+     * Select the entries to publish. Entries without a hex digest (such as the
+     * manifest itself) are always published.
+     * @param entries all entries of the current release
+     * @return the entries that aren't part of the previous release
+     */
+    public Map<File, ArchiveEntry> filter(Map<File, ArchiveEntry> entries) {
+        Map<File, ArchiveEntry> result = new LinkedHashMap<File, ArchiveEntry>();
+        for (Map.Entry<File, ArchiveEntry> entry : entries.entrySet()) {
+            String hexDigest = entry.getValue().getHexDigest();
+            if (hexDigest == null || !isPublished(hexDigest)) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write a compact diff manifest with the published resources of the current
+     * release. Each resource is listed as "added" or "changed" (by url) when the
+     * base is a manifest, or "new" when the base is an index. Resources of the
+     * previous manifest that are no longer part of the release are listed as removed.
+     * @param entries all entries of the current release
+     * @param file file to write to
+     */
+    public void writeDiffManifest(Map<File, ArchiveEntry> entries, File file) throws IOException {
+        Map<String, String> current = new TreeMap<String, String>();
+        for (ArchiveEntry entry : entries.values()) {
+            if (entry.getHexDigest() != null) {
+                current.put(entry.getRelativeFilename(), entry.getHexDigest());
+            }
+        }
+
+        List<String> removed = new ArrayList<String>();
+        if (publishedUrls != null) {
+            for (String url : new TreeSet<String>(publishedUrls.keySet())) {
+                if (!current.containsKey(url)) {
+                    removed.add(url);
+                }
+            }
+        }
+
+        int unchanged = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8))) {
+            JsonGenerator generator = (new JsonFactory()).createJsonGenerator(writer);
+            generator.writeStartObject();
+            generator.writeStringField("base", base);
+            generator.writeFieldName("resources");
+            generator.writeStartArray();
+            for (Map.Entry<String, String> entry : current.entrySet()) {
+                String url = entry.getKey();
+                String hexDigest = entry.getValue();
+                if (isPublished(hexDigest)) {
+                    ++unchanged;
+                    continue;
+                }
+                String status = "new";
+                if (publishedUrls != null) {
+                    status = publishedUrls.containsKey(url) ? "changed" : "added";
+                }
+                generator.writeStartObject();
+                generator.writeStringField("url", url);
+                generator.writeStringField("hexDigest", hexDigest);
+                generator.writeStringField("status", status);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeFieldName("removed");
+            generator.writeStartArray();
+            for (String url : removed) {
+                generator.writeString(url);
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("unchanged", unchanged);
+            generator.writeEndObject();
+            generator.close();
+        }
+    }
+
+    /**
+     * Write an index with the resources of both the previous and the current
+     * release, to be used as the base of the next delta publish.
+     * @param entries all entries of the current release
+     * @param file file to write to
+     */
+    public void writeIndex(Map<File, ArchiveEntry> entries, File file) throws IOException {
+        Set<String> digests = new TreeSet<String>(publishedDigests);
+        for (ArchiveEntry entry : entries.values()) {
+            if (entry.getHexDigest() != null) {
+                digests.add(entry.getHexDigest());
+            }
+        }
+        List<String> lines = new ArrayList<String>(digests);
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    }
+}
@@ -15,7 +15,10 @@
 package com.dynamo.bob.archive.publisher;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -23,13 +26,19 @@ import java.util.Map;
 
 import com.dynamo.bob.archive.ArchiveEntry;
 import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.IProgress;
+import com.dynamo.bob.NullProgress;
 import com.dynamo.bob.fs.IResource;
+import com.dynamo.bob.logging.Logger;
 
 public abstract class Publisher {
 
+    private static Logger logger = Logger.getLogger(Publisher.class.getName());
+
     private final PublisherSettings settings;
     private final Map<File, ArchiveEntry> entries = new HashMap<File, ArchiveEntry>();
     protected String platform = "";
+    private IProgress progress = new NullProgress();
 
     public Publisher(PublisherSettings settings) {
         this.settings = settings;
@@ -55,6 +64,49 @@ public abstract class Publisher {
         return this.entries;
     }
     
+    /**
+     * Get the entries to publish. Without a delta base in the settings this is
+     * all entries. With a previous manifest or an index url, it is only the
+     * entries that aren't part of the previous release, plus a diff manifest
+     * and an updated index (see {@link PublishDelta}).
+     * @return the entries to publish
+     */
+    protected final Map<File, ArchiveEntry> getPublishEntries() throws CompileExceptionError {
+        String deltaManifest = this.settings.getDeltaManifest();
+        String deltaIndexUrl = this.settings.getDeltaIndexUrl();
+        if (deltaManifest == null && deltaIndexUrl == null) {
+            return this.entries;
+        }
+
+        try {
+            PublishDelta delta = deltaManifest != null ? PublishDelta.fromManifest(new File(deltaManifest)) : PublishDelta.fromIndex(new URL(deltaIndexUrl));
+            Map<File, ArchiveEntry> result = delta.filter(this.entries);
+            logger.info("Delta publish: %d of %d entries are new or changed", result.size(), this.entries.size());
+
+            File deltaDir = Files.createTempDirectory("defold.liveupdate_delta_").toFile();
+            deltaDir.deleteOnExit();
+            File diffManifest = new File(deltaDir, PublishDelta.DIFF_MANIFEST_NAME);
+            delta.writeDiffManifest(this.entries, diffManifest);
+            diffManifest.deleteOnExit();
+            result.put(diffManifest, new ArchiveEntry(deltaDir.getAbsolutePath(), diffManifest.getAbsolutePath()));
+            File index = new File(deltaDir, PublishDelta.INDEX_NAME);
+            delta.writeIndex(this.entries, index);
+            index.deleteOnExit();
+            result.put(index, new ArchiveEntry(deltaDir.getAbsolutePath(), index.getAbsolutePath()));
+            return result;
+        } catch (IOException exception) {
+            throw new CompileExceptionError("Unable to read the previous liveupdate release: " + exception.getMessage(), exception);
+        }
+    }
+
+    public IProgress getProgress() {
+        return this.progress;
+    }
+
+    public void setProgress(IProgress progress) {
+        this.progress = progress;
+    }
+
     public String getPlatform() {
         return this.platform;
     }
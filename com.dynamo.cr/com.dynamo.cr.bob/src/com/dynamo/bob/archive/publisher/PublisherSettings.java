@@ -131,6 +131,42 @@ public class PublisherSettings {
         return this.getValue("liveupdate", "amazon-prefix");
     }
 
+    /**
+     * Endpoint of an S3 compatible service to use instead of Amazon S3, e.g.
+     * "http://localhost:9000". Buckets are addressed with path style urls.
+     */
+    public void setAmazonEndpoint(String value) {
+        this.setValue("liveupdate", "amazon-endpoint", value);
+    }
+
+    public String getAmazonEndpoint() {
+        return this.getValue("liveupdate", "amazon-endpoint");
+    }
+
+    /**
+     * Path to the liveupdate manifest of the previous release. When set, only
+     * resources that aren't part of the previous release are published.
+     */
+    public void setDeltaManifest(String value) {
+        this.setValue("liveupdate", "delta-manifest", value);
+    }
+
+    public String getDeltaManifest() {
+        return this.getValue("liveupdate", "delta-manifest");
+    }
+
+    /**
+     * URL of an index of already published resources, one hex digest per line.
+     * When set, only resources that aren't in the index are published.
+     */
+    public void setDeltaIndexUrl(String value) {
+        this.setValue("liveupdate", "delta-index-url", value);
+    }
+
+    public String getDeltaIndexUrl() {
+        return this.getValue("liveupdate", "delta-index-url");
+    }
+
     public void setZipFilepath(String value) {
     	this.setValue("liveupdate", "zip-filepath", value);
     }
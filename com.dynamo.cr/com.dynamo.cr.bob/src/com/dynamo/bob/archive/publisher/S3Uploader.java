@@ -0,0 +1,257 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.archive.publisher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.dynamo.bob.IProgress;
+import com.dynamo.bob.logging.Logger;
+
+/**
+ * Uploads files to an S3 bucket using a fixed number of concurrent uploads.
+ *
+ * Small files are uploaded with a single put each, over the keep-alive
+ * connections of the client. Files larger than the multipart threshold are
+ * uploaded in parts. Throttling, server and network errors are retried with
+ * an exponential backoff, other errors fail the upload.
+ */
+public class S3Uploader {
+
+    private static Logger logger = Logger.getLogger(S3Uploader.class.getName());
+
+    // S3 requires parts of at least 5 MB, except for the last part
+    public static final long MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private static final long MAX_RETRY_DELAY = 10000;
+
+    private final AmazonS3 client;
+    private final String bucket;
+    private int threadCount = 16;
+    private int maxRetries = 5;
+    private long retryDelay = 200;
+    private long multipartThreshold = 16 * 1024 * 1024;
+    private long partSize = 8 * 1024 * 1024;
+
+    private final AtomicInteger uploadedObjects = new AtomicInteger();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private final AtomicInteger retryCount = new AtomicInteger();
+    private volatile boolean canceled = false;
+
+    public S3Uploader(AmazonS3 client, String bucket) {
+        this.client = client;
+        this.bucket = bucket;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    /**
+     * Set the delay before the first retry of a request, in milliseconds. The
+     * delay is doubled for each following retry.
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = Math.max(1, retryDelay);
+    }
+
+    public void setMultipartThreshold(long multipartThreshold) {
+        this.multipartThreshold = multipartThreshold;
+    }
+
+    public void setPartSize(long partSize) {
+        this.partSize = Math.max(MIN_PART_SIZE, partSize);
+    }
+
+    public int getUploadedObjects() {
+        return uploadedObjects.get();
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    public int getRetryCount() {
+        return retryCount.get();
+    }
+
+    private static boolean isRetryable(AmazonClientException exception) {
+        if (exception instanceof AmazonServiceException) {
+            AmazonServiceException serviceException = (AmazonServiceException) exception;
+            int statusCode = serviceException.getStatusCode();
+            return statusCode >= 500 || statusCode == 408 || statusCode == 429 || "SlowDown".equals(serviceException.getErrorCode());
+        }
+        return exception.isRetryable();
+    }
+
+    private <T> T withRetries(Callable<T> request) throws Exception {
+        for (int attempt = 0; ; ++attempt) {
+            try {
+                return request.call();
+            } catch (AmazonClientException exception) {
+                if (attempt >= maxRetries || canceled || !isRetryable(exception)) {
+                    throw exception;
+                }
+            }
+            retryCount.incrementAndGet();
+            // Jitter, so that throttled workers don't retry in lockstep
+            long delay = Math.min(MAX_RETRY_DELAY, retryDelay << Math.min(attempt, 16));
+            Thread.sleep(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        }
+    }
+
+    private void uploadMultipart(final String key, final File file) throws Exception {
+        final String uploadId = withRetries(() -> client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key)).getUploadId());
+        try {
+            final List<PartETag> partETags = new ArrayList<PartETag>();
+            long size = file.length();
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += partSize, ++partNumber) {
+                final UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucket)
+                    .withKey(key)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withFile(file)
+                    .withFileOffset(offset)
+                    .withPartSize(Math.min(partSize, size - offset))
+                    .withLastPart(offset + partSize >= size);
+                partETags.add(withRetries(() -> client.uploadPart(request).getPartETag()));
+                uploadedBytes.addAndGet(request.getPartSize());
+            }
+            withRetries(() -> client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags)));
+        } catch (Exception exception) {
+            try {
+                client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+            } catch (AmazonClientException abortException) {
+                logger.warning("Unable to abort multipart upload of '%s': %s", key, abortException.getMessage());
+            }
+            throw exception;
+        }
+    }
+
+    private void uploadObject(final String key, final File file) throws Exception {
+        if (file.length() > multipartThreshold) {
+            uploadMultipart(key, file);
+        } else {
+            withRetries(() -> client.putObject(bucket, key, file));
+            uploadedBytes.addAndGet(file.length());
+        }
+        uploadedObjects.incrementAndGet();
+    }
+
+    /**
+     * Upload files to the bucket. Progress is reported in kilobytes, from the
+     * calling thread only. The first failed upload stops the remaining uploads.
+     * The upload statistics are reset for each call.
+     * @param objects files to upload by key
+     * @param progress progress to report to
+     */
+    public void upload(Map<String, File> objects, IProgress progress) throws IOException {
+        uploadedObjects.set(0);
+        uploadedBytes.set(0);
+        retryCount.set(0);
+
+        final List<Map.Entry<String, File>> work = new ArrayList<Map.Entry<String, File>>(objects.entrySet());
+        long totalBytes = 0;
+        for (Map.Entry<String, File> entry : work) {
+            totalBytes += entry.getValue().length();
+        }
+        progress.beginTask(String.format("Uploading %d resources (%.1f MB)...", work.size(), totalBytes / (1024.0 * 1024.0)), (int) Math.max(1, totalBytes / 1024));
+
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<IOException> error = new AtomicReference<IOException>();
+        int workerCount = Math.max(1, Math.min(threadCount, work.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < workerCount; ++i) {
+            executor.submit(() -> {
+                while (error.get() == null && !canceled) {
+                    int index = next.getAndIncrement();
+                    if (index >= work.size()) {
+                        break;
+                    }
+                    String key = work.get(index).getKey();
+                    try {
+                        uploadObject(key, work.get(index).getValue());
+                    } catch (Exception exception) {
+                        error.compareAndSet(null, new IOException(String.format("Unable to upload '%s': %s", key, exception.getMessage()), exception));
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+
+        long reportedKB = 0;
+        try {
+            boolean finished = false;
+            while (!finished) {
+                finished = executor.awaitTermination(250, TimeUnit.MILLISECONDS);
+                long uploadedKB = uploadedBytes.get() / 1024;
+                progress.worked((int) (uploadedKB - reportedKB));
+                reportedKB = uploadedKB;
+                if (progress.isCanceled()) {
+                    canceled = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            canceled = true;
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload was interrupted");
+        }
+        progress.done();
+
+        double seconds = Math.max(0.001, (System.currentTimeMillis() - start) / 1000.0);
+        logger.info("Uploaded %d of %d resources, %.1f MB in %.1f s (%.1f MB/s, %.0f resources/s, %d retries)",
+                uploadedObjects.get(), work.size(), uploadedBytes.get() / (1024.0 * 1024.0), seconds,
+                uploadedBytes.get() / (1024.0 * 1024.0) / seconds, uploadedObjects.get() / seconds, retryCount.get());
+
+        if (error.get() != null) {
+            throw error.get();
+        }
+        if (canceled) {
+            throw new IOException("Upload was canceled");
+        }
+    }
+}
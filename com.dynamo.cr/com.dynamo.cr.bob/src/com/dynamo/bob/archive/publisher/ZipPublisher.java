@@ -63,7 +63,7 @@ public class ZipPublisher extends Publisher {
             FileOutputStream resourcePackOutputStream = new FileOutputStream(this.resourcePackZip);
             ZipOutputStream zipOutputStream = new ZipOutputStream(resourcePackOutputStream);
             try {
-                for (File fhandle : this.getEntries().keySet()) {
+                for (File fhandle : this.getPublishEntries().keySet()) {
                     ZipEntry currentEntry = new ZipEntry(fhandle.getName());
                     zipOutputStream.putNextEntry(currentEntry);
                     FileUtil.writeToStream(fhandle, zipOutputStream);
@@ -0,0 +1,428 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.bundle;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Zip writer that deflates entries concurrently on a pool of worker threads.
+ *
+ * Entries are written to the archive in the order they were added. Small
+ * DEFLATED entries are compressed ahead of time into memory buffers, while
+ * STORED entries and large files are streamed straight into the archive and
+ * get their CRC and sizes patched into the local header afterwards. Either
+ * way each file is only read once.
+ */
+public class ParallelZipWriter {
+
+    // Files larger than this are streamed instead of compressed into a buffer
+    private static final long MAX_BUFFERED_SIZE = 8 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long ZIP32_MAX = 0xFFFFFFFFL;
+    private static final int ZIP16_MAX = 0xFFFF;
+    // Streamed entries above this size get a zip64 local header, since we
+    // can't know up front if the deflated size will fit in 32 bits
+    private static final long ZIP64_STREAM_THRESHOLD = 0xFF000000L;
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_HEADER_SIG = 0x06054b50;
+    private static final int ZIP64_END_HEADER_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static class Entry {
+        final String name;
+        final byte[] nameBytes;
+        final File file;
+        final boolean stored;
+        final long size;
+        final int dosTime;
+
+        long crc;
+        long compressedSize;
+        long offset;
+        boolean zip64Local;
+
+        Entry(String name, File file, boolean stored) {
+            this.name = name;
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            this.file = file;
+            this.stored = stored;
+            this.size = file.length();
+            this.dosTime = toDosTime(file.lastModified());
+        }
+
+        int method() {
+            return stored ? METHOD_STORED : METHOD_DEFLATED;
+        }
+
+        boolean isBuffered() {
+            return !stored && size <= MAX_BUFFERED_SIZE;
+        }
+    }
+
+    private static class Compressed {
+        ByteArrayOutputStream data;
+        long crc;
+    }
+
+    // Output stream that keeps track of the current file position
+    private static class PositionOutputStream extends OutputStream {
+        private final OutputStream out;
+        long position = 0;
+
+        PositionOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    private final File outFile;
+    private final List<Entry> entries = new ArrayList<>();
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    public ParallelZipWriter(File outFile) {
+        this.outFile = outFile;
+    }
+
+    public ParallelZipWriter setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+        return this;
+    }
+
+    /**
+     * Add a file to the archive. Entries are written in the order they are added.
+     * @param name the entry name, using '/' as separator
+     * @param file the file to read the entry data from
+     * @param stored true if the entry should be STORED instead of DEFLATED
+     */
+    public void add(String name, File file, boolean stored) {
+        entries.add(new Entry(name, file, stored));
+    }
+
+    /**
+     * Compress and write all added entries to the output file
+     * @param canceled checked between entries, may be null
+     */
+    public void write(ICanceled canceled) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try (RandomAccessFile raf = new RandomAccessFile(outFile, "rw")) {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            PositionOutputStream out = new PositionOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+
+            // Keep a bounded window of entries compressing ahead of the writer
+            final int window = threadCount * 2;
+            final int count = entries.size();
+            List<Future<Compressed>> futures = new ArrayList<>(count);
+            int next = 0;
+            for (int i = 0; i < count; ++i) {
+                while (next < count && next < i + window) {
+                    final Entry e = entries.get(next);
+                    futures.add(e.isBuffered() ? executor.submit(() -> compress(e)) : null);
+                    ++next;
+                }
+
+                Entry entry = entries.get(i);
+                Future<Compressed> future = futures.set(i, null);
+                if (future != null) {
+                    writeBuffered(out, entry, getResult(future));
+                } else {
+                    writeStreamed(out, channel, entry);
+                }
+
+                if (canceled != null) {
+                    BundleHelper.throwIfCanceled(canceled);
+                }
+            }
+
+            writeCentralDirectory(out);
+            out.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Compressed getResult(Future<Compressed> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing zip entry", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // Runs on a worker thread
+    private static Compressed compress(Entry entry) throws IOException {
+        CRC32 crc = new CRC32();
+        Compressed result = new Compressed();
+        result.data = new ByteArrayOutputStream((int) Math.max(32, entry.size / 2));
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (InputStream is = new FileInputStream(entry.file);
+             DeflaterOutputStream dos = new DeflaterOutputStream(result.data, deflater, BUFFER_SIZE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+                dos.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        result.crc = crc.getValue();
+        return result;
+    }
+
+    private void writeBuffered(PositionOutputStream out, Entry entry, Compressed compressed) throws IOException {
+        entry.crc = compressed.crc;
+        entry.compressedSize = compressed.data.size();
+        entry.offset = out.position;
+        entry.zip64Local = entry.size >= ZIP32_MAX || entry.compressedSize >= ZIP32_MAX;
+        out.write(localHeader(entry));
+        compressed.data.writeTo(out);
+    }
+
+    private void writeStreamed(PositionOutputStream out, FileChannel channel, Entry entry) throws IOException {
+        entry.offset = out.position;
+        entry.zip64Local = entry.size >= ZIP64_STREAM_THRESHOLD;
+        // CRC and compressed size are patched once the data has been written
+        out.write(localHeader(entry));
+
+        CRC32 crc = new CRC32();
+        long dataStart = out.position;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream is = new FileInputStream(entry.file)) {
+            OutputStream dataOut = out;
+            Deflater deflater = null;
+            if (!entry.stored) {
+                deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                dataOut = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+            }
+            try {
+                int n;
+                while ((n = is.read(buffer)) != -1) {
+                    crc.update(buffer, 0, n);
+                    dataOut.write(buffer, 0, n);
+                }
+                if (deflater != null) {
+                    ((DeflaterOutputStream) dataOut).finish();
+                }
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+            }
+        }
+        entry.crc = crc.getValue();
+        entry.compressedSize = out.position - dataStart;
+        if (!entry.zip64Local && entry.compressedSize >= ZIP32_MAX) {
+            throw new IOException("Zip entry too large: " + entry.name);
+        }
+
+        out.flush();
+        ByteBuffer patch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        patch.putInt((int) entry.crc);
+        patch.putInt(entry.zip64Local ? (int) ZIP32_MAX : (int) entry.compressedSize);
+        patch.flip();
+        writeFully(channel, patch, entry.offset + 14);
+        if (entry.zip64Local) {
+            patch.clear();
+            patch.putLong(entry.compressedSize);
+            patch.flip();
+            writeFully(channel, patch, entry.offset + 30 + entry.nameBytes.length + 4 + 8);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static byte[] localHeader(Entry entry) {
+        int extraLength = entry.zip64Local ? 20 : 0;
+        ByteBuffer b = ByteBuffer.allocate(30 + entry.nameBytes.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(LOCAL_HEADER_SIG);
+        b.putShort((short) versionNeeded(entry, entry.zip64Local));
+        b.putShort((short) FLAG_UTF8);
+        b.putShort((short) entry.method());
+        b.putInt(entry.dosTime);
+        b.putInt((int) entry.crc);
+        if (entry.zip64Local) {
+            b.putInt((int) ZIP32_MAX);
+            b.putInt((int) ZIP32_MAX);
+        } else {
+            b.putInt((int) entry.compressedSize);
+            b.putInt((int) entry.size);
+        }
+        b.putShort((short) entry.nameBytes.length);
+        b.putShort((short) extraLength);
+        b.put(entry.nameBytes);
+        if (entry.zip64Local) {
+            b.putShort((short) ZIP64_EXTRA_ID);
+            b.putShort((short) 16);
+            b.putLong(entry.size);
+            b.putLong(entry.compressedSize);
+        }
+        return b.array();
+    }
+
+    private void writeCentralDirectory(PositionOutputStream out) throws IOException {
+        long cdOffset = out.position;
+        for (Entry entry : entries) {
+            boolean zip64Size = entry.size >= ZIP32_MAX;
+            boolean zip64CompressedSize = entry.compressedSize >= ZIP32_MAX;
+            boolean zip64Offset = entry.offset >= ZIP32_MAX;
+            int extraDataLength = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+            int extraLength = extraDataLength > 0 ? extraDataLength + 4 : 0;
+
+            ByteBuffer b = ByteBuffer.allocate(46 + entry.nameBytes.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+            b.putInt(CENTRAL_HEADER_SIG);
+            b.putShort((short) 45);
+            b.putShort((short) versionNeeded(entry, extraLength > 0));
+            b.putShort((short) FLAG_UTF8);
+            b.putShort((short) entry.method());
+            b.putInt(entry.dosTime);
+            b.putInt((int) entry.crc);
+            b.putInt(zip64CompressedSize ? (int) ZIP32_MAX : (int) entry.compressedSize);
+            b.putInt(zip64Size ? (int) ZIP32_MAX : (int) entry.size);
+            b.putShort((short) entry.nameBytes.length);
+            b.putShort((short) extraLength);
+            b.putShort((short) 0); // comment length
+            b.putShort((short) 0); // disk number start
+            b.putShort((short) 0); // internal attributes
+            b.putInt(0);           // external attributes
+            b.putInt(zip64Offset ? (int) ZIP32_MAX : (int) entry.offset);
+            b.put(entry.nameBytes);
+            if (extraLength > 0) {
+                b.putShort((short) ZIP64_EXTRA_ID);
+                b.putShort((short) extraDataLength);
+                if (zip64Size) {
+                    b.putLong(entry.size);
+                }
+                if (zip64CompressedSize) {
+                    b.putLong(entry.compressedSize);
+                }
+                if (zip64Offset) {
+                    b.putLong(entry.offset);
+                }
+            }
+            out.write(b.array());
+        }
+        long cdSize = out.position - cdOffset;
+        int count = entries.size();
+
+        boolean zip64 = count >= ZIP16_MAX || cdOffset >= ZIP32_MAX || cdSize >= ZIP32_MAX;
+        if (zip64) {
+            long zip64EndOffset = out.position;
+            ByteBuffer b = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+            b.putInt(ZIP64_END_HEADER_SIG);
+            b.putLong(44);
+            b.putShort((short) 45);
+            b.putShort((short) 45);
+            b.putInt(0);
+            b.putInt(0);
+            b.putLong(count);
+            b.putLong(count);
+            b.putLong(cdSize);
+            b.putLong(cdOffset);
+
+            b.putInt(ZIP64_LOCATOR_SIG);
+            b.putInt(0);
+            b.putLong(zip64EndOffset);
+            b.putInt(1);
+            out.write(b.array());
+        }
+
+        ByteBuffer b = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(END_HEADER_SIG);
+        b.putShort((short) 0);
+        b.putShort((short) 0);
+        b.putShort((short) Math.min(count, ZIP16_MAX));
+        b.putShort((short) Math.min(count, ZIP16_MAX));
+        b.putInt(zip64 ? (int) ZIP32_MAX : (int) cdSize);
+        b.putInt(zip64 ? (int) ZIP32_MAX : (int) cdOffset);
+        b.putShort((short) 0);
+        out.write(b.array());
+    }
+
+    private static int versionNeeded(Entry entry, boolean zip64) {
+        if (zip64) {
+            return 45;
+        }
+        return entry.stored ? 10 : 20;
+    }
+
+    private static int toDosTime(long time) {
+        LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        int year = ldt.getYear();
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | ldt.getMonthValue() << 21 | ldt.getDayOfMonth() << 16 |
+               ldt.getHour() << 11 | ldt.getMinute() << 5 | ldt.getSecond() >> 1;
+    }
+}
@@ -15,21 +15,11 @@
 package com.dynamo.bob.bundle;
 
 import java.io.File;
-import java.io.InputStream;
 import java.io.IOException;
-import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
-import java.io.FileInputStream;
-
-import org.apache.commons.io.IOUtils;
-
-import java.util.zip.CRC32;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
-
-import com.dynamo.bob.util.FileUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 
 public class ZipUtil {
@@ -48,53 +38,42 @@ public class ZipUtil {
 		return strippedPath;
 	}
 
-	private static void zipFile(ZipOutputStream zipOut, File baseDir, File file) throws IOException {
-		final String filePath = stripBaseDir(baseDir, file).replace('\\', '/');
-		final long fileSize = file.length();
-
-		ZipEntry ze = new ZipEntry(filePath);
-		ze.setSize(fileSize);
-
-		// Some files need to be STORED instead of DEFLATED to
-		// get "correct" memory mapping at runtime.
-		boolean isAsset = filePath.startsWith("assets");
-		if (isAsset) {
-			// Set up an uncompressed file, unfortunately need to calculate crc32 and other data for this to work.
-			// https://www.infoworld.com/article/2071337/creating-zip-and-jar-files.html
-			CRC32 crc = FileUtil.calculateCrc32(file);
-			ze.setCrc(crc.getValue());
-			ze.setCompressedSize(fileSize);
-		}
-		ze.setMethod(isAsset ? ZipEntry.STORED : ZipEntry.DEFLATED);
-
-		zipOut.putNextEntry(ze);
-		FileUtil.writeToStream(file, zipOut);
-		zipOut.closeEntry();
+	// Some files need to be STORED instead of DEFLATED to
+	// get "correct" memory mapping at runtime.
+	private static boolean isStored(String filePath) {
+		return filePath.startsWith("assets");
 	}
 
-	private static void zipDir(ZipOutputStream zipOut, File baseDir, File dir, ICanceled canceled) throws IOException {
+	private static void collectFiles(File dir, List<File> files) {
 		for (File f : dir.listFiles()) {
 			if (f.isDirectory()) {
-				zipDir(zipOut, baseDir, f, canceled);
+				collectFiles(f, files);
 			}
 			else {
-				zipFile(zipOut, baseDir, f);
+				files.add(f);
 			}
-			BundleHelper.throwIfCanceled(canceled);
 		}
 	}
 
 	/**
 	* Zip a all files and folders (recursively) in a dir
+	* Entries are deflated in parallel and written in sorted path order
 	*/
 	public static void zipDirRecursive(File inDir, File outFile, ICanceled canceled) throws IOException {
-		ZipOutputStream zipOut = null;
-		try {
-			zipOut = new ZipOutputStream(new FileOutputStream(outFile));
-			zipDir(zipOut, inDir, inDir, canceled);
+		List<File> files = new ArrayList<File>();
+		collectFiles(inDir, files);
+		BundleHelper.throwIfCanceled(canceled);
+
+		TreeMap<String, File> sorted = new TreeMap<String, File>();
+		for (File f : files) {
+			sorted.put(stripBaseDir(inDir, f).replace('\\', '/'), f);
 		}
-		finally {
-			IOUtils.closeQuietly(zipOut);
+
+		ParallelZipWriter writer = new ParallelZipWriter(outFile);
+		for (Map.Entry<String, File> entry : sorted.entrySet()) {
+			String filePath = entry.getKey();
+			writer.add(filePath, entry.getValue(), isStored(filePath));
 		}
+		writer.write(canceled);
 	}
 }
@@ -14,11 +14,40 @@
 
 package com.dynamo.bob.font;
 
+import java.util.Arrays;
+
+/**
+ * Computes the distance from pixels to the line segments of a glyph outline.
+ *
+ * When rendering, the segments are binned into a uniform grid. The distance of
+ * a pixel is found by visiting rings of cells around it, until the closest
+ * unvisited cell is further away than the closest segment found. The result
+ * is identical to testing every segment.
+ */
 public class DistanceFieldGenerator
 {
-    public double[] lineSegments = new double[32768];
+    // Below this number of segments, testing every segment is faster than building a grid
+    static final int GRID_MIN_SEGMENTS = 64;
+    static final int GRID_MAX_SIZE = 1024;
+
+    // x0, y0, dx, dy, 1 / length^2 per segment
+    public double[] lineSegments = new double[1280];
     public int lineSegmentsEnd = 0;
 
+    // Grid covering the segments and the rendered area
+    private double gridX0;
+    private double gridY0;
+    private double cellSize;
+    private double cellSizeInverse;
+    private int gridWidth;
+    private int gridHeight;
+    // Segment offsets (into lineSegments) of cell i are cellSegments[cellStart[i]..cellStart[i+1]]
+    private int[] cellStart;
+    private int[] cellSegments;
+    // Query number that last tested each segment, a segment can be in several cells
+    private int[] segmentQuery;
+    private int query;
+
     public DistanceFieldGenerator()
     {
 
@@ -26,6 +55,10 @@ public class DistanceFieldGenerator
 
     public void addLine(double x0, double y0, double x1, double y1)
     {
+        if (lineSegmentsEnd + 5 > lineSegments.length)
+        {
+            lineSegments = Arrays.copyOf(lineSegments, lineSegments.length * 2);
+        }
         lineSegments[lineSegmentsEnd+0] = x0;
         lineSegments[lineSegmentsEnd+1] = y0;
         lineSegments[lineSegmentsEnd+2] = x1 - x0;
@@ -34,53 +67,204 @@ public class DistanceFieldGenerator
         lineSegmentsEnd += 5;
     }
 
+    // Remove all line segments, so the generator can be reused for another shape
+    public void clear()
+    {
+        lineSegmentsEnd = 0;
+    }
+
+    public int getLineCount()
+    {
+        return lineSegmentsEnd / 5;
+    }
+
+    // Squared distance from [x, y] to the line segment at offset i, or distMin if it's further away
+    private double segmentDistSqr(int i, double x, double y, double distMin)
+    {
+        double x0 = lineSegments[i];
+        double y0 = lineSegments[i+1];
+        double dx = lineSegments[i+2];
+        double dy = lineSegments[i+3];
+        double k = lineSegments[i+4];
+
+        double dx0 = x - x0;
+        double dy0 = y - y0;
+        double t = k * (dx * dx0 + dy * dy0);
+
+        if (t < 0)
+        {
+            // Closest point is t=0 of the line
+            double distSqr = dx0 * dx0 + dy0 * dy0;
+            if (distSqr < distMin)
+                distMin = distSqr;
+        }
+        else if (t > 1)
+        {
+            // Closest point is t=1 of the line
+            double xx = x - (x0 + dx);
+            double yy = y - (y0 + dy);
+            double distSqr = xx*xx + yy*yy;
+            if (distSqr < distMin)
+                distMin = distSqr;
+        }
+        else
+        {
+            // Case when the closest point is along the line, and t will be [0,1]
+            double px = x0 + t * dx - x;
+            double py = y0 + t * dy - y;
+            double distSqr = px*px + py*py;
+            if (distSqr < distMin)
+                distMin = distSqr;
+        }
+        return distMin;
+    }
+
     // Compute the minimal distance from [x, y] to any of the line segments
     public double distSqr(double x, double y)
     {
         double distMin = 10000000;
         for (int i=0;i<lineSegmentsEnd;i+=5)
         {
-            double x0 = lineSegments[i];
-            double y0 = lineSegments[i+1];
-            double dx = lineSegments[i+2];
-            double dy = lineSegments[i+3];
-            double k = lineSegments[i+4];
+            distMin = segmentDistSqr(i, x, y, distMin);
+        }
+        return distMin;
+    }
+
+    private int cellX(double x)
+    {
+        return Math.max(0, Math.min(gridWidth - 1, (int)Math.floor((x - gridX0) * cellSizeInverse)));
+    }
+
+    private int cellY(double y)
+    {
+        return Math.max(0, Math.min(gridHeight - 1, (int)Math.floor((y - gridY0) * cellSizeInverse)));
+    }
+
+    // Bin the segments into a grid that covers them and the area [x0, y0] - [x1, y1]
+    private void buildGrid(double x0, double y0, double x1, double y1)
+    {
+        double minX = Math.min(x0, x1), minY = Math.min(y0, y1);
+        double maxX = Math.max(x0, x1), maxY = Math.max(y0, y1);
+        for (int i=0;i<lineSegmentsEnd;i+=5)
+        {
+            double sx = lineSegments[i], sy = lineSegments[i+1];
+            double ex = sx + lineSegments[i+2], ey = sy + lineSegments[i+3];
+            minX = Math.min(minX, Math.min(sx, ex));
+            minY = Math.min(minY, Math.min(sy, ey));
+            maxX = Math.max(maxX, Math.max(sx, ex));
+            maxY = Math.max(maxY, Math.max(sy, ey));
+        }
 
-            double dx0 = x - x0;
-            double dy0 = y - y0;
-            double t = k * (dx * dx0 + dy * dy0);
+        // About one segment per cell
+        double w = Math.max(maxX - minX, 1e-6);
+        double h = Math.max(maxY - minY, 1e-6);
+        cellSize = Math.max(Math.sqrt(w * h / getLineCount()), Math.max(w, h) / GRID_MAX_SIZE);
+        cellSizeInverse = 1.0 / cellSize;
+        gridX0 = minX;
+        gridY0 = minY;
+        gridWidth = Math.max(1, (int)Math.ceil(w * cellSizeInverse));
+        gridHeight = Math.max(1, (int)Math.ceil(h * cellSizeInverse));
 
-            if (t < 0)
+        // Segments are binned by their bounds, with a margin so that rounding
+        // can't leave out a cell that contains a point of the segment
+        double margin = cellSize * 1e-6;
+        int cellCount = gridWidth * gridHeight;
+        cellStart = new int[cellCount + 1];
+        for (int pass=0;pass<2;pass++)
+        {
+            int[] fill = pass == 0 ? null : Arrays.copyOf(cellStart, cellCount);
+            for (int i=0;i<lineSegmentsEnd;i+=5)
             {
-                // Closest point is t=0 of the line
-                double distSqr = dx0 * dx0 + dy0 * dy0;
-                if (distSqr < distMin)
-                    distMin = distSqr;
+                double sx = lineSegments[i], sy = lineSegments[i+1];
+                double ex = sx + lineSegments[i+2], ey = sy + lineSegments[i+3];
+                int cx0 = cellX(Math.min(sx, ex) - margin), cx1 = cellX(Math.max(sx, ex) + margin);
+                int cy0 = cellY(Math.min(sy, ey) - margin), cy1 = cellY(Math.max(sy, ey) + margin);
+                for (int cy=cy0;cy<=cy1;cy++)
+                {
+                    for (int cx=cx0;cx<=cx1;cx++)
+                    {
+                        int cell = cy * gridWidth + cx;
+                        if (pass == 0)
+                            cellStart[cell + 1]++;
+                        else
+                            cellSegments[fill[cell]++] = i;
+                    }
+                }
             }
-            else if (t > 1)
+            if (pass == 0)
+            {
+                for (int cell=0;cell<cellCount;cell++)
+                    cellStart[cell + 1] += cellStart[cell];
+                cellSegments = new int[cellStart[cellCount]];
+            }
+        }
+        segmentQuery = new int[getLineCount()];
+        query = 0;
+    }
+
+    private double cellDistSqr(int cell, double x, double y, double distMin)
+    {
+        for (int j=cellStart[cell];j<cellStart[cell + 1];j++)
+        {
+            int i = cellSegments[j];
+            if (segmentQuery[i / 5] != query)
             {
-                // Closest point is t=1 of the line
-                double xx = x - (x0 + dx);
-                double yy = y - (y0 + dy);
-                double distSqr = xx*xx + yy*yy;
-                if (distSqr < distMin)
-                    distMin = distSqr;
+                segmentQuery[i / 5] = query;
+                distMin = segmentDistSqr(i, x, y, distMin);
             }
-            else
+        }
+        return distMin;
+    }
+
+    // Same as distSqr, using the grid
+    private double gridDistSqr(double x, double y)
+    {
+        ++query;
+        double distMin = 10000000;
+        int cx = cellX(x);
+        int cy = cellY(y);
+        for (int r=0;;r++)
+        {
+            int minX = cx - r, maxX = cx + r;
+            int minY = cy - r, maxY = cy + r;
+            // Visit the cells on the ring at distance r
+            for (int y0=Math.max(minY, 0);y0<=Math.min(maxY, gridHeight - 1);y0++)
             {
-                // Case when the closest point is along the line, and t will be [0,1]
-                double px = x0 + t * dx - x;
-                double py = y0 + t * dy - y;
-                double distSqr = px*px + py*py;
-                if (distSqr < distMin)
-                    distMin = distSqr;
+                boolean edgeRow = y0 == minY || y0 == maxY;
+                int step = edgeRow ? 1 : maxX - minX;
+                for (int x0=minX;x0<=maxX;x0+=Math.max(step, 1))
+                {
+                    if (x0 >= 0 && x0 < gridWidth)
+                        distMin = cellDistSqr(y0 * gridWidth + x0, x, y, distMin);
+                }
             }
+
+            // All segments closer than the border of the visited cells have been tested
+            double border = Double.MAX_VALUE;
+            if (minX > 0)
+                border = Math.min(border, x - (gridX0 + minX * cellSize));
+            if (maxX < gridWidth - 1)
+                border = Math.min(border, gridX0 + (maxX + 1) * cellSize - x);
+            if (minY > 0)
+                border = Math.min(border, y - (gridY0 + minY * cellSize));
+            if (maxY < gridHeight - 1)
+                border = Math.min(border, gridY0 + (maxY + 1) * cellSize - y);
+            if (border == Double.MAX_VALUE)
+                break; // The whole grid is visited
+            if (border >= 0 && distMin <= border * border)
+                break;
         }
         return distMin;
     }
 
     public void render(double[] output, double x0, double y0, double x1, double y1, int width, int height)
     {
+        boolean useGrid = getLineCount() >= GRID_MIN_SEGMENTS;
+        if (useGrid)
+        {
+            buildGrid(x0, y0, x1, y1);
+        }
+
         int ofs = 0;
         double dx = (x1 - x0) / (double)width;
         for (int y=0;y<height;y++)
@@ -89,7 +273,7 @@ public class DistanceFieldGenerator
             double px = x0;
             for (int x=0;x<width;x++)
             {
-                output[ofs++] = Math.sqrt(distSqr(px, py));
+                output[ofs++] = Math.sqrt(useGrid ? gridDistSqr(px, py) : distSqr(px, py));
                 px += dx;
             }
         }
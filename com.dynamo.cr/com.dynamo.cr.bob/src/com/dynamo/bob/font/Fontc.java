@@ -52,6 +52,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
@@ -147,6 +154,10 @@ public class Fontc {
     };
 
     static final float sdf_edge         = 0.75f;
+    // Max number of threads rendering glyphs
+    public static int maxThreads        = Project.getDefaultMaxCpuThreads();
+    // Each thread renders at least this many glyphs
+    static final int MIN_GLYPHS_PER_THREAD = 32;
     private InputFontFormat inputFormat = InputFontFormat.FORMAT_TRUETYPE;
     private Stroke outlineStroke        = null;
     private int channelCount            = 3;
@@ -157,6 +168,7 @@ public class Fontc {
 
     private Font font;
     private BMFont bmfont;
+    private GlyphCache glyphCache;
 
     public static long FontDescToHash(FontDesc fontDesc) {
         FontDesc.Builder fontDescbuilder = FontDesc.newBuilder();
@@ -212,6 +224,32 @@ public class Fontc {
         return fontMapLayerMask;
     }
 
+    /**
+     * State for rendering glyphs, one per thread. Font and render context are
+     * not shared between threads, so each has its own copy of the font.
+     */
+    private class GlyphRenderContext {
+        final Font font;
+        final FontRenderContext fontRenderContext;
+        final DistanceFieldGenerator distanceFieldGenerator = new DistanceFieldGenerator();
+        final Composite blendComposite = new BlendComposite();
+        final ConvolveOp shadowConvolve = createShadowConvolve();
+
+        GlyphRenderContext() {
+            if (Fontc.this.font != null) {
+                font = Fontc.this.font.deriveFont(Fontc.this.font.getStyle(), Fontc.this.font.getSize2D());
+                fontRenderContext = createFontRenderContext();
+            } else {
+                font = null;
+                fontRenderContext = null;
+            }
+        }
+
+        GlyphVector getGlyphVector(Glyph glyph) {
+            return font.createGlyphVector(fontRenderContext, new String(Character.toChars(glyph.c)));
+        }
+    }
+
     public interface FontResourceResolver {
         public InputStream getResource(String resourceName) throws FileNotFoundException;
     }
@@ -224,6 +262,14 @@ public class Fontc {
         return glyphs;
     }
 
+    /**
+     * Set the cache to read rendered glyphs from, and to add newly rendered
+     * glyphs to. The caller saves the cache after compiling.
+     */
+    public void setGlyphCache(GlyphCache glyphCache) {
+        this.glyphCache = glyphCache;
+    }
+
     public GlyphBank getGlyphBank() {
         return glyphBankBuilder.build();
     }
@@ -258,7 +304,7 @@ public class Fontc {
         font = font.deriveFont(Font.PLAIN, fontDesc.getSize());
 
 
-        FontRenderContext fontRendererContext = new FontRenderContext(new AffineTransform(), fontDesc.getAntialias() != 0, fontDesc.getAntialias() != 0);
+        FontRenderContext fontRendererContext = createFontRenderContext();
 
         int loopEnd = characters.size();
         if (fontDesc.getAllChars()) {
@@ -357,6 +403,26 @@ public class Fontc {
                       .setMaxDescent(maxDescent);
     }
 
+    private FontRenderContext createFontRenderContext() {
+        return new FontRenderContext(new AffineTransform(), fontDesc.getAntialias() != 0, fontDesc.getAntialias() != 0);
+    }
+
+    private ConvolveOp createShadowConvolve() {
+        if (fontDesc.getShadowAlpha() <= 0.0f) {
+            return null;
+        }
+        float[] kernelData = {
+                0.0625f, 0.1250f, 0.0625f,
+                0.1250f, 0.2500f, 0.1250f,
+                0.0625f, 0.1250f, 0.0625f
+        };
+        Kernel kernel = new Kernel(3, 3, kernelData);
+        RenderingHints hints = new RenderingHints(null);
+        hints.put(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+        hints.put(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+        return new ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, hints);
+    }
+
     private float getPaddedSdfSpread(float spreadInput)
     {
         // Make sure the output spread value is not zero. We distribute the distance values over
@@ -444,22 +510,6 @@ public class Fontc {
             sdf_shadow_spread = getPaddedSdfSpread((float)fontDesc.getShadowBlur());
         }
 
-        Color faceColor = new Color(fontDesc.getAlpha(), 0.0f, 0.0f);
-        Color outlineColor = new Color(0.0f, fontDesc.getOutlineAlpha(), 0.0f);
-        ConvolveOp shadowConvolve = null;
-        Composite blendComposite = new BlendComposite();
-        if (fontDesc.getShadowAlpha() > 0.0f) {
-            float[] kernelData = {
-                    0.0625f, 0.1250f, 0.0625f,
-                    0.1250f, 0.2500f, 0.1250f,
-                    0.0625f, 0.1250f, 0.0625f
-            };
-            Kernel kernel = new Kernel(3, 3, kernelData);
-            RenderingHints hints = new RenderingHints(null);
-            hints.put(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-            hints.put(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
-            shadowConvolve = new ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, hints);
-        }
         if (fontDesc.getOutputFormat() == FontTextureFormat.TYPE_DISTANCE_FIELD) {
             // Calculate edge values for both outline and shadow. We must treat them differently
             // so that we don't use the same precision range for both edges
@@ -588,125 +638,59 @@ public class Fontc {
             include_glyph_count = Math.min(glyphs.size(), cache_rows * cache_columns);
         }
 
+        final List<Glyph> visibleGlyphs = new ArrayList<Glyph>();
         for (int i = 0; i < include_glyph_count; i++) {
-
             Glyph glyph = glyphs.get(i);
-            if (glyph.width <= 0 || glyph.ascent + glyph.descent <= 0) {
-                continue;
+            if (glyph.width > 0 && glyph.ascent + glyph.descent > 0) {
+                visibleGlyphs.add(glyph);
             }
+        }
 
-            // Generate bitmap for each glyph depending on format
-            BufferedImage glyphImage = null;
-            if (fontDesc.getOutputFormat() == FontTextureFormat.TYPE_BITMAP &&
-                inputFormat == InputFontFormat.FORMAT_TRUETYPE) {
-                glyphImage = drawGlyph(glyph, padding, font, blendComposite, faceColor, outlineColor, shadowConvolve);
-            } else if (fontDesc.getOutputFormat() == FontTextureFormat.TYPE_BITMAP &&
-                       inputFormat == InputFontFormat.FORMAT_BMFONT) {
-                glyphImage = drawBMFontGlyph(glyph, imageBMFont);
-            } else if (fontDesc.getOutputFormat() == FontTextureFormat.TYPE_DISTANCE_FIELD &&
-                       inputFormat == InputFontFormat.FORMAT_TRUETYPE) {
-                glyphImage = makeDistanceField(glyph, padding, sdf_spread, sdf_shadow_spread, font, sdf_edge, shadowConvolve);
+        GlyphParameters parameters = new GlyphParameters();
+        parameters.preview = preview;
+        parameters.padding = padding;
+        parameters.cellPadding = cell_padding;
+        parameters.sdfSpread = sdf_spread;
+        parameters.sdfShadowSpread = sdf_shadow_spread;
+        parameters.sdfOutline = glyphBankBuilder.getSdfOutline();
+        parameters.imageBMFont = imageBMFont;
+
+        // Only glyphs missing from the glyph cache are rendered
+        boolean useGlyphCache = glyphCache != null && !preview && inputFormat == InputFontFormat.FORMAT_TRUETYPE;
+        byte[][] glyphData = new byte[visibleGlyphs.size()][];
+        List<Integer> missingIndices = new ArrayList<Integer>();
+        List<Glyph> missingGlyphs = new ArrayList<Glyph>();
+        for (int i = 0; i < visibleGlyphs.size(); i++) {
+            Glyph glyph = visibleGlyphs.get(i);
+            GlyphCache.Entry entry = useGlyphCache ? glyphCache.get(glyph.c) : null;
+            if (entry != null) {
+                glyph.x = entry.x;
+                glyph.y = entry.y;
+                glyphData[i] = entry.data;
             } else {
-                throw new FontFormatException("Invalid font format combination!");
+                missingIndices.add(i);
+                missingGlyphs.add(glyph);
             }
+        }
 
-            if (preview) {
-
-                glyph.image = glyphImage;
-
-            } else {
-                BufferedImage paddedGlyphImage = new BufferedImage(glyphImage.getWidth() + cell_padding * 2,
-                                                                    glyphImage.getHeight() + cell_padding * 2, BufferedImage.TYPE_4BYTE_ABGR);
-
-                int clearData = 0;
-                int mask = 0xFFFFFFFF;
-                if (channelCount==1)
-                    mask = 0xFF;
-                else if (channelCount==2)
-                    mask = 0xFFFF;
-                else if (channelCount==3)
-                    mask = 0xFFFFFF;
-
-                int py = 0;
-                // Get raster data from rendered glyph and store in glyph data bank
-                for (int x = 0; x < paddedGlyphImage.getWidth(); ++x) {
-                    paddedGlyphImage.setRGB(x, py, clearData);
-                }
-                py++;
-                for (int y = 0; y < glyphImage.getHeight(); y++, py++) {
-                    int px = 0;
-                    paddedGlyphImage.setRGB(px++, py, clearData);
-                    for (int x = 0; x < glyphImage.getWidth(); x++, px++) {
-                        int color = glyphImage.getRGB(x, y);
-                        int blue  = (color) & 0xff;
-                        int green = (color >> 8) & 0xff;
-                        int red   = (color >> 16) & 0xff;
-                        int alpha = (color >> 24) & 0xff;
-                        blue = (blue * alpha) / 255;
-                        green = (green * alpha) / 255;
-                        red = (red * alpha) / 255;
-                        color = ((alpha << 24) |
-                                (blue << 16) |
-                                (green << 8) |
-                                (red << 0)) & mask;
-
-                        paddedGlyphImage.setRGB(px, py, color);
-                    }
-                    paddedGlyphImage.setRGB(px++, py, clearData);
-                }
-                for (int x = 0; x < paddedGlyphImage.getWidth(); ++x) {
-                    paddedGlyphImage.setRGB(x, py, clearData);
-                }
-
-                Pointer compressedTexture = null;
-                try {
-                    int width = paddedGlyphImage.getWidth();
-                    int height = paddedGlyphImage.getHeight();
-
-                    ByteBuffer paddedBuffer = toByteArray(paddedGlyphImage, width, height, 4, channelCount);
-
-                    compressedTexture = TexcLibrary.TEXC_CompressBuffer(paddedBuffer, paddedBuffer.limit());
-                    int texcBufferSize = TexcLibrary.TEXC_GetTotalBufferDataSize(compressedTexture);
-                    ByteBuffer compressedBuffer = ByteBuffer.allocateDirect(texcBufferSize);
-                    TexcLibrary.TEXC_GetBufferData(compressedTexture, compressedBuffer, texcBufferSize);
-
-                    byte[] uncompressedBytes = new byte[paddedBuffer.limit()];
-                    paddedBuffer.get(uncompressedBytes);
-
-                    byte[] compressedBytes = new byte[compressedBuffer.limit()];
-                    compressedBuffer.get(compressedBytes);
-
-                    // If the uncompressed size is smaller we write uncompressed
-                    // bytes instead
-                    // Note that when writing the uncompressed bytes we need to
-                    // also write the initial byte/flag telling the consumer if
-                    // the glyph is compressed or not.
-                    // - In the case of an uncompressed glyph we write a 0.
-                    // - In the case of a compressed glyph this information is
-                    // included in the compressedBytes array so we don't need to
-                    // bother with specifically writing the compressed flag.
-                    if (uncompressedBytes.length <= compressedBytes.length) {
-                        glyph.cache_entry_offset = dataOffset;
-                        glyph.cache_entry_size = 1 + uncompressedBytes.length;
-                        dataOffset += glyph.cache_entry_size;
-                        glyphDataBank.write(0); // uncompressed
-                        glyphDataBank.write(uncompressedBytes);
-                    }
-                    else {
-                        glyph.cache_entry_offset = dataOffset;
-                        glyph.cache_entry_size = compressedBytes.length;
-                        dataOffset += glyph.cache_entry_size;
-                        glyphDataBank.write(compressedBytes);
-                    }
-
-                } catch(IOException e) {
-                    throw new TextureGeneratorException(String.format("Failed to generate font texture: %s", e.getMessage()));
-                } finally {
-                    TexcLibrary.TEXC_DestroyBuffer(compressedTexture);
-                }
+        byte[][] renderedData = renderGlyphs(missingGlyphs, parameters);
+        for (int i = 0; i < missingGlyphs.size(); i++) {
+            Glyph glyph = missingGlyphs.get(i);
+            glyphData[missingIndices.get(i)] = renderedData[i];
+            if (useGlyphCache) {
+                glyphCache.put(glyph.c, new GlyphCache.Entry(glyph.x, glyph.y, renderedData[i]));
             }
         }
 
+        // Glyph data is added to the bank in glyph order, same as when rendering on one thread
+        for (int i = 0; i < visibleGlyphs.size() && !preview; i++) {
+            Glyph glyph = visibleGlyphs.get(i);
+            glyph.cache_entry_offset = dataOffset;
+            glyph.cache_entry_size = glyphData[i].length;
+            dataOffset += glyph.cache_entry_size;
+            glyphDataBank.write(glyphData[i], 0, glyphData[i].length);
+        }
+
         // Sanity check;
         // Some fonts don't include ASCII range and trying to compile a font without
         // setting "all_chars" could result in an empty glyph list.
@@ -758,21 +742,206 @@ public class Fontc {
 
     }
 
+    private static class GlyphParameters {
+        boolean preview;
+        int padding;
+        int cellPadding;
+        float sdfSpread;
+        float sdfShadowSpread;
+        float sdfOutline;
+        BufferedImage imageBMFont;
+    }
+
+    /**
+     * Render the glyphs, on up to maxThreads threads
+     * @return the glyph bank data of each glyph, null for previews
+     */
+    private byte[][] renderGlyphs(final List<Glyph> glyphs, final GlyphParameters parameters) throws TextureGeneratorException, FontFormatException {
+        final byte[][] glyphData = new byte[glyphs.size()][];
+        int threadCount = Math.max(1, Math.min(maxThreads, glyphs.size() / MIN_GLYPHS_PER_THREAD));
+        if (threadCount == 1) {
+            GlyphRenderContext context = new GlyphRenderContext();
+            for (int i = 0; i < glyphs.size(); i++) {
+                glyphData[i] = renderGlyph(glyphs.get(i), context, parameters);
+            }
+            return glyphData;
+        }
+
+        final AtomicInteger nextGlyph = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threadCount; t++) {
+                futures.add(executor.submit(() -> {
+                    GlyphRenderContext context = new GlyphRenderContext();
+                    int i;
+                    while (!failed.get() && (i = nextGlyph.getAndIncrement()) < glyphs.size()) {
+                        try {
+                            glyphData[i] = renderGlyph(glyphs.get(i), context, parameters);
+                        } catch (Exception e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TextureGeneratorException("Interrupted while generating font texture");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof TextureGeneratorException) {
+                        throw (TextureGeneratorException) cause;
+                    } else if (cause instanceof FontFormatException) {
+                        throw (FontFormatException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new TextureGeneratorException(String.format("Failed to generate font texture: %s", cause.getMessage()));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return glyphData;
+    }
+
+    /**
+     * Render a glyph and pad it to its cache cell
+     * @return the glyph bank entry of the glyph, or null for previews where
+     * the rendered image is stored in the glyph instead
+     */
+    private byte[] renderGlyph(Glyph glyph, GlyphRenderContext context, GlyphParameters parameters) throws TextureGeneratorException, FontFormatException {
+        // Generate bitmap for each glyph depending on format
+        BufferedImage glyphImage = null;
+        if (fontDesc.getOutputFormat() == FontTextureFormat.TYPE_BITMAP &&
+            inputFormat == InputFontFormat.FORMAT_TRUETYPE) {
+            glyphImage = drawGlyph(glyph, context, parameters.padding);
+        } else if (fontDesc.getOutputFormat() == FontTextureFormat.TYPE_BITMAP &&
+                   inputFormat == InputFontFormat.FORMAT_BMFONT) {
+            glyphImage = drawBMFontGlyph(glyph, parameters.imageBMFont);
+        } else if (fontDesc.getOutputFormat() == FontTextureFormat.TYPE_DISTANCE_FIELD &&
+                   inputFormat == InputFontFormat.FORMAT_TRUETYPE) {
+            glyphImage = makeDistanceField(glyph, context, parameters.padding, parameters.sdfSpread, parameters.sdfShadowSpread, parameters.sdfOutline, sdf_edge);
+        } else {
+            throw new FontFormatException("Invalid font format combination!");
+        }
+
+        if (parameters.preview) {
+
+            glyph.image = glyphImage;
+            return null;
+
+        } else {
+            BufferedImage paddedGlyphImage = new BufferedImage(glyphImage.getWidth() + parameters.cellPadding * 2,
+                                                                glyphImage.getHeight() + parameters.cellPadding * 2, BufferedImage.TYPE_4BYTE_ABGR);
+
+            int clearData = 0;
+            int mask = 0xFFFFFFFF;
+            if (channelCount==1)
+                mask = 0xFF;
+            else if (channelCount==2)
+                mask = 0xFFFF;
+            else if (channelCount==3)
+                mask = 0xFFFFFF;
+
+            int py = 0;
+            // Get raster data from rendered glyph and store in glyph data bank
+            for (int x = 0; x < paddedGlyphImage.getWidth(); ++x) {
+                paddedGlyphImage.setRGB(x, py, clearData);
+            }
+            py++;
+            for (int y = 0; y < glyphImage.getHeight(); y++, py++) {
+                int px = 0;
+                paddedGlyphImage.setRGB(px++, py, clearData);
+                for (int x = 0; x < glyphImage.getWidth(); x++, px++) {
+                    int color = glyphImage.getRGB(x, y);
+                    int blue  = (color) & 0xff;
+                    int green = (color >> 8) & 0xff;
+                    int red   = (color >> 16) & 0xff;
+                    int alpha = (color >> 24) & 0xff;
+                    blue = (blue * alpha) / 255;
+                    green = (green * alpha) / 255;
+                    red = (red * alpha) / 255;
+                    color = ((alpha << 24) |
+                            (blue << 16) |
+                            (green << 8) |
+                            (red << 0)) & mask;
+
+                    paddedGlyphImage.setRGB(px, py, color);
+                }
+                paddedGlyphImage.setRGB(px++, py, clearData);
+            }
+            for (int x = 0; x < paddedGlyphImage.getWidth(); ++x) {
+                paddedGlyphImage.setRGB(x, py, clearData);
+            }
+
+            Pointer compressedTexture = null;
+            try {
+                int width = paddedGlyphImage.getWidth();
+                int height = paddedGlyphImage.getHeight();
+
+                ByteBuffer paddedBuffer = toByteArray(paddedGlyphImage, width, height, 4, channelCount);
+
+                compressedTexture = TexcLibrary.TEXC_CompressBuffer(paddedBuffer, paddedBuffer.limit());
+                int texcBufferSize = TexcLibrary.TEXC_GetTotalBufferDataSize(compressedTexture);
+                ByteBuffer compressedBuffer = ByteBuffer.allocateDirect(texcBufferSize);
+                TexcLibrary.TEXC_GetBufferData(compressedTexture, compressedBuffer, texcBufferSize);
+
+                byte[] uncompressedBytes = new byte[paddedBuffer.limit()];
+                paddedBuffer.get(uncompressedBytes);
+
+                byte[] compressedBytes = new byte[compressedBuffer.limit()];
+                compressedBuffer.get(compressedBytes);
+
+                // If the uncompressed size is smaller we write uncompressed
+                // bytes instead
+                // Note that when writing the uncompressed bytes we need to
+                // also write the initial byte/flag telling the consumer if
+                // the glyph is compressed or not.
+                // - In the case of an uncompressed glyph we write a 0.
+                // - In the case of a compressed glyph this information is
+                // included in the compressedBytes array so we don't need to
+                // bother with specifically writing the compressed flag.
+                if (uncompressedBytes.length <= compressedBytes.length) {
+                    byte[] entry = new byte[1 + uncompressedBytes.length];
+                    entry[0] = 0; // uncompressed
+                    System.arraycopy(uncompressedBytes, 0, entry, 1, uncompressedBytes.length);
+                    return entry;
+                }
+                else {
+                    return compressedBytes;
+                }
+
+            } catch(IOException e) {
+                throw new TextureGeneratorException(String.format("Failed to generate font texture: %s", e.getMessage()));
+            } finally {
+                TexcLibrary.TEXC_DestroyBuffer(compressedTexture);
+            }
+        }
+    }
+
     private BufferedImage drawBMFontGlyph(Glyph glyph, BufferedImage imageBMFontInput) {
         return imageBMFontInput.getSubimage(glyph.x, glyph.y, glyph.width, glyph.ascent + glyph.descent);
     }
 
-    private BufferedImage makeDistanceField(Glyph glyph, int padding, float sdf_spread, float sdf_shadow_spread, Font font, float edge, ConvolveOp shadowConvolve) {
+    private BufferedImage makeDistanceField(Glyph glyph, GlyphRenderContext context, int padding, float sdf_spread, float sdf_shadow_spread, float sdf_outline, float edge) {
         int width = glyph.width + padding * 2;
         int height = glyph.ascent + glyph.descent + padding * 2;
 
-        Shape sh = glyph.vector.getGlyphOutline(0);
+        Shape sh = context.getGlyphVector(glyph).getGlyphOutline(0);
         PathIterator pi = sh.getPathIterator(new AffineTransform(1,0,0,1,0,0));
         pi = new FlatteningPathIterator(pi,  0.1);
 
         double _x = 0, _y = 0;
         double _lastmx = 0, _lastmy = 0;
-        DistanceFieldGenerator df = new DistanceFieldGenerator();
+        DistanceFieldGenerator df = context.distanceFieldGenerator;
+        df.clear();
         while (!pi.isDone()) {
             double [] c = new double[100];
             int res = pi.currentSegment(c);
@@ -836,8 +1005,6 @@ public class Fontc {
                 int outline_channel = (int)(255.0f * distance_to_edge_normalized);
                 outline_channel     = Math.max(0,Math.min(255,outline_channel));
 
-                float sdf_outline = glyphBankBuilder.getSdfOutline();
-
                 // This is needed to 'fill' the shadow body since
                 // we have no good way of knowing if the pixel is inside or outside
                 // of the shadow limit
@@ -869,7 +1036,7 @@ public class Fontc {
             // at least once so we can avoid the jaggies around the face edges. This is mostly
             // prominent when the blur size is small and the offset is large.
             BufferedImage tmp = blurredShadowImage.getSubimage(0, 0, width, height);
-            shadowConvolve.filter(tmp, blurredShadowImage);
+            context.shadowConvolve.filter(tmp, blurredShadowImage);
 
             for (int v=0;v<height;v++) {
                 for (int u=0;u<width;u++) {
@@ -884,7 +1051,7 @@ public class Fontc {
         return image;
     }
 
-    private BufferedImage drawGlyph(Glyph glyph, int padding, Font font, Composite blendComposite, Color faceColor, Color outlineColor, ConvolveOp shadowConvolve) {
+    private BufferedImage drawGlyph(Glyph glyph, GlyphRenderContext context, int padding) {
         int width = glyph.width + padding * 2;
         int height = glyph.ascent + glyph.descent + padding * 2;
 
@@ -901,7 +1068,7 @@ public class Fontc {
         g.clearRect(0, 0, image.getWidth(), image.getHeight());
         g.translate(dx, dy);
 
-        Shape outline = glyph.vector.getOutline(0, 0);
+        Shape outline = context.getGlyphVector(glyph).getOutline(0, 0);
         if (this.fontDesc.getShadowAlpha() > 0.0f) {
             if (this.fontDesc.getAlpha() > 0.0f) {
                 g.setPaint(new Color(0.0f, 0.0f, this.fontDesc.getShadowAlpha() * this.fontDesc.getAlpha()));
@@ -914,19 +1081,19 @@ public class Fontc {
             }
             for (int pass = 0; pass < this.fontDesc.getShadowBlur(); ++pass) {
                 BufferedImage tmp = image.getSubimage(0, 0, width, height);
-                shadowConvolve.filter(tmp, image);
+                context.shadowConvolve.filter(tmp, image);
             }
         }
 
-        g.setComposite(blendComposite);
+        g.setComposite(context.blendComposite);
         if (this.outlineStroke != null && this.fontDesc.getOutlineAlpha() > 0.0f) {
-            g.setPaint(outlineColor);
+            g.setPaint(new Color(0.0f, fontDesc.getOutlineAlpha(), 0.0f));
             g.setStroke(this.outlineStroke);
             g.draw(outline);
         }
 
         if (this.fontDesc.getAlpha() > 0.0f) {
-            g.setPaint(faceColor);
+            g.setPaint(new Color(fontDesc.getAlpha(), 0.0f, 0.0f));
             g.fill(outline);
         }
 
@@ -0,0 +1,197 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.font;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.dynamo.bob.archive.EngineVersion;
+import com.dynamo.bob.logging.Logger;
+import com.dynamo.render.proto.Font.FontDesc;
+
+/**
+ * On-disk cache of rendered glyphs.
+ *
+ * All glyphs rendered from the same font file with the same render parameters
+ * are stored in one file, keyed by code point. A font that only changes its
+ * character set can then reuse the glyphs it already rendered, and only
+ * render the new ones.
+ */
+public class GlyphCache {
+
+    private static Logger logger = Logger.getLogger(GlyphCache.class.getName());
+
+    // Bump when the rendered glyph data changes
+    static final int VERSION = 1;
+    private static final int MAGIC = 0x47434831; // "GCH1"
+
+    /**
+     * Rendered glyph, as stored in the glyph data bank
+     */
+    public static class Entry {
+        public final int x;
+        public final int y;
+        public final byte[] data;
+
+        public Entry(int x, int y, byte[] data) {
+            this.x = x;
+            this.y = y;
+            this.data = data;
+        }
+    }
+
+    private final File file;
+    private final Map<Integer, Entry> entries = new TreeMap<Integer, Entry>();
+    private boolean loaded = false;
+    private boolean modified = false;
+
+    public GlyphCache(File cacheDir, String key) {
+        this.file = new File(cacheDir, key);
+    }
+
+    /**
+     * Calculate the cache key of the glyphs of a font. The key only includes
+     * the parameters that change how each glyph is rendered, and not the
+     * character set or the size of the glyph cache texture.
+     * @param fontData content of the font file
+     * @param fontDesc font description
+     * @return the key as a hex string
+     */
+    public static String calculateKey(byte[] fontData, FontDesc fontDesc) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        String parameters = ""
+            + VERSION + ";"
+            + EngineVersion.sha1 + ";"
+            + fontDesc.getSize() + ";"
+            + fontDesc.getAntialias() + ";"
+            + fontDesc.getAlpha() + ";"
+            + fontDesc.getOutlineAlpha() + ";"
+            + fontDesc.getOutlineWidth() + ";"
+            + fontDesc.getShadowAlpha() + ";"
+            + fontDesc.getShadowBlur() + ";"
+            + fontDesc.getOutputFormat();
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+        digest.update(fontData);
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private void load() {
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                int codePoint = in.readInt();
+                int x = in.readInt();
+                int y = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                entries.put(codePoint, new Entry(x, y, data));
+            }
+        } catch (IOException e) {
+            logger.warning("Unable to read glyph cache %s: %s", file, e.getMessage());
+            entries.clear();
+        }
+    }
+
+    /**
+     * Get a rendered glyph
+     * @param codePoint code point of the glyph
+     * @return the glyph or null if it isn't in the cache
+     */
+    public synchronized Entry get(int codePoint) {
+        if (!loaded) {
+            load();
+        }
+        return entries.get(codePoint);
+    }
+
+    public synchronized void put(int codePoint, Entry entry) {
+        if (!loaded) {
+            load();
+        }
+        entries.put(codePoint, entry);
+        modified = true;
+    }
+
+    public synchronized int size() {
+        if (!loaded) {
+            load();
+        }
+        return entries.size();
+    }
+
+    /**
+     * Write the cache to disk if glyphs were added. The file is replaced
+     * atomically, so a concurrent or interrupted build never sees a partial file.
+     */
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        File dir = file.getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<Integer, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeInt(e.getKey());
+                    out.writeInt(entry.x);
+                    out.writeInt(entry.y);
+                    out.writeInt(entry.data.length);
+                    out.write(entry.data);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } finally {
+            tmp.delete();
+        }
+    }
+}
@@ -14,7 +14,6 @@
 
 package com.dynamo.bob.fs;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
@@ -87,25 +86,9 @@ public abstract class AbstractFileSystem<F extends IFileSystem, R extends IResou
         return null;
     }
 
-    private void walk(IWalker walker, String path, Collection<String> results) {
-        String absolutePath = FilenameUtils.normalizeNoEndSeparator(FilenameUtils.concat(this.rootDirectory, path));
-        File file = new File(absolutePath);
-
-        if (file.isDirectory()) {
-            if (walker.handleDirectory(path, results)) {
-                String[] children = file.list();
-                for (String child : children) {
-                    walk(walker, FilenameUtils.concat(path, child), results);
-                }
-            }
-        } else {
-            walker.handleFile(path, results);
-        }
-    }
-
     @Override
     public void walk(String path, IWalker walker, Collection<String> results) {
-        walk(walker, path, results);
+        ParallelFileWalker.walk(this.rootDirectory, path, walker, results);
         for (IMountPoint mountPoint : this.mountPoints) {
             mountPoint.walk(path, walker, results);
         }
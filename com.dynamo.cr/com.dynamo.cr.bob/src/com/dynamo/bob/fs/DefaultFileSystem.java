@@ -84,6 +84,23 @@ public class DefaultFileSystem extends AbstractFileSystem<DefaultFileSystem, Def
         }
     }
 
+    /**
+     * Drop the cached digest for a path, e.g. when a file watcher reports
+     * that it changed within the resolution of the file modification time.
+     * @param path root relative path
+     */
+    public void invalidateCache(String path) {
+        cache.remove(path);
+    }
+
+    /**
+     * Drop all cached digests, e.g. when a file watcher lost track of the
+     * changes. The digests saved on disk can't be trusted either.
+     */
+    public void invalidateCache() {
+        cache = new HashMap<String, DefaultFileSystem.CacheEntry>();
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public void loadCache() {
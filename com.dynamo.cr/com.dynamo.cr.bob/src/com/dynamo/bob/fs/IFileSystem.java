@@ -26,6 +26,9 @@ public interface IFileSystem {
 
     /**
      * Used to traverse the file system and any attached mount points.
+     * The file system may invoke the walker from several threads at once for
+     * different directories, so implementations should only write to the
+     * supplied results collection.
      */
     public interface IWalker {
         /**
@@ -0,0 +1,165 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.fs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.io.FilenameUtils;
+
+import com.dynamo.bob.fs.IFileSystem.IWalker;
+
+/**
+ * Walks a directory tree on the local file system using a fork-join pool,
+ * with one task per directory.
+ *
+ * Each directory is listed once with {@link Files#walkFileTree} (depth 1)
+ * so that the file attributes come with the listing instead of separate
+ * isDirectory() calls. Children are visited in name order and the results
+ * of each sub directory are spliced in where a depth first walk would have
+ * put them, so the output is deterministic regardless of thread count.
+ */
+public class ParallelFileWalker {
+
+    private static class Child implements Comparable<Child> {
+        final String name;
+        final boolean directory;
+
+        Child(String name, boolean directory) {
+            this.name = name;
+            this.directory = directory;
+        }
+
+        @Override
+        public int compareTo(Child other) {
+            return name.compareTo(other.name);
+        }
+    }
+
+    private static List<Child> listChildren(final Path dir) throws IOException {
+        final List<Child> children = new ArrayList<Child>();
+        Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                children.add(new Child(file.getFileName().toString(), attrs.isDirectory()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                // An unreadable root means an empty listing, anything else is treated as a file
+                if (!file.equals(dir)) {
+                    children.add(new Child(file.getFileName().toString(), false));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(children);
+        return children;
+    }
+
+    private static class DirectoryTask extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final IWalker walker;
+        private final Path absolutePath;
+        private final String path;
+
+        DirectoryTask(IWalker walker, Path absolutePath, String path) {
+            this.walker = walker;
+            this.absolutePath = absolutePath;
+            this.path = path;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<Child> children;
+            try {
+                children = listChildren(absolutePath);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            List<String> results = new ArrayList<String>();
+            List<DirectoryTask> subTasks = new ArrayList<DirectoryTask>();
+            // Position in results where the output of each sub task goes
+            List<Integer> insertPositions = new ArrayList<Integer>();
+            for (Child child : children) {
+                String childPath = FilenameUtils.concat(path, child.name);
+                if (child.directory) {
+                    if (walker.handleDirectory(childPath, results)) {
+                        DirectoryTask task = new DirectoryTask(walker, absolutePath.resolve(child.name), childPath);
+                        task.fork();
+                        subTasks.add(task);
+                        insertPositions.add(results.size());
+                    }
+                } else {
+                    walker.handleFile(childPath, results);
+                }
+            }
+
+            if (subTasks.isEmpty()) {
+                return results;
+            }
+
+            List<String> merged = new ArrayList<String>();
+            int start = 0;
+            for (int i = 0; i < subTasks.size(); ++i) {
+                int end = insertPositions.get(i);
+                merged.addAll(results.subList(start, end));
+                merged.addAll(subTasks.get(i).join());
+                start = end;
+            }
+            merged.addAll(results.subList(start, results.size()));
+            return merged;
+        }
+    }
+
+    /**
+     * Walk the file system under a root directory. The walker callbacks are invoked
+     * concurrently for different directories, and must only write to the supplied
+     * results collection.
+     * @param rootDirectory absolute root directory
+     * @param path path relative to the root directory to begin in
+     * @param walker walker to perform and possibly store the result
+     * @param results collection to write the results to
+     */
+    public static void walk(String rootDirectory, String path, IWalker walker, Collection<String> results) {
+        String absolutePath = FilenameUtils.normalizeNoEndSeparator(FilenameUtils.concat(rootDirectory, path));
+        Path root = Paths.get(absolutePath);
+
+        if (Files.isDirectory(root)) {
+            if (walker.handleDirectory(path, results)) {
+                results.addAll(ForkJoinPool.commonPool().invoke(new DirectoryTask(walker, root, path)));
+            }
+        } else {
+            walker.handleFile(path, results);
+        }
+    }
+}
@@ -35,6 +35,7 @@ import com.dynamo.bob.CompileExceptionError;
 import com.dynamo.bob.Project;
 import com.dynamo.bob.Task;
 import com.dynamo.bob.Task.TaskBuilder;
+import com.dynamo.bob.cache.ResourceCache;
 import com.dynamo.bob.fs.IResource;
 import com.dynamo.bob.textureset.TextureSetGenerator.TextureSetResult;
 import com.dynamo.bob.logging.Logger;
@@ -101,14 +102,14 @@ public class AtlasBuilder extends Builder<TextureImage.Type>  {
         return taskBuilder.build();
     }
 
-    private static TextureImage generateTextureImage(List<BufferedImage> images, TextureImage.Type textureType, TextureProfile texProfile, boolean compress) throws CompileExceptionError, IOException {
+    private static TextureImage generateTextureImage(List<BufferedImage> images, TextureImage.Type textureType, TextureProfile texProfile, boolean compress, ResourceCache resourceCache) throws CompileExceptionError, IOException {
         TextureImage textureImages[] = new TextureImage[images.size()];
 
         for (int i = 0; i < images.size(); i++)
         {
             TextureImage texture;
             try {
-                texture = TextureGenerator.generate(images.get(i), texProfile, compress);
+                texture = TextureGenerator.generate(images.get(i), texProfile, compress, resourceCache);
             } catch (TextureGeneratorException e) {
                 throw new CompileExceptionError(e.getMessage(), e);
             }
@@ -132,7 +133,7 @@ public class AtlasBuilder extends Builder<TextureImage.Type>  {
         logger.info("Compiling %s using profile %s", task.input(0).getPath(), texProfile!=null?texProfile.getName():"<none>");
 
         boolean compress = project.option("texture-compression", "false").equals("true");
-        TextureImage texture = generateTextureImage(result.images, textureImageType, texProfile, compress);
+        TextureImage texture = generateTextureImage(result.images, textureImageType, texProfile, compress, this.project.getResourceCache());
 
         task.output(0).setContent(textureSet.toByteArray());
         task.output(1).setContent(texture.toByteArray());
@@ -178,7 +179,7 @@ public class AtlasBuilder extends Builder<TextureImage.Type>  {
         TextureSet textureSet = result.builder.setPageCount(getPageCount(result.images, textureImageType))
                                         .setTexture(textureProjectStr)
                                         .build();
-        TextureImage texture = generateTextureImage(result.images, textureImageType, null, false);
+        TextureImage texture = generateTextureImage(result.images, textureImageType, null, false, null);
 
         FileOutputStream textureSetOutStream = new FileOutputStream(textureSetOutPath);
         textureSet.writeTo(textureSetOutStream);
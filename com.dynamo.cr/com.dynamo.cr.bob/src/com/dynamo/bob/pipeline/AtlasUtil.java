@@ -15,7 +15,6 @@
 package com.dynamo.bob.pipeline;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.FileInputStream;
 import java.util.ArrayList;
@@ -151,11 +150,12 @@ public class AtlasUtil {
         return resources;
     }
 
-    public static List<BufferedImage> loadImages(List<IResource> resources) throws IOException, CompileExceptionError {
+    public static List<BufferedImage> loadImages(Project project, List<IResource> resources) throws IOException, CompileExceptionError {
         List<BufferedImage> images = new ArrayList<BufferedImage>(resources.size());
+        ImageCache imageCache = ImageCache.get(project);
 
         for (IResource resource : resources) {
-            BufferedImage image = ImageIO.read(new ByteArrayInputStream(resource.getContent()));
+            BufferedImage image = imageCache.read(resource);
             if (image == null) {
                 throw new CompileExceptionError(resource, -1, "Unable to load image " + resource.getPath());
             }
@@ -274,7 +274,7 @@ public class AtlasUtil {
             imageTrimModes.add(image.getSpriteTrimMode());
         }
         List<IResource> imageResources = toResources(atlasResource, imageResourcePaths);
-        List<BufferedImage> images = AtlasUtil.loadImages(imageResources);
+        List<BufferedImage> images = AtlasUtil.loadImages(project, imageResources);
 
         try {
             validatePatterns(atlas.getRenamePatterns());
@@ -18,13 +18,13 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.List;
-import java.util.Iterator;
 import java.util.Arrays;
 
-import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonParseException;
-import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.io.NumberInput;
 
 import com.dynamo.bob.Builder;
 import com.dynamo.bob.BuilderParams;
@@ -70,136 +70,231 @@ public class BufferBuilder extends Builder<Void> {
         }
     }
 
-    static Integer[] fillIntArray(StreamDesc.Builder builder, JsonNode dataNode) {
-        int dataCount = dataNode.size();
-        Integer[] out = new Integer[dataCount];
-        for (int i = 0; i < dataCount; ++i) {
-            out[i] = (int)dataNode.get(i).asDouble();
+    // Same conversions as JsonNode.asText(), asInt() and asDouble(), which
+    // were used when the buffer was read as a JSON tree.
+    static String asText(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case START_ARRAY:
+            case START_OBJECT:
+                parser.skipChildren();
+                return "";
+            default:
+                return parser.getText();
         }
-        return out;
     }
 
-    static Long[] fillLongArray(StreamDesc.Builder builder, JsonNode dataNode) {
-        int dataCount = dataNode.size();
-        Long[] out = new Long[dataCount];
-        for (int i = 0; i < dataCount; ++i) {
-            out[i] = (long)dataNode.get(i).asDouble();
+    static int asInt(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue().intValue();
+            case VALUE_STRING:
+                return NumberInput.parseAsInt(parser.getText(), 0);
+            case VALUE_TRUE:
+                return 1;
+            case START_ARRAY:
+            case START_OBJECT:
+                parser.skipChildren();
+                return 0;
+            default:
+                return 0;
         }
-        return out;
     }
 
-    static Float[] fillFloatArray(StreamDesc.Builder builder, JsonNode dataNode) {
-        int dataCount = dataNode.size();
-        Float[] out = new Float[dataCount];
-        for (int i = 0; i < dataCount; ++i) {
-            out[i] = (float)dataNode.get(i).asDouble();
+    static double asDouble(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_STRING:
+                return NumberInput.parseAsDouble(parser.getText(), 0.0);
+            case VALUE_TRUE:
+                return 1.0;
+            case START_ARRAY:
+            case START_OBJECT:
+                parser.skipChildren();
+                return 0.0;
+            default:
+                return 0.0;
         }
-        return out;
-    }
-
-    static void fillUint(StreamDesc.Builder builder, JsonNode dataNode) {
-        builder.addAllUi(Arrays.asList(fillIntArray(builder, dataNode)));
-    }
-
-    static void fillInt(StreamDesc.Builder builder, JsonNode dataNode) {
-        builder.addAllI(Arrays.asList(fillIntArray(builder, dataNode)));
-    }
-
-    static void fillUlong(StreamDesc.Builder builder, JsonNode dataNode) {
-        builder.addAllUi64(Arrays.asList(fillLongArray(builder, dataNode)));
-    }
-
-    static void fillLong(StreamDesc.Builder builder, JsonNode dataNode) {
-        builder.addAllI64(Arrays.asList(fillLongArray(builder, dataNode)));
-    }
-
-    static void fillFloat(StreamDesc.Builder builder, JsonNode dataNode) {
-        builder.addAllF(Arrays.asList(fillFloatArray(builder, dataNode)));
     }
 
-    static void fillData(StreamDesc.Builder builder, JsonNode dataNode, ValueType type)
-    {
+    static void addValue(StreamDesc.Builder builder, double value, ValueType type) {
         switch (type) {
             case VALUE_TYPE_INT8:
             case VALUE_TYPE_INT16:
             case VALUE_TYPE_INT32:
-                fillInt(builder, dataNode);
+                builder.addI((int)value);
                 break;
 
             case VALUE_TYPE_UINT8:
             case VALUE_TYPE_UINT16:
             case VALUE_TYPE_UINT32:
-                fillUint(builder, dataNode);
+                builder.addUi((int)value);
                 break;
 
             case VALUE_TYPE_UINT64:
-                fillUlong(builder, dataNode);
+                builder.addUi64((long)value);
                 break;
 
             case VALUE_TYPE_INT64:
-                fillLong(builder, dataNode);
+                builder.addI64((long)value);
                 break;
 
             case VALUE_TYPE_FLOAT32:
-                fillFloat(builder, dataNode);
+                builder.addF((float)value);
                 break;
         }
     }
 
-    @Override
-    public void build(Task<Void> task) throws CompileExceptionError, IOException {
-        ByteArrayInputStream bufferJsonIs = new ByteArrayInputStream(task.input(0).getContent());
+    static void clearData(StreamDesc.Builder builder) {
+        builder.clearI();
+        builder.clearUi();
+        builder.clearI64();
+        builder.clearUi64();
+        builder.clearF();
+    }
 
-        BufferDesc.Builder bufferDescBuilder = BufferDesc.newBuilder();
+    /**
+     * Read the values of a data array straight into the repeated field of the
+     * stream type. The parser is positioned at the start of the array.
+     */
+    static void fillData(StreamDesc.Builder builder, JsonParser parser, ValueType type) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            addValue(builder, asDouble(parser), type);
+        }
+    }
 
-        try {
-            ObjectMapper m = new ObjectMapper();
-            JsonNode bufferNode = m.readValue(new InputStreamReader(bufferJsonIs, "UTF-8"), JsonNode.class);
+    /**
+     * Read the values of a data array that comes before the type field of the
+     * stream. Every value is converted through a double, so they can be
+     * converted to the stream type later without any loss.
+     */
+    static double[] readData(JsonParser parser) throws IOException {
+        double[] data = new double[1024];
+        int count = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (count == data.length) {
+                data = Arrays.copyOf(data, count * 2);
+            }
+            data[count++] = asDouble(parser);
+        }
+        return Arrays.copyOf(data, count);
+    }
 
-            Iterator<JsonNode> streamNodes = bufferNode.getElements();
-            while (streamNodes.hasNext()) {
-                JsonNode streamNode = streamNodes.next();
+    static StreamDesc parseStream(IResource input, JsonParser parser) throws IOException, CompileExceptionError {
+        StreamDesc.Builder streamDescBuilder = StreamDesc.newBuilder();
+        String streamName = null;
+        String streamTypeString = null;
+        ValueType streamType = null;
+        boolean hasCount = false;
+        int streamValueCount = 0;
+        double[] pendingData = null;
+
+        if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (fieldName) {
+                    case "name":
+                        streamName = asText(parser);
+                        break;
+
+                    case "type":
+                        streamTypeString = asText(parser);
+                        streamType = stringTypeToDDFType(streamTypeString);
+                        break;
+
+                    case "count":
+                        hasCount = true;
+                        streamValueCount = asInt(parser);
+                        break;
+
+                    case "data":
+                        clearData(streamDescBuilder);
+                        pendingData = null;
+                        if (token != JsonToken.START_ARRAY) {
+                            parser.skipChildren();
+                        } else if (streamType != null) {
+                            fillData(streamDescBuilder, parser, streamType);
+                        } else {
+                            pendingData = readData(parser);
+                        }
+                        break;
+
+                    default:
+                        parser.skipChildren();
+                        break;
+                }
+            }
+        } else {
+            parser.skipChildren();
+        }
 
-                // Get and check that all required fields are available for a stream.
+        // Check that all required fields are available for a stream.
 
-                // name field
-                if (streamNode.get("name") == null) {
-                    throw new CompileExceptionError(task.input(0), 0, "Stream is missing required name field.");
-                }
-                String streamName = streamNode.get("name").asText();
+        // name field
+        if (streamName == null) {
+            throw new CompileExceptionError(input, 0, "Stream is missing required name field.");
+        }
 
-                // type field (we also make sure it is a supported type)
-                if (streamNode.get("type") == null) {
-                    throw new CompileExceptionError(task.input(0), 0, "Stream '" + streamName + "' is missing required type field.");
-                }
-                String streamTypeString = streamNode.get("type").asText();
-                ValueType streamType = stringTypeToDDFType(streamTypeString);
-                if (streamType == null) {
-                    throw new CompileExceptionError(task.input(0), 0, "Unknown stream type: " + streamTypeString + " (allowed types: " + allowedTypeStrings + ").");
-                }
+        // type field (we also make sure it is a supported type)
+        if (streamTypeString == null) {
+            throw new CompileExceptionError(input, 0, "Stream '" + streamName + "' is missing required type field.");
+        }
+        if (streamType == null) {
+            throw new CompileExceptionError(input, 0, "Unknown stream type: " + streamTypeString + " (allowed types: " + allowedTypeStrings + ").");
+        }
 
-                // count field
-                if (streamNode.get("count") == null) {
-                    throw new CompileExceptionError(task.input(0), 0, "Stream '" + streamName + "' is missing required count field.");
-                }
-                int streamValueCount = streamNode.get("count").asInt();
-
-                StreamDesc.Builder streamDescBuilder = StreamDesc.newBuilder();
-                streamDescBuilder.setName(streamName);
-                streamDescBuilder.setNameHash(MurmurHash.hash64(streamName));
-                streamDescBuilder.setValueType(streamType);
-                streamDescBuilder.setValueCount(streamValueCount);
-
-                // Fill corresponding protobuf data field depending on what the stream type is.
-                JsonNode dataNode = streamNode.get("data");
-                if (dataNode != null) {
-                    fillData(streamDescBuilder, dataNode, streamType);
-                }
+        // count field
+        if (!hasCount) {
+            throw new CompileExceptionError(input, 0, "Stream '" + streamName + "' is missing required count field.");
+        }
+
+        streamDescBuilder.setName(streamName);
+        streamDescBuilder.setNameHash(MurmurHash.hash64(streamName));
+        streamDescBuilder.setValueType(streamType);
+        streamDescBuilder.setValueCount(streamValueCount);
+
+        if (pendingData != null) {
+            for (double value : pendingData) {
+                addValue(streamDescBuilder, value, streamType);
+            }
+        }
+
+        return streamDescBuilder.build();
+    }
+
+    @Override
+    public void build(Task<Void> task) throws CompileExceptionError, IOException {
+        IResource input = task.input(0);
+        ByteArrayInputStream bufferJsonIs = new ByteArrayInputStream(input.getContent());
+
+        BufferDesc.Builder bufferDescBuilder = BufferDesc.newBuilder();
 
-                bufferDescBuilder.addStreams(streamDescBuilder.build());
+        // The buffer is read as a stream of JSON tokens and the values go
+        // straight into the protobuf fields, since a large buffer would not
+        // fit in memory as a JSON tree of boxed values.
+        JsonParser parser = new JsonFactory().createJsonParser(new InputStreamReader(bufferJsonIs, "UTF-8"));
+        try {
+            JsonToken rootToken = parser.nextToken();
+            if (rootToken == null) {
+                throw new CompileExceptionError(input, 0, "JSON error while parsing buffer resource: No content");
+            }
+            // The streams are the elements of the root array, or the values of the root object
+            if (rootToken == JsonToken.START_ARRAY || rootToken == JsonToken.START_OBJECT) {
+                JsonToken endToken = rootToken == JsonToken.START_ARRAY ? JsonToken.END_ARRAY : JsonToken.END_OBJECT;
+                for (JsonToken token = parser.nextToken(); token != endToken; token = parser.nextToken()) {
+                    if (token == JsonToken.FIELD_NAME) {
+                        parser.nextToken();
+                    }
+                    bufferDescBuilder.addStreams(parseStream(input, parser));
+                }
             }
         } catch (JsonParseException e) {
-            throw new CompileExceptionError(task.input(0), 0, "JSON error while parsing buffer resource: " + e.getMessage());
+            throw new CompileExceptionError(input, 0, "JSON error while parsing buffer resource: " + e.getMessage());
+        } finally {
+            parser.close();
         }
 
         ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
@@ -22,8 +22,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.vecmath.Point3d;
 import javax.vecmath.Quat4d;
@@ -53,31 +53,66 @@ import com.dynamo.gameobject.proto.GameObject.PropertyDesc;
 import com.dynamo.properties.proto.PropertiesProto.PropertyDeclarations;
 
 @ProtoParams(srcClass = CollectionDesc.class, messageClass = CollectionDesc.class)
-@BuilderParams(name="Collection", inExts=".collection", outExt=".collectionc")
+@BuilderParams(name="Collection", inExts=".collection", outExt=".collectionc", serialTaskCreation=true)
 public class CollectionBuilder extends ProtoBuilder<CollectionDesc.Builder> {
     private Map<IResource, Integer> compCounterInputsCount = new HashMap<>();
 
-    private void collectSubCollections(CollectionDesc.Builder collection, Map<IResource, Integer> subCollections) throws CompileExceptionError, IOException {
-        for (CollectionInstanceDesc sub : collection.getCollectionInstancesList()) {
+    // Keys of the build scoped data (see Project.getBuildScopedData()) shared by
+    // all collections in a build. Shared sub-collections are often included
+    // hundreds of times, so each one is only read, counted and merged once.
+    private static final String LOADED_COLLECTIONS = CollectionBuilder.class.getName() + ".loaded";
+    private static final String SUB_COLLECTION_COUNTS = CollectionBuilder.class.getName() + ".counts";
+    private static final String MERGED_COLLECTIONS = CollectionBuilder.class.getName() + ".merged";
+
+    private CollectionDesc loadCollection(IResource resource) throws IOException, CompileExceptionError {
+        Map<String, CollectionDesc> collections = project.getBuildScopedData(LOADED_COLLECTIONS, ConcurrentHashMap::new);
+        CollectionDesc collection = collections.get(resource.getPath());
+        if (collection == null) {
+            CollectionDesc.Builder builder = CollectionDesc.newBuilder();
+            ProtoUtil.merge(resource, builder);
+            collection = builder.buildPartial();
+            collections.put(resource.getPath(), collection);
+        }
+        return collection;
+    }
+
+    /**
+     * Get the number of times each collection is included by a collection,
+     * directly or through its sub-collections.
+     */
+    private Map<IResource, Integer> getSubCollectionCounts(IResource resource) throws CompileExceptionError, IOException {
+        Map<String, Map<IResource, Integer>> allCounts = project.getBuildScopedData(SUB_COLLECTION_COUNTS, ConcurrentHashMap::new);
+        Map<IResource, Integer> counts = allCounts.get(resource.getPath());
+        if (counts == null) {
+            counts = new HashMap<>();
+            collectSubCollections(loadCollection(resource).getCollectionInstancesList(), counts);
+            counts = Collections.unmodifiableMap(counts);
+            allCounts.put(resource.getPath(), counts);
+        }
+        return counts;
+    }
+
+    private void collectSubCollections(List<CollectionInstanceDesc> collectionInstances, Map<IResource, Integer> subCollections) throws CompileExceptionError, IOException {
+        for (CollectionInstanceDesc sub : collectionInstances) {
             IResource subResource = project.getResource(sub.getCollection());
             subCollections.put(subResource, subCollections.getOrDefault(subResource, 0) + 1);
-            CollectionDesc.Builder builder = CollectionDesc.newBuilder();
-            ProtoUtil.merge(subResource, builder);
-            collectSubCollections(builder, subCollections);
+            for (Map.Entry<IResource, Integer> entry : getSubCollectionCounts(subResource).entrySet()) {
+                subCollections.put(entry.getKey(), subCollections.getOrDefault(entry.getKey(), 0) + entry.getValue());
+            }
         }
     }
 
-    private void createGeneratedResources(Project project, CollectionDesc.Builder builder,
-        Map<Long, IResource> uniqueResources, Map<Long, IResource> allResources) throws IOException, CompileExceptionError {
+    private void createGeneratedResources(Project project, List<EmbeddedInstanceDesc> embeddedInstances, List<CollectionInstanceDesc> collectionInstances,
+        Set<String> visitedCollections, Map<Long, IResource> uniqueResources, Map<Long, IResource> allResources) throws IOException, CompileExceptionError {
 
-        for (EmbeddedInstanceDesc desc : builder.getEmbeddedInstancesList()) {
+        for (EmbeddedInstanceDesc desc : embeddedInstances) {
             byte[] data = desc.getData().getBytes();
             long hash = MurmurHash.hash64(data, data.length);
 
-            IResource genResource = project.getGeneratedResource(hash, "go");
+            IResource genResource = project.createGeneratedResourceIfAbsent(hash, "go");
             if (genResource == null) {
-                genResource = project.createGeneratedResource(hash, "go");
-
+                genResource = project.getGeneratedResource(hash, "go");
+            } else {
                 // TODO: This is a hack derived from the same problem with embedded gameobjects from collections (see CollectionBuilder.create)!
                 // If the file isn't created here <EmbeddedComponent>#create
                 // can't access generated resource data (embedded component desc)
@@ -87,12 +122,15 @@ public class CollectionBuilder extends ProtoBuilder<CollectionDesc.Builder> {
             allResources.put(hash, genResource);
         }
 
-        for (CollectionInstanceDesc c : builder.getCollectionInstancesList()) {
+        for (CollectionInstanceDesc c : collectionInstances) {
             IResource collectionResource = this.project.getResource(c.getCollection());
-            CollectionDesc.Builder subCollectionBuilder = CollectionDesc.newBuilder();
-            ProtoUtil.merge(collectionResource, subCollectionBuilder);
+            // A sub-collection generates the same resources every time it is included
+            if (!visitedCollections.add(collectionResource.getPath())) {
+                continue;
+            }
+            CollectionDesc subCollection = loadCollection(collectionResource);
 
-            createGeneratedResources(project, subCollectionBuilder, uniqueResources, allResources);
+            createGeneratedResources(project, subCollection.getEmbeddedInstancesList(), subCollection.getCollectionInstancesList(), visitedCollections, uniqueResources, allResources);
         }
     }
 
@@ -117,7 +155,7 @@ public class CollectionBuilder extends ProtoBuilder<CollectionDesc.Builder> {
         ProtoUtil.merge(input, builder);
 
         Map<IResource, Integer> subCollections = new HashMap<>();
-        collectSubCollections(builder, subCollections);
+        collectSubCollections(builder.getCollectionInstancesList(), subCollections);
         for (IResource subCollection : subCollections.keySet()) {
             taskBuilder.addInput(subCollection);
             IResource compCounterInput = input.getResource(ComponentsCounter.replaceExt(subCollection)).output();
@@ -137,7 +175,7 @@ public class CollectionBuilder extends ProtoBuilder<CollectionDesc.Builder> {
 
         Map<Long, IResource> uniqueResources = new HashMap<>();
         Map<Long, IResource> allResources = new HashMap<>();
-        createGeneratedResources(this.project, builder, uniqueResources, allResources);
+        createGeneratedResources(this.project, builder.getEmbeddedInstancesList(), builder.getCollectionInstancesList(), new HashSet<String>(), uniqueResources, allResources);
 
         List<Task<?>> embedTasks = new ArrayList<>();
         for (long hash : uniqueResources.keySet()) {
@@ -209,14 +247,31 @@ public class CollectionBuilder extends ProtoBuilder<CollectionDesc.Builder> {
         return toList(sourceMap);
     }
 
-    private void mergeSubCollections(IResource owner, CollectionDesc.Builder collectionBuilder) throws IOException, CompileExceptionError {
+    /**
+     * Get a collection with all of its sub-collections merged into it. The
+     * merged collection only depends on the collection file and the files it
+     * includes, so it is created once per build and shared by all collections
+     * that include it. They only add their own id prefix, transform and
+     * property overrides on top of it.
+     */
+    private CollectionDesc getMergedCollection(IResource owner, IResource resource, Set<String> checkedPrototypes) throws IOException, CompileExceptionError {
+        Map<String, CollectionDesc> mergedCollections = project.getBuildScopedData(MERGED_COLLECTIONS, ConcurrentHashMap::new);
+        CollectionDesc merged = mergedCollections.get(resource.getPath());
+        if (merged == null) {
+            CollectionDesc.Builder builder = loadCollection(resource).toBuilder();
+            mergeSubCollections(owner, builder, checkedPrototypes);
+            merged = builder.buildPartial();
+            mergedCollections.put(resource.getPath(), merged);
+        }
+        return merged;
+    }
+
+    private void mergeSubCollections(IResource owner, CollectionDesc.Builder collectionBuilder, Set<String> checkedPrototypes) throws IOException, CompileExceptionError {
         Set<String> childIds = new HashSet<String>();
         Map<String, List<ComponentPropertyDesc>> properties = new HashMap<String, List<ComponentPropertyDesc>>();
         for (CollectionInstanceDesc collInst : collectionBuilder.getCollectionInstancesList()) {
             IResource collResource = this.project.getResource(collInst.getCollection());
-            CollectionDesc.Builder subCollBuilder = CollectionDesc.newBuilder();
-            ProtoUtil.merge(collResource, subCollBuilder);
-            mergeSubCollections(owner, subCollBuilder);
+            CollectionDesc subCollBuilder = getMergedCollection(owner, collResource, checkedPrototypes);
             // Collect child ids
             childIds.clear();
             for (InstanceDesc inst : subCollBuilder.getInstancesList()) {
@@ -248,7 +303,11 @@ public class CollectionBuilder extends ProtoBuilder<CollectionDesc.Builder> {
 
             for (InstanceDesc inst : subCollBuilder.getInstancesList()) {
                 InstanceDesc.Builder instBuilder = InstanceDesc.newBuilder(inst);
-                BuilderUtil.checkResource(this.project, owner, "prototype", inst.getPrototype());
+                // The merged sub-collection may have been created for another owner, so the
+                // prototypes are checked here, once per owner
+                if (checkedPrototypes.add(inst.getPrototype())) {
+                    BuilderUtil.checkResource(this.project, owner, "prototype", inst.getPrototype());
+                }
                 // merge id
                 String id = pathPrefix + inst.getId();
                 instBuilder.setId(pathPrefix + inst.getId());
@@ -341,7 +400,7 @@ public class CollectionBuilder extends ProtoBuilder<CollectionDesc.Builder> {
     @Override
     protected CollectionDesc.Builder transform(Task<Void> task, IResource resource, CollectionDesc.Builder messageBuilder) throws CompileExceptionError, IOException {
         Integer countOfRealEmbededObjects = messageBuilder.getEmbeddedInstancesCount();
-        mergeSubCollections(resource, messageBuilder);
+        mergeSubCollections(resource, messageBuilder, new HashSet<String>());
         ComponentsCounter.Storage compStorage = ComponentsCounter.createStorage();
         int embedIndex = 0;
         for (EmbeddedInstanceDesc desc : messageBuilder.getEmbeddedInstancesList()) {
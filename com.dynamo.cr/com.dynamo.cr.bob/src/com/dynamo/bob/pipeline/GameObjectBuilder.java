@@ -34,6 +34,7 @@ import com.dynamo.proto.DdfMath.Vector4;
 import com.dynamo.bob.Builder;
 import com.dynamo.bob.BuilderParams;
 import com.dynamo.bob.CompileExceptionError;
+import com.dynamo.bob.ProtoBuilder;
 import com.dynamo.bob.Task;
 import com.dynamo.bob.Task.TaskBuilder;
 import com.dynamo.bob.fs.IResource;
@@ -51,7 +52,7 @@ import com.dynamo.gamesys.proto.Label.LabelDesc;
 import com.dynamo.proto.DdfMath.Vector3;
 import com.google.protobuf.TextFormat;
 
-@BuilderParams(name = "GameObject", inExts = ".go", outExt = ".goc")
+@BuilderParams(name = "GameObject", inExts = ".go", outExt = ".goc", serialTaskCreation = true)
 public class GameObjectBuilder extends Builder<Void> {
     private Boolean ifObjectHasDynamicFactory = false;
 
@@ -125,10 +126,10 @@ public class GameObjectBuilder extends Builder<Void> {
             byte[] data = ec.getData().getBytes();
             long hash = MurmurHash.hash64(data, data.length);
 
-            IResource genResource = project.getGeneratedResource(hash, ec.getType());
+            IResource genResource = project.createGeneratedResourceIfAbsent(hash, ec.getType());
             if (genResource == null) {
-                genResource = project.createGeneratedResource(hash, ec.getType());
-
+                genResource = project.getGeneratedResource(hash, ec.getType());
+            } else {
                 // TODO: This is a hack derived from the same problem with embedded gameobjects from collections (see CollectionBuilder.create)!
                 // If the file isn't created here <EmbeddedComponent>#create
                 // can't access generated resource data (embedded component desc)
@@ -223,6 +224,7 @@ public class GameObjectBuilder extends Builder<Void> {
         out.close();
         task.output(0).setContent(out.toByteArray());
         task.output(1).setContent(compStorage.toByteArray());
+        ProtoBuilder.setBuiltMessage(project, task.output(0), proto);
     }
 
     private PrototypeDesc.Builder transformGo(IResource resource,
@@ -17,6 +17,7 @@ package com.dynamo.bob.pipeline;
 import java.awt.FontFormatException;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.io.IOException;
@@ -28,15 +29,19 @@ import com.dynamo.bob.BuilderParams;
 import com.dynamo.bob.CompileExceptionError;
 import com.dynamo.bob.Task;
 import com.dynamo.bob.fs.IResource;
+import com.dynamo.bob.logging.Logger;
 
 import com.dynamo.bob.font.Fontc;
 import com.dynamo.bob.font.Fontc.FontResourceResolver;
+import com.dynamo.bob.font.GlyphCache;
 import com.dynamo.render.proto.Font.GlyphBank;
 import com.dynamo.render.proto.Font.FontDesc;
 
 @BuilderParams(name = "Glyph Bank", inExts = ".glyph_bank", outExt = ".glyph_bankc")
 public class GlyphBankBuilder extends Builder<Void> {
 
+    private static Logger logger = Logger.getLogger(GlyphBankBuilder.class.getName());
+
     @Override
     public Task<Void> create(IResource input) throws IOException, CompileExceptionError {
 
@@ -61,9 +66,15 @@ public class GlyphBankBuilder extends Builder<Void> {
         FontDesc fontDesc = fontDescbuilder.build();
 
         final IResource inputFontFile = BuilderUtil.checkResource(this.project, task.input(0), "font", fontDesc.getFont());
-        BufferedInputStream fontStream = new BufferedInputStream(new ByteArrayInputStream(inputFontFile.getContent()));
+        byte[] fontData = inputFontFile.getContent();
+        BufferedInputStream fontStream = new BufferedInputStream(new ByteArrayInputStream(fontData));
         Fontc fontc = new Fontc();
 
+        // Glyphs rendered with the same font file and parameters are reused between builds
+        File glyphCacheDir = new File(project.getBuildCachePath(), "glyphs");
+        GlyphCache glyphCache = new GlyphCache(glyphCacheDir, GlyphCache.calculateKey(fontData, fontDesc));
+        fontc.setGlyphCache(glyphCache);
+
         try {
             fontc.compile(fontStream, fontDesc, false, new FontResourceResolver() {
                 @Override
@@ -84,6 +95,12 @@ public class GlyphBankBuilder extends Builder<Void> {
 
             task.output(0).setContent(fontc.getGlyphBank().toByteArray());
 
+            try {
+                glyphCache.save();
+            } catch (IOException e) {
+                logger.warning("Unable to write glyph cache %s: %s", glyphCache.getFile(), e.getMessage());
+            }
+
         } catch (FontFormatException e) {
             task.output(0).remove();
             throw new CompileExceptionError(task.input(0), 0, e.getMessage());
@@ -22,7 +22,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.lang.reflect.Method;
 
 import javax.vecmath.Point3d;
@@ -64,6 +69,41 @@ import com.google.protobuf.TextFormat;
 @BuilderParams(name="Gui", inExts=".gui", outExt=".guic")
 public class GuiBuilder extends ProtoBuilder<SceneDesc.Builder> {
 
+    // Least number of nodes times layouts to merge or flatten the layouts in parallel
+    static int minParallelLayoutNodes = 512;
+
+    /**
+     * A template scene after it has been read and transformed, with its nodes
+     * indexed by layout. It is never modified, so it can be shared by all gui
+     * scenes that include the template, and read by several threads.
+     */
+    public static class TemplateScene {
+        public final SceneDesc scene;
+        // Nodes by id, for the default layout ("") and each layout of the template
+        public final HashMap<String, HashMap<String, NodeDesc>> nodeMap;
+
+        public TemplateScene(SceneDesc scene) {
+            this.scene = scene;
+            this.nodeMap = new HashMap<String, HashMap<String, NodeDesc>>(scene.getLayoutsCount()+1);
+            HashMap<String, NodeDesc> defaultNodes = new HashMap<String, NodeDesc>(scene.getNodesCount());
+            for(NodeDesc n : scene.getNodesList()) {
+                defaultNodes.put(n.getId(), n);
+            }
+            this.nodeMap.put("", defaultNodes);
+            for(LayoutDesc layout : scene.getLayoutsList()) {
+                // the first layout with a name is used
+                if(this.nodeMap.containsKey(layout.getName())) {
+                    continue;
+                }
+                HashMap<String, NodeDesc> layoutNodes = new HashMap<String, NodeDesc>(layout.getNodesCount());
+                for(NodeDesc n : layout.getNodesList()) {
+                    layoutNodes.put(n.getId(), n);
+                }
+                this.nodeMap.put(layout.getName(), layoutNodes);
+            }
+        }
+    }
+
     @Override
     public Task<Void> create(IResource input) throws IOException, CompileExceptionError {
         SceneDesc.Builder builder = SceneDesc.newBuilder();
@@ -216,28 +256,45 @@ public class GuiBuilder extends ProtoBuilder<SceneDesc.Builder> {
         }
     }
 
-    private static void flattenTemplates(HashMap<String, ArrayList<NodeDesc>> scene, HashMap<String, HashMap<String, NodeDesc>> nodeMap) {
-        for(String layout : scene.keySet()) {
-            ArrayList<NodeDesc> nodes = scene.get(layout);
-            ArrayList<NodeDesc> newNodes = new ArrayList<NodeDesc>(nodes.size());
-            HashMap<String, NodeDesc> defaultLayoutNodeMap = nodeMap.get("");
-            HashMap<String, NodeDesc> layoutNodeMap = nodeMap.get(layout);
-
-            for(NodeDesc node : nodes) {
-                if(node.getType() == Type.TYPE_TEMPLATE) {
-                    continue;
-                }
-                if(!node.getParent().isEmpty()) {
-                    NodeDesc parent = layoutNodeMap.containsKey(node.getParent()) ? layoutNodeMap.get(node.getParent()) : defaultLayoutNodeMap.get(node.getParent());
-                    if(parent.getType() == Type.TYPE_TEMPLATE) {
-                        NodeDesc.Builder b = node.toBuilder();
-                        transformTemplateChild(b, parent, defaultLayoutNodeMap, layoutNodeMap);
-                        node = b.build();
-                    }
+    /**
+     * Run a function for each layout and return the results in layout order.
+     * The layouts are processed in parallel when there is enough work, so the
+     * function must only read shared data.
+     */
+    private static <T> List<T> forEachLayout(int layoutCount, int nodeCount, IntFunction<T> fn) {
+        IntStream layouts = IntStream.range(0, layoutCount);
+        if (layoutCount > 1 && (long)layoutCount * nodeCount >= minParallelLayoutNodes) {
+            layouts = layouts.parallel();
+        }
+        return layouts.mapToObj(fn).collect(Collectors.toList());
+    }
+
+    private static ArrayList<NodeDesc> flattenLayout(ArrayList<NodeDesc> nodes, HashMap<String, NodeDesc> defaultLayoutNodeMap, HashMap<String, NodeDesc> layoutNodeMap) {
+        ArrayList<NodeDesc> newNodes = new ArrayList<NodeDesc>(nodes.size());
+        for(NodeDesc node : nodes) {
+            if(node.getType() == Type.TYPE_TEMPLATE) {
+                continue;
+            }
+            if(!node.getParent().isEmpty()) {
+                NodeDesc parent = layoutNodeMap.containsKey(node.getParent()) ? layoutNodeMap.get(node.getParent()) : defaultLayoutNodeMap.get(node.getParent());
+                if(parent.getType() == Type.TYPE_TEMPLATE) {
+                    NodeDesc.Builder b = node.toBuilder();
+                    transformTemplateChild(b, parent, defaultLayoutNodeMap, layoutNodeMap);
+                    node = b.build();
                 }
-                newNodes.add(node);
             }
-            scene.put(layout, newNodes);
+            newNodes.add(node);
+        }
+        return newNodes;
+    }
+
+    private static void flattenTemplates(HashMap<String, ArrayList<NodeDesc>> scene, HashMap<String, HashMap<String, NodeDesc>> nodeMap) {
+        // Each layout only reads the node map, which was indexed from the scene before flattening
+        List<String> layouts = new ArrayList<String>(scene.keySet());
+        List<ArrayList<NodeDesc>> newNodes = forEachLayout(layouts.size(), scene.get("").size(),
+            i -> flattenLayout(scene.get(layouts.get(i)), nodeMap.get(""), nodeMap.get(layouts.get(i))));
+        for(int i = 0; i < layouts.size(); ++i) {
+            scene.put(layouts.get(i), newNodes.get(i));
         }
     }
 
@@ -383,6 +440,29 @@ public class GuiBuilder extends ProtoBuilder<SceneDesc.Builder> {
 
     public interface ISceneBuilderIO {
         public SceneDesc.Builder readScene(String resourcePath, HashMap<String, SceneDesc.Builder> sceneResourceCache) throws IOException, CompileExceptionError;
+
+        /**
+         * Get a template scene that has already been read and transformed
+         * @param resourcePath path of the template scene
+         * @return the template scene or null if it isn't cached
+         */
+        public default TemplateScene getTemplateScene(String resourcePath) {
+            return null;
+        }
+
+        public default void putTemplateScene(String resourcePath, TemplateScene templateScene) {
+        }
+    }
+
+    private static TemplateScene readTemplateScene(GuiBuilder builder, String resourcePath, ISceneBuilderIO sceneIO, HashMap<String, SceneDesc.Builder> sceneResourceCache) throws IOException, CompileExceptionError {
+        TemplateScene templateScene = sceneIO.getTemplateScene(resourcePath);
+        if(templateScene == null) {
+            SceneDesc.Builder templateBuilder = sceneIO.readScene(resourcePath, sceneResourceCache);
+            templateBuilder = transformScene(builder, resourcePath, templateBuilder, sceneIO, sceneResourceCache, false);
+            templateScene = new TemplateScene(templateBuilder.buildPartial());
+            sceneIO.putTemplateScene(resourcePath, templateScene);
+        }
+        return templateScene;
     }
 
     public static SceneDesc.Builder transformScene(GuiBuilder builder, String input, SceneDesc.Builder sceneBuilder, ISceneBuilderIO sceneIO, HashMap<String, SceneDesc.Builder> sceneResourceCache, boolean flattenTemplates) throws IOException, CompileExceptionError {
@@ -541,78 +621,63 @@ public class GuiBuilder extends ProtoBuilder<SceneDesc.Builder> {
 
             // read in template scene (text version) and transform recursively
             if(node.getType() == Type.TYPE_TEMPLATE) {
-                SceneDesc.Builder templateBuilder = sceneIO.readScene(node.getTemplate(), sceneResourceCache);
-                templateBuilder = transformScene(builder, node.getTemplate(), templateBuilder, sceneIO, sceneResourceCache, false);
+                TemplateScene template = readTemplateScene(builder, node.getTemplate(), sceneIO, sceneResourceCache);
+                SceneDesc templateScene = template.scene;
 
                 // merge template scene nodes with overrides of current scene
-                List<NodeDesc> nodes = mergeNodes(node, templateBuilder.getNodesList(), null, nodeMap, "", true);
+                List<NodeDesc> nodes = mergeNodes(node, templateScene.getNodesList(), null, nodeMap, "", true);
                 newScene.get("").addAll(nodes);
 
-                List<String> templateLayouts = new ArrayList<String>(templateBuilder.getLayoutsCount());
-                for(LayoutDesc layout : templateBuilder.getLayoutsList()) {
-                    templateLayouts.add(layout.getName());
-                }
-                for(LayoutDesc layout : sceneBuilder.getLayoutsList()) {
-                    String templateLayoutName = null;
-                    HashMap<String, NodeDesc> layoutNodes = null;
-                    if(templateLayouts.contains(layout.getName()))
-                    {
-                        for(LayoutDesc tl : templateBuilder.getLayoutsList()) {
-                            if(tl.getName().equals(layout.getName())) {
-                                templateLayoutName = tl.getName();
-                                layoutNodes = new HashMap<String, NodeDesc>(tl.getNodesCount());
-                                for(NodeDesc n : tl.getNodesList()) {
-                                    layoutNodes.put(n.getId(), n);
-                                }
-                                break;
-                            }
-                        }
-                        nodes = mergeNodes(node, templateBuilder.getNodesList(), layoutNodes, nodeMap, templateLayoutName, false);
-                    } else {
-                        templateLayoutName = "";
-                        layoutNodes = new HashMap<String, NodeDesc>(templateBuilder.getNodesCount());
-                        for(NodeDesc n : templateBuilder.getNodesList()) {
-                            layoutNodes.put(n.getId(), n);
-                        }
-                        nodes = mergeNodes(node, templateBuilder.getNodesList(), layoutNodes, nodeMap, layout.getName(), true);
+                // merge the nodes of each layout, which only reads the node maps of the scene and template
+                final NodeDesc templateNode = node;
+                final HashMap<String, HashMap<String, NodeDesc>> sceneNodeMap = nodeMap;
+                final List<LayoutDesc> sceneLayouts = sceneBuilder.getLayoutsList();
+                List<ArrayList<NodeDesc>> layoutNodeLists = forEachLayout(sceneLayouts.size(), templateScene.getNodesCount(), i -> {
+                    String layoutName = sceneLayouts.get(i).getName();
+                    HashMap<String, NodeDesc> layoutNodes = template.nodeMap.get(layoutName);
+                    if(layoutNodes != null) {
+                        return mergeNodes(templateNode, templateScene.getNodesList(), layoutNodes, sceneNodeMap, layoutName, false);
                     }
-
-                    ArrayList<NodeDesc> layoutNodeList = newScene.get(layout.getName());
+                    // use the default layout of the template
+                    return mergeNodes(templateNode, templateScene.getNodesList(), template.nodeMap.get(""), sceneNodeMap, layoutName, true);
+                });
+                for(int i = 0; i < sceneLayouts.size(); ++i) {
+                    ArrayList<NodeDesc> layoutNodeList = newScene.get(sceneLayouts.get(i).getName());
                     if(layoutNodeList != null) {
-                        layoutNodeList.addAll(nodes);
+                        layoutNodeList.addAll(layoutNodeLists.get(i));
                     }
                 }
 
                 // add template scene resources if not already existing in current scene
-                for (FontDesc f : templateBuilder.getFontsList()) {
+                for (FontDesc f : templateScene.getFontsList()) {
                     if (fontNames.contains(f.getName())) {
                         continue;
                     }
                     fontNames.add(f.getName());
                     newFontList.add(f);
                 }
-                for (ParticleFXDesc f : templateBuilder.getParticlefxsList()) {
+                for (ParticleFXDesc f : templateScene.getParticlefxsList()) {
                     if (particlefxNames.contains(f.getName())) {
                         continue;
                     }
                     particlefxNames.add(f.getName());
                     newParticleFXList.add(f);
                 }
-                for (TextureDesc f : templateBuilder.getTexturesList()) {
+                for (TextureDesc f : templateScene.getTexturesList()) {
                     if (textureNames.contains(f.getName())) {
                         continue;
                     }
                     textureNames.add(f.getName());
                     newTextureList.add(f);
                 }
-                for (MaterialDesc f : templateBuilder.getMaterialsList()) {
+                for (MaterialDesc f : templateScene.getMaterialsList()) {
                     if (materialNames.contains(f.getName())) {
                         continue;
                     }
                     materialNames.add(f.getName());
                     newMaterialList.add(f);
                 }
-                for (ResourceDesc f : templateBuilder.getResourcesList()) {
+                for (ResourceDesc f : templateScene.getResourcesList()) {
                     if (resourceNames.contains(f.getName())) {
                         continue;
                     }
@@ -678,8 +743,21 @@ public class GuiBuilder extends ProtoBuilder<SceneDesc.Builder> {
 
     private class SceneBuilderIO implements ISceneBuilderIO {
         com.dynamo.bob.Project project;
+        // Transformed template scenes, shared by all gui scenes in the build
+        Map<String, TemplateScene> templateScenes;
         SceneBuilderIO(com.dynamo.bob.Project project) {
             this.project = project;
+            this.templateScenes = project.getBuildScopedData(TemplateScene.class.getName(), ConcurrentHashMap::new);
+        }
+
+        @Override
+        public TemplateScene getTemplateScene(String resourcePath) {
+            return templateScenes.get(resourcePath);
+        }
+
+        @Override
+        public void putTemplateScene(String resourcePath, TemplateScene templateScene) {
+            templateScenes.put(resourcePath, templateScene);
         }
 
         public SceneDesc.Builder readScene(String resourcePath, HashMap<String, SceneDesc.Builder> resourceCache) throws IOException {
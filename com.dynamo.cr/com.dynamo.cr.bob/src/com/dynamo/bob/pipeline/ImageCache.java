@@ -0,0 +1,149 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.pipeline;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import com.dynamo.bob.Project;
+import com.dynamo.bob.fs.IResource;
+
+/**
+ * Cache of decoded images, shared by the texture, atlas and tile source
+ * builders during a build.
+ *
+ * Images are keyed by the hash of the file content, so the same image used
+ * under different paths is only decoded once. The cache is bounded by the
+ * total size of the pixel data, and the least recently used images are
+ * evicted first.
+ *
+ * The images are shared between builders and must be treated as read-only.
+ * Copy an image before modifying it.
+ */
+public class ImageCache {
+
+    // Default bound of the pixel data kept in the cache
+    public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+    private final long maxBytes;
+    private long bytes = 0;
+    private final LinkedHashMap<String, BufferedImage> images = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the image cache of the current build
+     * @param project project being built
+     * @return the image cache
+     */
+    public static ImageCache get(Project project) {
+        return project.getBuildScopedData(ImageCache.class.getName(), () -> new ImageCache(DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * Decode an image. The data is read from memory, instead of through the
+     * temporary file cache that ImageIO uses for input streams by default.
+     * @param content content of the image file
+     * @return the image, or null if the format isn't supported
+     */
+    public static BufferedImage decode(byte[] content) throws IOException {
+        // ImageIO closes the stream, and there is nothing to release if it doesn't
+        return ImageIO.read(new MemoryCacheImageInputStream(new ByteArrayInputStream(content)));
+    }
+
+    static long getSizeInBytes(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    private static String hash(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        return new BigInteger(1, digest.digest(content)).toString(16) + ":" + content.length;
+    }
+
+    /**
+     * Get a decoded image. The returned image is shared and must not be modified.
+     * @param content content of the image file
+     * @return the image, or null if the format isn't supported
+     */
+    public BufferedImage read(byte[] content) throws IOException {
+        String key = hash(content);
+        synchronized (this) {
+            BufferedImage image = images.get(key);
+            if (image != null) {
+                return image;
+            }
+        }
+
+        // Decode outside of the lock, so that other images can be decoded in parallel
+        BufferedImage image = decode(content);
+        if (image == null) {
+            return null;
+        }
+        long size = getSizeInBytes(image);
+        if (size > maxBytes) {
+            return image;
+        }
+
+        synchronized (this) {
+            BufferedImage cached = images.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            images.put(key, image);
+            bytes += size;
+            Iterator<Map.Entry<String, BufferedImage>> it = images.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, BufferedImage> eldest = it.next();
+                if (eldest.getValue() == image) {
+                    continue;
+                }
+                bytes -= getSizeInBytes(eldest.getValue());
+                it.remove();
+            }
+        }
+        return image;
+    }
+
+    public BufferedImage read(IResource resource) throws IOException {
+        return read(resource.getContent());
+    }
+
+    public synchronized int size() {
+        return images.size();
+    }
+
+    public synchronized long getSizeInBytes() {
+        return bytes;
+    }
+}
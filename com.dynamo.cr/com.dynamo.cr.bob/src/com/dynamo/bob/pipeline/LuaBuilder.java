@@ -79,6 +79,29 @@ public abstract class LuaBuilder extends Builder<Void> {
 
     private Map<String, LuaScanner> luaScanners = new HashMap();
 
+    // The plugins are looked up once, and tasks may be created on several threads
+    private static synchronized List<ILuaPreprocessor> getLuaPreprocessors() throws CompileExceptionError {
+        if (luaPreprocessors == null) {
+            luaPreprocessors = PluginScanner.getOrCreatePlugins("com.defold.extension.pipeline", ILuaPreprocessor.class);
+
+            if (luaPreprocessors == null) {
+                luaPreprocessors = new ArrayList<ILuaPreprocessor>(0);
+            }
+        }
+        return luaPreprocessors;
+    }
+
+    private static synchronized List<ILuaObfuscator> getLuaObfuscators() throws CompileExceptionError {
+        if (luaObfuscators == null) {
+            luaObfuscators = PluginScanner.getOrCreatePlugins("com.defold.extension.pipeline", ILuaObfuscator.class);
+
+            if (luaObfuscators == null) {
+                luaObfuscators = new ArrayList<ILuaObfuscator>(0);
+            }
+        }
+        return luaObfuscators;
+    }
+
     /**
      * Get a LuaScanner instance for a resource
      * This will cache the LuaScanner instance per resource to avoid parsing the
@@ -95,15 +118,7 @@ public abstract class LuaBuilder extends Builder<Void> {
             String script = new String(scriptBytes, "UTF-8");
 
             // Create and run preprocessors if some exists.
-            if (luaPreprocessors == null) {
-                luaPreprocessors = PluginScanner.getOrCreatePlugins("com.defold.extension.pipeline", ILuaPreprocessor.class);
-
-                if (luaPreprocessors == null) {
-                    luaPreprocessors = new ArrayList<ILuaPreprocessor>(0);
-                }
-            }
-
-            for (ILuaPreprocessor luaPreprocessor : luaPreprocessors) {
+            for (ILuaPreprocessor luaPreprocessor : getLuaPreprocessors()) {
                 try {
                     script = luaPreprocessor.preprocess(script, path, variant);
                 }
@@ -424,19 +439,11 @@ public abstract class LuaBuilder extends Builder<Void> {
         builder.addAllPropertyResources(propertyResources);
 
         // Create and run obfuscators if some exists.
-        if (luaObfuscators == null) {
-            luaObfuscators = PluginScanner.getOrCreatePlugins("com.defold.extension.pipeline", ILuaObfuscator.class);
-
-            if (luaObfuscators == null) {
-                luaObfuscators = new ArrayList<ILuaObfuscator>(0);
-            }
-        }
-
         final IResource sourceResource = task.input(0);
         final String sourcePath = sourceResource.getAbsPath();
         final String variant = project.option("variant", Bob.VARIANT_RELEASE);
 
-        for (ILuaObfuscator luaObfuscator : luaObfuscators) {
+        for (ILuaObfuscator luaObfuscator : getLuaObfuscators()) {
             try {
                 script = luaObfuscator.obfuscate(script, sourcePath, variant);
             }
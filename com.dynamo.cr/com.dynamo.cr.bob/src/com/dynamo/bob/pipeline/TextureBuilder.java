@@ -14,7 +14,7 @@
 
 package com.dynamo.bob.pipeline;
 
-import java.io.ByteArrayInputStream;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
@@ -61,11 +61,14 @@ public class TextureBuilder extends Builder<Void> {
         TextureProfile texProfile = TextureUtil.getTextureProfileByPath(this.project.getTextureProfiles(), task.input(0).getPath());
         logger.info("Compiling %s using profile %s", task.input(0).getPath(), texProfile!=null?texProfile.getName():"<none>");
 
-        ByteArrayInputStream is = new ByteArrayInputStream(task.input(0).getContent());
+        BufferedImage image = ImageCache.get(this.project).read(task.input(0));
+        if (image == null) {
+            throw new CompileExceptionError(task.input(0), -1, "Unknown texture format.");
+        }
         TextureImage texture;
         try {
             boolean compress = project.option("texture-compression", "false").equals("true");
-            texture = TextureGenerator.generate(is, texProfile, compress);
+            texture = TextureGenerator.generate(image, texProfile, compress, this.project.getResourceCache());
         } catch (TextureGeneratorException e) {
             throw new CompileExceptionError(task.input(0), -1, e.getMessage(), e);
         }
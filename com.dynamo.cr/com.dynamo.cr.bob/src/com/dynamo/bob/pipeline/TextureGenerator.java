@@ -33,7 +33,11 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.EnumSet;
 
@@ -46,6 +50,8 @@ import com.dynamo.bob.TexcLibrary.PixelFormat;
 import com.dynamo.bob.TexcLibrary.CompressionLevel;
 import com.dynamo.bob.TexcLibrary.CompressionType;
 import com.dynamo.bob.TexcLibrary.FlipAxis;
+import com.dynamo.bob.archive.EngineVersion;
+import com.dynamo.bob.cache.ResourceCache;
 import com.dynamo.bob.logging.Logger;
 import com.dynamo.bob.Project;
 import com.dynamo.bob.util.TextureUtil;
@@ -57,6 +63,7 @@ import com.dynamo.graphics.proto.Graphics.TextureFormatAlternative;
 import com.dynamo.graphics.proto.Graphics.TextureImage.Type;
 import com.dynamo.graphics.proto.Graphics.TextureProfile;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.sun.jna.Pointer;
 
 
@@ -65,6 +72,9 @@ public class TextureGenerator {
     // specify what is maximum of threads TextureGenerator may use
     public static int maxThreads = Project.getDefaultMaxCpuThreads();
 
+    // Bump when the generated texture data changes, to invalidate cached textures
+    static final int CACHE_VERSION = 1;
+
     private static HashMap<TextureFormatAlternative.CompressionLevel, Integer> compressionLevelLUT = new HashMap<TextureFormatAlternative.CompressionLevel, Integer>();
     static {
         compressionLevelLUT.put(TextureFormatAlternative.CompressionLevel.FAST, CompressionLevel.CL_FAST);
@@ -458,21 +468,88 @@ public class TextureGenerator {
         return generate(origImage, texProfile, compress, EnumSet.of(FlipAxis.FLIP_AXIS_Y));
     }
 
+    public static TextureImage generate(BufferedImage origImage, TextureProfile texProfile, boolean compress, ResourceCache resourceCache) throws TextureGeneratorException, IOException {
+        return generate(origImage, texProfile, compress, EnumSet.of(FlipAxis.FLIP_AXIS_Y), resourceCache);
+    }
+
+    // Always convert to ABGR since the texc lib demands that for resizing etc
+    private static BufferedImage toABGR(BufferedImage origImage) {
+        if (origImage.getType() != BufferedImage.TYPE_4BYTE_ABGR) {
+            return convertImage(origImage, BufferedImage.TYPE_4BYTE_ABGR);
+        }
+        return origImage;
+    }
+
+    /**
+     * Calculate the key of a generated texture in the resource cache. The key
+     * is created from the pixels passed to texc and the settings that change
+     * the encoded data, but not the path or name of the image or profile.
+     */
+    static String calculateCacheKey(BufferedImage image, ColorModel colorModel, TextureProfile texProfile, boolean compress, EnumSet<FlipAxis> flipAxis) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        String parameters = "texture;"
+            + CACHE_VERSION + ";"
+            + EngineVersion.sha1 + ";"
+            + image.getWidth() + ";"
+            + image.getHeight() + ";"
+            + colorModel.getNumComponents() + ";"
+            + compress + ";"
+            + flipAxis;
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+        if (texProfile != null) {
+            for (PlatformProfile platformProfile : texProfile.getPlatformsList()) {
+                digest.update(platformProfile.toByteArray());
+            }
+        }
+        digest.update(getByteBuffer(image));
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+
+    /**
+     * Generate a texture, or get it from the resource cache if the same pixels
+     * were already encoded with the same settings, e.g. in an earlier build or
+     * under another path. This is used when the task that generates the texture
+     * isn't in the resource cache itself.
+     * @param resourceCache cache to use, or null to always generate the texture
+     */
+    public static TextureImage generate(BufferedImage origImage, TextureProfile texProfile, boolean compress, EnumSet<FlipAxis> flipAxis, ResourceCache resourceCache) throws TextureGeneratorException, IOException {
+        if (resourceCache == null || !resourceCache.isCacheEnabled()) {
+            return generate(origImage, texProfile, compress, flipAxis);
+        }
+
+        BufferedImage image = toABGR(origImage);
+        ColorModel colorModel = origImage.getColorModel();
+        String key = calculateCacheKey(image, colorModel, texProfile, compress, flipAxis);
+        byte[] data = resourceCache.get(key);
+        if (data != null) {
+            try {
+                return TextureImage.parseFrom(data);
+            } catch (InvalidProtocolBufferException e) {
+                Logger logger = Logger.getLogger(TextureGenerator.class.getName());
+                logger.warning("Unable to read cached texture %s: %s", key, e.getMessage());
+            }
+        }
+
+        TextureImage textureImage = generate(image, colorModel, texProfile, compress, flipAxis);
+        resourceCache.put(key, textureImage.toByteArray());
+        return textureImage;
+    }
+
     // Main TextureGenerator.generate method that has all required arguments and the expected BufferedImage type for origImage.
     // Used by the editor
     public static TextureImage generate(BufferedImage origImage, TextureProfile texProfile, boolean compress, EnumSet<FlipAxis> flipAxis) throws TextureGeneratorException, IOException {
-        // Convert image into readable format
-        // Always convert to ABGR since the texc lib demands that for resizing etc
+        return generate(toABGR(origImage), origImage.getColorModel(), texProfile, compress, flipAxis);
+    }
+
+    private static TextureImage generate(BufferedImage image, ColorModel colorModel, TextureProfile texProfile, boolean compress, EnumSet<FlipAxis> flipAxis) throws TextureGeneratorException, IOException {
         TimeProfiler.start("generateTexture");
-        BufferedImage image;
-        if (origImage.getType() != BufferedImage.TYPE_4BYTE_ABGR) {
-            image = convertImage(origImage, BufferedImage.TYPE_4BYTE_ABGR);
-        } else {
-            image = origImage;
-        }
 
         // Setup texture format and settings
-        ColorModel colorModel = origImage.getColorModel();
         int componentCount = colorModel.getNumComponents();
         TextureImage.Builder textureBuilder = TextureImage.newBuilder();
 
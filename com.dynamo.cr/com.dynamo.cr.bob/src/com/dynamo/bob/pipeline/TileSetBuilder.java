@@ -20,7 +20,6 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 
-import javax.imageio.ImageIO;
 
 import org.apache.commons.io.FilenameUtils;
 
@@ -110,9 +109,10 @@ public class TileSetBuilder extends Builder<Void>  {
         IResource imageRes = this.project.getResource(imgPath);
         IResource collisionRes = this.project.getResource(collisionPath);
 
+        ImageCache imageCache = ImageCache.get(this.project);
         BufferedImage image = null;
         if (imageRes.exists()) {
-            image = ImageIO.read(new ByteArrayInputStream(imageRes.getContent()));
+            image = imageCache.read(imageRes);
         }
         if (image != null && (image.getWidth() < tileSet.getTileWidth() || image.getHeight() < tileSet.getTileHeight())) {
             throw new CompileExceptionError(task.input(0), -1, String.format(
@@ -122,7 +122,7 @@ public class TileSetBuilder extends Builder<Void>  {
 
         BufferedImage collisionImage = null;
         if (collisionRes.exists()) {
-            BufferedImage origImage = ImageIO.read(new ByteArrayInputStream(collisionRes.getContent()));
+            BufferedImage origImage = imageCache.read(collisionRes);
             collisionImage = new BufferedImage(origImage.getWidth(), origImage.getHeight(),
                     BufferedImage.TYPE_4BYTE_ABGR);
             Graphics2D g2d = collisionImage.createGraphics();
@@ -149,7 +149,7 @@ public class TileSetBuilder extends Builder<Void>  {
         TextureImage texture;
         try {
             boolean compress = project.option("texture-compression", "false").equals("true");
-            texture = TextureGenerator.generate(result.images.get(0), texProfile, compress);
+            texture = TextureGenerator.generate(result.images.get(0), texProfile, compress, this.project.getResourceCache());
         } catch (TextureGeneratorException e) {
             throw new CompileExceptionError(task.input(0), -1, e.getMessage(), e);
         }
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
 
 import java.io.Writer;
 import java.io.StringWriter;
@@ -56,12 +57,18 @@ public class ResourceGraph implements IResourceVisitor {
     // set of all resource nodes in the graph
     private Set<ResourceNode> resourceNodes = new LinkedHashSet<>();
 
+    // all resource nodes in the graph, by node index
+    private List<ResourceNode> indexToNode = new ArrayList<>();
+
     // lookup between IResource and ResourceNode
     private Map<IResource, ResourceNode> resourceToNodeLookup = new HashMap<>();
 
     // lookup between resource path and ResourceNode
     private Map<String, ResourceNode> pathToNodeLookup = new HashMap<>();
 
+    // parsed resource outputs, shared between the walks of all added resources
+    private Map<String, ResourceWalker.ParsedResource> parsedResources = new ConcurrentHashMap<>();
+
     // root resource to which all other resources are added
     private ResourceNode root = new ResourceNode("<AnonymousRoot>");
 
@@ -71,16 +78,17 @@ public class ResourceGraph implements IResourceVisitor {
 
     @Override
     public boolean shouldVisit(IResource resource, IResource parentResource) {
+        // the node has already been visited which means that it is used in
+        // multiple places in the graph
+        // in this case we reuse the node and don't visit it again (see skip)
+        return !resourceToNodeLookup.containsKey(resource);
+    }
+
+    @Override
+    public void skip(IResource resource, IResource parentResource) throws CompileExceptionError {
         ResourceNode currentNode = resourceToNodeLookup.get(resource);
-        if (currentNode != null) {
-            // the node has already been visited which means that it is used in
-            // multiple places in the graph
-            // in this case we reuse the node and don't visit it again
-            ResourceNode parentNode = (parentResource != null) ? resourceToNodeLookup.get(parentResource) : root;
-            parentNode.addChild(currentNode);
-            return false;
-        }
-        return true;
+        ResourceNode parentNode = (parentResource != null) ? resourceToNodeLookup.get(parentResource) : root;
+        parentNode.addChild(currentNode);
     }
 
     @Override
@@ -90,7 +98,7 @@ public class ResourceGraph implements IResourceVisitor {
 
         // create a new node since we are only visiting new resources (see check in shouldVisit)
         ResourceNode currentNode = new ResourceNode(resource);
-        resourceNodes.add(currentNode);
+        addNode(currentNode);
 
         // add resource node to lookup tables
         resourceToNodeLookup.put(resource, currentNode);
@@ -120,13 +128,19 @@ public class ResourceGraph implements IResourceVisitor {
         // do nothing
     }
 
+    private void addNode(ResourceNode node) {
+        node.setIndex(indexToNode.size());
+        indexToNode.add(node);
+        resourceNodes.add(node);
+    }
+
     /**
      * Add a resource to the graph. This will add the resource and all sub-resources
      * to the graph.
      * @param rootResource The resource to create graph from.
      */
     public void add(IResource rootResource) throws CompileExceptionError {
-        ResourceWalker.walk(project, rootResource, this);
+        ResourceWalker.walkParallel(project, rootResource, this, parsedResources);
     }
 
     // used in tests
@@ -138,7 +152,7 @@ public class ResourceGraph implements IResourceVisitor {
             currentNode = new ResourceNode(resourcePath);
             resourceToNodeLookup.put(currentResource, currentNode);
             pathToNodeLookup.put("/" + currentResource.getPath(), currentNode);
-            resourceNodes.add(currentNode);
+            addNode(currentNode);
             if (currentResource.getPath().endsWith("collectionproxyc")) {
                 currentNode.setType(ResourceNode.Type.CollectionProxy);
             }
@@ -167,6 +181,24 @@ public class ResourceGraph implements IResourceVisitor {
         return resources;
     }
 
+    /**
+     * Get the number of resource nodes in the graph, not counting the root node.
+     * Node indices are in the range [0, count).
+     * @return The number of resource nodes
+     */
+    public int getResourceNodeCount() {
+        return indexToNode.size();
+    }
+
+    /**
+     * Get resource node from node index
+     * @param index The node index
+     * @return The resource node with the index
+     */
+    public ResourceNode getResourceNode(int index) {
+        return indexToNode.get(index);
+    }
+
     /**
      * Get resource node from path
      * @param path The path to get resource node for
@@ -32,6 +32,8 @@ public class ResourceNode {
     private IResource resource;
     private String hexDigest = null;
     private Type nodeType = Type.None;
+    // index in the resource graph, -1 for nodes not added to a graph (such as the graph root)
+    private int index = -1;
     protected boolean inMainBundle = false;
     private final List<ResourceNode> children = new ArrayList<ResourceNode>();
 
@@ -61,6 +63,19 @@ public class ResourceNode {
         return this.children;
     }
 
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Get the index of the node in its resource graph. Indices are assigned in the
+     * order the nodes are added to the graph, starting at 0.
+     * @return The node index, or -1 if the node isn't part of a graph
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
     public IResource getResource() {
         return this.resource;
     }
@@ -14,10 +14,16 @@
 
 package com.dynamo.bob.pipeline.graph;
 
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.dynamo.bob.Project;
 import com.dynamo.bob.CompileExceptionError;
@@ -37,10 +43,82 @@ public class ResourceWalker {
         public void visit(IResource resource, IResource parentResource) throws CompileExceptionError;
         public void visitMessage(Message message, IResource resource, IResource parentResource) throws CompileExceptionError;
         public void leave(IResource resource, IResource parentResource) throws CompileExceptionError;
+        /**
+         * Called instead of visit() for resources that shouldVisit() returns false for.
+         */
+        public void skip(IResource resource, IResource parentResource) throws CompileExceptionError;
+        /**
+         * Check if a resource should be visited. walkParallel() also calls this from
+         * several threads before the visit starts, to only parse the resources that
+         * can be visited, so it must not change the visitor.
+         */
         public boolean shouldVisit(IResource resource, IResource parentResource);
     }
 
-    private static void visitMessage(Project project, IResource currentResource, Message node, IResourceVisitor visitor) throws CompileExceptionError {
+    /**
+     * The parsed output of a resource and the resources it references, in field order.
+     * The message is softly referenced, and read again if it has been collected.
+     */
+    public static class ParsedResource {
+        private final boolean isMessage;
+        private SoftReference<Message> message;
+        private final List<IResource> children;
+        private final Exception error;
+
+        private ParsedResource(Message message, List<IResource> children) {
+            this.isMessage = message != null;
+            this.message = isMessage ? new SoftReference<Message>(message) : null;
+            this.children = children;
+            this.error = null;
+        }
+
+        private ParsedResource(Exception error) {
+            this.isMessage = false;
+            this.children = Collections.emptyList();
+            this.error = error;
+        }
+
+        private Message getMessage(Project project, IResource resource) throws Exception {
+            Message m = message != null ? message.get() : null;
+            if (m == null && isMessage) {
+                m = readMessage(project, resource);
+            }
+            return m;
+        }
+
+        private void releaseMessage() {
+            message = null;
+        }
+    }
+
+    // Returns null if the resource isn't a protobuf message
+    private static Message readMessage(Project project, IResource resource) throws Exception {
+        int i = resource.getPath().lastIndexOf(".");
+        if (i == -1) {
+            return null;
+        }
+
+        String ext = resource.getPath().substring(i);
+        if (!ProtoBuilder.supportsType(ext)) {
+            return null;
+        }
+
+        // Use the message the builder wrote during this build, if it's still around
+        Message built = ProtoBuilder.getBuiltMessage(project, resource.output());
+        if (built != null && built.getClass() == ProtoBuilder.getMessageClassFromExt(ext)) {
+            return built;
+        }
+
+        GeneratedMessageV3.Builder<?> builder = ProtoBuilder.newBuilder(ext);
+        final byte[] content = resource.output().getContent();
+        if(content == null) {
+            throw new CompileExceptionError(resource, 0, "Unable to find resource " + resource.getPath());
+        }
+        builder.mergeFrom(content);
+        return (Message)builder.build();
+    }
+
+    private static void collectResources(Project project, Message node, List<IResource> resources) {
         List<FieldDescriptor> fields = node.getDescriptorForType().getFields();
         for (FieldDescriptor fieldDescriptor : fields) {
             FieldOptions options = fieldDescriptor.getOptions();
@@ -48,52 +126,66 @@ public class ResourceWalker {
             boolean isResource = (Boolean) options.getField(resourceDesc);
             Object value = node.getField(fieldDescriptor);
             if (value instanceof Message) {
-                visitMessage(project, currentResource, (Message) value, visitor);
+                collectResources(project, (Message) value, resources);
             } else if (value instanceof List) {
                 @SuppressWarnings("unchecked")
                 List<Object> list = (List<Object>) value;
                 for (Object v : list) {
                     if (v instanceof Message) {
-                        visitMessage(project, currentResource, (Message) v, visitor);
+                        collectResources(project, (Message) v, resources);
                     } else if (isResource && v instanceof String) {
-                        visitResource(project, currentResource, project.getResource((String) v), visitor);
+                        resources.add(project.getResource((String) v));
                     }
                 }
             } else if (isResource && value instanceof String) {
-                visitResource(project, currentResource, project.getResource((String) value), visitor);
+                resources.add(project.getResource((String) value));
             }
         }
     }
 
-    private static void visitResource(Project project, IResource parentResource, IResource resource, IResourceVisitor visitor) throws CompileExceptionError {
-        if (resource.getPath().equals("") || !visitor.shouldVisit(resource, parentResource)) {
-            return;
+    private static ParsedResource parse(Project project, IResource resource) {
+        try {
+            Message message = readMessage(project, resource);
+            if (message == null) {
+                return new ParsedResource(null, Collections.<IResource>emptyList());
+            }
+            List<IResource> children = new ArrayList<IResource>();
+            collectResources(project, message, children);
+            return new ParsedResource(message, children);
+        } catch (Exception e) {
+            return new ParsedResource(e);
         }
+    }
 
-        visitor.visit(resource, parentResource);
-
-        int i = resource.getPath().lastIndexOf(".");
-        if (i == -1) {
-            visitor.leave(resource, parentResource);
+    private static void visitResource(Project project, IResource parentResource, IResource resource, IResourceVisitor visitor, Map<String, ParsedResource> parsedResources) throws CompileExceptionError {
+        if (resource.getPath().equals("")) {
             return;
         }
-
-        String ext = resource.getPath().substring(i);
-        if (!ProtoBuilder.supportsType(ext)) {
-            visitor.leave(resource, parentResource);
+        if (!visitor.shouldVisit(resource, parentResource)) {
+            visitor.skip(resource, parentResource);
             return;
         }
 
-        GeneratedMessageV3.Builder<?> builder = ProtoBuilder.newBuilder(ext);
+        visitor.visit(resource, parentResource);
+
+        ParsedResource parsed = parsedResources.get(resource.getPath());
+        if (parsed == null) {
+            parsed = parse(project, resource);
+        }
+
         try {
-            final byte[] content = resource.output().getContent();
-            if(content == null) {
-                throw new CompileExceptionError(resource, 0, "Unable to find resource " + resource.getPath());
+            if (parsed.error != null) {
+                throw parsed.error;
+            }
+            Message message = parsed.getMessage(project, resource);
+            if (message != null) {
+                visitor.visitMessage(message, resource, parentResource);
+                // The resource is only visited once per visitor
+                parsed.releaseMessage();
+                for (IResource child : parsed.children) {
+                    visitResource(project, resource, child, visitor, parsedResources);
+                }
             }
-            builder.mergeFrom(content);
-            Message message = (Message)builder.build();
-            visitor.visitMessage(message, resource, parentResource);
-            visitMessage(project, resource, message, visitor);
         } catch(CompileExceptionError e) {
             throw e;
         } catch(Exception e) {
@@ -102,8 +194,70 @@ public class ResourceWalker {
         visitor.leave(resource, parentResource);
     }
 
+    private static class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Project project;
+        private final IResource resource;
+        private final IResourceVisitor visitor;
+        private final Map<String, ParsedResource> parsedResources;
+        private final Set<String> claimed;
+
+        ParseTask(Project project, IResource resource, IResourceVisitor visitor, Map<String, ParsedResource> parsedResources, Set<String> claimed) {
+            this.project = project;
+            this.resource = resource;
+            this.visitor = visitor;
+            this.parsedResources = parsedResources;
+            this.claimed = claimed;
+        }
+
+        @Override
+        protected void compute() {
+            ParsedResource parsed = parse(project, resource);
+            List<ParseTask> subTasks = new ArrayList<ParseTask>();
+            for (IResource child : parsed.children) {
+                String path = child.getPath();
+                // Only claim the child once the visitor accepts it, another parent may still reach it
+                if (!path.equals("") && !parsedResources.containsKey(path) && visitor.shouldVisit(child, resource) && claimed.add(path)) {
+                    subTasks.add(new ParseTask(project, child, visitor, parsedResources, claimed));
+                }
+            }
+            parsedResources.put(resource.getPath(), parsed);
+            invokeAll(subTasks);
+        }
+    }
+
+    /**
+     * Walk the resource graph from a root resource on the calling thread.
+     * @param project The project
+     * @param rootResource The resource to start from
+     * @param visitor The visitor to call for each resource
+     */
     public static void walk(Project project, IResource rootResource, IResourceVisitor visitor) throws CompileExceptionError {
-        visitResource(project, null, rootResource, visitor);
+        visitResource(project, null, rootResource, visitor, new HashMap<String, ParsedResource>());
+    }
+
+    /**
+     * Walk the resource graph from a root resource, reading and parsing the resources
+     * on several threads. All resources reachable from the root that the visitor
+     * accepts in shouldVisit() are parsed first, fanning out over the referenced
+     * resources. The visitor is then called on the calling thread, in the same order
+     * as walk(), so only shouldVisit() needs to be thread safe and the result doesn't
+     * depend on thread scheduling.
+     * @param project The project
+     * @param rootResource The resource to start from
+     * @param visitor The visitor to call for each resource
+     * @param parsedResources Parsed resources keyed on path. Pass the same map to
+     * several walks to only read and parse each resource once. Must be thread safe.
+     */
+    public static void walkParallel(Project project, IResource rootResource, IResourceVisitor visitor, Map<String, ParsedResource> parsedResources) throws CompileExceptionError {
+        String path = rootResource.getPath();
+        if (!path.equals("") && !parsedResources.containsKey(path) && visitor.shouldVisit(rootResource, null)) {
+            Set<String> claimed = ConcurrentHashMap.newKeySet();
+            claimed.add(path);
+            ForkJoinPool.commonPool().invoke(new ParseTask(project, rootResource, visitor, parsedResources, claimed));
+        }
+        visitResource(project, null, rootResource, visitor, parsedResources);
     }
 
-}
\ No newline at end of file
+}
@@ -16,8 +16,10 @@ package com.dynamo.bob.plugin;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.lang.reflect.Modifier;
 
 import com.dynamo.bob.Bob;
@@ -31,7 +33,9 @@ public class PluginScanner {
 
 	private static Logger logger = Logger.getLogger(PluginScanner.class.getName());
 
-	private static HashMap<String, Object> pluginsCache = new HashMap<>();
+	// Plugins found for a package and base class, or an empty optional if none were found.
+	// Builders look up plugins from several threads while tasks are created.
+	private static Map<String, Optional<List<?>>> pluginsCache = new ConcurrentHashMap<>();
 
 	/**
 	 * Get a previously cached instance or find and create an instance of a class
@@ -79,19 +83,39 @@ public class PluginScanner {
 	public static <T> List<T> getOrCreatePlugins(String packageName, Class<T> pluginBaseClass) throws CompileExceptionError {
 
 		// check if we've already searched for and cached a plugin for this package path and base class
-		// and if that is the case return the cached instance
-		// note that HashMap accepts null as a value (and key for that matter) which means that we'll
-		// return null if we have searched for and not found a plugin
+		// and if that is the case return the cached instance, or null if we have searched for and not
+		// found a plugin. The search runs once per key, even when several threads ask at the same time
 		String pluginKey = packageName + pluginBaseClass;
-		if (pluginsCache.containsKey(pluginKey)) {
-			List<T> plugins = (List<T>)pluginsCache.get(pluginKey);
-			if (plugins != null)
-			{
-				logger.info("PluginScanner has %d cached plugins for key %s", plugins.size(), pluginKey);
+		Optional<List<?>> cached = pluginsCache.get(pluginKey);
+		if (cached != null) {
+			if (cached.isPresent()) {
+				logger.info("PluginScanner has %d cached plugins for key %s", cached.get().size(), pluginKey);
 			}
-			return plugins;
+			return (List<T>)cached.orElse(null);
 		}
 
+		try {
+			cached = pluginsCache.computeIfAbsent(pluginKey, k -> {
+				try {
+					return Optional.ofNullable(findPlugins(packageName, pluginBaseClass));
+				} catch (CompileExceptionError e) {
+					throw new PluginScanException(e);
+				}
+			});
+		} catch (PluginScanException e) {
+			throw (CompileExceptionError)e.getCause();
+		}
+		return (List<T>)cached.orElse(null);
+	}
+
+	// Carries a CompileExceptionError out of ConcurrentHashMap.computeIfAbsent()
+	private static class PluginScanException extends RuntimeException {
+		PluginScanException(CompileExceptionError cause) {
+			super(cause);
+		}
+	}
+
+	private static <T> List<T> findPlugins(String packageName, Class<T> pluginBaseClass) throws CompileExceptionError {
 		IClassScanner scanner = Project.getClassLoaderScanner();
 		if (scanner == null) {
 			logger.warning("PluginScanner has no class loader scanner");
@@ -121,9 +145,7 @@ public class PluginScanner {
 			}
 		}
 
-		// get the plugin (or null if none was found) and cache it
-		plugins = plugins.isEmpty() ? null : plugins;
-		pluginsCache.put(pluginKey, plugins);
-		return plugins;
+		// get the plugins (or null if none was found)
+		return plugins.isEmpty() ? null : plugins;
 	}
 }
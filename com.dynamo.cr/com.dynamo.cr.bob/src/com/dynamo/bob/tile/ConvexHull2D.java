@@ -194,7 +194,7 @@ public class ConvexHull2D {
     }
 
     // Used when inserting each center point of a texel
-    static double supportCenter(int width, int height, int[] mask, Vector2d dir) {
+    static double supportCenter(int width, int height, byte[] mask, Vector2d dir) {
         double maxValue = -Double.MAX_VALUE;
         Vector2d p = new Vector2d();
         for (int y = height-1; y >= 0; --y) {
@@ -210,7 +210,7 @@ public class ConvexHull2D {
         return maxValue;
     }
 
-    static double supportCorners(int width, int height, int[] mask, Vector2d dir) {
+    static double supportCorners(int width, int height, byte[] mask, Vector2d dir) {
         double maxValue = -Double.MAX_VALUE;
         double centerX = width / 2.0;
         double centerY = height / 2.0;
@@ -240,7 +240,7 @@ public class ConvexHull2D {
     }
 
 
-    static boolean validHull(Point[] points, int[] mask, int width, int height) {
+    static boolean validHull(Point[] points, byte[] mask, int width, int height) {
         int n = points.length;
         for (int i = 0; i < n; ++i) {
             Point p0 = points[(i+1) % n];
@@ -265,7 +265,7 @@ public class ConvexHull2D {
         return true;
     }
 
-    static Point[] refine(Point[] points, int[] mask, int width, int height) {
+    static Point[] refine(Point[] points, byte[] mask, int width, int height) {
         int n = points.length;
 
         boolean wasRefined;
@@ -290,7 +290,7 @@ public class ConvexHull2D {
     }
 
 
-    static private boolean validHullF(PointF[] points, int[] mask, int width, int height) {
+    static private boolean validHullF(PointF[] points, byte[] mask, int width, int height) {
         int n = points.length;
         for (int i = 0; i < n; ++i) {
             PointF p0 = points[(i+1) % n];
@@ -315,6 +315,23 @@ public class ConvexHull2D {
         return true;
     }
 
+    /**
+     * Convert an image mask to a byte mask of 0 and 1
+     * @param mask image mask. 0 is interpreted as background. != 0 is interpreted as foreground
+     * @return byte mask
+     */
+    public static byte[] toByteMask(int[] mask) {
+        byte[] result = new byte[mask.length];
+        for (int i = 0; i < mask.length; ++i) {
+            result[i] = (byte) (mask[i] != 0 ? 1 : 0);
+        }
+        return result;
+    }
+
+    public static Point[] imageConvexHull(int[] mask, int width, int height, int nplanes) {
+        return imageConvexHull(toByteMask(mask), width, height, nplanes);
+    }
+
     /**
      * Get convex shape for a single image
      * @note the planes are always evenly distributed around the center at 360/nplanes increments
@@ -324,7 +341,7 @@ public class ConvexHull2D {
      * @param nplanes number of planes to use when fitting
      * @return convex hull
      */
-    public static Point[] imageConvexHull(int[] mask, int width, int height, int nplanes) {
+    public static Point[] imageConvexHull(byte[] mask, int width, int height, int nplanes) {
         Vector2d[] points = new Vector2d[nplanes];
         Vector2d[] tangents = new Vector2d[nplanes];
 
@@ -479,11 +496,15 @@ public class ConvexHull2D {
         return v;
     }
 
+    public static PointF[] imageConvexHullCorners(int[] mask, int width, int height, int targetCount) {
+        return imageConvexHullCorners(toByteMask(mask), width, height, targetCount);
+    }
+
     /**
      * @note returns CW winding
      * @return a PointF array where each point is in the space [-0.5, 0.5]
      */
-    public static PointF[] imageConvexHullCorners(int[] mask, int width, int height, int targetCount) {
+    public static PointF[] imageConvexHullCorners(byte[] mask, int width, int height, int targetCount) {
         final int nplanes = 16;
         Vector2d[] points = new Vector2d[nplanes];
         Vector2d[] tangents = new Vector2d[nplanes];
@@ -545,32 +566,71 @@ public class ConvexHull2D {
         return simplifyHull(result, targetCount);
     }
 
-    private static int nonzeroValue(int[] mask, int width, int height, int x, int y, int kernelSize)
-    {
-        int kernelHalfSize = kernelSize / 2;
-        for (int ky = -kernelHalfSize; ky <= kernelHalfSize; ++ky) {
-            int yy = y + ky;
-            if (yy < 0 || yy >= height)
-                continue;
-            for (int kx = -kernelHalfSize; kx <= kernelHalfSize; ++kx) {
-                int xx = x + kx;
-                if (xx < 0 || xx >= width)
-                    continue;
-                if (mask[yy * width + xx] != 0)
-                    return 1;
+    /**
+     * Dilate a mask with a square kernel of kernelSize x kernelSize pixels.
+     * The kernel is separable, so the mask is dilated horizontally and then
+     * vertically, keeping a running count of the nonzero pixels under the
+     * kernel. The cost is linear in the number of pixels, whatever the kernel size.
+     * @param mask image mask. 0 is interpreted as background. != 0 is interpreted as foreground
+     * @param width image width
+     * @param height image height
+     * @param kernelSize kernel size, an odd number
+     * @param tmp buffer of at least width * height bytes
+     * @param out dilated mask of 0 and 1, at least width * height bytes. May not be the mask or tmp
+     * @return out
+     */
+    public static byte[] dilate(byte[] mask, int width, int height, int kernelSize, byte[] tmp, byte[] out) {
+        int r = kernelSize / 2;
+
+        // Horizontal pass, count of nonzero pixels in [x - r, x + r]
+        for (int y = 0; y < height; ++y) {
+            int row = y * width;
+            int count = 0;
+            for (int x = 0; x < r && x < width; ++x) {
+                count += mask[row + x] != 0 ? 1 : 0;
+            }
+            for (int x = 0; x < width; ++x) {
+                if (x + r < width && mask[row + x + r] != 0) {
+                    ++count;
+                }
+                if (x - r - 1 >= 0 && mask[row + x - r - 1] != 0) {
+                    --count;
+                }
+                tmp[row + x] = (byte) (count > 0 ? 1 : 0);
             }
         }
-        return 0;
-    }
 
-    private static int[] dilate(int[] mask, int width, int height, int kernelSize) {
-        int[] tmp = new int[width*height];
+        // Vertical pass, count of nonzero pixels in [y - r, y + r] for each column
+        int[] counts = new int[width];
+        for (int y = 0; y < r && y < height; ++y) {
+            int row = y * width;
+            for (int x = 0; x < width; ++x) {
+                counts[x] += tmp[row + x];
+            }
+        }
         for (int y = 0; y < height; ++y) {
+            if (y + r < height) {
+                int row = (y + r) * width;
+                for (int x = 0; x < width; ++x) {
+                    counts[x] += tmp[row + x];
+                }
+            }
+            if (y - r - 1 >= 0) {
+                int row = (y - r - 1) * width;
+                for (int x = 0; x < width; ++x) {
+                    counts[x] -= tmp[row + x];
+                }
+            }
+            int row = y * width;
             for (int x = 0; x < width; ++x) {
-                tmp[y * width + x] = nonzeroValue(mask, width, height, x, y, kernelSize);
+                out[row + x] = (byte) (counts[x] > 0 ? 1 : 0);
             }
         }
-        return tmp;
+        return out;
+    }
+
+    public static byte[] dilate(byte[] mask, int width, int height, int kernelSize) {
+        return dilate(mask, width, height, kernelSize, new byte[width * height], new byte[width * height]);
     }
 
     // Use helper script test_convexhull2d.sh to run this main function
@@ -619,12 +679,12 @@ public class ConvexHull2D {
         int minY = height+1;
 
         int any_zero_alpha = 0;
-        int mask[] = new int[width*height];
+        byte mask[] = new byte[width*height];
         for (int y = 0; y < height; ++y) {
             for (int x = 0; x < width; ++x) {
                 int color = img.getRGB(x, y); // bgra
                 int alpha = (color >> 24) & 0xff;
-                mask[y * width + x] = alpha == 0 ? 0 : 1;
+                mask[y * width + x] = (byte) (alpha == 0 ? 0 : 1);
                 any_zero_alpha |= alpha == 0 ? 1 : 0;
 
                 if (alpha > 0) {
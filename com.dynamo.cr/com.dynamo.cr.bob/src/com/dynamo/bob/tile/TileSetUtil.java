@@ -19,7 +19,12 @@ import com.dynamo.bob.textureset.TextureSetLayout.Rect;
 // The code below must remain identical to the implementation in the editor!
 // ./editor/src/java/com/defold/editor/pipeline/TileSetUtil.java
 
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
 import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.util.stream.IntStream;
 
 
 public class TileSetUtil {
@@ -88,7 +93,7 @@ public class TileSetUtil {
     private static int Min(int a, int b) { return a < b ? a : b; }
 
     // Returns a CW rect
-    private static ConvexHull2D.Point[] calcRect(int[] alpha, int width, int height, int inflate) {
+    private static ConvexHull2D.Point[] calcRect(byte[] alpha, int width, int height, int inflate) {
         int maxX = -1;
         int maxY = -1;
         int minX = width + 1;
@@ -138,35 +143,61 @@ public class TileSetUtil {
         }
         return true;
     }
-    private static int nonzeroValue(int[] mask, int width, int height, int x, int y, int kernelSize)
-    {
-        int kernelHalfSize = kernelSize / 2;
-        for (int ky = -kernelHalfSize; ky <= kernelHalfSize; ++ky) {
-            int yy = y + ky;
-            if (yy < 0 || yy >= height)
-                continue;
-            for (int kx = -kernelHalfSize; kx <= kernelHalfSize; ++kx) {
-                int xx = x + kx;
-                if (xx < 0 || xx >= width)
-                    continue;
-                if (mask[yy * width + xx] != 0)
-                    return 1;
+    /**
+     * Read a rect of a single band raster as a mask, where nonzero samples are 1.
+     * Byte rasters, such as the alpha raster of a 4 byte ABGR image, are read
+     * directly from the data buffer.
+     * @param raster single band raster
+     * @param x x coordinate of the rect, in raster coordinates
+     * @param y y coordinate of the rect, in raster coordinates
+     * @param width rect width
+     * @param height rect height
+     * @param mask at least width * height bytes
+     * @return mask
+     */
+    public static byte[] getMask(Raster raster, int x, int y, int width, int height, byte[] mask) {
+        if (x < raster.getMinX() || y < raster.getMinY() ||
+            x + width > raster.getMinX() + raster.getWidth() || y + height > raster.getMinY() + raster.getHeight()) {
+            throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+        }
+        SampleModel sampleModel = raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        if (sampleModel instanceof ComponentSampleModel && dataBuffer instanceof DataBufferByte) {
+            ComponentSampleModel componentSampleModel = (ComponentSampleModel) sampleModel;
+            int bank = componentSampleModel.getBankIndices()[0];
+            byte[] data = ((DataBufferByte) dataBuffer).getData(bank);
+            int pixelStride = componentSampleModel.getPixelStride();
+            int scanlineStride = componentSampleModel.getScanlineStride();
+            int sx = x - raster.getSampleModelTranslateX();
+            int sy = y - raster.getSampleModelTranslateY();
+            int offset = dataBuffer.getOffsets()[bank] + componentSampleModel.getOffset(sx, sy, 0);
+            for (int row = 0; row < height; ++row) {
+                int i = offset + row * scanlineStride;
+                int m = row * width;
+                for (int col = 0; col < width; ++col, i += pixelStride) {
+                    mask[m + col] = (byte) (data[i] != 0 ? 1 : 0);
+                }
+            }
+        } else {
+            int[] samples = new int[width];
+            for (int row = 0; row < height; ++row) {
+                raster.getSamples(x, y + row, width, 1, 0, samples);
+                int m = row * width;
+                for (int col = 0; col < width; ++col) {
+                    mask[m + col] = (byte) (samples[col] != 0 ? 1 : 0);
+                }
             }
         }
-        return 0;
+        return mask;
     }
 
-    private static int[] dilate(int[] mask, int width, int height, int kernelSize) {
-        int[] tmp = new int[width*height];
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                tmp[y * width + x] = nonzeroValue(mask, width, height, x, y, kernelSize);
-            }
-        }
-        return tmp;
+    private static byte[] getMask(Raster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        return getMask(raster, raster.getMinX(), raster.getMinY(), width, height, new byte[width * height]);
     }
 
-    private static boolean isEmpty(int[] mask, int width, int height) {
+    private static boolean isEmpty(byte[] mask, int width, int height) {
         for (int i = 0; i < width*height; ++i) {
             if (mask[i] != 0)
                 return false;
@@ -178,8 +209,7 @@ public class TileSetUtil {
     public static ConvexHull2D.PointF[] calculateRect(Raster alphaRaster, int inflate) {
         int width = alphaRaster.getWidth();
         int height = alphaRaster.getHeight();
-        int[] alpha = new int[width * height];
-        alpha = alphaRaster.getPixels(0, 0, width, height, alpha);
+        byte[] alpha = getMask(alphaRaster);
 
         ConvexHull2D.Point ipoints[] = calcRect(alpha, width, height, inflate);
         ConvexHull2D.PointF points[] = new ConvexHull2D.PointF[4];
@@ -195,14 +225,13 @@ public class TileSetUtil {
     public static ConvexHull2D.PointF[] calculateConvexHull(Raster alphaRaster, int hullTargetVertexCount, int dilateCount) {
         int width = alphaRaster.getWidth();
         int height = alphaRaster.getHeight();
-        int[] alpha = new int[width * height];
-        alpha = alphaRaster.getPixels(0, 0, width, height, alpha);
+        byte[] alpha = getMask(alphaRaster);
 
         if (isEmpty(alpha, width, height))
             return null;
 
         if (dilateCount > 0) {
-            alpha = dilate(alpha, width, height, dilateCount * 2 + 1);
+            alpha = ConvexHull2D.dilate(alpha, width, height, dilateCount * 2 + 1);
         }
 
         ConvexHull2D.PointF[] points = ConvexHull2D.imageConvexHullCorners(alpha, width, height, hullTargetVertexCount);
@@ -220,19 +249,17 @@ public class TileSetUtil {
             int width, int height, int tileWidth, int tileHeight,
             int tileMargin, int tileSpacing) {
 
-        int tilesPerRow = TileSetUtil.calculateTileCount(tileWidth, width, tileMargin, tileSpacing);
+        final int tilesPerRow = TileSetUtil.calculateTileCount(tileWidth, width, tileMargin, tileSpacing);
         int tilesPerColumn = TileSetUtil.calculateTileCount(tileHeight, height, tileMargin, tileSpacing);
-        ConvexHull2D.Point[][] points = new ConvexHull2D.Point[tilesPerRow * tilesPerColumn][];
-        int pointCount = 0;
-        int[] mask = new int[tileWidth * tileHeight];
-
-        ConvexHull[] convexHulls = new ConvexHull[tilesPerColumn * tilesPerRow];
+        final ConvexHull2D.Point[][] points = new ConvexHull2D.Point[tilesPerRow * tilesPerColumn][];
 
-        for (int row = 0; row < tilesPerColumn; ++row) {
+        // The hulls of each row of tiles are calculated in parallel
+        IntStream.range(0, tilesPerColumn).parallel().forEach(row -> {
+            byte[] mask = new byte[tileWidth * tileHeight];
             for (int col = 0; col < tilesPerRow; ++col) {
                 int x = tileMargin + col * (2 * tileMargin + tileSpacing + tileWidth);
                 int y = tileMargin + row * (2 * tileMargin + tileSpacing + tileHeight);
-                mask = alphaRaster.getPixels(x, y, tileWidth, tileHeight, mask);
+                getMask(alphaRaster, x, y, tileWidth, tileHeight, mask);
                 int index = col + row * tilesPerRow;
                 points[index] = ConvexHull2D.imageConvexHull(mask, tileWidth, tileHeight, hullTargetVertexCount);
 
@@ -240,10 +267,14 @@ public class TileSetUtil {
                 if (!isHullValid(points[index], tileWidth, tileHeight)) {
                     points[index] = calcRect(mask, tileWidth, tileHeight, 0);
                 }
-                ConvexHull convexHull = new ConvexHull(null, pointCount, points[index].length);
-                convexHulls[index] = convexHull;
-                pointCount += points[index].length;
             }
+        });
+
+        ConvexHull[] convexHulls = new ConvexHull[tilesPerColumn * tilesPerRow];
+        int pointCount = 0;
+        for (int index = 0; index < points.length; ++index) {
+            convexHulls[index] = new ConvexHull(null, pointCount, points[index].length);
+            pointCount += points[index].length;
         }
         float[] convexHullPoints = new float[pointCount * 2];
         int totalIndex = 0;
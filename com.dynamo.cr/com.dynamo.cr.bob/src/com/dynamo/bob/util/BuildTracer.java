@@ -0,0 +1,325 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.bob.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+import com.dynamo.bob.logging.Logger;
+
+/**
+ * Thread-aware build tracer.
+ *
+ * Every thread has its own scope stack and event buffer, so scopes can be
+ * recorded from builder and worker threads without locking. Events are only
+ * merged when the trace is written, in the Chrome trace event format that can
+ * be opened in chrome://tracing or Perfetto.
+ */
+public class BuildTracer {
+
+    private static Logger logger = Logger.getLogger(BuildTracer.class.getName());
+
+    // Events per chunk of a thread buffer, must be a power of two
+    static final int CHUNK_SIZE = 1024;
+
+    /**
+     * Recorded scope (complete event) or mark (instant event)
+     */
+    static class Event {
+        String name;
+        final String category;
+        final long start;
+        long duration = -1;
+        Map<String, Object> args;
+
+        Event(String name, String category, long start) {
+            this.name = name;
+            this.category = category;
+            this.start = start;
+        }
+
+        boolean isInstant() {
+            return duration < 0;
+        }
+    }
+
+    /**
+     * Event buffer and scope stack of one thread. Only the owning thread
+     * appends events; an event is written to its slot before the size is
+     * published, so readers only see complete events.
+     */
+    private static class ThreadBuffer {
+        final int generation;
+        final String threadName;
+        final long threadId;
+        final ArrayDeque<Event> scopes = new ArrayDeque<Event>();
+        final List<Event[]> chunks = new CopyOnWriteArrayList<Event[]>();
+        final AtomicInteger size = new AtomicInteger();
+
+        ThreadBuffer(Thread thread, int generation) {
+            this.generation = generation;
+            this.threadName = thread.getName();
+            this.threadId = thread.getId();
+        }
+
+        void add(Event event) {
+            int index = size.get();
+            int chunk = index / CHUNK_SIZE;
+            if (chunk == chunks.size()) {
+                chunks.add(new Event[CHUNK_SIZE]);
+            }
+            chunks.get(chunk)[index & (CHUNK_SIZE - 1)] = event;
+            size.lazySet(index + 1);
+        }
+
+        void collect(List<Event> result) {
+            int count = size.get();
+            for (int i = 0; i < count; ++i) {
+                result.add(chunks.get(i / CHUNK_SIZE)[i & (CHUNK_SIZE - 1)]);
+            }
+        }
+    }
+
+    private static volatile boolean enabled = false;
+    private static long traceStart;
+    private static File traceFile;
+    private static Boolean fromEditor;
+    // Incremented by init, buffers of earlier traces are replaced on first use
+    private static volatile int generation = 0;
+    private static List<ThreadBuffer> buffers = new CopyOnWriteArrayList<ThreadBuffer>();
+    private static ThreadLocal<ThreadBuffer> threadBuffer = new ThreadLocal<ThreadBuffer>();
+
+    private static ThreadBuffer currentBuffer() {
+        ThreadBuffer buffer = threadBuffer.get();
+        int current = generation;
+        if (buffer == null || buffer.generation != current) {
+            buffer = new ThreadBuffer(Thread.currentThread(), current);
+            threadBuffer.set(buffer);
+            buffers.add(buffer);
+        }
+        return buffer;
+    }
+
+    private static long time() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Start tracing
+     * @param traceFile file to write the trace to in {@link #finish(Boolean)}
+     * @param fromEditor true if started from the editor, see {@link #finish(Boolean)}
+     */
+    public static synchronized void init(File traceFile, Boolean fromEditor) {
+        if (enabled) {
+            return;
+        }
+        BuildTracer.traceFile = traceFile;
+        BuildTracer.fromEditor = fromEditor;
+        buffers.clear();
+        ++generation;
+        traceStart = time();
+        enabled = true;
+
+        if (!fromEditor) {
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    finish(false);
+                }
+            }));
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stop tracing and write the trace file. Does nothing unless called with
+     * the same `fromEditor` flag as {@link #init(File, Boolean)}, so that a
+     * build started by the command line tool is traced until bob exits.
+     */
+    public static synchronized void finish(Boolean fromEditor) {
+        if (!enabled || BuildTracer.fromEditor != fromEditor) {
+            return;
+        }
+        enabled = false;
+        try {
+            writeTrace(traceFile);
+            logger.info("Build trace written to %s", traceFile.getAbsolutePath());
+        } catch (IOException e) {
+            logger.warning("Unable to write build trace %s: %s", traceFile.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    /**
+     * Begin a scope on the current thread
+     * @param name scope name, may be set later with {@link #addData(String, Object)}
+     * @param category trace event category
+     */
+    public static void begin(String name, String category) {
+        if (!enabled) {
+            return;
+        }
+        ThreadBuffer buffer = currentBuffer();
+        buffer.scopes.push(new Event(name, category, time()));
+    }
+
+    public static void begin(String name) {
+        begin(name, "build");
+    }
+
+    /**
+     * End the innermost scope of the current thread
+     */
+    public static void end() {
+        if (!enabled) {
+            return;
+        }
+        ThreadBuffer buffer = currentBuffer();
+        Event event = buffer.scopes.poll();
+        if (event == null) {
+            return;
+        }
+        event.duration = time() - event.start;
+        buffer.add(event);
+    }
+
+    /**
+     * Add data to the innermost scope of the current thread. The "name"
+     * field renames the scope.
+     */
+    public static void addData(String fieldName, Object data) {
+        if (!enabled) {
+            return;
+        }
+        Event event = currentBuffer().scopes.peek();
+        if (event == null) {
+            return;
+        }
+        if (fieldName.equals("name") && data instanceof String) {
+            event.name = (String) data;
+            return;
+        }
+        if (event.args == null) {
+            event.args = new LinkedHashMap<String, Object>();
+        }
+        event.args.put(fieldName, data);
+    }
+
+    /**
+     * Add an instant event on the current thread
+     */
+    public static void addMark(String name) {
+        if (!enabled) {
+            return;
+        }
+        currentBuffer().add(new Event(name, "mark", time()));
+    }
+
+    private static void writeArg(JsonGenerator generator, String name, Object value) throws IOException {
+        generator.writeFieldName(name);
+        if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Long || value instanceof Integer) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            generator.writeNumber(((Number) value).doubleValue());
+        } else {
+            generator.writeString(String.valueOf(value));
+        }
+    }
+
+    /**
+     * Write all events recorded so far in the Chrome trace event format, with
+     * one track per thread. Timestamps are in microseconds since tracing started.
+     */
+    public static void writeTrace(Writer writer) throws IOException {
+        JsonGenerator generator = (new JsonFactory()).createJsonGenerator(writer);
+        try {
+            generator.writeStartObject();
+            generator.writeFieldName("traceEvents");
+            generator.writeStartArray();
+            for (ThreadBuffer buffer : buffers) {
+                generator.writeStartObject();
+                generator.writeStringField("name", "thread_name");
+                generator.writeStringField("ph", "M");
+                generator.writeNumberField("pid", 1);
+                generator.writeNumberField("tid", buffer.threadId);
+                generator.writeFieldName("args");
+                generator.writeStartObject();
+                generator.writeStringField("name", buffer.threadName);
+                generator.writeEndObject();
+                generator.writeEndObject();
+
+                List<Event> events = new ArrayList<Event>();
+                buffer.collect(events);
+                for (Event event : events) {
+                    generator.writeStartObject();
+                    generator.writeStringField("name", event.name != null ? event.name : "unnamed");
+                    generator.writeStringField("cat", event.category);
+                    generator.writeNumberField("ts", (event.start - traceStart) / 1000.0);
+                    if (event.isInstant()) {
+                        generator.writeStringField("ph", "i");
+                        generator.writeStringField("s", "g");
+                    } else {
+                        generator.writeStringField("ph", "X");
+                        generator.writeNumberField("dur", event.duration / 1000.0);
+                    }
+                    generator.writeNumberField("pid", 1);
+                    generator.writeNumberField("tid", buffer.threadId);
+                    if (event.args != null) {
+                        generator.writeFieldName("args");
+                        generator.writeStartObject();
+                        for (Map.Entry<String, Object> entry : event.args.entrySet()) {
+                            writeArg(generator, entry.getKey(), entry.getValue());
+                        }
+                        generator.writeEndObject();
+                    }
+                    generator.writeEndObject();
+                }
+            }
+            generator.writeEndArray();
+            generator.writeStringField("displayTimeUnit", "ms");
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+        }
+    }
+
+    public static void writeTrace(File file) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        try {
+            writeTrace(writer);
+        } finally {
+            writer.close();
+        }
+    }
+}
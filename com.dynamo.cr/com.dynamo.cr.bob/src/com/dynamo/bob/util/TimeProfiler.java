@@ -43,6 +43,9 @@ import com.samskivert.mustache.Template;
 
 /**
  * Class helps to profile time of the Bob tool and generate report.
+ * Scopes are also forwarded to {@link BuildTracer}, which records them on every thread.
+ * Scopes of worker threads are only recorded when the thread has been attached to a
+ * scope of the profiled thread with {@link #attachThread(Object)}.
  */
 public class TimeProfiler {
 
@@ -76,9 +79,33 @@ public class TimeProfiler {
     private static long buildTime;
 
     private static ProfilingScope rootScope;
+    // Current scope of the thread that initialized the profiler
     private static ProfilingScope currentScope;
+    // Current scope of an attached worker thread
+    private static final ThreadLocal<ProfilingScope> workerScope = new ThreadLocal<ProfilingScope>();
     private static List<File> reportFiles;
     private static Boolean fromEditor;
+    private static Thread ownerThread;
+
+    private static boolean isOwnerThread() {
+        return Thread.currentThread() == ownerThread;
+    }
+
+    private static ProfilingScope getScope() {
+        return isOwnerThread() ? currentScope : workerScope.get();
+    }
+
+    private static void setScope(ProfilingScope scope) {
+        if (isOwnerThread()) {
+            currentScope = scope;
+        } else {
+            workerScope.set(scope);
+        }
+    }
+
+    private static boolean isActive() {
+        return rootScope != null && getScope() != null;
+    }
 
     private static long time() {
         return System.currentTimeMillis();
@@ -205,11 +232,13 @@ public class TimeProfiler {
 
         //Close all unclosed scopes
         while(currentScope != _rootScope) {
-            unsafeAddData("forceFinishedScope", true);
-            unsafeAddData("color", "#FF0000");
-            unsafeStop();
+            unsafeAddData(currentScope, "forceFinishedScope", true);
+            unsafeAddData(currentScope, "color", "#FF0000");
+            currentScope.endTime = time();
+            currentScope = currentScope.parent;
         };
-        unsafeStop();
+        _rootScope.endTime = time();
+        currentScope = null;
 
         try {
             String jsonReport = generateJSON(_rootScope);
@@ -245,6 +274,7 @@ public class TimeProfiler {
         }
         TimeProfiler.reportFiles = reportFiles;
         TimeProfiler.fromEditor = fromEditor;
+        ownerThread = Thread.currentThread();
         marks = new ArrayList();
         long startTime = time();
         if (!fromEditor) {
@@ -255,7 +285,7 @@ public class TimeProfiler {
         rootScope = new ProfilingScope();
         rootScope.startTime = startTime;
         currentScope = rootScope;
-        unsafeAddData("name", "Total time");
+        unsafeAddData(rootScope, "name", "Total time");
 
         if (!fromEditor) {
             ProfilingScope initScope = new ProfilingScope();
@@ -277,23 +307,53 @@ public class TimeProfiler {
     }
 
     public static void start() {
-        if (rootScope == null) {
+        BuildTracer.begin(null);
+        if (!isActive()) {
             return;
         }
-        if (currentScope.children == null) {
-            currentScope.children = new ArrayList<ProfilingScope>();
-        }
+        ProfilingScope parent = getScope();
         ProfilingScope scope = new ProfilingScope();
         scope.startTime = time();
-        scope.parent = currentScope;
-        currentScope.children.add(scope);
-        currentScope = scope;
+        scope.parent = parent;
+        // Several attached threads may add children to the same scope
+        synchronized (parent) {
+            if (parent.children == null) {
+                parent.children = new ArrayList<ProfilingScope>();
+            }
+            parent.children.add(scope);
+        }
+        setScope(scope);
     }
 
-    public static void start(String scopeName) {
-        if (rootScope == null) {
+    /**
+     * Get the current scope of the calling thread, for worker threads to
+     * attach to with {@link #attachThread(Object)}.
+     * @return the scope, or null if the calling thread isn't profiled
+     */
+    public static Object getCurrentScope() {
+        return isActive() ? getScope() : null;
+    }
+
+    /**
+     * Record the scopes of the calling worker thread as children of a scope
+     * of another thread, until {@link #detachThread()} is called.
+     * @param parentScope scope from {@link #getCurrentScope()}, or null
+     */
+    public static void attachThread(Object parentScope) {
+        if (parentScope == null || isOwnerThread()) {
+            return;
+        }
+        workerScope.set((ProfilingScope) parentScope);
+    }
+
+    public static void detachThread() {
+        if (isOwnerThread()) {
             return;
         }
+        workerScope.remove();
+    }
+
+    public static void start(String scopeName) {
         start();
         addData("name", scopeName);
     }
@@ -303,18 +363,21 @@ public class TimeProfiler {
     }
 
     private static void unsafeStop() {
-        currentScope.endTime = time();
-        currentScope = currentScope.parent;
+        ProfilingScope scope = getScope();
+        scope.endTime = time();
+        setScope(scope.parent);
     }
 
     public static void stop() {
-        if (rootScope == null) {
+        BuildTracer.end();
+        if (!isActive()) {
             return;
         }
         unsafeStop();
     }
 
     public static void addMark(String shortName, String fullName, String color) {
+        BuildTracer.addMark(fullName);
         if (rootScope == null) {
             return;
         }
@@ -334,46 +397,49 @@ public class TimeProfiler {
         addMark(shortName, shortName, "#EADDCA");
     }
 
-    private static void unsafeAddData(String fieldName, String data) {
-        if (currentScope.additionalStringData == null) {
-            currentScope.additionalStringData = new HashMap<String, String>();
+    private static void unsafeAddData(ProfilingScope scope, String fieldName, String data) {
+        if (scope.additionalStringData == null) {
+            scope.additionalStringData = new HashMap<String, String>();
         }
-        currentScope.additionalStringData.put(fieldName, data);
+        scope.additionalStringData.put(fieldName, data);
     }
 
-    private static void unsafeAddData(String fieldName, Float data) {
-        if (currentScope.additionalNumberData == null) {
-            currentScope.additionalNumberData = new HashMap<String, Float>();
+    private static void unsafeAddData(ProfilingScope scope, String fieldName, Float data) {
+        if (scope.additionalNumberData == null) {
+            scope.additionalNumberData = new HashMap<String, Float>();
         }
-        currentScope.additionalNumberData.put(fieldName, data);
+        scope.additionalNumberData.put(fieldName, data);
     }
 
-    private static void unsafeAddData(String fieldName, Boolean data) {
-        if (currentScope.additionalBooleanData == null) {
-            currentScope.additionalBooleanData = new HashMap<String, Boolean>();
+    private static void unsafeAddData(ProfilingScope scope, String fieldName, Boolean data) {
+        if (scope.additionalBooleanData == null) {
+            scope.additionalBooleanData = new HashMap<String, Boolean>();
         }
-        currentScope.additionalBooleanData.put(fieldName, data);
+        scope.additionalBooleanData.put(fieldName, data);
     }
 
     public static void addData(String fieldName, String data) {
-        if (rootScope == null) {
+        BuildTracer.addData(fieldName, data);
+        if (!isActive()) {
             return;
         }
-        unsafeAddData(fieldName, data);
+        unsafeAddData(getScope(), fieldName, data);
     }
 
     public static void addData(String fieldName, Float data) {
-        if (rootScope == null) {
+        BuildTracer.addData(fieldName, data);
+        if (!isActive()) {
             return;
         }
-        unsafeAddData(fieldName, data);
+        unsafeAddData(getScope(), fieldName, data);
     }
 
     public static void addData(String fieldName, Boolean data) {
-        if (rootScope == null) {
+        BuildTracer.addData(fieldName, data);
+        if (!isActive()) {
             return;
         }
-        unsafeAddData(fieldName, data);
+        unsafeAddData(getScope(), fieldName, data);
     }
 
     public static void addData(String fieldName, Integer data) {
@@ -29,8 +29,6 @@
  */
 package org.jagatoo.loaders.models.collada.stax;
 
-import java.util.StringTokenizer;
-
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
@@ -52,24 +50,11 @@ public class XMLFloatArray {
 
     public float[] floats;
 
+    // Defold-fix: Values that can't be parsed, such as "-1.#IND00", are read as zero. See XMLNumberParser.parseFloat
     public static float[] toArray(String floatValues) {
-        StringTokenizer tknz = new StringTokenizer(floatValues);
-        int count = tknz.countTokens();
-        float[] floats = new float[count];
-        for(int i = 0; i < count; i++) {
-            String s = tknz.nextToken();
-            try {
-                floats[i] = Float.parseFloat(s);
-            } catch (NumberFormatException e) {
-                // Defold-fix:
-                // Some Collada exporters (such the default one in Maya) sometimes output "-1.#IND00" as float entries.
-                // We need to catch the format exception and simply "parse" it as a zero.
-                // In the future we might want to log a build (and Editor 2) warning here, issue; DEF-2917
-                floats[i] = 0.0f;
-            }
-
-        }
-        return floats;
+        XMLNumberParser numbers = XMLNumberParser.forFloats(-1);
+        numbers.characters(floatValues);
+        return numbers.toFloatArray();
     }
 
     public void parse( XMLStreamReader parser ) throws XMLStreamException
@@ -92,8 +77,8 @@ public class XMLFloatArray {
             }
         }
 
-        // DYNAMO: Buffering fix
-        StringBuffer floats_buffer = new StringBuffer();
+        // DYNAMO: Parse the numbers as they are streamed, instead of buffering the text
+        XMLNumberParser numbers = XMLNumberParser.forFloats( count );
 
         for ( int event = parser.next(); event != XMLStreamConstants.END_DOCUMENT; event = parser.next() )
         {
@@ -106,14 +91,14 @@ public class XMLFloatArray {
                 }
                 case XMLStreamConstants.CHARACTERS:
                 {
-                    floats_buffer.append(parser.getText());
+                    numbers.characters( parser );
                     break;
                 }
                 case XMLStreamConstants.END_ELEMENT:
                 {
                     if ( parser.getLocalName().equals( "float_array" ) )
                     {
-                        floats = toArray( floats_buffer.toString() );
+                        floats = numbers.toFloatArray();
                         return;
                     }
                     break;
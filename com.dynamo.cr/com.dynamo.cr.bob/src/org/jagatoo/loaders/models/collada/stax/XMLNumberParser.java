@@ -0,0 +1,286 @@
+/**
+ * Copyright (c) 2007-2009, JAGaToo Project Group all rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * Neither the name of the 'Xith3D Project Group' nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) A
+ * RISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE
+ */
+package org.jagatoo.loaders.models.collada.stax;
+
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming parser of whitespace separated numbers, as found in
+ * &lt;float_array&gt;, &lt;int_array&gt;, &lt;p&gt; and &lt;vcount&gt;.
+ * The characters are read straight from the text buffer of the StAX parser
+ * into a primitive array, without building the whole text as a string first.
+ * A number that is split over two CHARACTERS events is carried over in a
+ * small token buffer.
+ *
+ * DYNAMO: Added to reduce the heap usage and time spent loading large meshes.
+ */
+public class XMLNumberParser
+{
+    // Values of 10^n that are exact in single precision
+    private static final float[] POWERS_OF_TEN = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+    // Largest mantissa that is exact in single precision
+    private static final int MAX_EXACT_MANTISSA = 1 << 24;
+    private static final long MAX_MANTISSA = 100000000000000000L;
+
+    private final boolean parseFloats;
+
+    private char[] token = new char[ 32 ];
+    private int tokenLength = 0;
+
+    private float[] floats;
+    private int[] ints;
+    private int count = 0;
+
+    private XMLNumberParser( boolean parseFloats, int expectedCount )
+    {
+        this.parseFloats = parseFloats;
+        int capacity = Math.max( 16, expectedCount );
+        if ( parseFloats )
+            floats = new float[ capacity ];
+        else
+            ints = new int[ capacity ];
+    }
+
+    /**
+     * @param expectedCount expected number of values, e.g. from the count attribute, or -1 if unknown
+     */
+    public static XMLNumberParser forFloats( int expectedCount )
+    {
+        return new XMLNumberParser( true, expectedCount );
+    }
+
+    /**
+     * @param expectedCount expected number of values, e.g. from the count attribute, or -1 if unknown
+     */
+    public static XMLNumberParser forInts( int expectedCount )
+    {
+        return new XMLNumberParser( false, expectedCount );
+    }
+
+    /**
+     * Parse the text of the current CHARACTERS event of the parser.
+     */
+    public void characters( XMLStreamReader parser )
+    {
+        characters( parser.getTextCharacters(), parser.getTextStart(), parser.getTextLength() );
+    }
+
+    public void characters( char[] text, int start, int length )
+    {
+        int end = start + length;
+        for ( int i = start; i < end; i++ )
+        {
+            char c = text[ i ];
+            if ( isWhitespace( c ) )
+            {
+                if ( tokenLength > 0 )
+                    endToken();
+            }
+            else
+            {
+                if ( tokenLength == token.length )
+                    token = Arrays.copyOf( token, token.length * 2 );
+                token[ tokenLength++ ] = c;
+            }
+        }
+    }
+
+    public void characters( String text )
+    {
+        characters( text.toCharArray(), 0, text.length() );
+    }
+
+    /**
+     * @return the parsed values, the length of the array is the number of values
+     */
+    public float[] toFloatArray()
+    {
+        if ( tokenLength > 0 )
+            endToken();
+        return count == floats.length ? floats : Arrays.copyOf( floats, count );
+    }
+
+    /**
+     * @return the parsed values, the length of the array is the number of values
+     */
+    public int[] toIntArray()
+    {
+        if ( tokenLength > 0 )
+            endToken();
+        return count == ints.length ? ints : Arrays.copyOf( ints, count );
+    }
+
+    private static boolean isWhitespace( char c )
+    {
+        // Same delimiters as the default StringTokenizer
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    private void endToken()
+    {
+        if ( parseFloats )
+        {
+            if ( count == floats.length )
+                floats = Arrays.copyOf( floats, count * 2 );
+            floats[ count++ ] = parseFloat( token, 0, tokenLength );
+        }
+        else
+        {
+            if ( count == ints.length )
+                ints = Arrays.copyOf( ints, count * 2 );
+            ints[ count++ ] = parseInt( token, 0, tokenLength );
+        }
+        tokenLength = 0;
+    }
+
+    /**
+     * Parse a float with the same result as Float.parseFloat.
+     * Plain decimal numbers with at most 7-8 significant digits, which is
+     * what the exporters write, are calculated directly. All other numbers
+     * fall back to Float.parseFloat.
+     *
+     * Defold-fix:
+     * Some Collada exporters (such the default one in Maya) sometimes output "-1.#IND00" as float entries.
+     * Numbers that can't be parsed are returned as zero.
+     * In the future we might want to log a build (and Editor 2) warning here, issue; DEF-2917
+     */
+    public static float parseFloat( char[] chars, int start, int length )
+    {
+        int i = start;
+        int end = start + length;
+        boolean negative = false;
+        if ( i < end && ( chars[ i ] == '-' || chars[ i ] == '+' ) )
+        {
+            negative = chars[ i ] == '-';
+            i++;
+        }
+
+        // The mantissa is exact as long as it has at most 18 digits
+        long mantissa = 0;
+        boolean exact = true;
+        int exponent = 0;
+        int digits = 0;
+        for ( ; i < end && chars[ i ] >= '0' && chars[ i ] <= '9'; i++, digits++ )
+        {
+            if ( mantissa < MAX_MANTISSA )
+                mantissa = mantissa * 10 + ( chars[ i ] - '0' );
+            else
+                exact = false;
+        }
+        if ( i < end && chars[ i ] == '.' )
+        {
+            for ( i++; i < end && chars[ i ] >= '0' && chars[ i ] <= '9'; i++, digits++ )
+            {
+                if ( mantissa < MAX_MANTISSA )
+                {
+                    mantissa = mantissa * 10 + ( chars[ i ] - '0' );
+                    exponent--;
+                }
+                else
+                {
+                    exact = false;
+                }
+            }
+        }
+        if ( digits > 0 && i < end && ( chars[ i ] == 'e' || chars[ i ] == 'E' ) )
+        {
+            i++;
+            boolean negativeExponent = false;
+            if ( i < end && ( chars[ i ] == '-' || chars[ i ] == '+' ) )
+            {
+                negativeExponent = chars[ i ] == '-';
+                i++;
+            }
+            int e = 0;
+            int exponentDigits = 0;
+            for ( ; i < end && chars[ i ] >= '0' && chars[ i ] <= '9' && e < 1000; i++, exponentDigits++ )
+            {
+                e = e * 10 + ( chars[ i ] - '0' );
+            }
+            if ( exponentDigits == 0 )
+                digits = 0;
+            exponent += negativeExponent ? -e : e;
+        }
+
+        if ( digits > 0 && i == end && exact && mantissa <= MAX_EXACT_MANTISSA && exponent >= -10 && exponent <= 10 )
+        {
+            // Both the mantissa and the power of ten are exact, so a single
+            // multiplication or division gives the correctly rounded result.
+            float value = ( float ) mantissa;
+            if ( exponent < 0 )
+                value /= POWERS_OF_TEN[ -exponent ];
+            else
+                value *= POWERS_OF_TEN[ exponent ];
+            return negative ? -value : value;
+        }
+
+        try
+        {
+            return Float.parseFloat( new String( chars, start, length ) );
+        }
+        catch ( NumberFormatException e )
+        {
+            return 0.0f;
+        }
+    }
+
+    /**
+     * Parse an int with the same result as Integer.parseInt.
+     * @throws NumberFormatException if the number can't be parsed
+     */
+    public static int parseInt( char[] chars, int start, int length )
+    {
+        int i = start;
+        int end = start + length;
+        boolean negative = false;
+        if ( i < end && ( chars[ i ] == '-' || chars[ i ] == '+' ) )
+        {
+            negative = chars[ i ] == '-';
+            i++;
+        }
+        // At most 9 digits can't overflow
+        if ( i < end && end - i <= 9 )
+        {
+            int value = 0;
+            for ( ; i < end; i++ )
+            {
+                char c = chars[ i ];
+                if ( c < '0' || c > '9' )
+                    break;
+                value = value * 10 + ( c - '0' );
+            }
+            if ( i == end )
+                return negative ? -value : value;
+        }
+        return Integer.parseInt( new String( chars, start, length ) );
+    }
+}
@@ -21,53 +21,77 @@ import static org.junit.Assert.assertNull;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import com.dynamo.cr.common.cache.CacheStats;
 import com.dynamo.cr.common.cache.ETagCache;
 
 public class ETagCacheTest {
 
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File createFile(String name, String content) throws Exception {
+        File file = tmp.newFile(name);
+        FileWriter writer = new FileWriter(file);
+        IOUtils.copy(new StringReader(content), writer);
+        writer.close();
+        return file;
+    }
+
     @Test
     public void testCache() throws Exception {
 
         ETagCache etagCache = new ETagCache(2);
+        File buildProperties = createFile("build.properties", "build");
+        File pom = createFile("pom.xml", "pom");
+        File manifest = createFile("MANIFEST.MF", "manifest");
 
         String etag;
-        etag = etagCache.getETag(new File("build.properties"));
+        etag = etagCache.getETag(buildProperties);
         assertNotNull(etag);
         assertEquals(0, etagCache.getCacheHits());
         assertEquals(1, etagCache.getCacheMisses());
 
-        etag = etagCache.getETag(new File("does_not_exists"));
+        etag = etagCache.getETag(new File(tmp.getRoot(), "does_not_exists"));
         assertNull(etag);
         assertEquals(0, etagCache.getCacheHits());
         // We don't count non-existing files as cache-misses
         assertEquals(1, etagCache.getCacheMisses());
 
-        etag = etagCache.getETag(new File("build.properties"));
+        etag = etagCache.getETag(buildProperties);
         assertNotNull(etag);
         assertEquals(1, etagCache.getCacheHits());
         assertEquals(1, etagCache.getCacheMisses());
 
-        etag = etagCache.getETag(new File("pom.xml"));
+        etag = etagCache.getETag(pom);
         assertNotNull(etag);
         assertEquals(1, etagCache.getCacheHits());
         assertEquals(2, etagCache.getCacheMisses());
 
-        etag = etagCache.getETag(new File("META-INF/MANIFEST.MF"));
+        etag = etagCache.getETag(manifest);
         assertNotNull(etag);
         assertEquals(1, etagCache.getCacheHits());
         assertEquals(3, etagCache.getCacheMisses());
 
-        etag = etagCache.getETag(new File("pom.xml"));
+        etag = etagCache.getETag(pom);
         assertNotNull(etag);
         assertEquals(2, etagCache.getCacheHits());
         assertEquals(3, etagCache.getCacheMisses());
 
         // We should get a cache miss now. The capacity is 2 (MANIFEST.MF and pom.xml in lru-cache)
-        etag = etagCache.getETag(new File("build.properties"));
+        etag = etagCache.getETag(buildProperties);
         assertNotNull(etag);
         assertEquals(2, etagCache.getCacheHits());
         assertEquals(4, etagCache.getCacheMisses());
@@ -117,4 +141,48 @@ public class ETagCacheTest {
         assertNull(etag);
     }
 
+    @Test
+    public void testConcurrent() throws Exception {
+        final ETagCache etagCache = new ETagCache(10);
+
+        File tempFile = File.createTempFile("foo", "bar");
+        tempFile.deleteOnExit();
+        FileWriter writer = new FileWriter(tempFile);
+        for (int i = 0; i < 100000; ++i) {
+            writer.write("foo bar ");
+        }
+        writer.close();
+        final File file = tempFile;
+        String expected = new ETagCache(1).getETag(file);
+
+        // Release all callers at once, so that they request the etag concurrently
+        final int callers = 64;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < callers; ++i) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        start.await();
+                        return etagCache.getETag(file);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                assertEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // The etag is only calculated once, concurrent requests share the calculation
+        CacheStats stats = etagCache.getStats();
+        assertEquals(1, stats.getLoadCount());
+        assertEquals(callers, stats.getHitCount() + stats.getMissCount());
+        assertEquals(0, stats.getEvictionCount());
+    }
+
 }
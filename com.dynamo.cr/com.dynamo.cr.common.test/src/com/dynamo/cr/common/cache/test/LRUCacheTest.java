@@ -0,0 +1,161 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.cr.common.cache.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.dynamo.cr.common.cache.LRUCache;
+
+public class LRUCacheTest {
+
+    @Test
+    public void testCapacity() throws Exception {
+        LRUCache<String, String> cache = new LRUCache<String, String>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        // b is the least recently used
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStats().getEvictionCount());
+
+        cache.put("a", "4");
+        assertEquals(2, cache.size());
+        assertEquals("4", cache.get("a"));
+        assertEquals("4", cache.remove("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testWeight() throws Exception {
+        LRUCache<String, String> cache = new LRUCache<String, String>(10, new LRUCache.Weigher<String, String>() {
+            @Override
+            public long weigh(String key, String value) {
+                return value.length();
+            }
+        });
+        cache.put("a", "xxxx");
+        cache.put("b", "xxxx");
+        assertEquals(8, cache.getWeight());
+        cache.put("c", "xxxxxx");
+
+        assertNull(cache.get("a"));
+        assertEquals(10, cache.getWeight());
+        assertEquals(2, cache.size());
+
+        // Heavier than the cache, evicts everything
+        cache.put("d", "xxxxxxxxxxxx");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testConcurrentLoad() throws Exception {
+        final int keys = 10;
+        final int callers = 4 * keys;
+        final LRUCache<Integer, String> cache = new LRUCache<Integer, String>(100);
+        final AtomicInteger loads = new AtomicInteger();
+        // Loads are held until every caller has arrived and every key is loading
+        final CountDownLatch arrived = new CountDownLatch(callers);
+        final CountDownLatch loading = new CountDownLatch(keys);
+        final LRUCache.Loader<Integer, String> loader = new LRUCache.Loader<Integer, String>() {
+            @Override
+            public String load(Integer key) throws Exception {
+                loads.incrementAndGet();
+                loading.countDown();
+                if (!arrived.await(10, TimeUnit.SECONDS) || !loading.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Loads of different keys didn't run in parallel");
+                }
+                return "value" + key;
+            }
+        };
+
+        // One thread per caller, since callers block on the shared loads
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < callers; ++i) {
+                final int key = i % keys;
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        arrived.countDown();
+                        return cache.get(key, loader);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); ++i) {
+                assertEquals("value" + (i % keys), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // One load per key, and different keys were loaded in parallel
+        assertEquals(keys, loads.get());
+        assertEquals(keys, cache.getStats().getLoadCount());
+        assertTrue(cache.getStats().getTotalLoadTime() > 0);
+    }
+
+    @Test
+    public void testConcurrentEviction() throws Exception {
+        final LRUCache<Integer, Integer> cache = new LRUCache<Integer, Integer>(64);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int t = 0; t < 8; ++t) {
+                final int seed = t;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < 20000; ++i) {
+                            int key = (i * 31 + seed * 17) % 512;
+                            if (cache.get(key) == null) {
+                                cache.put(key, key);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.size() <= 64);
+        assertEquals(cache.size(), cache.getWeight());
+    }
+}
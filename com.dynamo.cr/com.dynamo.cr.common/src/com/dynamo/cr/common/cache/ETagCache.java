@@ -14,31 +14,46 @@
 
 package com.dynamo.cr.common.cache;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * LRU-cache for etags
+ *
+ * Lookups of cached etags don't lock, and etags of different files are
+ * calculated concurrently. Concurrent requests for the same file share one
+ * calculation.
  * @author chmu
  *
  */
 public class ETagCache {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
     LRUCache<String, Entry> etagCache;
-    private int cacheHits;
-    private int cacheMisses;
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private final AtomicInteger cacheMisses = new AtomicInteger();
 
     private static class Entry {
         public Entry(String hash, long lastModified) {
             this.hash = hash;
             this.lastModified = lastModified;
         }
-        String hash;
-        long lastModified;
+        final String hash;
+        final long lastModified;
     }
 
     /**
@@ -49,18 +64,41 @@ public class ETagCache {
         etagCache = new LRUCache<String, Entry>(capacity);
     }
 
+    private ETagCache(LRUCache<String, Entry> etagCache) {
+        this.etagCache = etagCache;
+    }
+
+    /**
+     * Create a cache bounded by memory use instead of entry count
+     * @param maxBytes approximate max size of the cached paths and etags, in bytes
+     * @return the cache
+     */
+    public static ETagCache createWeighted(long maxBytes) {
+        return new ETagCache(new LRUCache<String, Entry>(maxBytes, new LRUCache.Weigher<String, Entry>() {
+            @Override
+            public long weigh(String path, Entry entry) {
+                // Two bytes per char, plus the overhead of the entry and cache node
+                return 2 * (path.length() + entry.hash.length()) + 128;
+            }
+        }));
+    }
+
     private static String calculateSHA1(File file) {
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-1");
-            BufferedInputStream is = new BufferedInputStream(
-                    new FileInputStream(file));
-            byte[] buffer = new byte[1024];
-            int n = is.read(buffer);
-            while (n != -1) {
-                md.update(buffer, 0, n);
-                n = is.read(buffer);
+            ByteBuffer buffer = buffers.get();
+            FileInputStream is = new FileInputStream(file);
+            try {
+                FileChannel channel = is.getChannel();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
+                }
+            } finally {
+                is.close();
             }
-            is.close();
             return new BigInteger(1, md.digest()).toString(16);
 
         } catch (IOException e) {
@@ -75,35 +113,60 @@ public class ETagCache {
      * @param file file to get etag-hash for
      * @return etag-hash as a string. null is the file doesn't exists
      */
-    public synchronized String getETag(File file) {
+    public String getETag(final File file) {
         if (!file.isFile()) {
             return null;
         }
 
         String path = file.getAbsolutePath();
+        final long lastModified = file.lastModified();
         Entry entry = etagCache.get(path);
-        long lastModified = file.lastModified();
         if (entry != null && entry.lastModified == lastModified) {
-            ++cacheHits;
-            return etagCache.get(path).hash;
-        } else {
-            String digest = calculateSHA1(file);
-            if (digest != null) {
-                ++cacheMisses;
-                etagCache.put(path, new Entry(digest, lastModified));
-                return digest;
-            } else {
-                return null;
+            cacheHits.incrementAndGet();
+            return entry.hash;
+        }
+
+        if (entry != null) {
+            etagCache.remove(path, entry);
+        }
+        entry = etagCache.get(path, new LRUCache.Loader<String, Entry>() {
+            @Override
+            public Entry load(String key) {
+                String digest = calculateSHA1(file);
+                return digest != null ? new Entry(digest, lastModified) : null;
             }
+        });
+        if (entry != null && entry.lastModified != lastModified) {
+            // Shared a calculation that started before the file was modified
+            etagCache.remove(path, entry);
+            String digest = calculateSHA1(file);
+            entry = digest != null ? new Entry(digest, lastModified) : null;
+        }
+
+        if (entry != null) {
+            cacheMisses.incrementAndGet();
+            return entry.hash;
+        } else {
+            return null;
         }
     }
 
     public int getCacheHits() {
-        return cacheHits;
+        return cacheHits.get();
     }
 
     public int getCacheMisses() {
-        return cacheMisses;
+        return cacheMisses.get();
+    }
+
+    /**
+     * Get statistics. Hits and misses are counted per etag request, evictions
+     * and load times per calculated etag.
+     * @return statistics
+     */
+    public CacheStats getStats() {
+        CacheStats stats = etagCache.getStats();
+        return new CacheStats(cacheHits.get(), cacheMisses.get(), stats.getEvictionCount(), stats.getLoadCount(), stats.getTotalLoadTime());
     }
 
 }
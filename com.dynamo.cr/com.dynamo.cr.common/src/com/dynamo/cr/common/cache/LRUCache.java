@@ -14,22 +14,256 @@
 
 package com.dynamo.cr.common.cache;
 
-import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class LRUCache<K, V> extends LinkedHashMap<K, V> {
+/**
+ * Concurrent LRU-cache bounded by total weight. Each entry weighs one unless
+ * a weigher is supplied, which bounds the cache by entry count.
+ *
+ * Lookups don't lock. The recency order is kept in a skip list keyed by a
+ * global access counter, and the least recently used entries are evicted
+ * from its head when the total weight exceeds the maximum.
+ *
+ * Values can be loaded with {@link #get(Object, Loader)}. Concurrent loads
+ * of the same key share one call to the loader, while loads of different
+ * keys run in parallel.
+ */
+public class LRUCache<K, V> {
 
-    private static final long serialVersionUID = -3070225045353954576L;
+    public interface Weigher<K, V> {
+        long weigh(K key, V value);
+    }
+
+    public interface Loader<K, V> {
+        /**
+         * @return the value, or null if there is no value to cache
+         */
+        V load(K key) throws Exception;
+    }
+
+    private static class Node<K, V> {
+        final K key;
+        final V value;
+        final long weight;
+        volatile long stamp;
 
-    private final int capacity;
+        Node(K key, V value, long weight, long stamp) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.stamp = stamp;
+        }
+    }
+
+    private final long maxWeight;
+    private final Weigher<K, V> weigher;
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<K, Node<K, V>>();
+    // Access stamp -> node, least recently used first. Can briefly hold nodes
+    // that were replaced or removed, these are skipped when evicting.
+    private final ConcurrentSkipListMap<Long, Node<K, V>> order = new ConcurrentSkipListMap<Long, Node<K, V>>();
+    private final ConcurrentHashMap<K, FutureTask<V>> loads = new ConcurrentHashMap<K, FutureTask<V>>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong weight = new AtomicLong();
 
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong totalLoadTime = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param capacity max number of entries
+     */
     public LRUCache(int capacity) {
-        super(capacity + 1, 1.1f, true);
-        this.capacity = capacity;
+        this(capacity, null);
+    }
+
+    /**
+     * Constructor
+     * @param maxWeight max total weight of the entries
+     * @param weigher weigher of the entries, null to weigh each entry as one
+     */
+    public LRUCache(long maxWeight, Weigher<K, V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    private void touch(Node<K, V> node) {
+        long stamp = node.stamp;
+        // Only the thread that unlinks the node relinks it
+        if (order.remove(stamp, node)) {
+            long newStamp = clock.incrementAndGet();
+            node.stamp = newStamp;
+            order.put(newStamp, node);
+        }
+    }
+
+    private boolean unlink(Node<K, V> node) {
+        if (map.remove(node.key, node)) {
+            weight.addAndGet(-node.weight);
+            order.remove(node.stamp, node);
+            return true;
+        }
+        return false;
+    }
+
+    private void evict() {
+        while (weight.get() > maxWeight) {
+            Map.Entry<Long, Node<K, V>> eldest = order.pollFirstEntry();
+            if (eldest == null) {
+                return;
+            }
+            Node<K, V> node = eldest.getValue();
+            if (map.remove(node.key, node)) {
+                weight.addAndGet(-node.weight);
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Get a value and mark it as recently used
+     * @param key key
+     * @return the value, or null if not in the cache
+     */
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        touch(node);
+        return node.value;
+    }
+
+    /**
+     * Get a value, loading it if it's not in the cache
+     * @param key key
+     * @param loader loader to use when the value is missing
+     * @return the value, or null if the loader returned null
+     */
+    public V get(final K key, final Loader<K, V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        final boolean[] loaded = new boolean[1];
+        FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                // Another load can have completed and unregistered between
+                // the lookup above and registering this one
+                Node<K, V> node = map.get(key);
+                if (node != null) {
+                    touch(node);
+                    return node.value;
+                }
+                loaded[0] = true;
+                return loader.load(key);
+            }
+        });
+        FutureTask<V> inFlight = loads.putIfAbsent(key, task);
+        if (inFlight != null) {
+            return getResult(inFlight);
+        }
+
+        try {
+            long start = System.nanoTime();
+            task.run();
+            value = getResult(task);
+            if (loaded[0]) {
+                totalLoadTime.addAndGet(System.nanoTime() - start);
+                loadCount.incrementAndGet();
+                if (value != null) {
+                    put(key, value);
+                }
+            }
+            return value;
+        } finally {
+            loads.remove(key, task);
+        }
+    }
+
+    private static <V> V getResult(FutureTask<V> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a cache load", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Put a value, evicting the least recently used entries if the cache is full
+     * @param key key
+     * @param value value
+     * @return the previous value, or null
+     */
+    public V put(K key, V value) {
+        long w = weigher != null ? weigher.weigh(key, value) : 1;
+        Node<K, V> node = new Node<K, V>(key, value, w, clock.incrementAndGet());
+        // Link the node in the map first, so that eviction never drops a node that isn't mapped yet
+        Node<K, V> previous = map.put(key, node);
+        weight.addAndGet(w);
+        order.put(node.stamp, node);
+        if (previous != null) {
+            weight.addAndGet(-previous.weight);
+            order.remove(previous.stamp, previous);
+        }
+        evict();
+        return previous != null ? previous.value : null;
+    }
+
+    /**
+     * Remove a value
+     * @param key key
+     * @return the removed value, or null
+     */
+    public V remove(K key) {
+        Node<K, V> node = map.get(key);
+        if (node != null && unlink(node)) {
+            return node.value;
+        }
+        return null;
+    }
+
+    /**
+     * Remove a value if it's mapped to the given value
+     * @param key key
+     * @param value expected value
+     * @return true if the value was removed
+     */
+    public boolean remove(K key, V value) {
+        Node<K, V> node = map.get(key);
+        return node != null && node.value.equals(value) && unlink(node);
+    }
+
+    public int size() {
+        return map.size();
     }
 
-    @Override
-    protected boolean removeEldestEntry(java.util.Map.Entry<K, V> eldest) {
-        return size() > capacity;
+    public long getWeight() {
+        return weight.get();
     }
 
+    public CacheStats getStats() {
+        return new CacheStats(hitCount.get(), missCount.get(), evictionCount.get(), loadCount.get(), totalLoadTime.get());
+    }
 }
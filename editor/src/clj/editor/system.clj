@@ -99,9 +99,10 @@
   ;; this the first time the method is called. It is safe to call from any
   ;; thead, but will block until the unpacking thread has completed.
   ;;
-  ;; Having this call here mainly benefits repl-interactions, as the editor and
-  ;; tests will explicitly call unpackResources at startup.
-  (ResourceUnpacker/unpackResources)
+  ;; The editor and tests call unpackResources at startup, which only waits for
+  ;; the native libraries. The remaining files are unpacked in the background,
+  ;; and this call waits for those too.
+  (ResourceUnpacker/awaitResources)
   (System/getProperty "defold.unpack.path"))
 
 (defn java-home
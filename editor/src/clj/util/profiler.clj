@@ -30,3 +30,8 @@
 
 (defn dump-json []
   (Profiler/dumpJson))
+
+(defn dump-chrome-trace
+  "Returns the samples as a Chrome trace event json string."
+  []
+  (Profiler/dumpChromeTrace))
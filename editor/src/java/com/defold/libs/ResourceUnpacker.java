@@ -18,15 +18,24 @@ import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.FileTime;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
 import com.defold.editor.Editor;
 
@@ -36,6 +45,15 @@ import org.apache.commons.io.FileUtils;
 
 import com.dynamo.bob.Platform;
 
+/**
+ * Unpacks the bundled native libraries, binaries and builtins.
+ *
+ * Files whose content already matches in the unpack dir are skipped, and the
+ * rest are copied in parallel. {@link #unpackResources()} only waits for the
+ * native libraries of the host platform, which are loaded as soon as the
+ * editor starts. The other files are unpacked in the background, use
+ * {@link #awaitResources()} before accessing them.
+ */
 public class ResourceUnpacker {
 
     public static final String DEFOLD_UNPACK_PATH_KEY = "defold.unpack.path";
@@ -45,6 +63,9 @@ public class ResourceUnpacker {
     private static volatile boolean isInitialized = false;
     private static Object lock = new Object();
     private static Logger logger = LoggerFactory.getLogger(ResourceUnpacker.class);
+    private static volatile CompletableFuture<Void> backgroundUnpack = CompletableFuture.completedFuture(null);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     // unpack dirs should be automatically deleted using a shutdown hook but
     // the shutdown hook will not run if the editor doesn't shut down gracefully
@@ -102,16 +123,24 @@ public class ResourceUnpacker {
                 if (alreadyUnpacked) {
                     logger.info("Already unpacked for the editor version {}", sha1);
                 } else {
-                    unpackResourceFile("builtins.zip", unpackPath.resolve("builtins"));
-                    unpackResourceDir("/_unpack", unpackPath);
-
-                    Path binDir = unpackPath.resolve(Platform.getHostPlatform().getPair() + "/bin").toAbsolutePath();
-                    if (Files.exists(binDir)) {
-                        Files.walk(binDir).forEach(path -> path.toFile().setExecutable(true));
-                    }
-                    if (sha1 != null) {
-                        Files.writeString(unpackShaPath, sha1);
+                    String pair = Platform.getHostPlatform().getPair();
+                    Unpack unpack = new Unpack(unpackPath.resolve(pair + "/bin"));
+                    try {
+                        unpack.addResourceFile("builtins.zip", unpackPath.resolve("builtins"));
+                        unpack.addResourceDir("/_unpack", unpackPath);
+                    } catch (IOException | URISyntaxException | RuntimeException e) {
+                        unpack.close();
+                        throw e;
                     }
+                    backgroundUnpack = unpack.run(unpackPath.resolve(pair + "/lib"), () -> {
+                        if (sha1 != null) {
+                            try {
+                                Files.writeString(unpackShaPath, sha1);
+                            } catch (IOException e) {
+                                logger.warn("Couldn't write {}", unpackShaPath, e);
+                            }
+                        }
+                    });
                 }
                 if (unpackPath.getParent().startsWith(Editor.getSupportPath())) {
                     // Prevent from deletion by deleteOldUnpackDirs
@@ -140,54 +169,78 @@ public class ResourceUnpacker {
         }
     }
 
-    private static void unpackResourceFile(String resourceFileName, Path target) throws URISyntaxException, IOException {
-        ClassLoader classLoader = ResourceUnpacker.class.getClassLoader();
-
-        try (InputStream inputStream = classLoader.getResourceAsStream(resourceFileName)) {
-            if (inputStream == null) {
-                logger.warn("attempted to unpack non-existent resource file: {}", resourceFileName);
-                return;
-            }
-
-            Path outputPath = target.resolve(resourceFileName);
-            File outputFile = outputPath.toFile();
+    /**
+     * Unpack the resources if needed, and wait until the files that are
+     * unpacked in the background are present too.
+     */
+    public static void awaitResources() throws IOException, URISyntaxException {
+        unpackResources();
+        backgroundUnpack.join();
+    }
 
-            try {
-                if (outputFile.exists() && outputFile.isDirectory()) {
-                    FileUtils.deleteQuietly(outputFile);
-                }
+    private static final class UnpackEntry {
+        final Path source;
+        final Path dest;
 
-                logger.debug("unpacking file '{}' to '{}'", resourceFileName, outputPath);
-                File outputDirectory = outputFile.getParentFile();
+        UnpackEntry(Path source, Path dest) {
+            this.source = source;
+            this.dest = dest;
+        }
+    }
 
-                if (outputDirectory != null) {
-                    outputDirectory.mkdirs();
-                }
+    /**
+     * One unpack of the bundled resources. Keeps the resource file systems
+     * open until all files have been copied.
+     */
+    private static final class Unpack implements Closeable {
+        private final Path binDir;
+        private final List<FileSystem> fileSystems = new ArrayList<>();
+        private final List<UnpackEntry> entries = new ArrayList<>();
+        private final AtomicInteger copied = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        Unpack(Path binDir) {
+            this.binDir = binDir;
+        }
 
-                Files.copy(inputStream, outputPath, StandardCopyOption.REPLACE_EXISTING);
+        private Path getResourcePath(String resource) throws IOException, URISyntaxException {
+            URL url = ResourceUnpacker.class.getResource(resource);
+            if (url == null) {
+                return null;
             }
-            catch (IOException exception) {
-                logger.warn("unpacking file '{}' to '{}' failed", resourceFileName, outputPath, exception);
+            URI uri = url.toURI();
+            if (uri.getScheme().equals("jar")) {
+                FileSystem fs;
+                try {
+                    fs = FileSystems.newFileSystem(uri, Collections.<String, Object>emptyMap());
+                    fileSystems.add(fs);
+                } catch (FileSystemAlreadyExistsException e) {
+                    fs = FileSystems.getFileSystem(uri);
+                }
+                return fs.getPath(resource);
+            } else {
+                return Paths.get(uri);
             }
         }
-    }
 
-    private static void unpackResourceDir(String resourceDir, Path target) throws IOException, URISyntaxException {
-        URL url = ResourceUnpacker.class.getResource(resourceDir);
-        if (url == null) {
-            logger.warn("attempted to unpack non-existent resource directory: {}", resourceDir);
-            return;
+        void addResourceFile(String resourceFileName, Path target) throws IOException, URISyntaxException {
+            Path source = getResourcePath("/" + resourceFileName);
+            if (source == null) {
+                logger.warn("attempted to unpack non-existent resource file: {}", resourceFileName);
+                return;
+            }
+            Files.createDirectories(target);
+            entries.add(new UnpackEntry(source, target.resolve(resourceFileName)));
         }
 
-        URI uri = url.toURI();
-        try (FileSystem fs = getResourceFileSystem(uri)) {
-            Path path;
-            if (fs != null) {
-                path = fs.getPath(resourceDir);
-            } else {
-                path = Paths.get(uri);
+        void addResourceDir(String resourceDir, Path target) throws IOException, URISyntaxException {
+            Path path = getResourcePath(resourceDir);
+            if (path == null) {
+                logger.warn("attempted to unpack non-existent resource directory: {}", resourceDir);
+                return;
             }
 
+            // Directories are created up front, so that the files can be copied in any order
             try (Stream<Path> walk = Files.walk(path)) {
                 for (Iterator<Path> it = walk.iterator(); it.hasNext();) {
                     Path source = it.next();
@@ -195,27 +248,142 @@ public class ResourceUnpacker {
                     if (dest.equals(target)) {
                         continue;
                     }
-                    File destFile = dest.toFile();
-                    if (destFile.exists() && destFile.isDirectory()) {
-                        FileUtils.deleteQuietly(destFile);
-                    }
-                    logger.debug("unpacking '{}' to '{}'", source, dest);
-                    try {
-                        Files.copy(source, dest, StandardCopyOption.REPLACE_EXISTING);
-                    }
-                    catch (IOException e) {
-                        logger.warn("unpacking '{}' to '{}' failed", source, dest, e);
+                    if (Files.isDirectory(source)) {
+                        if (Files.exists(dest) && !Files.isDirectory(dest)) {
+                            Files.delete(dest);
+                        }
+                        Files.createDirectories(dest);
+                    } else {
+                        entries.add(new UnpackEntry(source, dest));
                     }
                 }
             }
         }
+
+        private void unpackFile(UnpackEntry entry) {
+            try {
+                File destFile = entry.dest.toFile();
+                if (destFile.isDirectory()) {
+                    FileUtils.deleteQuietly(destFile);
+                }
+                if (isUnpacked(entry.source, entry.dest)) {
+                    skipped.incrementAndGet();
+                } else {
+                    logger.debug("unpacking '{}' to '{}'", entry.source, entry.dest);
+                    copy(entry.source, entry.dest);
+                    copied.incrementAndGet();
+                }
+                if (entry.dest.startsWith(binDir)) {
+                    destFile.setExecutable(true);
+                }
+            } catch (IOException e) {
+                logger.warn("unpacking '{}' to '{}' failed", entry.source, entry.dest, e);
+            }
+        }
+
+        /**
+         * Unpack all files. Returns when the files in firstDir are unpacked.
+         * @param firstDir directory to unpack first
+         * @param onDone called when all files are unpacked
+         * @return future completed when all files are unpacked
+         */
+        CompletableFuture<Void> run(Path firstDir, Runnable onDone) {
+            long start = System.currentTimeMillis();
+            int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+                Thread thread = new Thread(runnable, "resource-unpacker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            List<CompletableFuture<Void>> first = new ArrayList<>();
+            List<CompletableFuture<Void>> rest = new ArrayList<>();
+            for (UnpackEntry entry : entries) {
+                if (entry.dest.startsWith(firstDir)) {
+                    first.add(CompletableFuture.runAsync(() -> unpackFile(entry), executor));
+                }
+            }
+            for (UnpackEntry entry : entries) {
+                if (!entry.dest.startsWith(firstDir)) {
+                    rest.add(CompletableFuture.runAsync(() -> unpackFile(entry), executor));
+                }
+            }
+            CompletableFuture.allOf(first.toArray(new CompletableFuture[0])).join();
+            logger.info("unpacked {} files in {} ms, continuing in the background", first.size(), System.currentTimeMillis() - start);
+
+            return CompletableFuture.allOf(rest.toArray(new CompletableFuture[0])).handle((result, error) -> {
+                if (error != null) {
+                    logger.error("unpacking failed", error);
+                }
+                executor.shutdown();
+                close();
+                onDone.run();
+                logger.info("unpacked {} files ({} unchanged) in {} ms", copied.get(), skipped.get(), System.currentTimeMillis() - start);
+                return null;
+            });
+        }
+
+        @Override
+        public void close() {
+            for (FileSystem fs : fileSystems) {
+                try {
+                    fs.close();
+                } catch (IOException e) {
+                    logger.warn("Couldn't close {}", fs, e);
+                }
+            }
+            fileSystems.clear();
+        }
     }
 
-    private static FileSystem getResourceFileSystem(URI uri) throws IOException, URISyntaxException {
-        if (uri.getScheme().equals("jar")) {
-            return FileSystems.newFileSystem(uri, Collections.<String, Object>emptyMap());
-        } else {
-            return null;
+    private static boolean isUnpacked(Path source, Path dest) throws IOException {
+        if (!Files.isRegularFile(dest) || Files.size(dest) != Files.size(source)) {
+            return false;
+        }
+        return crc(source, true) == crc(dest, false);
+    }
+
+    private static long crc(Path path, boolean useStored) throws IOException {
+        if (useStored) {
+            // Entries in a jar store the checksum of their content
+            try {
+                Object crc = Files.getAttribute(path, "zip:crc");
+                if (crc instanceof Long) {
+                    return (Long) crc;
+                }
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                // Not in a jar
+            }
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        try (ReadableByteChannel channel = Files.newByteChannel(path)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void copy(Path source, Path dest) throws IOException {
+        try (ReadableByteChannel in = Files.newByteChannel(source);
+             FileChannel out = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (in instanceof FileChannel) {
+                FileChannel fileIn = (FileChannel) in;
+                long size = fileIn.size();
+                long position = 0;
+                while (position < size) {
+                    position += fileIn.transferTo(position, size - position, out);
+                }
+            } else {
+                // Entries in a jar are not file channels
+                long position = 0;
+                long count;
+                while ((count = out.transferFrom(in, position, BUFFER_SIZE)) > 0) {
+                    position += count;
+                }
+            }
         }
     }
 
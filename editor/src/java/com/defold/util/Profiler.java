@@ -3,10 +3,10 @@
 // Copyright 2009-2014 Ragnar Svensson, Christian Murray
 // Licensed under the Defold License version 1.0 (the "License"); you may not use
 // this file except in compliance with the License.
-// 
+//
 // You may obtain a copy of the License, together with FAQs at
 // https://www.defold.com/license
-// 
+//
 // Unless required by applicable law or agreed to in writing, software distributed
 // under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
 // CONDITIONS OF ANY KIND, either express or implied. See the License for the
@@ -18,50 +18,156 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.node.JsonNodeFactory;
 import org.codehaus.jackson.node.ObjectNode;
 
+/**
+ * Sampling profiler for the editor.
+ *
+ * Each thread records its samples in its own preallocated ring buffer of
+ * primitive timestamps and interned name ids, so begin and end neither lock
+ * nor allocate. The buffers are only merged when the samples are dumped.
+ * A sample must be ended on the thread that began it, a handle ended on
+ * another thread is ignored.
+ */
 public class Profiler {
 
+    // Number of samples kept per thread, must be a power of two
+    static final int CAPACITY = 4096;
+    // Number of samples in dumpJson and dump
     static int keep = 1000;
-    static LinkedList<Sample> samples = new LinkedList<>();
-    static Sample frameSample = null;
-    static AtomicInteger frameNumber = new AtomicInteger(0);
+    // A sample handle is the buffer id in the high bits and the slot in the low bits
+    static final int SLOT_BITS = 40;
+    static final long SLOT_MASK = (1L << SLOT_BITS) - 1;
+    static final int BUFFER_ID_MASK = (1 << (63 - SLOT_BITS)) - 1;
 
-    private static final ThreadLocal<String> threadName =
-            new ThreadLocal<String>() {
+    static final AtomicInteger frameNumber = new AtomicInteger(0);
+    static long frameSample = -1;
+
+    private static final ConcurrentHashMap<String, Integer> nameIds = new ConcurrentHashMap<>();
+    private static final List<String> names = new CopyOnWriteArrayList<>();
+    private static final List<ThreadBuffer> buffers = new CopyOnWriteArrayList<>();
+    private static final AtomicInteger nextBufferId = new AtomicInteger(0);
+    private static volatile long resetTime = Long.MIN_VALUE;
+
+    private static final ThreadLocal<ThreadBuffer> threadBuffer =
+            new ThreadLocal<ThreadBuffer>() {
                 @Override
-                protected String initialValue() {
-                    return Thread.currentThread().getName();
+                protected ThreadBuffer initialValue() {
+                    ThreadBuffer buffer = new ThreadBuffer(Thread.currentThread());
+                    buffers.add(buffer);
+                    return buffer;
                 }
     };
 
-    public static class Sample {
-        String name;
-        double start;
-        double end;
-        Object user1;
-        Object user2;
-        String thread;
-        int frame = 0;
+    /**
+     * Ring buffer written by a single thread. A slot is invalidated (end = 0)
+     * before it's reused, and published by writing its end time, so that
+     * readers can detect and skip slots that are being written.
+     */
+    private static final class ThreadBuffer {
+        final int id = nextBufferId.getAndIncrement() & BUFFER_ID_MASK;
+        final WeakReference<Thread> thread;
+        final String threadName;
+        final long threadId;
+        final int[] nameIds = new int[CAPACITY];
+        final long[] starts = new long[CAPACITY];
+        final Object[] users = new Object[CAPACITY];
+        final int[] frames = new int[CAPACITY];
+        final AtomicLongArray ends = new AtomicLongArray(CAPACITY);
+        // Only accessed by the owning thread
+        long next = 0;
+        long clearedTime = Long.MIN_VALUE;
+
+        ThreadBuffer(Thread thread) {
+            this.thread = new WeakReference<>(thread);
+            this.threadName = thread.getName();
+            this.threadId = thread.getId();
+        }
+
+        long begin(int nameId, Object user, int frame) {
+            // Release the user data of the samples dropped by reset, those
+            // samples are skipped by collect since they started before it
+            long time = resetTime;
+            if (clearedTime != time) {
+                clearedTime = time;
+                Arrays.fill(users, null);
+            }
+            long slot = next++;
+            int index = (int) slot & (CAPACITY - 1);
+            ends.lazySet(index, 0);
+            VarHandle.storeStoreFence();
+            nameIds[index] = nameId;
+            users[index] = user;
+            frames[index] = frame;
+            starts[index] = System.nanoTime();
+            return ((long) id << SLOT_BITS) | (slot & SLOT_MASK);
+        }
 
-        private Sample(String name, double start, double end, Object user1, int frame) {
-            this(name, start, end, user1, "", frame);
+        void end(long sample) {
+            long t = System.nanoTime();
+            // Samples of other threads are in other buffers
+            if (sample < 0 || (int) (sample >>> SLOT_BITS) != id) {
+                return;
+            }
+            // The slot has been reused if this sample is older than the buffer
+            long slot = sample & SLOT_MASK;
+            if (((next - slot) & SLOT_MASK) <= CAPACITY) {
+                ends.lazySet((int) slot & (CAPACITY - 1), t);
+            }
         }
 
-        private Sample(String name, double start, double end, Object user1, Object user2, int frame) {
+        void collect(List<Sample> result, long since) {
+            for (int index = 0; index < CAPACITY; ++index) {
+                long end = ends.get(index);
+                if (end == 0) {
+                    continue;
+                }
+                int nameId = nameIds[index];
+                long start = starts[index];
+                Object user = users[index];
+                int frame = frames[index];
+                VarHandle.acquireFence();
+                if (ends.get(index) != end || start < since) {
+                    continue;
+                }
+                result.add(new Sample(names.get(nameId), start, end, user, threadName, threadId, frame));
+            }
+        }
+    }
+
+    /**
+     * Sample copied out of the buffers when dumping
+     */
+    public static class Sample {
+        final String name;
+        final long start;
+        final long end;
+        final Object user1;
+        final String thread;
+        final long threadId;
+        final int frame;
+
+        private Sample(String name, long start, long end, Object user1, String thread, long threadId, int frame) {
             this.name = name;
             this.start = start;
             this.end = end;
             this.user1 = user1;
-            this.user2 = user2;
-            this.thread = threadName.get();
+            this.thread = thread;
+            this.threadId = threadId;
             this.frame = frame;
         }
 
@@ -71,84 +177,176 @@ public class Profiler {
 
         @Override
         public String toString() {
-            return String.format("%s %.2fms [%.2f, %.2f] s", name, end-start, start, end, user1);
+            return String.format("%s %.2fms [%d, %d] %s", name, (end - start) / 1000000.0, start, end, user1);
         }
     }
 
+    private static int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            synchronized (nameIds) {
+                id = nameIds.get(name);
+                if (id == null) {
+                    names.add(name);
+                    id = names.size() - 1;
+                    nameIds.put(name, id);
+                }
+            }
+        }
+        return id;
+    }
+
     public static int beginFrame() {
         int frame = frameNumber.incrementAndGet();
-        if (frameSample != null) {
+        if (frameSample != -1) {
             end(frameSample);
         }
         frameSample = begin("frame", -1, frame);
         return frame;
     }
 
-    public static Sample begin(String name, Object user) {
+    /**
+     * Begin a sample. The user data is kept until the slot of the sample is
+     * reused, or the samples are reset.
+     * @param name sample name
+     * @param user user data
+     * @return handle to pass to {@link #end(long)}, on the same thread
+     */
+    public static long begin(String name, Object user) {
         return begin(name, user, frameNumber.get());
     }
 
-    public static Sample begin(String name, Object user, int frame) {
-        double t = System.nanoTime() / 1000000.0;
-        return new Sample(name, t, t, user, frame);
+    public static long begin(String name, Object user, int frame) {
+        return threadBuffer.get().begin(nameId(name), user, frame);
     }
 
-    public synchronized static void end(Sample s) {
-        s.end = System.nanoTime() / 1000000.0;
-        samples.add(s);
-        while (samples.size() > keep) {
-            samples.remove();
-        }
+    /**
+     * End a sample. The handle is ignored if the sample was begun on another thread.
+     * @param sample handle returned by {@link #begin(String, Object)}
+     */
+    public static void end(long sample) {
+        threadBuffer.get().end(sample);
     }
 
-    public static synchronized void reset()  {
-        samples.clear();
+    /**
+     * Drop the samples recorded so far, and the buffers of threads that have
+     * terminated. Live threads release the user data of the dropped samples
+     * the next time they begin a sample.
+     */
+    public static void reset()  {
+        resetTime = System.nanoTime();
+        for (ThreadBuffer buffer : buffers) {
+            Thread thread = buffer.thread.get();
+            if (thread == null || !thread.isAlive()) {
+                buffers.remove(buffer);
+            }
+        }
     }
 
-    public static synchronized String dumpJson() throws IOException {
+    /**
+     * Merge the samples of all threads
+     * @param limit max number of samples, the most recently ended are kept
+     * @return samples sorted by start time
+     */
+    static List<Sample> collect(int limit) {
+        List<Sample> samples = new ArrayList<>();
+        long since = resetTime;
+        for (ThreadBuffer buffer : buffers) {
+            buffer.collect(samples, since);
+        }
+        if (samples.size() > limit) {
+            Collections.sort(samples, new Comparator<Sample>() {
+                @Override
+                public int compare(Sample o1, Sample o2) {
+                    return Long.compare(o2.end, o1.end);
+                }
+            });
+            samples = new ArrayList<>(samples.subList(0, limit));
+        }
         Collections.sort(samples, new Comparator<Sample>() {
             @Override
             public int compare(Sample o1, Sample o2) {
-                return Double.compare(o1.start, o2.start);
+                return Long.compare(o1.start, o2.start);
             }
         });
+        return samples;
+    }
+
+    private static double toMillis(long t, long min) {
+        return (t - min) / 1000000.0;
+    }
+
+    public static String dumpJson() throws IOException {
+        List<Sample> samples = collect(keep);
         JsonNodeFactory f = JsonNodeFactory.instance;
         ArrayNode smpls = new ArrayNode(f);
-        double min = Double.MAX_VALUE;
-        for (Sample s : samples) {
-            min = Math.min(min, s.start);
-        }
+        long min = samples.isEmpty() ? 0 : samples.get(0).start;
         for (Sample s : samples) {
             ObjectNode o = smpls.addObject();
-            o.put("start", s.start - min);
-            o.put("end", s.end - min);
+            o.put("start", toMillis(s.start, min));
+            o.put("end", toMillis(s.end, min));
             o.put("name", s.name);
-            o.put("user1", s.user1.toString());
-            o.put("user2", s.user2.toString());
+            o.put("user1", String.valueOf(s.user1));
+            o.put("user2", "");
             o.put("thread", s.thread);
             o.put("frame", s.frame);
         }
         return smpls.toString();
     }
 
-    public static synchronized void dump(String filename) throws IOException {
-        Collections.sort(samples, new Comparator<Sample>() {
+    /**
+     * Dump all samples in the Chrome trace event format, as complete ("X")
+     * events with one track per thread. The result can be opened in
+     * chrome://tracing or Perfetto.
+     * @return the trace as a json string
+     */
+    public static String dumpChromeTrace() throws IOException {
+        List<Sample> samples = collect(Integer.MAX_VALUE);
+        JsonNodeFactory f = JsonNodeFactory.instance;
+        ObjectNode trace = new ObjectNode(f);
+        ArrayNode events = trace.putArray("traceEvents");
+        long min = samples.isEmpty() ? 0 : samples.get(0).start;
 
-            @Override
-            public int compare(Sample o1, Sample o2) {
-                return Double.compare(o1.start, o2.start);
-            }
+        for (ThreadBuffer buffer : buffers) {
+            ObjectNode o = events.addObject();
+            o.put("name", "thread_name");
+            o.put("ph", "M");
+            o.put("pid", 1);
+            o.put("tid", buffer.threadId);
+            o.putObject("args").put("name", buffer.threadName);
+        }
+        for (Sample s : samples) {
+            ObjectNode o = events.addObject();
+            o.put("name", s.name);
+            o.put("ph", "X");
+            o.put("ts", (s.start - min) / 1000.0);
+            o.put("dur", (s.end - s.start) / 1000.0);
+            o.put("pid", 1);
+            o.put("tid", s.threadId);
+            ObjectNode args = o.putObject("args");
+            args.put("user", String.valueOf(s.user1));
+            args.put("frame", s.frame);
+        }
+        trace.put("displayTimeUnit", "ms");
+        return trace.toString();
+    }
 
-        });
+    public static void dumpChromeTrace(String filename) throws IOException {
+        try (PrintStream out = new PrintStream(new FileOutputStream(filename), false, "UTF-8")) {
+            out.print(dumpChromeTrace());
+            System.out.format("Trace %s written%n", filename);
+        } catch (FileNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
 
+    public static void dump(String filename) throws IOException {
+        List<Sample> samples = collect(keep);
         try (PrintStream out = new PrintStream(new FileOutputStream(filename))) {
             out.println("start,end,name,user1,user2,thread,frame");
-            double min = Double.MAX_VALUE;
-            for (Sample s : samples) {
-                min = Math.min(min, s.start);
-            }
+            long min = samples.isEmpty() ? 0 : samples.get(0).start;
             for (Sample s : samples) {
-                out.format("%f,%f,%s,%s,%s,%s,%s,%n", s.start - min, s.end - min, s.name, s.user1, s.user2, s.thread, s.frame);
+                out.format("%f,%f,%s,%s,%s,%s,%s,%n", toMillis(s.start, min), toMillis(s.end, min), s.name, s.user1, "", s.thread, s.frame);
             }
             System.out.format("Profile %s written%n", filename);
         } catch (FileNotFoundException e) {
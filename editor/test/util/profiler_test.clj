@@ -47,4 +47,32 @@
     (is (< (:start outer) (:start inner)))
     (is (< (:end inner) (:end outer)))))
 
+(deftest chrome-trace []
+  (clear!)
+  (profiler/profile "outer" -1
+                    (sleep)
+                    (profiler/profile "inner" "user"
+                                      (sleep)))
+  (let [events (get (json/read-str (profiler/dump-chrome-trace)) "traceEvents")
+        samples (into {} (keep (fn [e] (when (= "X" (get e "ph")) [(get e "name") e])) events))
+        outer (get samples "outer")
+        inner (get samples "inner")]
+    (is (= #{"outer" "inner"} (set (keys samples))))
+    (is (= (get outer "tid") (get inner "tid")))
+    (is (<= (get outer "ts") (get inner "ts")))
+    (is (< (get inner "dur") (get outer "dur")))
+    (is (= "user" (get-in inner ["args" "user"])))
+    (is (some (fn [e] (and (= "M" (get e "ph")) (= (get outer "tid") (get e "tid")))) events))))
+
+(deftest end-on-other-thread []
+  (clear!)
+  (let [s (Profiler/begin "mine" -1)
+        other @(future (Profiler/begin "other" -1))]
+    ;; Handles of samples begun on other threads are ignored
+    @(future (Profiler/end s))
+    (Profiler/end other)
+    (is (= #{} (set (map :name (dump)))))
+    (Profiler/end s)
+    (is (= #{"mine"} (set (map :name (dump)))))))
+
 (threads)
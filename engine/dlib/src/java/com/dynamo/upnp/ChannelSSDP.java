@@ -0,0 +1,414 @@
+// Copyright 2020-2023 The Defold Foundation
+// Copyright 2014-2020 King
+// Copyright 2009-2014 Ragnar Svensson, Christian Murray
+// Licensed under the Defold License version 1.0 (the "License"); you may not use
+// this file except in compliance with the License.
+//
+// You may obtain a copy of the License, together with FAQs at
+// https://www.defold.com/license
+//
+// Unless required by applicable law or agreed to in writing, software distributed
+// under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+// CONDITIONS OF ANY KIND, either express or implied. See the License for the
+// specific language governing permissions and limitations under the License.
+
+package com.dynamo.upnp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * SSDP client built on non-blocking datagram channels.
+ *
+ * The multicast channel and the unicast search channels of all interfaces are
+ * registered with one selector, so an update only reads from the channels that
+ * have pending datagrams instead of waiting for a receive timeout on every
+ * socket. All pending datagrams are drained before they are parsed.
+ */
+public class ChannelSSDP implements ISSDP {
+
+    private Logger logger = Logger.getLogger(ChannelSSDP.class.getCanonicalName());
+
+    private static final String SSDP_MCAST_ADDR_IP = "239.255.255.250";
+    private static final int SSDP_MCAST_PORT = 1900;
+    private static final int SSDP_MAX_WAIT_TIME = 2;
+    private static final int SSDP_MCAST_TTL = 4;
+    private static final int MAX_DATAGRAM_SIZE = 1500;
+
+    private static final String M_SEARCH_PAYLOAD =
+            String.format("M-SEARCH * HTTP/1.1\r\n"
+                    + "Host: %s:%d\r\n"
+                    + "MAN: \"ssdp:discover\"\r\n"
+                    + "MX: %d\r\n"
+                    + "ST: upnp:rootdevice\r\n\r\n", SSDP_MCAST_ADDR_IP, SSDP_MCAST_PORT, SSDP_MAX_WAIT_TIME);
+
+    /**
+     * Channel registered with the selector. Datagrams on the multicast channel
+     * are requests (NOTIFY), datagrams on the unicast channels are responses
+     * to our searches.
+     */
+    private static class Endpoint {
+        final DatagramChannel channel;
+        final boolean multicast;
+        final String localAddress;
+
+        Endpoint(DatagramChannel channel, boolean multicast, String localAddress) {
+            this.channel = channel;
+            this.multicast = multicast;
+            this.localAddress = localAddress;
+        }
+    }
+
+    private static class Datagram {
+        final String data;
+        final String address;
+        final Endpoint endpoint;
+
+        Datagram(String data, String address, Endpoint endpoint) {
+            this.data = data;
+            this.address = address;
+            this.endpoint = endpoint;
+        }
+    }
+
+    private InetSocketAddress mcastAddress;
+    private Selector selector;
+    private List<NetworkInterface> interfaces;
+    private List<Endpoint> endpoints = new ArrayList<Endpoint>();
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+    private byte[] bytes = new byte[MAX_DATAGRAM_SIZE];
+    private List<Datagram> received = new ArrayList<Datagram>();
+    private Map<String, DeviceInfo> discoveredDevices = new HashMap<String, DeviceInfo>();
+    // Earliest expiration time of the discovered devices
+    private long nextExpiration = Long.MAX_VALUE;
+    private int changeCount = 0;
+
+    public ChannelSSDP() {
+        this.logger.setLevel(Level.INFO);
+    }
+
+    @Override
+    public void enableLogTracing(boolean logTracing) {
+        if (logTracing) {
+            this.logger.setLevel(Level.FINE);
+        } else {
+            this.logger.setLevel(Level.INFO);
+        }
+    }
+
+    private void log(String msg) {
+        logger.info(msg);
+    }
+
+    private void trace(String msg) {
+        logger.fine(msg);
+    }
+
+    @Override
+    public boolean setup() throws IOException {
+        try {
+            mcastAddress = new InetSocketAddress(InetAddress.getByName(SSDP_MCAST_ADDR_IP), SSDP_MCAST_PORT);
+            selector = Selector.open();
+            log("Started successfully");
+            refreshNetworks();
+        } catch (UnknownHostException e) {
+            log("Fatal error: " + SSDP_MCAST_ADDR_IP);
+            return false;
+        }
+        return true;
+    }
+
+    private void connect(NetworkInterface networkInterface) throws IOException {
+        List<InetAddress> addresses = SSDP.getIPv4Addresses(networkInterface);
+        if (addresses.isEmpty()) {
+            return;
+        }
+        DatagramChannel mcastChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+        register(new Endpoint(mcastChannel, true, addresses.get(0).getHostAddress()));
+        mcastChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        mcastChannel.bind(new InetSocketAddress(SSDP_MCAST_PORT));
+        mcastChannel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+        mcastChannel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, SSDP_MCAST_TTL);
+        mcastChannel.join(mcastAddress.getAddress(), networkInterface);
+
+        for (InetAddress a : addresses) {
+            DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+            register(new Endpoint(channel, false, a.getHostAddress()));
+            channel.bind(new InetSocketAddress(a, 0));
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, SSDP_MCAST_TTL);
+        }
+        log(String.format("Connected to multicast network %s: %s", networkInterface.getDisplayName(), addresses.toString()));
+    }
+
+    private void register(Endpoint endpoint) throws IOException {
+        // Added before it's configured, so that it's closed if configuring fails
+        endpoints.add(endpoint);
+        endpoint.channel.configureBlocking(false);
+        endpoint.channel.register(selector, SelectionKey.OP_READ, endpoint);
+    }
+
+    private void closeConnections() {
+        for (Endpoint endpoint : endpoints) {
+            try {
+                endpoint.channel.close();
+            } catch (IOException e) {
+                trace("Failed to close channel: " + e.getMessage());
+            }
+        }
+        endpoints.clear();
+    }
+
+    private void refreshNetworks() throws IOException {
+        List<NetworkInterface> newInterfaces = SSDP.getMCastInterfaces();
+        if (!newInterfaces.equals(this.interfaces)) {
+            this.interfaces = newInterfaces;
+            clearDiscovered();
+            closeConnections();
+            for (NetworkInterface i : this.interfaces) {
+                int first = endpoints.size();
+                try {
+                    connect(i);
+                } catch (IOException e) {
+                    log("Could not connect: " + e.getMessage());
+                    List<Endpoint> failed = endpoints.subList(first, endpoints.size());
+                    for (Endpoint endpoint : failed) {
+                        endpoint.channel.close();
+                    }
+                    failed.clear();
+                }
+            }
+        }
+    }
+
+    private void sendSearch() {
+        ByteBuffer payload = ByteBuffer.wrap(M_SEARCH_PAYLOAD.getBytes());
+        boolean connected = false;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.multicast) {
+                connected = true;
+                continue;
+            }
+            trace("Searching for devices");
+            try {
+                payload.rewind();
+                endpoint.channel.send(payload, mcastAddress);
+            } catch (IOException e) {
+                // Might get no route to host etc on an interface, but
+                // that is no good reason to stop searching there, so just
+                // ignore and continue with next interface.
+                trace(String.format("Searching failed on %s: %s", endpoint.localAddress, e.getMessage()));
+            }
+        }
+        if (!connected) {
+            log("Could not find a multicast network");
+        }
+    }
+
+    private void registerDevice(String usn, DeviceInfo device) {
+        DeviceInfo discDevice = discoveredDevices.get(usn);
+        if (!device.equals(discDevice)) {
+            trace(String.format("[%s] was discovered", device.address));
+            ++changeCount;
+        }
+        discoveredDevices.put(usn, device);
+        nextExpiration = Math.min(nextExpiration, device.expires);
+    }
+
+    private void unregisterDevice(String usn) {
+        if (discoveredDevices.remove(usn) != null) {
+            ++changeCount;
+        }
+    }
+
+    private void expireDiscovered() {
+        long now = System.currentTimeMillis();
+        if (now < nextExpiration) {
+            return;
+        }
+        long next = Long.MAX_VALUE;
+        Iterator<DeviceInfo> it = discoveredDevices.values().iterator();
+        while (it.hasNext()) {
+            DeviceInfo dev = it.next();
+            if (now >= dev.expires) {
+                trace(String.format("[%s] has expired and was removed", dev.address));
+                it.remove();
+                ++changeCount;
+            } else {
+                next = Math.min(next, dev.expires);
+            }
+        }
+        nextExpiration = next;
+    }
+
+    /**
+     * Read all pending datagrams from the channels that are ready
+     */
+    private void receive(long timeout) throws IOException {
+        int ready = timeout > 0 ? selector.select(timeout) : selector.selectNow();
+        if (ready == 0) {
+            return;
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid() || !key.isReadable()) {
+                continue;
+            }
+            Endpoint endpoint = (Endpoint) key.attachment();
+            while (true) {
+                buffer.clear();
+                SocketAddress from;
+                try {
+                    from = endpoint.channel.receive(buffer);
+                } catch (IOException e) {
+                    trace(String.format("Receive failed on %s: %s", endpoint.localAddress, e.getMessage()));
+                    break;
+                }
+                if (from == null) {
+                    break;
+                }
+                buffer.flip();
+                int length = buffer.remaining();
+                buffer.get(bytes, 0, length);
+                String address = ((InetSocketAddress) from).getAddress().getHostAddress();
+                received.add(new Datagram(new String(bytes, 0, length), address, endpoint));
+            }
+        }
+    }
+
+    @Override
+    public boolean update(boolean search) throws IOException {
+        return update(search, 0);
+    }
+
+    /**
+     * Update and wait for datagrams
+     * @param search send a search request
+     * @param timeout max time to wait for datagrams in milliseconds, 0 to only read the pending datagrams
+     * @return true if the discovered devices changed
+     */
+    public boolean update(boolean search, long timeout) throws IOException {
+        int oldChangeCount = changeCount;
+        if (search) {
+            refreshNetworks();
+            sendSearch();
+        }
+
+        receive(timeout);
+        for (Datagram datagram : received) {
+            if (datagram.endpoint.multicast) {
+                handleRequest(datagram.data, datagram.address, datagram.endpoint.localAddress);
+            } else {
+                handleResponse(datagram.data, datagram.address, datagram.endpoint.localAddress);
+            }
+        }
+        received.clear();
+
+        expireDiscovered();
+        return changeCount != oldChangeCount;
+    }
+
+    private void handleRequest(String data, String address, String localAddress) {
+        Request request = Request.parse(data);
+        if (request == null) {
+            trace(String.format("[%s] Invalid request: %s", address, data));
+            return;
+        }
+
+        if (request.method.equals("NOTIFY")) {
+            String nts = request.headers.get("NTS");
+            String usn = request.headers.get("USN");
+            if (nts != null && usn != null) {
+                if (nts.equals("ssdp:alive")) {
+                    registerDevice(usn, DeviceInfo.create(request.headers, address, localAddress));
+                } else if (nts.equals("ssdp:byebye")) {
+                    unregisterDevice(usn);
+                } else {
+                    trace(String.format("[%s] Unsupported NOTIFY response: %s", address, nts));
+                }
+            } else {
+                trace(String.format("[%s] Malformed NOTIFY response: %s", address, data));
+            }
+        }
+        // We ignore M-SEARCH requests
+    }
+
+    private void handleResponse(String data, String address, String localAddress) {
+        Response response = Response.parse(data);
+        if (response == null) {
+            trace(String.format("[%s] Invalid response: %s", address, data));
+            return;
+        }
+
+        if (response.statusCode == 200) {
+            String usn = response.headers.get("USN");
+            if (usn != null) {
+                registerDevice(usn, DeviceInfo.create(response.headers, address, localAddress));
+            } else {
+                trace(String.format("[%s] Malformed response: %s", address, data));
+            }
+        }
+    }
+
+    @Override
+    public DeviceInfo getDeviceInfo(String usn) {
+        return discoveredDevices.get(usn);
+    }
+
+    @Override
+    public DeviceInfo[] getDevices() {
+        return discoveredDevices.values().toArray(new DeviceInfo[discoveredDevices.size()]);
+    }
+
+    @Override
+    public void dispose() {
+        closeConnections();
+        if (selector != null) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                trace("Failed to close selector: " + e.getMessage());
+            }
+            selector = null;
+        }
+        log("Stopped successfully");
+    }
+
+    @Override
+    public void clearDiscovered() {
+        if (!discoveredDevices.isEmpty()) {
+            ++changeCount;
+            discoveredDevices.clear();
+        }
+        nextExpiration = Long.MAX_VALUE;
+    }
+
+    @Override
+    public boolean isConnected() {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.multicast && endpoint.channel.isOpen()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
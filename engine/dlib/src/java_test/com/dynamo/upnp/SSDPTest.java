@@ -46,13 +46,17 @@ public class SSDPTest {
 
     @Before
     public void setUp() throws Exception {
-        ssdp = new SSDP();
+        ssdp = createSSDP();
         ssdp.setup();
         Thread.sleep(100);
         ssdp.update(false);
         ssdp.clearDiscovered();
     }
 
+    protected ISSDP createSSDP() {
+        return new SSDP();
+    }
+
     @After
     public void tearDown() throws Exception {
         ssdp.dispose();